@@ -0,0 +1,388 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+import cs171.project2024.kearns.eamonn.ResourceTile.Resource;
+
+/**
+ * A check that every way of running the game ends up in exactly the same state, to catch the depletion queue, the scheduler or the snapshots drifting
+ * from what plain sequential ticking does. Each map is played through the same script, discovering resources and buying research at fixed points, once
+ * for each of the ways of running it below, and the state after every segment of the script is compared with the state ticking it one processTick at a
+ * time in SEQUENTIAL mode gives. Lazy maps are also compared with the eager map of the same seed, since they should only differ in which tiles exist.
+ *
+ * Run from the project root, with the game and the benchmarks compiled into bin:
+ * java -cp "bin:lib/*" cs171.project2024.kearns.eamonn.Equivalence [--radius=16] [--ticks=200000] [--seeds=7,171,2024]
+ *
+ * It prints a line for every map and every way of running it, and exits with a status of 1 if any of them didn't match.
+ *
+ * The ways of running it are:
+ * advance		advance, in SEQUENTIAL mode, in uneven steps so the jumps start and stop in awkward places
+ * parallel		processTick in PARALLEL mode
+ * event		processTick in EVENT mode, and event.advance advance in EVENT mode
+ * switching	advance, changing the tick mode after every segment
+ * snapshot		advance, saving the game and carrying on with what Game.load reads back after every segment
+ * journal		advance, appending to a GameJournal after every segment and carrying on with what GameJournal.recover reads back half way through
+ * tiles		advance, on a MappedTileStore, closing it after every segment and carrying on with what Game.attach puts back together from the file
+ */
+public class Equivalence
+{
+	/**
+	 * A way of moving a game on by a number of ticks, which may hand back a different game to carry on with
+	 */
+	private interface Runner
+	{
+		/**
+		 * Play a segment of the script
+		 * @param game		The game
+		 * @param segment	Which segment of the script this is
+		 * @param ticks		The number of ticks in the segment
+		 * @return			The game to carry on with
+		 * @throws IOException
+		 */
+		Game run(Game game, int segment, long ticks) throws IOException;
+	}
+
+	/**
+	 * The number of segments the script is split into
+	 */
+	private final static int SEGMENTS = 10;
+	/**
+	 * The uneven steps advance is called with, over and over until a segment is done
+	 */
+	private final static long[] STEPS = {1, 7, 1000, 3, 25000};
+
+	/**
+	 * The radius of the maps
+	 */
+	private final int radius;
+	/**
+	 * The number of ticks in each segment of the script
+	 */
+	private final long ticks;
+	/**
+	 * Where the snapshot and journal runs save the game to
+	 */
+	private final Path snapshot;
+	/**
+	 * Where the tiles run keeps its tiles
+	 */
+	private final Path tiles;
+	/**
+	 * The number of runs that didn't match
+	 */
+	private int failures;
+
+	/**
+	 * Constructor
+	 * @param radius	The radius of the maps
+	 * @param ticks		The number of ticks in each segment of the script
+	 * @param snapshot	Where the snapshot and journal runs save the game to
+	 * @param tiles		Where the tiles run keeps its tiles
+	 */
+	public Equivalence(int radius, long ticks, Path snapshot, Path tiles)
+	{
+		this.radius = radius;
+		this.ticks = ticks;
+		this.snapshot = snapshot;
+		this.tiles = tiles;
+	}
+
+	/**
+	 * Describe everything about a game's state that should be the same however it was run. Tiles are keyed by their coordinates rather than their index,
+	 * since a lazy map numbers its tiles in the order they were explored.
+	 * @param game	The game
+	 * @return		The ledgers, the tick, the number of tiles being mined and a hash of every explored tile
+	 */
+	private static String fingerprint(Game game)
+	{
+		// in event mode the tiles are only brought up to date when asked for
+		game.synchronise();
+		StringBuilder fingerprint = new StringBuilder();
+		for(Resource resource: Resource.values())
+		{
+			fingerprint.append(resource).append('=').append(game.getResourceMined(resource)).append('/').append(game.getResourceAvailable(resource)).append(' ');
+		}
+		fingerprint.append("tick=").append(game.getTick()).append(" active=").append(game.getActiveTileCount());
+
+		HexGrid<ResourceTile> grid = game.getGrid();
+		TreeMap<Long, Long> tiles = new TreeMap<>();
+		for(int i = 0; i < grid.size(); i++)
+		{
+			ResourceTile tile = grid.get(i);
+			if(!tile.isExplored())
+			{
+				continue;
+			}
+			long hash = tile.isDepleted()?2:1;
+			for(Resource resource: Resource.values())
+			{
+				hash = hash * 31 + Double.hashCode(tile.hasResource(resource)?tile.getAvailableResource(resource):-1);
+			}
+			hash = hash * 31 + grid.getConnections(i);
+			tiles.put(((long)grid.q(i) << 32) | (grid.r(i) & 0xffffffffL), hash);
+		}
+		long hash = 0;
+		for(var tile: tiles.entrySet())
+		{
+			hash = hash * 31 + tile.getKey() * 7 + tile.getValue();
+		}
+		return fingerprint.append(" explored=").append(tiles.size()).append(" tiles=").append(Long.toHexString(hash)).toString();
+	}
+
+	/**
+	 * Describe the running totals the chunks keep, which only match between games whose maps have the same tiles
+	 * @param game	The game
+	 * @return		The reserves and extraction rate of every resource
+	 */
+	private static String totals(Game game)
+	{
+		StringBuilder totals = new StringBuilder();
+		for(Resource resource: Resource.values())
+		{
+			totals.append(resource).append('=').append(game.getResourceReserves(resource)).append('@').append(game.getExtractionRate(resource)).append(' ');
+		}
+		return totals.toString();
+	}
+
+	/**
+	 * Do whatever the script does at the start of a segment, which is the same however the game is being run
+	 * @param game		The game
+	 * @param segment	Which segment of the script is starting
+	 */
+	private static void script(Game game, int segment)
+	{
+		if(segment == 2)
+		{
+			for(Resource resource: Resource.values())
+			{
+				if(resource != Resource.ORE && resource != Resource.OIL)
+				{
+					game.discoverResource(resource);
+				}
+			}
+		}
+		else if(segment == 5)
+		{
+			game.discoverResource(Resource.ORE);
+			for(Research research: game.getResearches())
+			{
+				game.buyResearch(research);
+			}
+		}
+		else if(segment == 8)
+		{
+			game.discoverResource(Resource.OIL);
+		}
+	}
+
+	/**
+	 * Advance a game by a number of ticks in uneven steps
+	 * @param game	The game
+	 * @param ticks	The number of ticks
+	 */
+	private static void advance(Game game, long ticks)
+	{
+		for(int i = 0; ticks > 0; i = (i + 1) % STEPS.length)
+		{
+			long step = Math.min(STEPS[i], ticks);
+			game.advance(step);
+			ticks -= step;
+		}
+	}
+
+	/**
+	 * Tick a game a tick at a time
+	 * @param game	The game
+	 * @param ticks	The number of ticks
+	 */
+	private static void step(Game game, long ticks)
+	{
+		for(long i = 0; i < ticks; i++)
+		{
+			game.processTick();
+		}
+	}
+
+	/**
+	 * Play a map through the script
+	 * @param algorithm	The maze algorithm to build the map with
+	 * @param seed		The seed to build the map from
+	 * @param lazy		Whether to build the map lazily
+	 * @param tileStore	The store to keep the tiles in
+	 * @param mode		The tick mode to start in
+	 * @param runner	How to play each segment
+	 * @return			The fingerprint and totals of the game after every segment
+	 * @throws IOException
+	 */
+	private ArrayList<String[]> play(MazeAlgorithm algorithm, long seed, boolean lazy, TileStore tileStore, TickMode mode, Runner runner) throws IOException
+	{
+		Game game = new Game(this.radius, seed, algorithm, lazy, tileStore);
+		game.setTickMode(mode);
+		ArrayList<String[]> states = new ArrayList<>();
+		for(int segment = 0; segment < SEGMENTS; segment++)
+		{
+			script(game, segment);
+			game = runner.run(game, segment, this.ticks);
+			states.add(new String[]{fingerprint(game), totals(game)});
+		}
+		return states;
+	}
+
+	/**
+	 * Compare the states a run went through with the reference run, and print the result
+	 * @param name		The name of the run
+	 * @param expected	The states the reference run went through
+	 * @param actual	The states this run went through
+	 * @param parts		How many parts of each state to compare, 1 for just the fingerprint or 2 for the totals as well
+	 */
+	private void compare(String name, ArrayList<String[]> expected, ArrayList<String[]> actual, int parts)
+	{
+		for(int segment = 0; segment < SEGMENTS; segment++)
+		{
+			for(int part = 0; part < parts; part++)
+			{
+				if(!expected.get(segment)[part].equals(actual.get(segment)[part]))
+				{
+					this.failures++;
+					System.out.printf("%-40s differs after segment %d%n  expected %s%n  actual   %s%n", name, segment, expected.get(segment)[part], actual.get(segment)[part]);
+					return;
+				}
+			}
+		}
+		System.out.printf("%-40s matches  %s%n", name, actual.get(SEGMENTS - 1)[0]);
+	}
+
+	/**
+	 * Run every way of playing a map and compare them with ticking it sequentially
+	 * @param algorithm	The maze algorithm to build the map with
+	 * @param seed		The seed to build the map from
+	 * @param lazy		Whether to build the map lazily
+	 * @return			The states the sequential run went through
+	 * @throws IOException
+	 */
+	public ArrayList<String[]> check(MazeAlgorithm algorithm, long seed, boolean lazy) throws IOException
+	{
+		String map = algorithm.name().toLowerCase() + (lazy?".lazy":"") + ".s" + seed;
+		Path journal = GameJournal.journalFor(this.snapshot);
+		TickMode[] modes = TickMode.values();
+
+		ArrayList<String[]> expected = this.play(algorithm, seed, lazy, new HeapTileStore(64), TickMode.SEQUENTIAL, (game, segment, ticks)->{
+			step(game, ticks);
+			return game;
+		});
+		this.compare(map + " advance", expected, this.play(algorithm, seed, lazy, new HeapTileStore(64), TickMode.SEQUENTIAL, (game, segment, ticks)->{
+			advance(game, ticks);
+			return game;
+		}), 2);
+		this.compare(map + " parallel", expected, this.play(algorithm, seed, lazy, new HeapTileStore(64), TickMode.PARALLEL, (game, segment, ticks)->{
+			step(game, ticks);
+			return game;
+		}), 2);
+		this.compare(map + " event", expected, this.play(algorithm, seed, lazy, new HeapTileStore(64), TickMode.EVENT, (game, segment, ticks)->{
+			step(game, ticks);
+			return game;
+		}), 2);
+		this.compare(map + " event.advance", expected, this.play(algorithm, seed, lazy, new HeapTileStore(64), TickMode.EVENT, (game, segment, ticks)->{
+			advance(game, ticks);
+			return game;
+		}), 2);
+		this.compare(map + " switching", expected, this.play(algorithm, seed, lazy, new HeapTileStore(64), TickMode.SEQUENTIAL, (game, segment, ticks)->{
+			game.setTickMode(modes[segment % modes.length]);
+			advance(game, ticks);
+			return game;
+		}), 2);
+		this.compare(map + " snapshot", expected, this.play(algorithm, seed, lazy, new HeapTileStore(64), TickMode.EVENT, (game, segment, ticks)->{
+			advance(game, ticks);
+			game.save(this.snapshot);
+			Game loaded = Game.load(this.snapshot);
+			loaded.setTickMode(TickMode.EVENT);
+			return loaded;
+		}), 2);
+
+		GameJournal[] journals = new GameJournal[1];
+		this.compare(map + " journal", expected, this.play(algorithm, seed, lazy, new HeapTileStore(64), TickMode.EVENT, (game, segment, ticks)->{
+			if(segment == 0)
+			{
+				journals[0] = new GameJournal(game, this.snapshot, journal);
+			}
+			advance(game, ticks);
+			journals[0].append();
+			if(segment != SEGMENTS / 2)
+			{
+				return game;
+			}
+			journals[0].close();
+			Game recovered = GameJournal.recover(this.snapshot, journal);
+			recovered.setTickMode(TickMode.EVENT);
+			journals[0] = new GameJournal(recovered, this.snapshot, journal);
+			return recovered;
+		}), 2);
+		journals[0].close();
+		Files.deleteIfExists(journal);
+
+		MappedTileStore[] stores = {MappedTileStore.open(this.tiles, 64)};
+		this.compare(map + " tiles", expected, this.play(algorithm, seed, lazy, stores[0], TickMode.EVENT, (game, segment, ticks)->{
+			advance(game, ticks);
+			stores[0].close();
+			stores[0] = MappedTileStore.open(this.tiles, 1);
+			return Game.attach(stores[0]);
+		}), 2);
+		stores[0].close();
+		return expected;
+	}
+
+	/**
+	 * Run the checks from the command line
+	 * @param args	--radius=, --ticks= and --seeds=, a comma separated list
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		HashMap<String, String> options = new HashMap<>();
+		for(String arg: args)
+		{
+			if(arg.startsWith("--") && arg.contains("="))
+			{
+				options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+			}
+		}
+		String[] seedsOption = options.getOrDefault("seeds", "7,171,2024").split(",");
+
+		Path snapshot = Files.createTempFile("equivalence", ".snap");
+		Path tiles = Files.createTempFile("equivalence", ".tiles");
+		Equivalence equivalence = new Equivalence(
+			Integer.parseInt(options.getOrDefault("radius", "16")),
+			Long.parseLong(options.getOrDefault("ticks", "200000")),
+			snapshot,
+			tiles
+		);
+		try
+		{
+			for(String seedOption: seedsOption)
+			{
+				long seed = Long.parseLong(seedOption.trim());
+				for(MazeAlgorithm algorithm: MazeAlgorithm.values())
+				{
+					ArrayList<String[]> eager = equivalence.check(algorithm, seed, false);
+					if(algorithm == MazeAlgorithm.RADIAL)
+					{
+						ArrayList<String[]> lazy = equivalence.check(algorithm, seed, true);
+						equivalence.compare("radial.lazy.s" + seed + " eager", eager, lazy, 1);
+					}
+				}
+			}
+		}
+		finally
+		{
+			Files.deleteIfExists(snapshot);
+			Files.deleteIfExists(tiles);
+		}
+		System.out.println(equivalence.failures == 0?"Every run matched":equivalence.failures + " runs didn't match");
+		System.exit(equivalence.failures == 0?0:1);
+	}
+}
@@ -0,0 +1,476 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import cs171.project2024.kearns.eamonn.ResourceTile.Resource;
+
+/**
+ * A benchmark suite for the code the game spends its time in, to give us a baseline to gate performance regressions against.
+ * There is no build system to pull JMH in with, so this borrows its approach rather than its annotations: every benchmark is run for a number of warm up
+ * iterations, whose results are thrown away, and then a number of measured iterations, and the mean and standard deviation of the time per operation across
+ * the measured iterations is reported. Results are fed into a sink so the JIT can't throw the work away, and every map is built from a fixed seed so runs
+ * are comparable.
+ *
+ * Run from the project root, with the game and the benchmarks compiled into bin:
+ * java -cp "bin:lib/*" cs171.project2024.kearns.eamonn.GameBenchmark [--filter=text] [--radii=12,50,200,1000] [--warmup=5] [--iterations=10]
+ *
+ * The benchmarks are:
+ * construct		Game(radius, seed), which allocates the tiles, wires up the neighbours and generates the maze, and construct.algorithm the same with each of the
+ * 				other maze algorithms
+ * deposits		DepositGenerator.generate on its own, laying the resources out over the map
+ * tick.phase.mode	processTick at the start of the game (early), once half the map is explored (mid) and once 90% is (late), in each tick mode
+ * processResource	ResourceTile.processResource on a single tile
+ * research.parse	Research.fromJsonNode over the research data
+ * research.load	Game.loadResearch, which after the first time reads the compiled catalog
+ * research.json	ResearchCatalog.readJson over a generated catalog of CATALOG_SIZE researches, and research.binary ResearchCatalog.readBinary over the
+ * 				same catalog compiled
+ * toString			Game.toString
+ * snapshot.save	Game.save, half way through the game, and snapshot.load Game.load of what it saved
+ * journal.append	a hundred ticks followed by GameJournal.append, half way through the game, which less a hundred times tick.mid.sequential is the append
+ */
+public class GameBenchmark
+{
+	/**
+	 * A unit of work to time
+	 */
+	private interface Operation
+	{
+		/**
+		 * Run the work
+		 * @return	The number of operations that were performed
+		 * @throws Exception
+		 */
+		long run() throws Exception;
+	}
+
+	/**
+	 * The seed every map is built from
+	 */
+	private final static long SEED = 171;
+	/**
+	 * The fraction of the map explored in each of the phases the tick is measured at
+	 */
+	private final static double[] PHASES = {0.0, 0.5, 0.9};
+	/**
+	 * The number of researches in the catalog the catalog benchmarks read
+	 */
+	private final static int CATALOG_SIZE = 5000;
+	/**
+	 * The names of the phases
+	 */
+	private final static String[] PHASE_NAMES = {"early", "mid", "late"};
+
+	/**
+	 * Somewhere to put results so the work producing them can't be optimised away
+	 */
+	public static volatile long sink;
+
+	/**
+	 * Only benchmarks whose names contain this are run
+	 */
+	private final String filter;
+	/**
+	 * The number of unmeasured iterations to run first
+	 */
+	private final int warmupIterations;
+	/**
+	 * The number of measured iterations
+	 */
+	private final int measuredIterations;
+
+	/**
+	 * Constructor
+	 * @param filter				Only benchmarks whose names contain this are run
+	 * @param warmupIterations		The number of unmeasured iterations to run first
+	 * @param measuredIterations	The number of measured iterations
+	 */
+	public GameBenchmark(String filter, int warmupIterations, int measuredIterations)
+	{
+		this.filter = filter;
+		this.warmupIterations = warmupIterations;
+		this.measuredIterations = measuredIterations;
+	}
+
+	/**
+	 * Time a benchmark and print the result
+	 * @param name		The name of the benchmark
+	 * @param operation	The work to time
+	 * @throws Exception
+	 */
+	private void measure(String name, Operation operation) throws Exception
+	{
+		if(!name.contains(this.filter))
+		{
+			return;
+		}
+		for(int i = 0; i < this.warmupIterations; i++)
+		{
+			operation.run();
+		}
+		double[] nanosPerOperation = new double[this.measuredIterations];
+		for(int i = 0; i < this.measuredIterations; i++)
+		{
+			long start = System.nanoTime();
+			long operations = operation.run();
+			nanosPerOperation[i] = (double)(System.nanoTime() - start) / operations;
+		}
+		double mean = 0;
+		for(double n: nanosPerOperation)
+		{
+			mean += n;
+		}
+		mean /= nanosPerOperation.length;
+		double variance = 0;
+		for(double n: nanosPerOperation)
+		{
+			variance += (n - mean) * (n - mean);
+		}
+		double deviation = nanosPerOperation.length > 1?Math.sqrt(variance / (nanosPerOperation.length - 1)):0;
+		System.out.printf("%-32s %16.1f ns/op  +- %12.1f%n", name, mean, deviation);
+	}
+
+	/**
+	 * Count the tiles on a map that have been explored
+	 * @param game	The game
+	 * @return		The number of explored tiles
+	 */
+	private static int countExplored(Game game)
+	{
+		int explored = 0;
+		for(ArrayList<ResourceTile> row: game.getTiles())
+		{
+			for(ResourceTile tile: row)
+			{
+				if(tile.isExplored())
+				{
+					explored++;
+				}
+			}
+		}
+		return explored;
+	}
+
+	/**
+	 * Build a game and fast forward it until a fraction of the map has been explored, or nothing is left being mined
+	 * @param radius	The radius of the map
+	 * @param fraction	The fraction of the map to explore
+	 * @return			The game
+	 */
+	private static Game gameAtPhase(int radius, double fraction)
+	{
+		Game game = new Game(radius, SEED);
+		long step = 100000;
+		while(countExplored(game) < fraction * game.getTileCount() && game.getActiveTileCount() > 0)
+		{
+			game.advance(step);
+			step *= 2;
+		}
+		return game;
+	}
+
+	/**
+	 * Run the map generation benchmarks
+	 * @param radii	The radii to run them at
+	 * @throws Exception
+	 */
+	public void constructionBenchmarks(int[] radii) throws Exception
+	{
+		for(int radius: radii)
+		{
+			this.measure("construct.r" + radius, ()->{
+				sink += new Game(radius, SEED).getTileCount();
+				return 1;
+			});
+			if(("deposits.r" + radius).contains(this.filter))
+			{
+				HexGrid<HexTile> grid = new HexGrid<>(radius);
+				TileStore store = new HeapTileStore(grid.size());
+				DepositGenerator deposits = new DepositGenerator(SEED);
+				this.measure("deposits.r" + radius, ()->{
+					deposits.generate(grid, store, ForkJoinPool.commonPool());
+					sink += store.getPresentMask(0);
+					return 1;
+				});
+			}
+			for(MazeAlgorithm algorithm: MazeAlgorithm.values())
+			{
+				if(algorithm == MazeAlgorithm.BACKTRACKER)
+				{
+					continue;
+				}
+				this.measure("construct.r" + radius + "." + algorithm.name().toLowerCase(), ()->{
+					sink += new Game(radius, SEED, algorithm).getTileCount();
+					return 1;
+				});
+			}
+		}
+	}
+
+	/**
+	 * Run the tick benchmarks
+	 * @param radii	The radii to run them at
+	 * @throws Exception
+	 */
+	public void tickBenchmarks(int[] radii) throws Exception
+	{
+		for(int radius: radii)
+		{
+			for(int phase = 0; phase < PHASES.length; phase++)
+			{
+				for(TickMode mode: TickMode.values())
+				{
+					String name = String.format("tick.r%d.%s.%s", radius, PHASE_NAMES[phase], mode.name().toLowerCase());
+					if(!name.contains(this.filter))
+					{
+						continue;
+					}
+					Game game = gameAtPhase(radius, PHASES[phase]);
+					game.setTickMode(mode);
+					final int ticks = 10000;
+					this.measure(name, ()->{
+						for(int i = 0; i < ticks; i++)
+						{
+							game.processTick();
+						}
+						sink += game.getActiveTileCount();
+						return ticks;
+					});
+				}
+			}
+		}
+	}
+
+	/**
+	 * Run the benchmark for processing a single resource on a single tile
+	 * @throws Exception
+	 */
+	public void processResourceBenchmark() throws Exception
+	{
+		ResourceTile tile = new ResourceTile(0, 0);
+		tile.setAvailableResource(Resource.WOOD, 1e9);
+		tile.setResourceExtractionRate(Resource.WOOD, 0.00125);
+		final int operations = 1000000;
+		this.measure("processResource", ()->{
+			double total = 0;
+			for(int i = 0; i < operations; i++)
+			{
+				total += tile.processResource(Resource.WOOD);
+			}
+			sink += (long)total;
+			return operations;
+		});
+	}
+
+	/**
+	 * Run the research loading benchmarks
+	 * @throws Exception
+	 */
+	public void researchBenchmarks() throws Exception
+	{
+		JsonNode researchData = new ObjectMapper().readTree(new File("./data/research.json"));
+		final int parses = 10000;
+		this.measure("research.parse", ()->{
+			for(int i = 0; i < parses; i++)
+			{
+				for(JsonNode researchNode: researchData)
+				{
+					sink += Research.fromJsonNode(researchNode).getCosts().size();
+				}
+			}
+			return parses;
+		});
+
+		Game game = new Game(2, SEED);
+		final int loads = 1000;
+		this.measure("research.load", ()->{
+			for(int i = 0; i < loads; i++)
+			{
+				game.loadResearch();
+			}
+			sink += game.getResearches().size();
+			return loads;
+		});
+
+		// a catalog much bigger than the real one, half repeatable, each costing and boosting a few resources
+		Resource[] resources = Resource.values();
+		StringBuilder json = new StringBuilder("[");
+		for(int i = 0; i < CATALOG_SIZE; i++)
+		{
+			boolean repeatable = i % 2 == 0;
+			json.append(i == 0?"":",").append("{\"name\":\"Research ").append(i).append("\",\"repeatable\":").append(repeatable).append(",\"costs\":{");
+			json.append('"').append(resources[i % resources.length].label).append("\":").append(i + 1).append(",\"");
+			json.append(resources[(i + 1) % resources.length].label).append("\":").append(i * 2 + 1).append('}');
+			if(repeatable)
+			{
+				json.append(",\"boosts\":{\"").append(resources[(i + 2) % resources.length].label).append("\":1.1},\"maxLevel\":10");
+			}
+			json.append('}');
+		}
+		byte[] catalogJson = json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+		ByteArrayOutputStream compiled = new ByteArrayOutputStream();
+		ResearchCatalog.readJson(new ByteArrayInputStream(catalogJson)).writeBinary(compiled);
+		byte[] catalogBinary = compiled.toByteArray();
+		final int reads = 20;
+		this.measure("research.json", ()->{
+			for(int i = 0; i < reads; i++)
+			{
+				sink += ResearchCatalog.readJson(new ByteArrayInputStream(catalogJson)).size();
+			}
+			return reads;
+		});
+		this.measure("research.binary", ()->{
+			for(int i = 0; i < reads; i++)
+			{
+				sink += ResearchCatalog.readBinary(new ByteArrayInputStream(catalogBinary)).size();
+			}
+			return reads;
+		});
+	}
+
+	/**
+	 * Run the toString benchmarks
+	 * @param radii	The radii to run them at
+	 * @throws Exception
+	 */
+	public void toStringBenchmarks(int[] radii) throws Exception
+	{
+		for(int radius: radii)
+		{
+			String name = "toString.r" + radius;
+			if(!name.contains(this.filter))
+			{
+				continue;
+			}
+			Game game = new Game(radius, SEED);
+			this.measure(name, ()->{
+				sink += game.toString().length();
+				return 1;
+			});
+		}
+	}
+
+	/**
+	 * Run the save and load benchmarks
+	 * @param radii	The radii to run them at
+	 * @throws Exception
+	 */
+	public void snapshotBenchmarks(int[] radii) throws Exception
+	{
+		for(int radius: radii)
+		{
+			String save = "snapshot.save.r" + radius;
+			String load = "snapshot.load.r" + radius;
+			if(!save.contains(this.filter) && !load.contains(this.filter))
+			{
+				continue;
+			}
+			Game game = gameAtPhase(radius, 0.5);
+			Path path = Files.createTempFile("snapshot", ".bin");
+			try
+			{
+				this.measure(save, ()->{
+					game.save(path);
+					sink += Files.size(path);
+					return 1;
+				});
+				game.save(path);
+				this.measure(load, ()->{
+					sink += Game.load(path).getActiveTileCount();
+					return 1;
+				});
+			}
+			finally
+			{
+				Files.deleteIfExists(path);
+			}
+		}
+	}
+
+	/**
+	 * Run the journal benchmarks. Each operation ticks the game a hundred times before appending, since an append costs as much as has changed since the last.
+	 * @param radii	The radii to run them at
+	 * @throws Exception
+	 */
+	public void journalBenchmarks(int[] radii) throws Exception
+	{
+		for(int radius: radii)
+		{
+			String name = "journal.append.r" + radius;
+			if(!name.contains(this.filter))
+			{
+				continue;
+			}
+			Game game = gameAtPhase(radius, 0.5);
+			Path snapshot = Files.createTempFile("snapshot", ".bin");
+			Path journal = GameJournal.journalFor(snapshot);
+			try(GameJournal out = new GameJournal(game, snapshot, journal))
+			{
+				this.measure(name, ()->{
+					for(int i = 0; i < 100; i++)
+					{
+						game.processTick();
+					}
+					out.append();
+					sink += Files.size(journal);
+					return 1;
+				});
+			}
+			finally
+			{
+				Files.deleteIfExists(snapshot);
+				Files.deleteIfExists(journal);
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		HashMap<String, String> options = new HashMap<>();
+		for(String arg: args)
+		{
+			if(arg.startsWith("--") && arg.contains("="))
+			{
+				options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+			}
+		}
+		String[] radiiOption = options.getOrDefault("radii", "12,50,200,1000").split(",");
+		int[] radii = new int[radiiOption.length];
+		for(int i = 0; i < radii.length; i++)
+		{
+			radii[i] = Integer.parseInt(radiiOption[i].trim());
+		}
+
+		GameBenchmark benchmark = new GameBenchmark(
+			options.getOrDefault("filter", ""),
+			Integer.parseInt(options.getOrDefault("warmup", "5")),
+			Integer.parseInt(options.getOrDefault("iterations", "10"))
+		);
+		System.out.printf("%-32s %16s %20s%n", "Benchmark", "Score", "Error");
+		try
+		{
+			benchmark.constructionBenchmarks(radii);
+			benchmark.tickBenchmarks(radii);
+			benchmark.processResourceBenchmark();
+			benchmark.researchBenchmarks();
+			benchmark.toStringBenchmarks(radii);
+			benchmark.snapshotBenchmarks(radii);
+			benchmark.journalBenchmarks(radii);
+		}
+		catch(IOException e)
+		{
+			System.err.println("There was a problem reading the research data, benchmarks need to be run from the project root.");
+		}
+	}
+}
@@ -1,6 +1,6 @@
 
-import java.util.ArrayList;
 import java.util.EnumMap;
+import java.util.function.IntConsumer;
 
 import cs171.project2024.kearns.eamonn.*;
 import cs171.project2024.kearns.eamonn.HexTile.Direction;
@@ -10,12 +10,19 @@ import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
 import javafx.application.Application;
 import javafx.geometry.Insets;
+import javafx.geometry.Pos;
 import javafx.scene.Cursor;
 import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.control.Label;
+import javafx.scene.control.Tooltip;
+import javafx.scene.input.KeyCode;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
+import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.ArcType;
@@ -24,6 +31,11 @@ import javafx.scene.text.FontWeight;
 import javafx.scene.text.Text;
 import javafx.stage.Stage;
 import javafx.util.Duration;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
 
 /**
  * A class to bootstrap the application, extends PApplet to handle all graphics stuff
@@ -31,11 +43,44 @@ import javafx.util.Duration;
  */
 public class ApplicationBootstrapper extends Application
 {
-	
+	/**
+	 * A Flight Recorder event for each frame drawn, so dropped frames can be lined up with GC pauses and ticks in a recording
+	 */
+	@Name("cs171.project2024.kearns.eamonn.Frame")
+	@jdk.jfr.Label("Frame")
+	@Category({"CS171 Game", "Rendering"})
+	@Description("A frame drawn by the UI")
+	@StackTrace(false)
+	static class FrameEvent extends Event
+	{
+		/**
+		 * The tick the game was on when the frame was drawn
+		 */
+		@jdk.jfr.Label("Tick")
+		long tick;
+		/**
+		 * Whether the camera had moved, so the whole map was drawn rather than only the tiles that changed
+		 */
+		@jdk.jfr.Label("Map Redrawn")
+		boolean mapRedrawn;
+	}
+
 	/**
 	 * A static reference to the game. During various approaches to this, different APIs have required internal static classes so I made game static to make sure it could be accessed
 	 */
 	private static Game game;
+	/**
+	 * The scheduler that runs the game's ticks on a thread of its own, so the frame rate and the simulation speed don't depend on each other
+	 */
+	private SimulationScheduler scheduler;
+	/**
+	 * The number of ticks per second the simulation runs at unless told otherwise with --tps
+	 */
+	private final static double DEFAULT_TICKS_PER_SECOND = 60;
+	/**
+	 * The most ticks the simulation will run in one go to catch up unless told otherwise with --maxSteps
+	 */
+	private final static int DEFAULT_MAX_STEPS_PER_FRAME = 240;
 	/**
 	 * A class reference to the vbox used to contain the resources. Which is required for when we add more
 	 */
@@ -51,13 +96,113 @@ public class ApplicationBootstrapper extends Application
 	 */
 	private final int CANVAS_WIDTH = 900;
 	/**
-	 * A canvas to draw on
+	 * A canvas to draw on. This is the bottom layer of the map, the tiles as they are before they're explored and the settlement, which never change, so it's
+	 * only drawn when the camera moves, and cached as an image in between.
 	 */
 	private Canvas canvas =  new Canvas(CANVAS_WIDTH, CANVAS_WIDTH);
 	/**
 	 * The graphicsContext to draw on
 	 */
 	private GraphicsContext graphicsContext = canvas.getGraphicsContext2D();
+	/**
+	 * The middle layer of the map, the explored tiles and the resources left in them. This is the only layer that gets drawn on as the game goes on, and only
+	 * where a tile on screen has changed.
+	 */
+	private Canvas resourceCanvas = new Canvas(CANVAS_WIDTH, CANVAS_WIDTH);
+	/**
+	 * The graphicsContext of the resource layer
+	 */
+	private GraphicsContext resourceContext = resourceCanvas.getGraphicsContext2D();
+	/**
+	 * The top layer of the map, the maze's walls, which never change either, so like the bottom layer it's only drawn when the camera moves, and cached
+	 */
+	private Canvas wallCanvas = new Canvas(CANVAS_WIDTH, CANVAS_WIDTH);
+	/**
+	 * The graphicsContext of the wall layer
+	 */
+	private GraphicsContext wallContext = wallCanvas.getGraphicsContext2D();
+	/**
+	 * Where every tile goes on the canvas, worked out once so that drawing a tile needs no trig and allocates nothing. This is the camera as well: panning
+	 * moves the layout's origin and zooming changes its tile radius.
+	 */
+	private HexLayout layout;
+	/**
+	 * The smallest the tiles can be zoomed out to, small enough for the whole map to fit on the canvas
+	 */
+	private double minimumRadius;
+	/**
+	 * The biggest the tiles can be zoomed in to, in pixels
+	 */
+	private final static double MAXIMUM_RADIUS = 60;
+	/**
+	 * Below this radius in pixels the resources and the walls are too small to make out, so they're left out
+	 */
+	private final static double DETAIL_RADIUS = 6;
+	/**
+	 * Below this radius in pixels there are so many tiles on screen that it's cheaper to work out the colour of each pixel than to draw each tile, so the
+	 * bottom layer is drawn a pixel at a time
+	 */
+	private final static double PIXEL_RADIUS = 4;
+	/**
+	 * Whether or not the camera has moved since the map was last drawn, so the whole of it on screen has to be drawn again
+	 */
+	private boolean cameraMoved;
+	/**
+	 * The overlay showing what GameMetrics has measured, over the top left of the map. Showing it turns the metrics on, and hiding it turns them off again.
+	 */
+	private final Label metricsOverlay = new Label();
+	/**
+	 * Where the mouse was when the map was last dragged, to pan by how far it has moved since
+	 */
+	private double dragX;
+	/**
+	 * Where the mouse was when the map was last dragged
+	 */
+	private double dragY;
+	/**
+	 * The colour of each pixel of the bottom layer when it's drawn a pixel at a time, kept so it doesn't need allocating every time the camera moves
+	 */
+	private int[] pixels;
+	/**
+	 * The image the pixels are put in to draw them on the bottom layer
+	 */
+	private WritableImage pixelImage;
+	/**
+	 * Somewhere to put the x-coordinates of a hexagon's corners to draw it, kept so drawing one doesn't allocate
+	 */
+	private final double[] cornersX = new double[6];
+	/**
+	 * Somewhere to put the y-coordinates of a hexagon's corners to draw it
+	 */
+	private final double[] cornersY = new double[6];
+	/**
+	 * The method that redraws a changed tile, made once rather than every frame
+	 */
+	private final IntConsumer drawChangedTile = this::drawChangedTile;
+	/**
+	 * The method that draws a tile on screen when the camera has moved
+	 */
+	private final IntConsumer drawVisibleTile = this::drawVisibleTile;
+	/**
+	 * The tooltip describing the tile the mouse is over
+	 */
+	private final Tooltip tileTooltip = new Tooltip();
+	/**
+	 * The id of the tile the mouse is over, or -1 if it isn't over one
+	 */
+	private int hoveredTile = -1;
+	/**
+	 * The id of the tile last clicked on, or -1 if none has been
+	 */
+	private int selectedTile = -1;
+	/**
+	 * The text describing the tile last clicked on
+	 */
+	private Text selectedTileText;
+	/**
+	 * The text describing what's left on the map as a whole
+	 */
+	private Text mapText;
 	
 
 	/**
@@ -66,6 +211,38 @@ public class ApplicationBootstrapper extends Application
 	private final static Font arial = Font.font("Arial", FontWeight.NORMAL, 14);
 
 	private EnumMap<Resource, Color> colors = new EnumMap<>(Resource.class);
+	/**
+	 * The colour of an unexplored tile. The colours are all made once, since Color.rgb makes a new one every time
+	 */
+	private final static Color UNEXPLORED = Color.rgb(100, 180, 100);
+	/**
+	 * The colour of an explored tile
+	 */
+	private final static Color EXPLORED = Color.rgb(100, 200, 100);
+	/**
+	 * The colour of the settlement
+	 */
+	private final static Color SETTLEMENT = Color.rgb(120, 120, 120);
+	/**
+	 * The colour of an unexplored tile as an ARGB int, for drawing a pixel at a time
+	 */
+	private final static int UNEXPLORED_ARGB = 0xFF64B464;
+	/**
+	 * The colour of an explored tile as an ARGB int
+	 */
+	private final static int EXPLORED_ARGB = 0xFF64C864;
+	/**
+	 * The colour of the settlement as an ARGB int
+	 */
+	private final static int SETTLEMENT_ARGB = 0xFF787878;
+	/**
+	 * The resources, cached because Resource.values() makes a new array every time it's called
+	 */
+	private final static Resource[] RESOURCES = Resource.values();
+	/**
+	 * The directions, cached for the same reason
+	 */
+	private final static Direction[] DIRECTIONS = Direction.values();
 
 	
 	/**
@@ -87,20 +264,78 @@ public class ApplicationBootstrapper extends Application
 		
 		VBox right = buildTextOutputUI(scene);
 		border.setRight(right);
-		border.setCenter(canvas);
+		// the walls go over the resources, which go over the tiles. Only the resources are drawn again unless the camera moves, so the other two are cached
+		canvas.setCache(true);
+		wallCanvas.setCache(true);
+		// the metrics overlay goes over everything, but lets the mouse through to the walls
+		metricsOverlay.setStyle("-fx-background-color: rgba(0, 0, 0, 0.6); -fx-text-fill: white; -fx-font-family: monospace; -fx-padding: 5;");
+		metricsOverlay.setMouseTransparent(true);
+		StackPane.setAlignment(metricsOverlay, Pos.TOP_LEFT);
+		border.setCenter(new StackPane(canvas, resourceCanvas, wallCanvas, metricsOverlay));
+		showMetrics("true".equals(getParameters().getNamed().get("metrics")));
+		scene.setOnKeyPressed(e->{
+			if(e.getCode() == KeyCode.F3)
+			{
+				showMetrics(!metricsOverlay.isVisible());
+			}
+		});
+		// the walls are on top, so they get the mouse. Finding the tile under it is a sum rather than a search, so it's fine to do on every move
+		wallCanvas.setOnMouseMoved(e->{
+			hoverTile(layout.tileAt(e.getX(), e.getY()));
+		});
+		wallCanvas.setOnMouseExited(e->{
+			hoverTile(-1);
+		});
+		wallCanvas.setOnMousePressed(e->{
+			dragX = e.getX();
+			dragY = e.getY();
+		});
+		wallCanvas.setOnMouseDragged(e->{
+			moveCamera(layout.getOriginX() + e.getX() - dragX, layout.getOriginY() + e.getY() - dragY, layout.getRadius());
+			dragX = e.getX();
+			dragY = e.getY();
+		});
+		wallCanvas.setOnScroll(e->{
+			// zoom about the mouse, so whatever is under it stays there
+			double radius = Math.max(minimumRadius, Math.min(MAXIMUM_RADIUS, layout.getRadius() * Math.exp(e.getDeltaY() / 400)));
+			double scale = radius / layout.getRadius();
+			moveCamera(e.getX() - (e.getX() - layout.getOriginX()) * scale, e.getY() - (e.getY() - layout.getOriginY()) * scale, radius);
+		});
+		wallCanvas.setOnMouseClicked(e->{
+			if(!e.isStillSincePress())
+			{
+				// that was a drag
+				return;
+			}
+			selectedTile = layout.tileAt(e.getX(), e.getY());
+			synchronized(game)
+			{
+				selectedTileText.setText(selectedTile < 0?"":describeTile(selectedTile));
+			}
+		});
 
-		drawMap(true);
-		// set the fps to 60 frames per second (ish)
-		final double FPS = 1000/60;
+		drawMap();
+		// set the fps to 60 frames per second
+		final double FRAME_MILLIS = 1000.0/60;
 		
 		Timeline timeline = new Timeline(
-			new KeyFrame(Duration.millis(FPS), e->{
+			new KeyFrame(Duration.millis(FRAME_MILLIS), e->{
 				draw();
 			})
 		);
 		timeline.setCycleCount(Animation.INDEFINITE);
 		timeline.play();
 
+		// the simulation runs on its own thread, the timeline only draws
+		String tps = getParameters().getNamed().get("tps");
+		String maxSteps = getParameters().getNamed().get("maxSteps");
+		this.scheduler = new SimulationScheduler(
+			game,
+			tps == null?DEFAULT_TICKS_PER_SECOND:Double.parseDouble(tps),
+			maxSteps == null?DEFAULT_MAX_STEPS_PER_FRAME:Integer.parseInt(maxSteps)
+		);
+		this.scheduler.start();
+
 		
 		stage.setScene(scene);
 		stage.setResizable(false);
@@ -132,6 +367,10 @@ public class ApplicationBootstrapper extends Application
 
 		right.getChildren().add(getResearchBox(scene));
 
+		right.getChildren().add(buildSelectedTileBox());
+
+		right.getChildren().add(buildMapBox());
+
 		return right;
 	}
 
@@ -181,7 +420,12 @@ public class ApplicationBootstrapper extends Application
 			
 			this.researchesVBox.getChildren().add(researchHBox);
 			researchHBox.setOnMouseClicked(e->{
-				if(game.buyResearch(research) && research.isComplete())
+				boolean bought;
+				synchronized(game)
+				{
+					bought = game.buyResearch(research);
+				}
+				if(bought && research.isComplete())
 				{
 					this.researchesVBox.getChildren().remove(researchHBox);
 				}
@@ -198,6 +442,46 @@ public class ApplicationBootstrapper extends Application
 	}
 
 
+	/**
+	 * Build the box describing the tile last clicked on
+	 */
+	private VBox buildSelectedTileBox()
+	{
+		VBox tileContainer = new VBox();
+		tileContainer.setPadding(new Insets(10, 0, 0, 0));
+
+		Text tileTitle = new Text("Tile:");
+		tileTitle.setFont(Font.font("Arial", FontWeight.BOLD, 17));
+		tileContainer.getChildren().add(tileTitle);
+
+		this.selectedTileText = new Text("Click a tile to see what's in it");
+		this.selectedTileText.setFont(arial);
+		VBox textBox = new VBox(this.selectedTileText);
+		textBox.setPadding(new Insets(0, 0, 0, 10));
+		tileContainer.getChildren().add(textBox);
+		return tileContainer;
+	}
+
+	/**
+	 * Build the box describing the map as a whole
+	 */
+	private VBox buildMapBox()
+	{
+		VBox mapContainer = new VBox();
+		mapContainer.setPadding(new Insets(10, 0, 0, 0));
+
+		Text mapTitle = new Text("Map:");
+		mapTitle.setFont(Font.font("Arial", FontWeight.BOLD, 17));
+		mapContainer.getChildren().add(mapTitle);
+
+		this.mapText = new Text();
+		this.mapText.setFont(arial);
+		VBox textBox = new VBox(this.mapText);
+		textBox.setPadding(new Insets(0, 0, 0, 10));
+		mapContainer.getChildren().add(textBox);
+		return mapContainer;
+	}
+
 	private VBox buildResourcesBox() {
 		// a box to contain the individual resource outputs.
 		// needs to be a class property so as to be able to add to it when things get discovered
@@ -230,202 +514,128 @@ public class ApplicationBootstrapper extends Application
 		return this.resourcesVBox;
 	}
 	/**
-	 * A class method to draw an arbitrary regular polygon at point (x, y), with a radius of r, a number of points numPoints with an initial rotation of rotation.
-	 * @implNote		Derived from first principles. This may well look identical to any other solution for this, because there's really only one way to solve it.
-	 * 					This could be further abstracted to map all polygons (so all n-sided "stars")
-	 * @param x			The x-Coordinate of the centre of the regular polygon
-	 * @param y			The y-Coordinate of the centre of the regular polygon
-	 * @param radius	The radius of the regular polygon
-	 * @param numPoints	The number of points in the regular polygon
-	 * @param rotation	An angle in degrees expressed as the counter-clockwise rotation about the origin where 0 degrees (which equals 0 radians) is the angle
-	 * 					such that cos(0) = 1. While the standard for cos and sin and all functions are radians, they are harder 
-	 * 					to express in code, both in terms of legiblity and in terms of reusability. This is a design decision that
-	 * 					I think I can justify
-	 * @return			Returns a two dimensional array of doubles representing the points of the polygons vertices for later use.
-	 */
-	private double[][] polygon(double x, double y, double radius, int numPoints, int rotation)
-	{
-		// Define and initialise the return value.
-		double[][] points= new double[2][numPoints];
-		// Convert the initial rotation into radians
-		double offset = rotation * Math.PI / 180;
-		// use Processing's arbitrary polygon functionality to start a shape
-		for(int i = 0; i < numPoints; i++)
-		{
-			// convert rotation to radians
-			double theta = offset + Math.PI * 2 / numPoints * i;
-			// unit circle multiplied by the radius and added to the x and y coordinates.
-			double vx = x + Math.cos(theta) * radius;
-			double vy = y + Math.sin(theta) * radius;
-			// add the vertex to the shape to be drawn
-			// store the points as a two dimsensional array for later use
-			points[0][i] = vx;
-			points[1][i] = vy;
-		}
-		// end the shape
-		// return the points
-		return points;
-	}
-	
-	/**
-	 * A helper that calls polygon specifically for a hexagon where we only want the hex to be "pointed up"
-	 * @see   	ApplicationBootstrapper#polygon(float, float, float, int, int)	for the actual implementation
-	 * @param	x		The x-coordinate of the hexagon
-	 * @param	y		The y-coordinate of the hexagon
-	 * @param	radius	The radius of the hexagon
-	 * @return	Returns the set of points of the hexagon
-	 */
-	double[][] hexagon(double x, double y, double radius)
-	{
-		return polygon(x, y, radius, 6, 30);
-	}
-	
-	/**
-	 * A helper that calls polygon specifically for a hexagon where the angle of rotation, relative to "up" is defined in degrees 
-	 * @param	x			The x-coordinate of the hexagon
-	 * @param	y			The y-coordinate of the hexagon
-	 * @param	radius		The radius of the hexagon
-	 * @param 	rotation	The rotation of the hexagon around the centre. I believe this is actually unused, but I'm not sure.
-	 * @return	Returns the set of points of the hexagon
-	 */
-	double[][] hexagon(double x, double y, double radius, int rotation)
-	{
-		return polygon(x, y, radius, 6, 30 + rotation);
-	}
-
-	/**
-	 * This method draws an individual ResourceTile and a crude representation of the resources available on it.
+	 * This method draws an individual ResourceTile and a crude representation of the resources available on it, each part on its own layer. The walls are
+	 * left out when the tiles are too small to make them out.
 	 * @param tile			The ResourceTile to be drawn
-	 * @param x				The x-coordinate of the centre of the ResourceTile
-	 * @param y				The x-coordinate of the centre of the ResourceTile
-	 * @param radius		The radius at which to draw the ResourceTile
 	 * @see	ResourceTile	See the ResourceTile class file for its implementation	
 	 */
-	public int[][] drawTile(ResourceTile tile, double x, double y, double radius)
+	public void drawTile(ResourceTile tile)
 	{
 		graphicsContext.setLineWidth(1.0);
-		/*
-		 * We want the points of the outside hexagon (occupied tiles have an internal hexagon).
-		 * We use this to draw the state of the walls, which cannot be done with a plain stroked hexagon.
-		 */
-		double[][] externalPoints = hexagon(x, y, radius);
+		resourceContext.setLineWidth(1.0);
 		if(tile.isOccupied())
 		{
 			// I could write this this to leverage polymorphism by checking .class, but this property is simpler and more flexible, especially if I intend at a
 			// later point to model and represent expansion and the effect that has on the simulated world. Again, it's a design decision which I may end up having
 			// to revisit at a later point.
-			graphicsContext.setStroke(Color.rgb(120, 120, 120));
-			graphicsContext.setFill(Color.rgb(120, 120, 120));
-			graphicsContext.fillPolygon(externalPoints[0], externalPoints[1], externalPoints[1].length);
-			double[][] internalPoints = hexagon(x, y, radius/4);
+			layout.getCorners(tile.getId(), 1, cornersX, cornersY);
+			graphicsContext.setStroke(SETTLEMENT);
+			graphicsContext.setFill(SETTLEMENT);
+			graphicsContext.fillPolygon(cornersX, cornersY, 6);
+			layout.getCorners(tile.getId(), 0.25, cornersX, cornersY);
 			graphicsContext.setStroke(Color.BLACK);
 			graphicsContext.setFill(Color.BLACK);
-			graphicsContext.fillPolygon(internalPoints[0], internalPoints[1], internalPoints[1].length);
+			graphicsContext.fillPolygon(cornersX, cornersY, 6);
 		}
 		else
 		{
-			drawResourceTile(tile, x, y, radius, externalPoints);
+			drawTileBackground(tile);
+			drawResourceTile(tile);
 		}
-		drawTileWalls(tile, externalPoints);
-		int[][] pointsAsInts = new int[6][2];
-		for(int i = 0; i < 6; i++)
+		if(layout.getRadius() >= DETAIL_RADIUS)
 		{
-			pointsAsInts[i][0] = (int)externalPoints[0][i];
-			pointsAsInts[i][1] = (int)externalPoints[1][i];
+			drawTileWalls(tile);
 		}
-		return pointsAsInts;
 	}
 
 	/**
 	 * A method to draw the walls around a tile depending on whether or not it is connected to its neighbours.
 	 * @param tile				The tile to draw
-	 * @param externalPoints	The set of points around the tile
 	 */
-	private void drawTileWalls(ResourceTile tile, double[][] externalPoints) {
-		for(Direction direction: Direction.values())
+	private void drawTileWalls(ResourceTile tile) {
+		int id = tile.getId();
+		for(Direction direction: DIRECTIONS)
 		{
-			int index = -1;
-			if(direction == HexTile.Direction.NORTHEAST)
-			{
-				index = 4;
-			}
-			else if(direction == HexTile.Direction.NORTHWEST)
-			{
-				index = 3;
-			}
-			else if(direction == HexTile.Direction.WEST)
-			{
-				index = 2;
-			}
-			else if(direction == HexTile.Direction.EAST)
-			{
-				index = 5;
-			}
-			else if(direction == HexTile.Direction.SOUTHEAST)
-			{
-				index = 0;
-			}
-			else if(direction == HexTile.Direction.SOUTHWEST)
-			{
-				index = 1;
-			}
 			if(!tile.isConnected(direction))
 			{
-				graphicsContext.setLineWidth(2);
-				graphicsContext.setStroke(Color.BLACK);
-				graphicsContext.beginPath();
-				graphicsContext.moveTo(externalPoints[0][index], externalPoints[1][index]);
-				graphicsContext.lineTo(externalPoints[0][(index+1)%6], externalPoints[1][(index+1)%6]);
-				graphicsContext.stroke();
+				int index = HexLayout.edge(direction);
+				wallContext.setLineWidth(2);
+				wallContext.setStroke(Color.BLACK);
+				wallContext.beginPath();
+				wallContext.moveTo(layout.getCornerX(id, index), layout.getCornerY(id, index));
+				wallContext.lineTo(layout.getCornerX(id, (index+1)%6), layout.getCornerY(id, (index+1)%6));
+				wallContext.stroke();
 			}
 		}
 	}
 
 	/**
-	 * A method to draw a resource tile
+	 * A method to draw a tile as it is before it's explored, on the bottom layer
+	 * @param tile	The ResourceTile to draw
+	 */
+	private void drawTileBackground(ResourceTile tile)
+	{
+		layout.getCorners(tile.getId(), 1, cornersX, cornersY);
+		graphicsContext.setFill(UNEXPLORED);
+		graphicsContext.setStroke(UNEXPLORED);
+		graphicsContext.fillPolygon(cornersX, cornersY, 6);
+		graphicsContext.strokePolygon(cornersX, cornersY, 6);
+	}
+
+	/**
+	 * A method to draw a resource tile on the resource layer, if it has been explored. A tile never goes back to being unexplored, so there's never anything on
+	 * this layer to rub out: an explored tile's background covers whatever was drawn of it before.
+	 * This is what every frame spends its time in, so everything it needs comes from the layout and nothing is allocated. The smaller the tiles are drawn the
+	 * less detail there is: no resources once they'd be too small to make out, and just a rectangle once the tile is only a few pixels across.
 	 * @param tile				The ResourceTile to draw
-	 * @param x					The x coordinate of the tile on the canvas
-	 * @param y					The y coordinate of the tile on the canvas
-	 * @param radius			The radius of the tile from the centre to the vertex
-	 * @param externalPoints	The set of points around the tile
 	 */
-	private void drawResourceTile(ResourceTile tile, double x, double y, double radius, double[][] externalPoints)
+	private void drawResourceTile(ResourceTile tile)
 	{
-		Color c = tile.isExplored()?Color.rgb(100,200,100):Color.rgb(100, 180, 100);
-		graphicsContext.setFill(c);
-		graphicsContext.setStroke(c);
-		graphicsContext.fillPolygon(externalPoints[0], externalPoints[1], externalPoints[1].length);
-		graphicsContext.strokePolygon(externalPoints[0], externalPoints[1], externalPoints[1].length);
 		if(tile.isExplored())
 		{
-			int i = 0;
-			for(ResourceTile.Resource r: ResourceTile.Resource.values())
+			int id = tile.getId();
+			double radius = layout.getRadius();
+			resourceContext.setFill(EXPLORED);
+			resourceContext.setStroke(EXPLORED);
+			if(radius < PIXEL_RADIUS)
+			{
+				resourceContext.fillRect(layout.getCentreX(id) - layout.getWidth() / 2, layout.getCentreY(id) - radius / 2, layout.getWidth(), radius);
+				return;
+			}
+			layout.getCorners(id, 1, cornersX, cornersY);
+			resourceContext.fillPolygon(cornersX, cornersY, 6);
+			resourceContext.strokePolygon(cornersX, cornersY, 6);
+			if(radius < DETAIL_RADIUS)
+			{
+				return;
+			}
+			double size = layout.getIndicatorSize();
+			for(int i = 0; i < RESOURCES.length; i++)
 			{
+				ResourceTile.Resource r = RESOURCES[i];
 				// only draw the resources if they are discovered and the tile has them
 				if(game.isResourceDiscovered(r) && tile.hasResource(r))
 				{
 					///graphicsContext.setLineWidth(0); // we don't stroke
-					graphicsContext.setStroke(Color.BLACK);
-					graphicsContext.setFill(colors.get(r));
+					resourceContext.setStroke(Color.BLACK);
+					resourceContext.setFill(colors.get(r));
 
-					// Figure out the centre of the point of the resource indicator by doing some maths
+					// The position of the resource indicator is worked out by the layout
 					// I may revisit this position later as I add roads.
-					double centreX = (externalPoints[0][i] + externalPoints[0][(i+1)%6] + externalPoints[0][(i+2)%6] - radius/1.8) / 3;
-					double centreY = (externalPoints[1][i] + externalPoints[1][(i+1)%6] + externalPoints[1][(i+2)%6] - radius/1.8) / 3;
+					double centreX = layout.getAnchorX(id, i);
+					double centreY = layout.getAnchorY(id, i);
 					
-					graphicsContext.fillArc(centreX, centreY, radius/2.5, radius/2.5, 0.0, -360 * tile.getAvailableResource(r), ArcType.ROUND);
-					graphicsContext.strokeArc(centreX, centreY, radius/2.5, radius/2.5, 0.0, -360 * tile.getAvailableResource(r), ArcType.ROUND);
+					resourceContext.fillArc(centreX, centreY, size, size, 0.0, -360 * tile.getAvailableResource(r), ArcType.ROUND);
+					resourceContext.strokeArc(centreX, centreY, size, size, 0.0, -360 * tile.getAvailableResource(r), ArcType.ROUND);
 				}
-				i++;
 			}
 		}
 	}
 	
 	/**
-	 * Method to draw the map
-	 * @param firstTime	Whether or not this is the first time we're drawing the map, which is used to determine fi we stick the points in the tile as a property
+	 * Method to fit the whole map on the canvas and draw it, which is where the camera starts, and as far out as it can be zoomed
 	 */
-	private void drawMap(boolean firstTime)
+	private void drawMap()
 	{
 		int offset = 5;
 		// some needed math
@@ -440,38 +650,262 @@ public class ApplicationBootstrapper extends Application
 		double tileWidth = mapBBoxWidth / game.getDiameter();
 		double tileRadius = tileWidth / widthRation / 2;
 
-		double rowY = offset + mapBBoxWidth / 2 - tileRadius * 1.5 * (game.getRadius()-1);
+		// the centre tile goes in the middle, and the layout works out where everything else goes from there
+		if(layout == null)
+		{
+			layout = new HexLayout(game.getGrid());
+		}
+		layout.layout(offset + mapBBoxWidth / 2, offset + mapBBoxWidth / 2, tileRadius);
+		minimumRadius = tileRadius;
+		redrawMap();
+	}
+
+	/**
+	 * Method to move the camera, which the map is drawn again for on the next frame, so however many times the mouse moves in a frame it's only drawn once
+	 * @param originX	The x-coordinate the centre tile goes at
+	 * @param originY	The y-coordinate the centre tile goes at
+	 * @param radius	The radius the tiles are drawn at
+	 */
+	private void moveCamera(double originX, double originY, double radius)
+	{
+		layout.layout(originX, originY, radius);
+		cameraMoved = true;
+	}
 
-		for(ArrayList<ResourceTile> row:game.getTiles())
+	/**
+	 * Method to draw every layer of the part of the map on screen from scratch, after the camera has moved. Only the tiles on screen are drawn, or when there
+	 * are a lot of them, each pixel, so this costs about the same however big the map is. Afterwards only the tiles that change are drawn again.
+	 */
+	private void redrawMap()
+	{
+		long start = GameMetrics.get().start();
+		graphicsContext.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+		resourceContext.clearRect(0, 0, resourceCanvas.getWidth(), resourceCanvas.getHeight());
+		wallContext.clearRect(0, 0, wallCanvas.getWidth(), wallCanvas.getHeight());
+		if(layout.getRadius() < PIXEL_RADIUS)
 		{
-			// the center of this row will be the width / 2
-			// so we offset the row size by one less than the length of the row
-			double columnX = offset + mapBBoxWidth / 2  - tileWidth / 2 * (row.size() - 1);
-			for(ResourceTile tile: row)
+			drawPixels();
+		}
+		else
+		{
+			layout.forEachTileIn(0, 0, canvas.getWidth(), canvas.getHeight(), drawVisibleTile);
+		}
+		// everything on screen is drawn as it is now, so the changes up to now are already there, and anything off screen is drawn when it comes on
+		game.forgetChangedTiles();
+		cameraMoved = false;
+		GameMetrics.get().stop(GameMetrics.Phase.MAP_DRAW, start);
+	}
+
+	/**
+	 * Method to show or hide the metrics overlay, turning the metrics on or off with it
+	 * @param show	Whether to show it
+	 */
+	private void showMetrics(boolean show)
+	{
+		GameMetrics.get().setEnabled(show);
+		metricsOverlay.setVisible(show);
+	}
+
+	/**
+	 * Method to draw the bottom layer a pixel at a time, by finding the tile under each pixel, for when the tiles are so small there are more of them on
+	 * screen than there are pixels worth drawing. The explored tiles go on this layer too, since it's all being drawn anyway.
+	 */
+	private void drawPixels()
+	{
+		int width = (int)canvas.getWidth();
+		int height = (int)canvas.getHeight();
+		if(pixels == null)
+		{
+			pixels = new int[width * height];
+			pixelImage = new WritableImage(width, height);
+		}
+		HexGrid<ResourceTile> grid = game.getGrid();
+		for(int y = 0; y < height; y++)
+		{
+			for(int x = 0; x < width; x++)
 			{
-				int[][] points = drawTile(tile, columnX, rowY, tileRadius);
-				if(firstTime)
+				int id = layout.tileAt(x + 0.5, y + 0.5);
+				int colour = 0;
+				if(id >= 0)
 				{
-					tile.setPoints(points);
+					ResourceTile tile = grid.get(id);
+					colour = tile.isOccupied()?SETTLEMENT_ARGB:tile.isExplored()?EXPLORED_ARGB:UNEXPLORED_ARGB;
 				}
-				columnX += tileWidth;
+				pixels[y * width + x] = colour;
 			}
-			
-			rowY += tileRadius * 1.5f;
+		}
+		pixelImage.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+		graphicsContext.drawImage(pixelImage, 0, 0);
+	}
+
+	/**
+	 * Method to draw a tile on screen after the camera has moved
+	 * @param id	The id of the tile
+	 */
+	private void drawVisibleTile(int id)
+	{
+		drawTile(game.getGrid().get(id));
+	}
+
+	/**
+	 * Method to draw a tile again on the resource layer after it has changed. The other layers never change, so they're left alone, and tiles off screen are
+	 * left for when the camera moves to them.
+	 * @param id	The id of the tile
+	 */
+	private void drawChangedTile(int id)
+	{
+		double x = layout.getCentreX(id);
+		double y = layout.getCentreY(id);
+		double radius = layout.getRadius();
+		if(x + radius < 0 || y + radius < 0 || x - radius > resourceCanvas.getWidth() || y - radius > resourceCanvas.getHeight())
+		{
+			return;
+		}
+		ResourceTile tile = game.getGrid().get(id);
+		if(!tile.isOccupied())
+		{
+			drawResourceTile(tile);
 		}
 	}
 
 	/**
-	 * The draw function which gets called every frame. 
+	 * Method to describe a tile, for the tooltip and for the tile box. The game's monitor has to be held.
+	 * @param id	The id of the tile
+	 * @return		What the tile is and how much of each resource it has left
+	 */
+	private String describeTile(int id)
+	{
+		ResourceTile tile = game.getGrid().get(id);
+		if(tile.isOccupied())
+		{
+			return "Settlement";
+		}
+		if(!tile.isExplored())
+		{
+			return "Unexplored";
+		}
+		StringBuilder description = new StringBuilder("Explored");
+		for(Resource resource: RESOURCES)
+		{
+			// the same resources the tile is drawn with
+			if(game.isResourceDiscovered(resource) && tile.hasResource(resource))
+			{
+				description.append(String.format("%n%s: %.0f%%", resource.label, 100 * tile.getAvailableResource(resource)));
+			}
+		}
+		return description.toString();
+	}
+
+	/**
+	 * Method to describe the map as a whole, for the map box. It's all read from the game's running totals of each chunk of the map, so it costs the same
+	 * however big the map is. The game's monitor has to be held.
+	 * @return	How much of each resource is left on the map and how fast it's being mined, and how much of the map is still producing
+	 */
+	private String describeMap()
+	{
+		MapChunks chunks = game.getChunks();
+		int producing = 0;
+		for(int chunk = 0; chunk < chunks.getChunkCount(); chunk++)
+		{
+			if(chunks.isProducing(chunk))
+			{
+				producing++;
+			}
+		}
+		StringBuilder description = new StringBuilder(String.format("Producing: %d of %d areas", producing, chunks.getChunkCount()));
+		for(Resource resource: game.getDiscoveredResources())
+		{
+			int r = resource.ordinal();
+			description.append(String.format("%n%s: %.0f left, %.2f a tick", resource.label, TileStore.toAmount(chunks.getTotalRemaining(r)),
+					TileStore.toAmount(chunks.getTotalRate(r))));
+		}
+		return description.toString();
+	}
+
+	/**
+	 * Method to move the tooltip on to the tile the mouse is now over, if it has moved on to a different one
+	 * @param id	The id of the tile, or -1 if the mouse isn't over one
+	 */
+	private void hoverTile(int id)
+	{
+		if(id == hoveredTile)
+		{
+			return;
+		}
+		if(id < 0)
+		{
+			Tooltip.uninstall(wallCanvas, tileTooltip);
+		}
+		else
+		{
+			synchronized(game)
+			{
+				tileTooltip.setText(describeTile(id));
+			}
+			if(hoveredTile < 0)
+			{
+				Tooltip.install(wallCanvas, tileTooltip);
+			}
+		}
+		hoveredTile = id;
+	}
+
+	/**
+	 * The draw function which gets called every frame. The game is ticked by the scheduler, so all this does is draw it, holding the game's monitor so a
+	 * tick can't change it halfway through. Only the tiles that have changed since the last frame are drawn, so how long a frame takes depends on how much is
+	 * going on rather than on how big the map is. Each frame is recorded as a FrameEvent while Flight Recorder is recording them.
+	 * @see SimulationScheduler
 	 */
 	public void draw()
 	{
-		game.processTick();
-		drawMap(false);
-		// Updates the resources 
-		for(Resource resource:game.getDiscoveredResources())
+		FrameEvent event = new FrameEvent();
+		event.begin();
+		long start = GameMetrics.get().start();
+		synchronized(game)
+		{
+			event.mapRedrawn = cameraMoved;
+			event.tick = game.getTick();
+			if(cameraMoved)
+			{
+				redrawMap();
+			}
+			else
+			{
+				game.forEachChangedTile(this.drawChangedTile);
+			}
+			// the tiles being described may have been mined since
+			if(hoveredTile >= 0)
+			{
+				tileTooltip.setText(describeTile(hoveredTile));
+			}
+			if(selectedTile >= 0)
+			{
+				selectedTileText.setText(describeTile(selectedTile));
+			}
+			mapText.setText(describeMap());
+			if(metricsOverlay.isVisible())
+			{
+				metricsOverlay.setText(GameMetrics.get().describe());
+			}
+			// Updates the resources 
+			for(Resource resource:game.getDiscoveredResources())
+			{
+				this.resourceTexts.get(resource).setText(String.format("%.2f", game.getResourceAvailable(resource)));
+			}
+		}
+		GameMetrics.get().stop(GameMetrics.Phase.FRAME, start);
+		event.commit();
+	}
+
+	/**
+	 * Overriding Application's stop method to stop the simulation when the window closes
+	 */
+	@Override
+	public void stop()
+	{
+		if(this.scheduler != null)
 		{
-			this.resourceTexts.get(resource).setText(String.format("%.2f", game.getResourceAvailable(resource)));
+			this.scheduler.stop();
 		}
 	}
 
@@ -0,0 +1,122 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.util.Arrays;
+
+/**
+ * A compact set of tile ids, used to hold the tiles that are still being mined.
+ * The ids are kept packed at the front of an int array so iterating over the set only touches live entries, and each id's position is remembered so that
+ * adding, removing and checking membership are all constant time. Removal moves the last entry into the gap, so the order is stable only up to removals.
+ */
+public class ActiveTileSet
+{
+	/**
+	 * The ids of the tiles in the set, packed into the first size entries
+	 */
+	private int[] tiles;
+	/**
+	 * The position of each tile id in the tiles array, or -1 if it is not in the set
+	 */
+	private int[] slots;
+	/**
+	 * The number of tiles in the set
+	 */
+	private int size;
+
+	/**
+	 * Constructor
+	 * @param capacity	The number of distinct tile ids the set should expect, it will grow if more turn up
+	 */
+	public ActiveTileSet(int capacity)
+	{
+		this.tiles = new int[Math.max(capacity, 1)];
+		this.slots = new int[Math.max(capacity, 1)];
+		Arrays.fill(this.slots, -1);
+		this.size = 0;
+	}
+
+	/**
+	 * Add a tile to the set. Adding a tile that is already there does nothing.
+	 * @param tile	The id of the tile
+	 * @return		True if the tile was added, false if it was already in the set
+	 */
+	public boolean add(int tile)
+	{
+		if(tile >= this.slots.length)
+		{
+			int oldLength = this.slots.length;
+			this.slots = Arrays.copyOf(this.slots, Math.max(tile + 1, oldLength * 2));
+			Arrays.fill(this.slots, oldLength, this.slots.length, -1);
+		}
+		if(this.slots[tile] >= 0)
+		{
+			return false;
+		}
+		if(this.size == this.tiles.length)
+		{
+			this.tiles = Arrays.copyOf(this.tiles, this.size * 2);
+		}
+		this.tiles[this.size] = tile;
+		this.slots[tile] = this.size;
+		this.size++;
+		return true;
+	}
+
+	/**
+	 * Remove a tile from the set by moving the last tile in the set into its place.
+	 * @param tile	The id of the tile
+	 * @return		True if the tile was removed, false if it wasn't in the set
+	 */
+	public boolean remove(int tile)
+	{
+		if(!this.contains(tile))
+		{
+			return false;
+		}
+		int slot = this.slots[tile];
+		int last = this.tiles[this.size - 1];
+		this.tiles[slot] = last;
+		this.slots[last] = slot;
+		this.slots[tile] = -1;
+		this.size--;
+		return true;
+	}
+
+	/**
+	 * @param tile	The id of the tile
+	 * @return		Whether or not the tile is in the set
+	 */
+	public boolean contains(int tile)
+	{
+		return tile < this.slots.length && this.slots[tile] >= 0;
+	}
+
+	/**
+	 * Get the tile at a given position in the set
+	 * @param index	The position, between 0 and size() - 1
+	 * @return		The id of the tile at that position
+	 */
+	public int get(int index)
+	{
+		return this.tiles[index];
+	}
+
+	/**
+	 * Empty the set, in time proportional to the number of tiles in it rather than the number it has room for
+	 */
+	public void clear()
+	{
+		for(int i = 0; i < this.size; i++)
+		{
+			this.slots[this.tiles[i]] = -1;
+		}
+		this.size = 0;
+	}
+
+	/**
+	 * @return	The number of tiles in the set
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+}
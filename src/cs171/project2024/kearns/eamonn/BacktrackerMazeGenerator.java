@@ -0,0 +1,124 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The recursive backtracker the map has always been built with, without the recursion. Each root gets a stack of its own, and the stacks take turns: a tile is
+ * popped, and if it has an unvisited neighbour the tile is connected to it and both are pushed back, so each stack walks as deep as it can before backing up.
+ * The stacks are int arrays of tile indices and the neighbours are shuffled in a buffer kept between tiles, so nothing is allocated per step, and the random
+ * numbers are drawn in exactly the order the shuffle HexTile used to do for each step drew them (see getRandomUnvisitedNeighbourDirection in the history of
+ * HexTile.java), so a seed gives the same map it always has.
+ */
+public class BacktrackerMazeGenerator implements MazeGenerator
+{
+	/**
+	 * A stack of tile indices for each root
+	 */
+	private int[][] stacks = new int[0][];
+	/**
+	 * The number of tiles on each stack
+	 */
+	private int[] sizes = new int[0];
+	/**
+	 * The indices of the neighbours of the tile being looked at, by direction ordinal
+	 */
+	private final int[] neighbours = new int[6];
+	/**
+	 * The directions of the neighbours of the tile being looked at, for shuffling
+	 */
+	private final int[] shuffle = new int[6];
+
+	@Override
+	public void generate(HexGrid<? extends HexTile> grid, int[] roots, Random rng)
+	{
+		if(this.stacks.length < roots.length)
+		{
+			this.stacks = Arrays.copyOf(this.stacks, roots.length);
+			this.sizes = new int[roots.length];
+		}
+		for(int s = 0; s < roots.length; s++)
+		{
+			if(this.stacks[s] == null)
+			{
+				this.stacks[s] = new int[64];
+			}
+			this.stacks[s][0] = roots[s];
+			this.sizes[s] = 1;
+		}
+
+		boolean carving = true;
+		while(carving)
+		{
+			carving = false;
+			for(int s = 0; s < roots.length; s++)
+			{
+				if(this.sizes[s] > 0)
+				{
+					int tile = this.stacks[s][--this.sizes[s]];
+					int d = this.randomUnvisitedNeighbour(grid, tile, rng);
+					// if there is an unvisited neighbour, go to it, leaving this tile to come back to
+					if(d >= 0)
+					{
+						int neighbour = this.neighbours[d];
+						grid.connect(tile, d);
+						grid.get(neighbour).visit();
+						this.push(s, tile);
+						this.push(s, neighbour);
+					}
+				}
+				carving |= this.sizes[s] > 0;
+			}
+		}
+	}
+
+	/**
+	 * Push a tile onto a stack, growing it if it's full
+	 * @param s		The stack
+	 * @param tile	The index of the tile
+	 */
+	private void push(int s, int tile)
+	{
+		if(this.sizes[s] == this.stacks[s].length)
+		{
+			this.stacks[s] = Arrays.copyOf(this.stacks[s], this.sizes[s] * 2);
+		}
+		this.stacks[s][this.sizes[s]++] = tile;
+	}
+
+	/**
+	 * Pick a random unvisited neighbour of a tile, leaving the indices of its neighbours in the neighbours buffer
+	 * @param grid	The grid
+	 * @param tile	The index of the tile
+	 * @param rng	The random number generator to shuffle the directions with
+	 * @return		The ordinal of the direction of the neighbour, or -1 if every neighbour has been visited
+	 */
+	private int randomUnvisitedNeighbour(HexGrid<? extends HexTile> grid, int tile, Random rng)
+	{
+		grid.neighbours(tile, this.neighbours);
+		int count = 0;
+		for(int d = 0; d < this.neighbours.length; d++)
+		{
+			if(this.neighbours[d] >= 0)
+			{
+				this.shuffle[count++] = d;
+			}
+		}
+		// the same random swap shuffle as always, so the same seed draws the same numbers
+		for(int i = 0; i < count; i++)
+		{
+			int randomIndex = rng.nextInt(count);
+			int d = this.shuffle[randomIndex];
+			this.shuffle[randomIndex] = this.shuffle[i];
+			this.shuffle[i] = d;
+		}
+		for(int i = 0; i < count; i++)
+		{
+			if(!grid.get(this.neighbours[this.shuffle[i]]).isVisited())
+			{
+				return this.shuffle[i];
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,148 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.util.Arrays;
+
+/**
+ * A min-heap of tiles keyed by the tick at which they are expected to deplete, held in a pair of primitive arrays so that neither pushing nor popping allocates.
+ * Entries with the same tick come out in order of tile id, so the order events are handled in never depends on the order they were scheduled in.
+ */
+public class DepletionQueue
+{
+	/**
+	 * The tick of each entry, in heap order
+	 */
+	private long[] ticks;
+	/**
+	 * The tile id of each entry, in heap order
+	 */
+	private int[] tiles;
+	/**
+	 * The number of entries in the heap
+	 */
+	private int size;
+
+	/**
+	 * Constructor
+	 * @param capacity	The number of entries to make room for up front, it will grow if more are pushed
+	 */
+	public DepletionQueue(int capacity)
+	{
+		this.ticks = new long[Math.max(capacity, 1)];
+		this.tiles = new int[Math.max(capacity, 1)];
+		this.size = 0;
+	}
+
+	/**
+	 * Add a tile to the queue
+	 * @param tick	The tick at which the tile is expected to deplete
+	 * @param tile	The id of the tile
+	 */
+	public void push(long tick, int tile)
+	{
+		if(this.size == this.ticks.length)
+		{
+			this.ticks = Arrays.copyOf(this.ticks, this.size * 2);
+			this.tiles = Arrays.copyOf(this.tiles, this.size * 2);
+		}
+		// sift the new entry up from the bottom
+		int i = this.size++;
+		while(i > 0)
+		{
+			int parent = (i - 1) >>> 1;
+			if(!this.before(tick, tile, this.ticks[parent], this.tiles[parent]))
+			{
+				break;
+			}
+			this.ticks[i] = this.ticks[parent];
+			this.tiles[i] = this.tiles[parent];
+			i = parent;
+		}
+		this.ticks[i] = tick;
+		this.tiles[i] = tile;
+	}
+
+	/**
+	 * Remove the earliest entry from the queue
+	 * @return	The id of the tile that was at the front
+	 */
+	public int pop()
+	{
+		int tile = this.tiles[0];
+		this.size--;
+		if(this.size > 0)
+		{
+			// sift the last entry down from the top
+			long lastTick = this.ticks[this.size];
+			int lastTile = this.tiles[this.size];
+			int i = 0;
+			int half = this.size >>> 1;
+			while(i < half)
+			{
+				int child = 2 * i + 1;
+				int right = child + 1;
+				if(right < this.size && this.before(this.ticks[right], this.tiles[right], this.ticks[child], this.tiles[child]))
+				{
+					child = right;
+				}
+				if(!this.before(this.ticks[child], this.tiles[child], lastTick, lastTile))
+				{
+					break;
+				}
+				this.ticks[i] = this.ticks[child];
+				this.tiles[i] = this.tiles[child];
+				i = child;
+			}
+			this.ticks[i] = lastTick;
+			this.tiles[i] = lastTile;
+		}
+		return tile;
+	}
+
+	/**
+	 * @return	The tick of the earliest entry. Only meaningful if the queue isn't empty.
+	 */
+	public long peekTick()
+	{
+		return this.ticks[0];
+	}
+
+	/**
+	 * @return	The tile id of the earliest entry. Only meaningful if the queue isn't empty.
+	 */
+	public int peekTile()
+	{
+		return this.tiles[0];
+	}
+
+	/**
+	 * @return	Whether or not the queue is empty
+	 */
+	public boolean isEmpty()
+	{
+		return this.size == 0;
+	}
+
+	/**
+	 * @return	The number of entries in the queue
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Empty the queue
+	 */
+	public void clear()
+	{
+		this.size = 0;
+	}
+
+	/**
+	 * Whether one entry comes before another
+	 */
+	private boolean before(long tickA, int tileA, long tickB, int tileB)
+	{
+		return tickA < tickB || (tickA == tickB && tileA < tileB);
+	}
+}
@@ -0,0 +1,188 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.util.Arrays;
+
+/**
+ * The bookkeeping behind the event driven tick mode.
+ * Between events a tile's extraction is just its rates, so rather than touching every tile every tick the scheduler keeps the sum of the rates of everything
+ * being mined and credits that to the ledger each tick. Each tile is left as it was at the tick it was last settled, and is queued by the tick at which the
+ * first of its resources will run out. Only when that tick comes round is the tile brought up to date, with the ledger corrected for the last, partial, tick of
+ * whatever ran out, and requeued for its next event or retired.
+ * Entries in the queue are never removed early. When a tile is rescheduled its new tick is remembered and the old entry is ignored when it comes up.
+ * @see TickMode#EVENT
+ */
+class DepletionScheduler
+{
+	/**
+	 * The store holding the tiles' resource state
+	 */
+	private final TileStore store;
+	/**
+	 * The tiles, keyed by the tick of their next event
+	 */
+	private final DepletionQueue queue;
+	/**
+	 * The tick each tile's next event is due on, or -1 if it has none. Queue entries that don't match this are stale.
+	 */
+	private long[] scheduledAt;
+	/**
+	 * The tick each tile's state was last brought up to
+	 */
+	private long[] settledAt;
+	/**
+	 * The sum of the rates of every tile being tracked, per resource, for the resources they still have
+	 */
+	private final long[] aggregateRates = new long[TileStore.RESOURCE_COUNT];
+
+	/**
+	 * Constructor
+	 * @param store		The store holding the tiles' resource state
+	 * @param capacity	The number of tiles to make room for
+	 */
+	DepletionScheduler(TileStore store, int capacity)
+	{
+		this.store = store;
+		this.queue = new DepletionQueue(capacity);
+		this.scheduledAt = new long[capacity];
+		this.settledAt = new long[capacity];
+		Arrays.fill(this.scheduledAt, -1);
+	}
+
+	/**
+	 * Start tracking a tile whose state is correct as of the given tick, making room for it if it's newer than the scheduler
+	 * @param id	The id of the tile
+	 * @param now	The current tick
+	 * @param mask	The resources being mined, as a bitmask of ordinals
+	 */
+	void track(int id, long now, int mask)
+	{
+		if(id >= this.settledAt.length)
+		{
+			// the map has grown since the scheduler was made
+			int capacity = Math.max(id + 1, this.settledAt.length * 2);
+			int old = this.scheduledAt.length;
+			this.scheduledAt = Arrays.copyOf(this.scheduledAt, capacity);
+			this.settledAt = Arrays.copyOf(this.settledAt, capacity);
+			Arrays.fill(this.scheduledAt, old, capacity, -1);
+		}
+		this.settledAt[id] = now;
+		this.adjustAggregate(id, this.store.getPresentMask(id) & mask, 1);
+		this.schedule(id, now, mask);
+	}
+
+	/**
+	 * Queue a tile by the tick of its next event, replacing any event it already had
+	 * @param id	The id of the tile
+	 * @param now	The tick the tile's state is correct as of
+	 * @param mask	The resources being mined, as a bitmask of ordinals
+	 */
+	void schedule(int id, long now, int mask)
+	{
+		long ticks = this.store.ticksToNextExhaustion(id, mask);
+		if(ticks == Long.MAX_VALUE)
+		{
+			this.scheduledAt[id] = -1;
+			return;
+		}
+		this.scheduledAt[id] = now + ticks;
+		this.queue.push(now + ticks, id);
+	}
+
+	/**
+	 * Bring a tile up to date. The ledger has already been credited with the tile's full rate for every tick since it was last settled, so it is corrected by
+	 * the difference between that and what the tile actually gave up, which is only ever non-zero on the tick a resource runs out.
+	 * @param id			The id of the tile
+	 * @param now			The current tick
+	 * @param mask			The resources being mined, as a bitmask of ordinals
+	 * @param corrections	The corrections to the ledger, per resource, are added to this
+	 */
+	void settle(int id, long now, int mask, long[] corrections)
+	{
+		long ticks = now - this.settledAt[id];
+		int toSettle = this.store.getPresentMask(id) & mask;
+		while(toSettle != 0)
+		{
+			int r = Integer.numberOfTrailingZeros(toSettle);
+			toSettle &= toSettle - 1;
+			long rate = this.store.getRate(id, r);
+			long taken = this.store.extract(id, r, ticks);
+			corrections[r] += taken - rate * ticks;
+			if(!this.store.hasResource(id, r))
+			{
+				this.aggregateRates[r] -= rate;
+			}
+		}
+		this.settledAt[id] = now;
+	}
+
+	/**
+	 * Stop tracking a tile. It should have been settled first.
+	 * @param id	The id of the tile
+	 * @param mask	The resources being mined, as a bitmask of ordinals
+	 */
+	void untrack(int id, int mask)
+	{
+		this.adjustAggregate(id, this.store.getPresentMask(id) & mask, -1);
+		this.scheduledAt[id] = -1;
+	}
+
+	/**
+	 * Add or remove a tile's rates for some resources to or from the aggregate
+	 * @param id		The id of the tile
+	 * @param mask		The resources, as a bitmask of ordinals
+	 * @param sign		1 to add, -1 to remove
+	 */
+	void adjustAggregate(int id, int mask, int sign)
+	{
+		while(mask != 0)
+		{
+			int r = Integer.numberOfTrailingZeros(mask);
+			mask &= mask - 1;
+			this.aggregateRates[r] += sign * this.store.getRate(id, r);
+		}
+	}
+
+	/**
+	 * Take the next tile whose event is due by the given tick, skipping stale entries
+	 * @param now	The current tick
+	 * @return		The id of the tile, or -1 if there is nothing due
+	 */
+	int nextDue(long now)
+	{
+		while(!this.queue.isEmpty() && this.queue.peekTick() <= now)
+		{
+			long tick = this.queue.peekTick();
+			int id = this.queue.pop();
+			if(this.scheduledAt[id] == tick)
+			{
+				this.scheduledAt[id] = -1;
+				return id;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Credit a tick's worth of extraction at the aggregate rates
+	 * @param mined		The ledger of resources mined
+	 * @param remaining	The ledger of resources available
+	 */
+	void accrue(long[] mined, long[] remaining)
+	{
+		for(int r = 0; r < TileStore.RESOURCE_COUNT; r++)
+		{
+			mined[r] += this.aggregateRates[r];
+			remaining[r] += this.aggregateRates[r];
+		}
+	}
+
+	/**
+	 * Getter for the aggregate rate of a resource
+	 * @param resource	The ordinal of the resource
+	 * @return			The amount of it being mined per tick across every tracked tile, in fixed point units
+	 */
+	long getAggregateRate(int resource)
+	{
+		return this.aggregateRates[resource];
+	}
+}
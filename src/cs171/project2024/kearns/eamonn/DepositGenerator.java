@@ -0,0 +1,379 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import cs171.project2024.kearns.eamonn.ResourceTile.Resource;
+
+/**
+ * A class to lay the resource deposits out over the map so they clump together the way they would in the real world, ore in fields, wood in forests, water
+ * in aquifers, rather than each tile flipping its own coins.
+ *
+ * Each resource gets a field of layered gradient (Perlin) noise over the map, a few octaves of it summed with each octave twice the detail and half the
+ * strength of the last. A tile has a resource wherever its field is above zero, which is about half the map for each resource, the same as the coin flips
+ * used to give, and how rich the deposit is depends on how far above zero the field is there, with a bit of jitter per tile so neighbours aren't identical.
+ * The size of the clumps is set per resource by SCALES.
+ *
+ * There is no random number generator being drawn from in order, anywhere: the gradients at the corners of the noise lattice and the jitter of each tile
+ * are hashed from the seed and their coordinates with SplitMix64's mixing function. So every tile's deposits are a function of the seed and its coordinates
+ * alone, and the map can be generated in any order, on any number of threads, with the same result.
+ * @see https://adrianb.io/2014/08/09/perlinnoise.html
+ * @see https://prng.di.unimi.it/splitmix64.c
+ */
+public class DepositGenerator
+{
+	/**
+	 * The size, in tiles, of the coarsest lattice cell of each resource's noise, indexed by resource ordinal. Bigger makes for bigger clumps.
+	 */
+	private final static double[] SCALES = {
+		6.0,	// ore, in small tight fields
+		16.0,	// wood, in forests
+		24.0,	// water, in wide aquifers
+		10.0,	// oil, in pools
+		20.0,	// livestock, on open pasture
+		5.0		// fissile materials, in small seams
+	};
+	/**
+	 * The number of octaves of noise summed for each resource
+	 */
+	private final static int OCTAVES = 2;
+	/**
+	 * How far above zero the noise has to be for a deposit to be as rich as the noise can make it
+	 */
+	private final static double RICHNESS_SPAN = 0.3;
+	/**
+	 * The share of a deposit's richness that comes from the noise, the rest is the tile's own jitter
+	 */
+	private final static double NOISE_SHARE = 0.5;
+	/**
+	 * The number of tiles generated as a single unit of work. Fixed so the work is divided up the same way on every machine, not that the result depends on it.
+	 */
+	private final static int CHUNK_SIZE = 4096;
+	/**
+	 * The number of gradient directions the lattice corners pick from
+	 */
+	private final static int GRADIENT_COUNT = 16;
+	/**
+	 * The x component of each gradient
+	 */
+	private final static double[] GRADIENT_X = new double[GRADIENT_COUNT];
+	/**
+	 * The y component of each gradient
+	 */
+	private final static double[] GRADIENT_Y = new double[GRADIENT_COUNT];
+	/**
+	 * The golden ratio gamma SplitMix64 steps its counter by
+	 */
+	final static long GAMMA = 0x9E3779B97F4A7C15L;
+	/**
+	 * Two dimensional gradient noise only reaches about 0.7 either way, so it's stretched by this to reach about 1
+	 */
+	private final static double NOISE_STRETCH = Math.sqrt(2);
+	/**
+	 * The vertical distance between the centres of two rows of pointy topped hexes one unit apart
+	 */
+	private final static double ROW_HEIGHT = Math.sqrt(3) / 2;
+
+	/**
+	 * The frequency of each layer of noise in cycles per tile, indexed by resource ordinal * OCTAVES + octave
+	 */
+	private final static double[] FREQUENCIES = new double[TileStore.RESOURCE_COUNT * OCTAVES];
+	/**
+	 * The weight of each layer of noise in the sum for its resource, halving with each octave and adding up to one
+	 */
+	private final static double[] WEIGHTS = new double[TileStore.RESOURCE_COUNT * OCTAVES];
+
+	static
+	{
+		for(int i = 0; i < GRADIENT_COUNT; i++)
+		{
+			GRADIENT_X[i] = Math.cos(2 * Math.PI * i / GRADIENT_COUNT);
+			GRADIENT_Y[i] = Math.sin(2 * Math.PI * i / GRADIENT_COUNT);
+		}
+		double range = 2 - Math.pow(0.5, OCTAVES - 1);
+		for(int resource = 0; resource < TileStore.RESOURCE_COUNT; resource++)
+		{
+			for(int octave = 0; octave < OCTAVES; octave++)
+			{
+				FREQUENCIES[resource * OCTAVES + octave] = (1 << octave) / SCALES[resource];
+				WEIGHTS[resource * OCTAVES + octave] = Math.pow(0.5, octave) / range;
+			}
+		}
+	}
+
+	/**
+	 * The seed the deposits are generated from
+	 */
+	private final long seed;
+	/**
+	 * The seed of each layer of noise, indexed by resource ordinal * OCTAVES + octave
+	 */
+	private final long[] layerSeeds = new long[TileStore.RESOURCE_COUNT * OCTAVES];
+
+	/**
+	 * Constructor
+	 * @param seed	The seed to generate the deposits from
+	 */
+	public DepositGenerator(long seed)
+	{
+		this.seed = seed;
+		for(int layer = 0; layer < this.layerSeeds.length; layer++)
+		{
+			this.layerSeeds[layer] = mix(seed + (layer + 1) * GAMMA);
+		}
+	}
+
+	/**
+	 * Getter for the seed the deposits are generated from
+	 * @return	The seed
+	 */
+	public long getSeed()
+	{
+		return this.seed;
+	}
+
+	/**
+	 * Generate the deposits of every tile on a grid, in parallel
+	 * @param grid	The grid, whose indices are the ids of the tiles in the store
+	 * @param store	The store to write the deposits into
+	 * @param pool	The pool to generate them on
+	 */
+	public void generate(HexGrid<? extends HexTile> grid, TileStore store, ForkJoinPool pool)
+	{
+		int chunks = (grid.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		RecursiveAction[] tasks = new RecursiveAction[chunks];
+		for(int c = 0; c < chunks; c++)
+		{
+			int start = c * CHUNK_SIZE;
+			int end = Math.min(start + CHUNK_SIZE, grid.size());
+			tasks[c] = new RecursiveAction()
+			{
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute()
+				{
+					DepositGenerator.this.generate(grid, store, start, end);
+				}
+			};
+		}
+		pool.invoke(ForkJoinTask.adapt(()->ForkJoinTask.invokeAll(tasks)));
+	}
+
+	/**
+	 * Generate the deposits of a run of tiles on a grid
+	 * @param grid	The grid
+	 * @param store	The store to write the deposits into
+	 * @param start	The index of the first tile
+	 * @param end	One past the index of the last tile
+	 */
+	private void generate(HexGrid<? extends HexTile> grid, TileStore store, int start, int end)
+	{
+		Sampler sampler = new Sampler();
+		// walk the run row by row so the coordinates only need working out from the index once
+		int r = grid.r(start);
+		int q = grid.q(start);
+		int rowEnd = grid.rowMinQ(r) + grid.rowLength(r);
+		sampler.row(r * ROW_HEIGHT);
+		for(int tile = start; tile < end; tile++)
+		{
+			if(q == rowEnd)
+			{
+				r++;
+				q = grid.rowMinQ(r);
+				rowEnd = q + grid.rowLength(r);
+				sampler.row(r * ROW_HEIGHT);
+			}
+			this.generateTile(store, tile, q, r, sampler);
+			q++;
+		}
+	}
+
+	/**
+	 * Generate the deposits of a single tile
+	 * @param store	The store to write the deposits into
+	 * @param tile	The id of the tile in the store
+	 * @param q		The q coordinate of the tile
+	 * @param r		The r coordinate of the tile
+	 */
+	public void generateTile(TileStore store, int tile, int q, int r)
+	{
+		Sampler sampler = new Sampler();
+		sampler.row(r * ROW_HEIGHT);
+		this.generateTile(store, tile, q, r, sampler);
+	}
+
+	/**
+	 * Generate the deposits of a single tile with a given sampler, which must already be on the tile's row
+	 */
+	private void generateTile(TileStore store, int tile, int q, int r, Sampler sampler)
+	{
+		store.blank(tile);
+		double x = q + r * 0.5;
+		for(int resource = 0; resource < TileStore.RESOURCE_COUNT; resource++)
+		{
+			double field = sampler.fractal(resource, x);
+			if(field > 0)
+			{
+				double jitter = (mix(mix(this.layerSeeds[resource * OCTAVES] ^ q) + r * GAMMA) >>> 11) * 0x1.0p-53;
+				double richness = NOISE_SHARE * Math.min(1.0, field / RICHNESS_SPAN) + (1 - NOISE_SHARE) * jitter;
+				store.setDeposit(tile, resource, TileStore.toUnits(TileStore.MINIMUM_RESOURCE + (TileStore.MAXIMUM_RESOURCE - TileStore.MINIMUM_RESOURCE) * richness));
+			}
+		}
+	}
+
+	/**
+	 * Sample the noise field of a resource at a tile, for anyone who wants to see the field itself
+	 * @param resource	The resource
+	 * @param q			The q coordinate of the tile
+	 * @param r			The r coordinate of the tile
+	 * @return			The value of the field, roughly between -1 and 1, with the resource present wherever it is above 0
+	 */
+	public double sample(Resource resource, int q, int r)
+	{
+		Sampler sampler = new Sampler();
+		sampler.row(r * ROW_HEIGHT);
+		return sampler.fractal(resource.ordinal(), q + r * 0.5);
+	}
+
+	/**
+	 * SplitMix64's finalising mix, which scrambles every bit of its input into every bit of its output
+	 * @param z	The value to mix
+	 * @return	The mixed value
+	 */
+	static long mix(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Samples the noise a row of tiles at a time. Along a row only x changes, so everything that depends on y is worked out once per row, and the gradients
+	 * at the corners of the last lattice cell each layer was sampled in are remembered, along with their y terms. Neighbouring tiles are nearly always in the
+	 * same cell, so walking along a row hardly ever needs to hash a corner. Not thread safe, each thread needs its own.
+	 */
+	private class Sampler
+	{
+		/**
+		 * The x of the cell each layer was last sampled in, or Long.MIN_VALUE if it needs working out again
+		 */
+		private final long[] cellX = new long[TileStore.RESOURCE_COUNT * OCTAVES];
+		/**
+		 * The y of the cell the current row is in, for each layer
+		 */
+		private final long[] cellY = new long[TileStore.RESOURCE_COUNT * OCTAVES];
+		/**
+		 * How far up its cell the current row is, for each layer
+		 */
+		private final double[] offsetY = new double[TileStore.RESOURCE_COUNT * OCTAVES];
+		/**
+		 * The faded offsetY of each layer, which the top and bottom of the cell are blended by
+		 */
+		private final double[] blendY = new double[TileStore.RESOURCE_COUNT * OCTAVES];
+		/**
+		 * For each layer, eight terms for the corners of the cell it was last sampled in: the x of each corner's gradient, and the y of its gradient already
+		 * multiplied by the row's distance from the corner
+		 */
+		private final double[] terms = new double[TileStore.RESOURCE_COUNT * OCTAVES * 8];
+
+		/**
+		 * Move on to a new row
+		 * @param y	The y of the row, in tiles
+		 */
+		void row(double y)
+		{
+			for(int layer = 0; layer < this.cellX.length; layer++)
+			{
+				double scaled = y * FREQUENCIES[layer];
+				long iy = floor(scaled);
+				this.cellY[layer] = iy;
+				this.offsetY[layer] = scaled - iy;
+				this.blendY[layer] = fade(scaled - iy);
+				this.cellX[layer] = Long.MIN_VALUE;
+			}
+		}
+
+		/**
+		 * Sum the octaves of a resource's noise at a point on the current row
+		 * @param resource	The ordinal of the resource
+		 * @param x			The x of the point, in tiles
+		 * @return			The value of the field
+		 */
+		double fractal(int resource, double x)
+		{
+			double total = 0;
+			for(int layer = resource * OCTAVES; layer < (resource + 1) * OCTAVES; layer++)
+			{
+				total += WEIGHTS[layer] * this.noise(layer, x * FREQUENCIES[layer]);
+			}
+			return total;
+		}
+
+		/**
+		 * A single layer of gradient noise at a point on the current row
+		 * @param layer	The layer
+		 * @param x		The x of the point, in lattice cells
+		 * @return		The noise, between about -1 and 1
+		 */
+		private double noise(int layer, double x)
+		{
+			long ix = floor(x);
+			int t = layer * 8;
+			if(ix != this.cellX[layer])
+			{
+				long layerSeed = DepositGenerator.this.layerSeeds[layer];
+				long iy = this.cellY[layer];
+				double fy = this.offsetY[layer];
+				int g00 = gradient(layerSeed, ix, iy);
+				int g10 = gradient(layerSeed, ix + 1, iy);
+				int g01 = gradient(layerSeed, ix, iy + 1);
+				int g11 = gradient(layerSeed, ix + 1, iy + 1);
+				this.cellX[layer] = ix;
+				this.terms[t] = GRADIENT_X[g00];
+				this.terms[t + 1] = GRADIENT_Y[g00] * fy;
+				this.terms[t + 2] = GRADIENT_X[g10];
+				this.terms[t + 3] = GRADIENT_Y[g10] * fy;
+				this.terms[t + 4] = GRADIENT_X[g01];
+				this.terms[t + 5] = GRADIENT_Y[g01] * (fy - 1);
+				this.terms[t + 6] = GRADIENT_X[g11];
+				this.terms[t + 7] = GRADIENT_Y[g11] * (fy - 1);
+			}
+			double fx = x - ix;
+			double n00 = this.terms[t] * fx + this.terms[t + 1];
+			double n10 = this.terms[t + 2] * (fx - 1) + this.terms[t + 3];
+			double n01 = this.terms[t + 4] * fx + this.terms[t + 5];
+			double n11 = this.terms[t + 6] * (fx - 1) + this.terms[t + 7];
+			double u = fade(fx);
+			double bottom = n00 + u * (n10 - n00);
+			double top = n01 + u * (n11 - n01);
+			return NOISE_STRETCH * (bottom + this.blendY[layer] * (top - bottom));
+		}
+	}
+
+	/**
+	 * Pick the gradient at a lattice corner
+	 */
+	private static int gradient(long layerSeed, long ix, long iy)
+	{
+		return (int)(mix(mix(layerSeed + ix * GAMMA) + iy * GAMMA) >>> 60);
+	}
+
+	/**
+	 * Perlin's smootherstep, 6t^5 - 15t^4 + 10t^3
+	 */
+	private static double fade(double t)
+	{
+		return t * t * t * (t * (t * 6 - 15) + 10);
+	}
+
+	/**
+	 * Round down to a whole number. Casting rounds towards zero, so step back one for negative numbers that aren't whole already.
+	 */
+	private static long floor(double x)
+	{
+		long i = (long)x;
+		return x < i?i - 1:i;
+	}
+}
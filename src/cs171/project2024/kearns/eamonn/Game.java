@@ -1,14 +1,16 @@
 package cs171.project2024.kearns.eamonn;
 
-import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.EnumMap;
-import java.util.Stack;
-
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
 
 import cs171.project2024.kearns.eamonn.HexTile.Direction;
 import cs171.project2024.kearns.eamonn.ResourceTile.Resource;
@@ -19,24 +21,53 @@ import cs171.project2024.kearns.eamonn.ResourceTile.Resource;
 public class Game
 {
 	/**
-	 * All of the researches that can be learned, whether exposed to the player or not. Read in from a CSV.
+	 * What the constructor that does the work does with the map
+	 */
+	private enum Build
+	{
+		/**
+		 * Generate it from the seed
+		 */
+		GENERATE,
+		/**
+		 * Leave it blank, for a saved game to be read into
+		 */
+		BLANK,
+		/**
+		 * Leave the store as it is, for a game to be carried on from the tiles it already holds
+		 */
+		ATTACH
+	}
+
+	/**
+	 * All of the researches that can be learned, whether exposed to the player or not. This game's own copies of the ones in the catalog, in the same order.
 	 * @see Game#RESEARCH_FILE_PATH
 	 */
 	private ArrayList<Research> researches = new ArrayList<Research>();
 	/**
-	 * The csv file determining the names and costs of the researches.
+	 * The catalog the researches came from, which finds them by name and by the resources they cost and boost
+	 */
+	private ResearchCatalog researchCatalog = ResearchCatalog.EMPTY;
+	/**
+	 * The file determining the names and costs of the researches, which is compiled alongside itself the first time it's read
+	 * @see ResearchCatalog#load(Path)
 	 */
 	private final static String RESEARCH_FILE_PATH = "./data/research.json";
 
 	/**
-	 * A two dimensional array list to hold the ResourceTiles 
+	 * The hex grid holding the ResourceTiles in a flat array. A tile's index in the grid is also its id in the tile store.
+	 */
+	private HexGrid<ResourceTile> grid;
+	
+	/**
+	 * A two dimensional array list to hold the ResourceTiles row by row, for anything that wants to walk the map a row at a time
 	 */
 	private ArrayList<ArrayList<ResourceTile>> resourceTiles;
 	
 	/**
-	 * A list of discovered tiles. Since we don't care about their positions, we can just handle them simply.
+	 * The discovered tiles that are still being mined. Depleted tiles are retired from it as soon as they deplete, so the tick only ever walks tiles that are producing.
 	 */
-	private ArrayList<ResourceTile> discoveredTiles;
+	private ActiveTileSet activeTiles;
 	
 	/**
 	 * The radius of the map hex grid in tiles.
@@ -52,13 +83,68 @@ public class Game
 	 */
 	private EnumMap<ResourceTile.Resource, Boolean> discoveredResources;
 	/**
-	 * The amount of each resource that has been mined overall
+	 * The discovered resources as a bitmask over their ordinals, so the tick loop doesn't need to go through the EnumMap
+	 */
+	private int discoveredMask;
+	/**
+	 * The amount of each resource that has been mined overall, in fixed point units indexed by resource ordinal
+	 * @see TileStore#QUANTUM
+	 */
+	private long[] resourcesMined;
+	/**
+	 * The amount of resources available to the society, in fixed point units indexed by resource ordinal
+	 */
+	private long[] resourcesRemaining;
+	/**
+	 * The number of active tiles processed as a single unit of work during a tick. This is fixed, rather than derived from the number of cores, so that the
+	 * way the work is divided up, and so the order it is merged in, is the same on every machine.
+	 */
+	private final static int SHARD_SIZE = 2048;
+	/**
+	 * How ticks are processed
+	 */
+	private TickMode tickMode = TickMode.SEQUENTIAL;
+	/**
+	 * The pool the shards of a tick are run on in parallel mode
+	 */
+	private ForkJoinPool tickPool = ForkJoinPool.commonPool();
+	/**
+	 * The shards of the active set, kept between ticks so they can be reused
+	 */
+	private TickShard[] shards = new TickShard[0];
+	/**
+	 * The scheduler of depletion events in event mode, null in the other modes
+	 */
+	private DepletionScheduler depletionScheduler;
+	/**
+	 * Scratch space for the corrections event mode makes to the ledger when settling tiles
+	 */
+	private final long[] ledgerCorrections = new long[TileStore.RESOURCE_COUNT];
+	/**
+	 * The number of tiles the last tick processed, kept for anyone who wants to see how busy the tick is
 	 */
-	private EnumMap<ResourceTile.Resource, Double> resourcesMined;
+	private int tilesProcessedLastTick;
 	/**
-	 * The amount of resources available to the society
+	 * The number of tiles that have been explored by running dry tiles next to them, for the tick events to say how many each tick found
 	 */
-	private EnumMap<ResourceTile.Resource, Double> resourcesRemaining;
+	private long tilesAdmitted;
+	/**
+	 * The number of tiles that have run dry and been retired from the active set, for the tick events to say how many each tick depleted
+	 */
+	private long tilesRetired;
+	/**
+	 * The number of ticks that have passed since the game began
+	 */
+	private long tick;
+	/**
+	 * Whether a research has been bought since the journal last wrote the researches out
+	 */
+	private boolean researchesChanged;
+	
+	/**
+	 * The store that holds the resource state of every tile on the map
+	 */
+	private TileStore tileStore;
 	/**
 	 * The amount of pollution that mining an individual resource generates
 	 */
@@ -79,22 +165,88 @@ public class Game
 	 */
 	private int tileCount;
 
+	/**
+	 * The seed the map was generated from. The same radius and seed always give the same map.
+	 */
+	private final long seed;
+	/**
+	 * The random number generator used to build the map, seeded from the seed
+	 */
+	private final Random rng;
+	/**
+	 * The algorithm the map was carved into a maze with
+	 */
+	private final MazeAlgorithm mazeAlgorithm;
+	/**
+	 * Whether the map's tiles are only created as they're reached, rather than all up front
+	 * @see SparseHexGrid
+	 */
+	private final boolean lazy;
+	/**
+	 * Whether a lazy map's tiles are being put back from a store that already holds them, so creating them mustn't lay deposits out over what's there
+	 */
+	private boolean attaching;
+
 
 	
 	/**
 	 * The game's real constructor. Populates the properties, reads in the researches, sets the intial values, builds the data structure to represent the map and runs the depth-first maze algorithm to determine the geography/topology.
-	 * @param radius The radius of the map in tiles 
+	 * @param radius		The radius of the map in tiles 
+	 * @param seed			The seed to generate the map from
+	 * @param mazeAlgorithm	The algorithm to carve the map into a maze with
+	 * @param lazy			Whether to only create tiles as they're reached, which lets the radius go up to SparseHexGrid.MAXIMUM_RADIUS, but only works
+	 * 						with the radial maze since that's the only one that can be worked out a tile at a time
 	 */
-	public Game(int radius)
+	public Game(int radius, long seed, MazeAlgorithm mazeAlgorithm, boolean lazy)
+	{
+		this(radius, seed, mazeAlgorithm, lazy, new HeapTileStore(64), Build.GENERATE);
+	}
+
+	/**
+	 * Constructor that keeps the tiles' state in a store of the caller's choosing, such as a MappedTileStore to keep it in a file the game can be carried on from
+	 * @param radius		The radius of the map in tiles 
+	 * @param seed			The seed to generate the map from
+	 * @param mazeAlgorithm	The algorithm to carve the map into a maze with
+	 * @param lazy			Whether to only create tiles as they're reached
+	 * @param tileStore		The store, which is emptied, grown to fit the map and has every tile in it generated afresh
+	 */
+	public Game(int radius, long seed, MazeAlgorithm mazeAlgorithm, boolean lazy, TileStore tileStore)
+	{
+		this(radius, seed, mazeAlgorithm, lazy, tileStore, Build.GENERATE);
+	}
+
+	/**
+	 * The constructor that does the work, which can leave the map blank for a saved game to be read into, or leave the store alone for a game to be carried on
+	 * from what's in it
+	 * @param radius		The radius of the map in tiles 
+	 * @param seed			The seed to generate the map from
+	 * @param mazeAlgorithm	The algorithm to carve the map into a maze with
+	 * @param lazy			Whether to only create tiles as they're reached
+	 * @param tileStore		The store to keep the tiles' state in
+	 * @param build			Whether to generate the map, or to leave every tile empty, unconnected and unexplored, or as the store has it, in which case
+	 * 						the tiles' flags and connections have to be put back. Either way a lazy map is left with no tiles at all.
+	 * @see GameSnapshot
+	 * @see MappedTileStore
+	 */
+	private Game(int radius, long seed, MazeAlgorithm mazeAlgorithm, boolean lazy, TileStore tileStore, Build build)
 	{
+		boolean generate = build == Build.GENERATE;
+		if(lazy && mazeAlgorithm != MazeAlgorithm.RADIAL)
+		{
+			throw new IllegalArgumentException("A lazy map can only be carved with the radial maze");
+		}
 		this.radius = radius;
+		this.seed = seed;
+		this.rng = new Random(seed);
+		this.mazeAlgorithm = mazeAlgorithm;
+		this.lazy = lazy;
+		this.tileStore = tileStore;
 
 		this.resourceTiles = new ArrayList<ArrayList<ResourceTile>>();
-		this.discoveredTiles = new ArrayList<ResourceTile>();
 		
 		this.discoveredResources = new EnumMap<>(ResourceTile.Resource.class);
-		this.resourcesMined = new EnumMap<>(ResourceTile.Resource.class);
-		this.resourcesRemaining = new EnumMap<>(ResourceTile.Resource.class);
+		this.resourcesMined = new long[TileStore.RESOURCE_COUNT];
+		this.resourcesRemaining = new long[TileStore.RESOURCE_COUNT];
 		this.pollutionRates = new EnumMap<>(ResourceTile.Resource.class);
 		
 		/*
@@ -109,9 +261,7 @@ public class Game
 
 		for(ResourceTile.Resource r:ResourceTile.Resource.values())
 		{
-			this.resourcesMined.put(r, 0.0);
 			this.discoveredResources.put(r, false);
-			this.resourcesRemaining.put(r, 0.0);
 		}
 
 		this.discoverResource(ResourceTile.Resource.WOOD);
@@ -121,339 +271,757 @@ public class Game
 		
 		// the middle row will have the map radius radius to one side, and that many minus one to the other.
 		this.diameter = this.radius * 2 - 1;
-		// the length of the row will go up and down depending on whether you've passed the center row
-		int rowLength = radius;
-	
-		for(int i = 0; i < this.diameter; i++)
+		GenerationEvent tilesEvent = this.beginGeneration();
+		if(lazy)
 		{
-			ArrayList<ResourceTile> row = new ArrayList<ResourceTile>();
-
-			for(int j= 0; j < rowLength; j++)
+			// nothing exists until it's reached, the maze is drawn from the same generator the radial maze would have used so the map is the same either way
+			DepositGenerator deposits = new DepositGenerator(seed);
+			SparseHexGrid<ResourceTile> sparse = new SparseHexGrid<ResourceTile>(radius, this.rng.nextLong(), id->this.createTile(deposits, id));
+			this.grid = sparse;
+			if(build != Build.ATTACH)
 			{
-				row.add(new ResourceTile(j, i));
-				tileCount++;
+				// whatever the store was last used for, nothing has been explored or mined in this game yet, and none of its tiles exist
+				this.tileStore.reset();
 			}
-			rowLength += i<this.radius-1?1:-1;
-			
-			this.resourceTiles.add(row);
+			this.activeTiles = new ActiveTileSet(64);
+			if(generate)
+			{
+				this.settlementTile = this.grid.get(sparse.materialise(0, 0)).occupy();
+			}
+			this.endGeneration(tilesEvent, "Tiles");
 		}
+		else
+		{
+			this.grid = new HexGrid<ResourceTile>(radius);
+			if(build != Build.ATTACH)
+			{
+				// whatever the store was last used for, nothing has been explored or mined in this game yet
+				this.tileStore.reset();
+			}
+			this.tileStore.ensureCapacity(this.grid.size());
+			this.activeTiles = new ActiveTileSet(this.grid.size());
 		
-		// occupy the centre tile
-		this.settlementTile = this.resourceTiles.get(radius-1).get(radius-1).occupy();
-		// Set every tile to be beside the tiles they should be beside
-		this.generateNeighbourConnections();
+			// the grid is stored row by row, so the tiles can be created in index order and gathered into rows as we go
+			for(int r = 1 - radius; r < radius; r++)
+			{
+				ArrayList<ResourceTile> row = new ArrayList<ResourceTile>();
+				for(int i = 0; i < this.grid.rowLength(r); i++)
+				{
+					ResourceTile tile = new ResourceTile(this.grid, this.tileStore, tileCount);
+					this.grid.set(tileCount, tile);
+					row.add(tile);
+					tileCount++;
+				}
+				this.resourceTiles.add(row);
+			}
+			this.endGeneration(tilesEvent, "Tiles");
+			if(generate)
+			{
+				// lay the resources out over the map, on several threads at once
+				GenerationEvent depositsEvent = this.beginGeneration();
+				long start = GameMetrics.get().start();
+				this.tileStore.setConcurrent(true);
+				try
+				{
+					new DepositGenerator(seed).generate(this.grid, this.tileStore, this.tickPool);
+				}
+				finally
+				{
+					this.tileStore.setConcurrent(false);
+				}
+				GameMetrics.get().stop(GameMetrics.Phase.DEPOSITS, start);
+				this.endGeneration(depositsEvent, "Deposits");
+				
+				// occupy the centre tile
+				this.settlementTile = this.grid.get(0, 0).occupy();
+			}
+		}
 		
 
 		// build the connections
-		this.generateTileConnections();
+		if(generate)
+		{
+			this.generateTileConnections();
+		}
 		
 		
 		// load the research and "handle" the exceptions
+		GenerationEvent researchEvent = this.beginGeneration();
 		try
 		{
 			loadResearch();
 		}
-		catch(FileNotFoundException e)
+		catch(FileNotFoundException | NoSuchFileException e)
 		{
-			System.out.println("The research data csv could not be found");
+			System.out.println("The research data could not be found");
 		}
 		catch(IOException e)
 		{
 			System.err.println("There was a problem reading the research data.");
 		}
+		this.endGeneration(researchEvent, "Research");
+
+		if(build != Build.ATTACH)
+		{
+			// a game carried on from the store tells it once everything has been put back
+			this.tileStore.startGame(this);
+		}
 	}
-	
+
 	/**
-	 * Secondary constructor to default the game radius to a fixed predetermined size.
+	 * Start timing a phase of building the game for Flight Recorder
+	 * @return	The event for it, to hand to endGeneration once it's done
 	 */
-	public Game()
+	private GenerationEvent beginGeneration()
 	{
-		this(12);
+		GenerationEvent event = new GenerationEvent();
+		event.begin();
+		return event;
 	}
 
 	/**
-	 * Loads the research from the file at RESEARCH_FILE_PATH and throws the exception back to the invoker.
-	 * The initial intent was to use JSON, which is better structured than CSV, but understanding the libraries was taking longer than I was willing to devote to something this early in the development cycle.
-	 * CSV will do for now
-	 * @see Game#RESEARCH_FILE_PATH
-	 * @throws IOException
+	 * Finish timing a phase of building the game, and record it if Flight Recorder wants it
+	 * @param event	What beginGeneration returned when it started
+	 * @param phase	The name of the phase
 	 */
-	public void loadResearch() throws IOException
+	private void endGeneration(GenerationEvent event, String phase)
 	{
-		ObjectMapper mapper = new ObjectMapper();
-		File file = new File(RESEARCH_FILE_PATH);
-		JsonNode node = mapper.readTree(file);
-		for(JsonNode researchNode: node)
+		event.end();
+		if(event.shouldCommit())
 		{
-			this.researches.add(
-				Research.fromJsonNode(researchNode)
-			);
+			event.phase = phase;
+			event.radius = this.radius;
+			event.tiles = this.getTileCount();
+			event.lazy = this.lazy;
+			event.commit();
 		}
 	}
-
-	public ArrayList<Research> getResearches()
+	
+	/**
+	 * Secondary constructor for a map that is built all up front
+	 * @param radius		The radius of the map in tiles 
+	 * @param seed			The seed to generate the map from
+	 * @param mazeAlgorithm	The algorithm to carve the map into a maze with
+	 */
+	public Game(int radius, long seed, MazeAlgorithm mazeAlgorithm)
 	{
-		return this.researches;
+		this(radius, seed, mazeAlgorithm, false);
 	}
 
 	/**
-	 * This is where I will implement the functionality to buy research
-	 * @param research
+	 * Secondary constructor for a map carved with the original backtracking maze
+	 * @param radius	The radius of the map in tiles 
+	 * @param seed		The seed to generate the map from
 	 */
-	public boolean buyResearch(Research research)
+	public Game(int radius, long seed)
 	{
-		// ensuring no race condition prevents us going into debt
-		boolean canAfford = true;
-		for(Resource resource:research.getCosts().keySet())
-		{
-			if(this.getResourceAvailable(resource) < research.getCosts().get(resource))
-			{
-				canAfford = false;
-			}
-		}
-		if(canAfford)
-		{
-			for(Resource resource:research.getCosts().keySet())
-			{
-				this.resourcesRemaining.put(resource, this.resourcesRemaining.get(resource) - research.getCosts().get(resource));
-			}
-			research.purchase();
-			if(research.isRepeatable())
-			{
-
-			}
-			else
-			{
-				// this is a special case research so handle it
-				System.out.println("Special case research");
-			}
-		}
-		return canAfford;
+		this(radius, seed, MazeAlgorithm.BACKTRACKER);
 	}
 
-	public ResourceTile getSettlementTile()
+	/**
+	 * Secondary constructor for a map with a random seed
+	 * @param radius The radius of the map in tiles 
+	 */
+	public Game(int radius)
 	{
-		return this.settlementTile;
+		this(radius, new Random().nextLong());
 	}
 	
 	/**
-	 * Iterate through the tiles and provide each tile its neighbours. 
-	 * This is to facilitate an easier maze walking algorithm without tightly coupling the Game and Tile classes.
-	 * The loop logic for this is a bit confounding because whether a downards neighbour in a two dimensional array is left or right of the cell above it depends on what row you are in.
-	 * this is a fallout of representing hexes in the form
-	 * ####
-	 * #####
-	 * ######
-	 * #####
-	 * ####
-	 * 
-	 * to mean
-	 * 
-	 *   # # #
-	 *  # # # #
-	 * # # # # #
-	 *  # # # #
-	 *   # # #
-	 * @see Game#generateTileConnections()
-	 * @see HexTile#addNeighbour()
-	 */
-	public void generateNeighbourConnections()
-	{
-		for(ArrayList<ResourceTile> row : this.resourceTiles)
-		{
-			for(ResourceTile tile: row)
-			{
-				// we always want to add left right relationships. They're nice and simple.
-				if(tile.getX() + 1 < row.size())
-				{
-					tile.addNeighbour(row.get(tile.getX()+1), ResourceTile.Direction.EAST);
-				}
-				
-				// if we're on a row that is above the centre row, we consider cells in the row below us to be left shifted
-				if(tile.getY() < this.resourceTiles.size()/2)
-				{
-					ArrayList<ResourceTile> below = this.resourceTiles.get(tile.getY()+1);
-					if(tile.getX() >= 0 && tile.getX() < below.size())
-					{
-						tile.addNeighbour(below.get(tile.getX()), ResourceTile.Direction.SOUTHWEST);
-					}
-					
-					if(tile.getY() > 0)
-					{
-						ArrayList<ResourceTile> above = this.resourceTiles.get(tile.getY() - 1);
-						if(tile.getX() > 0 && tile.getX() < above.size()+1)
-						{
-							tile.addNeighbour(above.get(tile.getX() - 1), ResourceTile.Direction.NORTHWEST);
-						}
-					}
-				}
-				// the centre row gets its own considerations as it has to be concerned with the rules for above and below differently. The row above is right shifted as is the row below. It is a unique case.
-				else if(tile.getY() == this.resourceTiles.size()/2)
-				{
-					ArrayList<ResourceTile> below = this.resourceTiles.get(tile.getY()+1);
-					ArrayList<ResourceTile> above = this.resourceTiles.get(tile.getY() - 1);
-					
-					if(tile.getX() >= 0 && tile.getX() < below.size())
-					{
-						tile.addNeighbour(below.get(tile.getX()), ResourceTile.Direction.SOUTHEAST);
-					}
-					if(tile.getX() >0 && tile.getX() < above.size() + 1)
-					{
-						tile.addNeighbour(above.get(tile.getX()-1), ResourceTile.Direction.NORTHWEST);
-					}
-				}
-				// the rows below the centre row are right shifted
-				else
-				{
-					if(tile.getY() < this.resourceTiles.size() - 1)
-					{
-						ArrayList<ResourceTile> below = this.resourceTiles.get(tile.getY()+1);
-						if(tile.getX() >= 0 && tile.getX() < below.size())
-						{
-							tile.addNeighbour(below.get(tile.getX()), ResourceTile.Direction.SOUTHEAST);							
-						}
-					}
-					ArrayList<ResourceTile> above = this.resourceTiles.get(tile.getY() - 1);
-					if(tile.getX() >= 0 && tile.getX() + 1 < above.size())
-					{
-						tile.addNeighbour(above.get(tile.getX() + 1), ResourceTile.Direction.NORTHEAST);
-					}
-				}
-			}
-		}
-		
+	 * Secondary constructor to default the game radius to a fixed predetermined size.
+	 */
+	public Game()
+	{
+		this(12);
 	}
 
-	private ResourceTile initialConnection(Direction direction)
+	/**
+	 * Getter for the seed the map was generated from
+	 * @return	The seed
+	 */
+	public long getSeed()
 	{
-		ResourceTile hex = (ResourceTile)this.settlementTile.getNeighbour(direction);
-		hex.blankTile();
-		for(ResourceTile.Resource r:this.discoveredResources.keySet())
-		{
-			if(this.discoveredResources.get(r))
-			{
-				hex.setAvailableResource(r, 100.0);
-				hex.setResourceExtractionRate(r, BASIC_EXTRACTION_RATE);
-			}
-		}
-		this.settlementTile.addConnection(direction);
-		this.discoveredTiles.add(hex);
-		hex.visit();
-		hex.explore();
-		return hex;
+		return this.seed;
 	}
-	
+
 	/**
-	 * The method to generate the geography using a depth first map stack algorithm
-	 * @see https://en.wikipedia.org/wiki/Maze_generation_algorithm#Iterative_implementation_(with_stack)
+	 * Getter for the algorithm the map was carved into a maze with
+	 * @return	The maze algorithm
 	 */
-	public void generateTileConnections()
+	public MazeAlgorithm getMazeAlgorithm()
 	{
-		HexTile nw = this.initialConnection(Direction.NORTHWEST),
-				sw = this.initialConnection(Direction.SOUTHWEST),
-				e  = this.initialConnection(Direction.EAST);
-		
-		ArrayList<Stack<HexTile>> searchSpaces = new ArrayList<Stack<HexTile>>();
-		searchSpaces.add(new Stack<HexTile>());
-		searchSpaces.add(new Stack<HexTile>());
-		searchSpaces.add(new Stack<HexTile>());
-		searchSpaces.get(0).push(nw);
-		searchSpaces.get(1).push(sw);
-		searchSpaces.get(2).push(e);
-
-		while(searchSpaces.get(0).size() > 0 || searchSpaces.get(1).size() > 0 || searchSpaces.get(2).size() > 0)
-		{
-			HexTile searchTile = null;
-			for(Stack<HexTile> searchSpace:searchSpaces)
-			{
-				if(searchSpace.size() > 0)
-				{
-					searchTile = searchSpace.pop();
-					// pick a random direction
-					HexTile.Direction d = searchTile.getRandomUnvisitedNeighbourDirection();
-					// if it's not null, there is an unvisited neighbour in that direction
-					if(d != null)
-					{
-						searchTile.addConnection(d);
-						searchSpace.push(searchTile);
-						HexTile neighbour = searchTile.getNeighbour(d);
-						neighbour.visit();
-						searchSpace.push(neighbour);
-					}
-				}
-			}
-		}
-		
+		return this.mazeAlgorithm;
 	}
-	
+
 	/**
-	 * Getter for the radius of the game in tiles
-	 * @return	The radius of the game in tiles.
+	 * Save the whole state of the game to a file, replacing it if it's there. In event mode every tile is brought up to date first.
+	 * @param path	The file to save to
+	 * @throws IOException
+	 * @see GameSnapshot
 	 */
-	public int getRadius()
+	public void save(Path path) throws IOException
 	{
-		return radius;
+		this.synchronise();
+		GameSnapshot.write(this, path);
 	}
-	
+
 	/**
-	 * Getter for the diameter of the game in tiles
-	 * @return	The radius of the game in tiles
+	 * Load a game saved with save
+	 * @param path	The file to load from
+	 * @return		The game, exactly as it was when it was saved
+	 * @throws IOException	If the file can't be read, is from a version of the game this one can't read, or is corrupt
+	 * @see GameSnapshot
 	 */
-	public int getDiameter()
+	public static Game load(Path path) throws IOException
 	{
-		return diameter;
+		return GameSnapshot.read(path, new HeapTileStore(64));
 	}
 
-	public ArrayList<Resource> getDiscoveredResources()
+	/**
+	 * Load a game saved with save, keeping its tiles' resource state in a store of the caller's choosing
+	 * @param path		The file to load from
+	 * @param tileStore	The store, which is emptied, grown to fit the map and filled with the saved tiles
+	 * @return			The game
+	 * @throws IOException	If the file can't be read, is from a version of the game this one can't read, or is corrupt
+	 */
+	public static Game load(Path path, TileStore tileStore) throws IOException
 	{
-		ArrayList<Resource> resources =  new ArrayList<Resource>();
-		for(Resource resource:this.discoveredResources.keySet())
-		{
-			if(this.discoveredResources.get(resource))
-			{
-				resources.add(resource);
-			}
-		}
-		return resources;
+		return GameSnapshot.read(path, tileStore);
 	}
-	
+
 	/**
-	 * A method to determine if a given resource has been discovered
-	 * @param r	The reseource to check
-	 * @return	Whether or not the resource has been discovered
+	 * Make a game with a blank map, for a saved game to be read into
+	 * @param radius		The radius of the map in tiles 
+	 * @param seed			The seed the map was generated from
+	 * @param mazeAlgorithm	The algorithm the map was carved with
+	 * @param lazy			Whether the map's tiles are only created as they're reached
+	 * @param tileStore		The store to read the tiles' resource state into
+	 * @return				The game
 	 */
-	public boolean isResourceDiscovered(ResourceTile.Resource r)
+	static Game blank(int radius, long seed, MazeAlgorithm mazeAlgorithm, boolean lazy, TileStore tileStore)
 	{
-		return discoveredResources.get(r);
+		return new Game(radius, seed, mazeAlgorithm, lazy, tileStore, Build.BLANK);
 	}
-	
+
 	/**
-	 * A method to mark a resource as discobvered
-	 * @param r	The resource to discover
+	 * Carry on with the game a MappedTileStore's file held when it was last closed, straight from the tiles in the file. Nothing is generated or read through a
+	 * snapshot, the tiles' flags and connections are put back from their records and the rest of the game from the file's header and what follows the records.
+	 * @param tileStore	The store, which the game goes on keeping its tiles in
+	 * @return			The game, exactly as it was when the store was closed
+	 * @throws IOException	If the file doesn't hold a game that was closed cleanly, or is corrupt
+	 * @see MappedTileStore#hasGame()
 	 */
-	public void discoverResource(ResourceTile.Resource r)
+	public static Game attach(MappedTileStore tileStore) throws IOException
 	{
-		discoveredResources.put(r, true);
+		return tileStore.attach();
 	}
-	
+
 	/**
-	 * A method to get the 2d array list of tiles
-	 * @return
+	 * Make a game around tiles a store already holds, for MappedTileStore to put the rest of the game back into
+	 * @param radius		The radius of the map in tiles 
+	 * @param seed			The seed the map was generated from
+	 * @param mazeAlgorithm	The algorithm the map was carved with
+	 * @param lazy			Whether the map's tiles are only created as they're reached
+	 * @param tileStore		The store holding the tiles
+	 * @return				The game, whose tiles still need putting back with attachTile
 	 */
-	public ArrayList<ArrayList<ResourceTile>> getTiles()
+	static Game attached(int radius, long seed, MazeAlgorithm mazeAlgorithm, boolean lazy, TileStore tileStore)
 	{
-		return this.resourceTiles;
+		return new Game(radius, seed, mazeAlgorithm, lazy, tileStore, Build.ATTACH);
 	}
-	
+
 	/**
-	 * This is used for debugging purposes, but prints out the hex assuming all goes well.
+	 * Put a tile whose state the store already holds back on the map. On a lazy map the tile is created, which it must be next in line for, without laying its
+	 * deposits out over what the store has.
+	 * @param i				The id of the tile
+	 * @param q				Its q coordinate, only needed on a lazy map
+	 * @param r				Its r coordinate, only needed on a lazy map
+	 * @param flags			Its flags, TileStore.EXPLORED, VISITED and OCCUPIED as they apply
+	 * @param connections	Its connections, as a bitmask of direction ordinals
+	 * @throws IOException	If a lazy map's tiles are out of order
 	 */
-	public String toString()
+	void attachTile(int i, int q, int r, int flags, int connections) throws IOException
 	{
-		String[] output = new String[this.diameter];
-		
-		int i = 0;
-		int padding = this.radius -1;
+		if(this.lazy)
+		{
+			this.attaching = true;
+			try
+			{
+				if(((SparseHexGrid<ResourceTile>)this.grid).materialise(q, r) != i)
+				{
+					throw new IOException("The tiles of the lazy map are out of order");
+				}
+			}
+			finally
+			{
+				this.attaching = false;
+			}
+		}
+		this.grid.setConnections(i, connections);
+		ResourceTile t = this.grid.get(i);
+		if((flags & TileStore.OCCUPIED) != 0)
+		{
+			t.occupy();
+		}
+		if((flags & TileStore.VISITED) != 0)
+		{
+			t.visit();
+		}
+		if((flags & TileStore.EXPLORED) != 0)
+		{
+			t.explore();
+		}
+	}
+
+	/**
+	 * Put back the parts of a saved game's state that don't live in the tiles, once the tiles have been read in
+	 * @param tick				The tick the game was saved on
+	 * @param discoveredMask	The resources that had been discovered, as a bitmask of ordinals
+	 */
+	void restore(long tick, int discoveredMask)
+	{
+		this.tick = tick;
+		this.discoveredMask = discoveredMask;
+		for(Resource resource: Resource.values())
+		{
+			this.discoveredResources.put(resource, (discoveredMask & (1 << resource.ordinal())) != 0);
+		}
+		this.settlementTile = this.grid.get(0, 0);
+		// now what was being mined is known, it can count towards the chunks' rates again
+		for(int i = 0; i < this.activeTiles.size(); i++)
+		{
+			this.tileStore.startMining(this.activeTiles.get(i), discoveredMask);
+		}
+	}
+
+	/**
+	 * Check whether a research has been bought since this was last asked, and forget that it has
+	 * @return	True if one has
+	 * @see GameJournal
+	 */
+	boolean takeResearchesChanged()
+	{
+		boolean changed = this.researchesChanged;
+		this.researchesChanged = false;
+		return changed;
+	}
+
+	/**
+	 * Getter for the store holding the resource state of every tile, for saving and loading
+	 * @return	The tile store
+	 */
+	TileStore getTileStore()
+	{
+		return this.tileStore;
+	}
+
+	/**
+	 * Getter for the set of tiles being mined, for saving and loading
+	 * @return	The active set
+	 */
+	ActiveTileSet getActiveTiles()
+	{
+		return this.activeTiles;
+	}
+
+	/**
+	 * Getter for the ledger of everything mined, for saving and loading
+	 * @return	The amount of each resource mined, in fixed point units indexed by ordinal, which can be written to
+	 */
+	long[] getMinedUnits()
+	{
+		return this.resourcesMined;
+	}
+
+	/**
+	 * Getter for the ledger of everything available, for saving and loading
+	 * @return	The amount of each resource available, in fixed point units indexed by ordinal, which can be written to
+	 */
+	long[] getRemainingUnits()
+	{
+		return this.resourcesRemaining;
+	}
+
+	/**
+	 * Getter for the resources that have been discovered as a bitmask
+	 * @return	The bitmask, with bit n set if the resource with ordinal n has been discovered
+	 */
+	int getDiscoveredMask()
+	{
+		return this.discoveredMask;
+	}
+
+	/**
+	 * Getter for whether the map's tiles are only created as they're reached
+	 * @return	True if the map is lazy
+	 */
+	public boolean isLazy()
+	{
+		return this.lazy;
+	}
+
+	/**
+	 * Create a tile on a lazy map the first time it's reached, making room for it in the store and laying its deposits out exactly as they would have been on a
+	 * map built up front. Every tile on the map is part of the maze, so it's created visited.
+	 * @param deposits	The generator to lay the tile's deposits out with
+	 * @param id		The index the grid has given the tile
+	 * @return			The tile
+	 */
+	private ResourceTile createTile(DepositGenerator deposits, int id)
+	{
+		this.tileStore.ensureCapacity(id + 1);
+		if(!this.attaching)
+		{
+			deposits.generateTile(this.tileStore, id, this.grid.q(id), this.grid.r(id));
+		}
+		this.tileStore.putCoordinates(id, this.grid.q(id), this.grid.r(id));
+		this.tileStore.putConnections(id, this.grid.getConnections(id));
+		ResourceTile tile = new ResourceTile(this.grid, this.tileStore, id);
+		tile.visit();
+		return tile;
+	}
+
+	/**
+	 * Loads the research catalog from the file at RESEARCH_FILE_PATH, or its compiled copy, replacing the game's researches with fresh copies of the ones in it,
+	 * and throws the exception back to the invoker.
+	 * @see Game#RESEARCH_FILE_PATH
+	 * @see ResearchCatalog
+	 * @throws IOException
+	 */
+	public void loadResearch() throws IOException
+	{
+		this.researchCatalog = ResearchCatalog.load(Path.of(RESEARCH_FILE_PATH));
+		this.researches.clear();
+		this.researches.addAll(this.researchCatalog.newResearches());
+	}
+
+	public ArrayList<Research> getResearches()
+	{
+		return this.researches;
+	}
+
+	/**
+	 * Find one of the game's researches by name
+	 * @param name	The name of the research as it appears in the research data
+	 * @return		The research, or null if there isn't one called that
+	 */
+	public Research getResearch(String name)
+	{
+		int i = this.researchCatalog.indexOf(name);
+		return i < 0?null:this.researches.get(i);
+	}
+
+	/**
+	 * Find the game's researches that cost a resource
+	 * @param resource	The resource
+	 * @return			The researches, in order
+	 */
+	public ArrayList<Research> getResearchesCosting(Resource resource)
+	{
+		return this.researchesAt(this.researchCatalog.getCosting(resource));
+	}
+
+	/**
+	 * Find the game's researches that boost a resource
+	 * @param resource	The resource
+	 * @return			The researches, in order
+	 */
+	public ArrayList<Research> getResearchesBoosting(Resource resource)
+	{
+		return this.researchesAt(this.researchCatalog.getBoosting(resource));
+	}
+
+	/**
+	 * @param positions	Positions in the research catalog
+	 * @return			The game's researches at them
+	 */
+	private ArrayList<Research> researchesAt(int[] positions)
+	{
+		ArrayList<Research> found = new ArrayList<>(positions.length);
+		for(int i: positions)
+		{
+			found.add(this.researches.get(i));
+		}
+		return found;
+	}
+
+	/**
+	 * This is where I will implement the functionality to buy research. Every attempt is recorded as a ResearchPurchaseEvent while Flight Recorder is recording them.
+	 * @param research
+	 */
+	public boolean buyResearch(Research research)
+	{
+		ResearchPurchaseEvent event = new ResearchPurchaseEvent();
+		event.begin();
+		// the name and costs change as a repeatable research is bought, and the event wants what was paid
+		String name = research.getName();
+		EnumMap<Resource, Double> costs = new EnumMap<>(research.getCosts());
+		// ensuring no race condition prevents us going into debt
+		boolean canAfford = true;
+		for(Resource resource:research.getCosts().keySet())
+		{
+			if(this.getResourceAvailable(resource) < research.getCosts().get(resource))
+			{
+				canAfford = false;
+			}
+		}
+		if(canAfford)
+		{
+			for(Resource resource:research.getCosts().keySet())
+			{
+				this.resourcesRemaining[resource.ordinal()] -= TileStore.toUnits(research.getCosts().get(resource));
+			}
+			research.purchase();
+			this.researchesChanged = true;
+			if(research.isRepeatable())
+			{
+
+			}
+			else
+			{
+				// this is a special case research so handle it
+				System.out.println("Special case research");
+			}
+		}
+		event.end();
+		if(event.shouldCommit())
+		{
+			event.research = name;
+			event.success = canAfford;
+			event.cost = costs.toString();
+			for(double cost:costs.values())
+			{
+				event.totalCost += cost;
+			}
+			event.commit();
+		}
+		return canAfford;
+	}
+
+	public ResourceTile getSettlementTile()
+	{
+		return this.settlementTile;
+	}
+	
+	private ResourceTile initialConnection(Direction direction)
+	{
+		ResourceTile hex = (ResourceTile)this.settlementTile.getNeighbour(direction);
+		hex.blankTile();
+		for(ResourceTile.Resource r:this.discoveredResources.keySet())
+		{
+			if(this.discoveredResources.get(r))
+			{
+				hex.setAvailableResource(r, 100.0);
+				hex.setResourceExtractionRate(r, BASIC_EXTRACTION_RATE);
+			}
+		}
+		this.settlementTile.addConnection(direction);
+		this.activeTiles.add(hex.getId());
+		this.tileStore.startMining(hex.getId(), this.discoveredMask);
+		hex.visit();
+		hex.explore();
+		return hex;
+	}
+	
+	/**
+	 * Carve the map into a maze, growing it out from the three tiles the settlement starts off connected to
+	 * @see MazeGenerator
+	 */
+	public void generateTileConnections()
+	{
+		HexTile nw = this.initialConnection(Direction.NORTHWEST),
+				sw = this.initialConnection(Direction.SOUTHWEST),
+				e  = this.initialConnection(Direction.EAST);
+
+		if(this.lazy)
+		{
+			// the rest of a lazy map's maze is worked out as its tiles are reached
+			return;
+		}
+		GenerationEvent event = this.beginGeneration();
+		long start = GameMetrics.get().start();
+		this.mazeAlgorithm.newGenerator().generate(this.grid, new int[]{nw.getId(), sw.getId(), e.getId()}, this.rng);
+		for(int i = 0; i < this.grid.size(); i++)
+		{
+			this.tileStore.putConnections(i, this.grid.getConnections(i));
+		}
+		GameMetrics.get().stop(GameMetrics.Phase.MAZE, start);
+		this.endGeneration(event, "Maze");
+	}
+	
+	/**
+	 * Getter for the radius of the game in tiles
+	 * @return	The radius of the game in tiles.
+	 */
+	public int getRadius()
+	{
+		return radius;
+	}
+	
+	/**
+	 * Getter for the diameter of the game in tiles
+	 * @return	The radius of the game in tiles
+	 */
+	public int getDiameter()
+	{
+		return diameter;
+	}
+
+	public ArrayList<Resource> getDiscoveredResources()
+	{
+		ArrayList<Resource> resources =  new ArrayList<Resource>();
+		for(Resource resource:this.discoveredResources.keySet())
+		{
+			if(this.discoveredResources.get(resource))
+			{
+				resources.add(resource);
+			}
+		}
+		return resources;
+	}
+	
+	/**
+	 * A method to determine if a given resource has been discovered
+	 * @param r	The reseource to check
+	 * @return	Whether or not the resource has been discovered
+	 */
+	public boolean isResourceDiscovered(ResourceTile.Resource r)
+	{
+		return discoveredResources.get(r);
+	}
+	
+	/**
+	 * A method to mark a resource as discobvered
+	 * @param r	The resource to discover
+	 */
+	public void discoverResource(ResourceTile.Resource r)
+	{
+		if(this.isResourceDiscovered(r))
+		{
+			// nothing changes, and in event mode the tiles already mining it would have it counted towards the aggregate rate twice
+			return;
+		}
+		// in event mode every tile has to be brought up to date under the resources we knew about before
+		this.synchronise();
+		discoveredResources.put(r, true);
+		discoveredMask |= 1 << r.ordinal();
+		// tiles that were retired because everything we knew about was gone may still have this, so put them back to work
+		if(this.grid != null)
+		{
+			for(int i = 0; i < this.grid.size(); i++)
+			{
+				ResourceTile t = this.grid.get(i);
+				if(t.isExplored() && !t.isOccupied() && t.hasResource(r))
+				{
+					boolean admitted = this.activeTiles.add(t.getId());
+					this.tileStore.startMining(t.getId(), this.discoveredMask);
+					if(this.depletionScheduler != null)
+					{
+						// only the tiles with the new resource need their events changing
+						if(admitted)
+						{
+							this.depletionScheduler.track(t.getId(), this.tick, this.discoveredMask);
+						}
+						else
+						{
+							this.depletionScheduler.adjustAggregate(t.getId(), 1 << r.ordinal(), 1);
+							this.depletionScheduler.schedule(t.getId(), this.tick, this.discoveredMask);
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Getter for the hex grid of tiles, for looking tiles up by axial coordinate or walking the map by neighbours, rings and ranges
+	 * @return	The grid
+	 */
+	public HexGrid<ResourceTile> getGrid()
+	{
+		return this.grid;
+	}
+	
+	/**
+	 * A method to get the 2d array list of tiles. On a lazy map only the tiles that have been created are included, gathered into rows on demand, so the rows
+	 * are ragged and there's no point holding on to them.
+	 * @return
+	 */
+	public ArrayList<ArrayList<ResourceTile>> getTiles()
+	{
+		// in event mode the tiles are only brought up to date when asked for
+		this.synchronise();
+		if(this.lazy)
+		{
+			return this.getCreatedTiles();
+		}
+		return this.resourceTiles;
+	}
+
+	/**
+	 * Gather the tiles a lazy map has created so far into rows, top to bottom and each left to right
+	 * @return	The rows, leaving out any row with nothing in it
+	 */
+	private ArrayList<ArrayList<ResourceTile>> getCreatedTiles()
+	{
+		ArrayList<ResourceTile> created = new ArrayList<ResourceTile>();
+		for(int i = 0; i < this.grid.size(); i++)
+		{
+			created.add(this.grid.get(i));
+		}
+		created.sort(Comparator.comparingInt(ResourceTile::getR).thenComparingInt(ResourceTile::getQ));
+		ArrayList<ArrayList<ResourceTile>> rows = new ArrayList<ArrayList<ResourceTile>>();
+		ArrayList<ResourceTile> row = null;
+		for(ResourceTile t: created)
+		{
+			if(row == null || row.get(0).getR() != t.getR())
+			{
+				row = new ArrayList<ResourceTile>();
+				rows.add(row);
+			}
+			row.add(t);
+		}
+		return rows;
+	}
+	
+	/**
+	 * This is used for debugging purposes, but prints out the hex assuming all goes well.
+	 */
+	public String toString()
+	{
+		if(this.lazy)
+		{
+			// a tile at (q, r) sits 2q + r characters along, so lay out what has been created relative to the leftmost of it
+			ArrayList<ArrayList<ResourceTile>> rows = this.getCreatedTiles();
+			int left = Integer.MAX_VALUE;
+			for(ArrayList<ResourceTile> row: rows)
+			{
+				left = Math.min(left, 2 * row.get(0).getQ() + row.get(0).getR());
+			}
+			StringBuilder output = new StringBuilder();
+			for(ArrayList<ResourceTile> row: rows)
+			{
+				if(output.length() > 0)
+				{
+					output.append('\n');
+				}
+				int column = 0;
+				for(ResourceTile t: row)
+				{
+					for(int target = 2 * t.getQ() + t.getR() - left; column < target; column++)
+					{
+						output.append(' ');
+					}
+					output.append(t.toString());
+					column++;
+				}
+			}
+			return output.toString();
+		}
+		String[] output = new String[this.diameter];
+		
+		int i = 0;
+		int padding = this.radius -1;
 		
 		for(ArrayList<ResourceTile> row:this.resourceTiles)
 		{
@@ -481,11 +1049,11 @@ public class Game
 	
 	/**
 	 * This was useful in early development. I am uncertain if it has any long term benefit but will be leaving it in for the time being.
-	 * @return	The count of tiles in the game
+	 * @return	The count of tiles in the game, or on a lazy map the count of tiles created so far
 	 */
 	public int getTileCount()
 	{
-		return this.tileCount;
+		return this.lazy?this.grid.size():this.tileCount;
 	}
 	
 	/**
@@ -495,49 +1063,535 @@ public class Game
 	 */
 	public double getResourceAvailable(ResourceTile.Resource resource)
 	{
-		return this.resourcesRemaining.get(resource);
+		return TileStore.toAmount(this.resourcesRemaining[resource.ordinal()]);
+	}
+	
+	/**
+	 * Determine the amount of a given resource that has been mined over the course of the game, whether it was spent or not
+	 * @param resource	The resource to get the mined amount of
+	 * @return			The amount of the given resource mined
+	 */
+	public double getResourceMined(ResourceTile.Resource resource)
+	{
+		return TileStore.toAmount(this.resourcesMined[resource.ordinal()]);
+	}
+
+	/**
+	 * Getter for the number of tiles still being mined
+	 * @return	The number of tiles in the active set
+	 */
+	public int getActiveTileCount()
+	{
+		return this.activeTiles.size();
+	}
+
+	/**
+	 * Getter for the running totals of the map a chunk of tiles at a time, for drawing the map zoomed out or anything else that wants to know about the map as a
+	 * whole without going through every tile
+	 * @return	The chunks, up to date as of the current tick
+	 */
+	public MapChunks getChunks()
+	{
+		this.synchronise();
+		return this.tileStore.getChunks();
+	}
+
+	/**
+	 * Determine the amount of a given resource left in the ground across the whole map, explored or not. On a lazy map that's only the tiles created so far.
+	 * @param resource	The resource
+	 * @return			The amount left
+	 */
+	public double getResourceReserves(ResourceTile.Resource resource)
+	{
+		return TileStore.toAmount(this.getChunks().getTotalRemaining(resource.ordinal()));
+	}
+
+	/**
+	 * Determine the amount of a given resource being mined per tick across the whole map
+	 * @param resource	The resource
+	 * @return			The amount mined per tick
+	 */
+	public double getExtractionRate(ResourceTile.Resource resource)
+	{
+		return TileStore.toAmount(this.getChunks().getTotalRate(resource.ordinal()));
+	}
+
+	/**
+	 * Go through every tile whose state has changed since this was last called, for a view of the map to redraw just those. A tile has changed if it has been
+	 * mined, explored, retired or given new rates, so while the map is big and little is going on, this is far fewer tiles than the map has.
+	 * @param action	What to do with the id of each changed tile
+	 */
+	public void forEachChangedTile(IntConsumer action)
+	{
+		this.synchronise();
+		// mining doesn't mark tiles as it goes, but every tile mined since the last call is either still active or was marked when it was retired
+		for(int i = 0; i < this.activeTiles.size(); i++)
+		{
+			this.tileStore.markDirty(this.activeTiles.get(i));
+		}
+		for(int i = this.tileStore.pollDirty(TileStore.VIEW, 0); i >= 0; i = this.tileStore.pollDirty(TileStore.VIEW, i + 1))
+		{
+			action.accept(i);
+		}
+	}
+
+	/**
+	 * Forget every change forEachChangedTile would otherwise report, for when the whole map has just been drawn
+	 */
+	public void forgetChangedTiles()
+	{
+		this.tileStore.clearDirty(TileStore.VIEW);
+	}
+
+	/**
+	 * Getter for the number of tiles the last tick processed
+	 * @return	The number of tiles processed
+	 */
+	public int getTilesProcessedLastTick()
+	{
+		return this.tilesProcessedLastTick;
+	}
+	
+	/**
+	 * Set how ticks are processed. Both modes produce exactly the same results, parallel mode just spreads the work across the tick pool.
+	 * @param tickMode	The mode to process ticks in
+	 */
+	public void setTickMode(TickMode tickMode)
+	{
+		if(tickMode == this.tickMode)
+		{
+			return;
+		}
+		if(this.tickMode == TickMode.EVENT)
+		{
+			this.stopScheduling();
+		}
+		this.tickMode = tickMode;
+		if(tickMode == TickMode.EVENT)
+		{
+			this.startScheduling();
+		}
+	}
+
+	/**
+	 * Getter for how ticks are processed
+	 * @return	The tick mode
+	 */
+	public TickMode getTickMode()
+	{
+		return this.tickMode;
+	}
+
+	/**
+	 * Set the pool parallel ticks are run on. Defaults to the common pool.
+	 * @param tickPool	The pool to run the shards of a tick on
+	 */
+	public void setTickPool(ForkJoinPool tickPool)
+	{
+		this.tickPool = tickPool;
 	}
 	
 	/**
 	 * This method processes the passage of arbitrary time. What a tick is is largely irrelevant. During a tick, resources get mined and added to the total.
 	 * Implementing the movement of resources, rather than the instantaneous acquisition of them, is relatively high priority but needs to come after research.
+	 * Only tiles in the active set are processed. The set is cut into fixed size shards which mine their tiles into their own accumulators, either in turn or in
+	 * parallel depending on the tick mode. The shards are then merged in order: their totals go into the ledger, the tiles that ran dry are retired from the
+	 * active set and the tiles their depletion opened up are explored, so a tile reachable from two depleted neighbours is only ever admitted once.
+	 * Each tick is measured by GameMetrics while it's enabled, and recorded as a TickEvent while Flight Recorder has them turned on, which by default it doesn't.
+	 * @see TickShard
 	 */
 	public void processTick()
 	{
-		ArrayList<ResourceTile> newlyDiscoveredNeighbouringTiles = new ArrayList<ResourceTile>();
-		for(ResourceTile t: this.discoveredTiles)
+		TickEvent event = new TickEvent();
+		if(!event.isEnabled())
+		{
+			// even the timestamps an event takes cost as much as a small tick, so they're only taken while ticks are being recorded
+			this.measureTick();
+			return;
+		}
+		event.begin();
+		long admitted = this.tilesAdmitted;
+		long retired = this.tilesRetired;
+		this.measureTick();
+		event.end();
+		if(event.shouldCommit())
+		{
+			event.tick = this.tick;
+			event.mode = this.tickMode.name();
+			event.tilesProcessed = this.tilesProcessedLastTick;
+			event.discoveries = (int)(this.tilesAdmitted - admitted);
+			event.depletions = (int)(this.tilesRetired - retired);
+			event.activeTiles = this.activeTiles.size();
+			event.commit();
+		}
+	}
+
+	/**
+	 * Process a tick, measuring it if GameMetrics is enabled
+	 */
+	private void measureTick()
+	{
+		GameMetrics metrics = GameMetrics.get();
+		if(!metrics.isEnabled())
+		{
+			this.runTick();
+			return;
+		}
+		long allocated = metrics.allocatedBytes();
+		long start = metrics.start();
+		this.runTick();
+		metrics.stopTick(start, allocated, this.tilesProcessedLastTick, this.activeTiles.size());
+	}
+
+	/**
+	 * Process a tick in whichever mode the game is in
+	 */
+	private void runTick()
+	{
+		if(this.tickMode == TickMode.EVENT)
+		{
+			this.processEventTick();
+			return;
+		}
+		ActiveTileSet active = this.activeTiles;
+		int size = active.size();
+		int shardCount = (size + SHARD_SIZE - 1) / SHARD_SIZE;
+		if(shardCount > this.shards.length)
+		{
+			TickShard[] shards = new TickShard[shardCount];
+			System.arraycopy(this.shards, 0, shards, 0, this.shards.length);
+			for(int i = this.shards.length; i < shardCount; i++)
+			{
+				shards[i] = new TickShard(this.tileStore, this.grid);
+			}
+			this.shards = shards;
+		}
+		for(int i = 0; i < shardCount; i++)
+		{
+			this.shards[i].prepare(active, i * SHARD_SIZE, Math.min(size, (i + 1) * SHARD_SIZE), this.discoveredMask);
+		}
+		this.tilesProcessedLastTick = size;
+		
+		if(this.tickMode == TickMode.PARALLEL && shardCount > 1)
+		{
+			// hand all but the first shard to the pool and do that one ourselves while we wait
+			this.tileStore.setConcurrent(true);
+			try
+			{
+				for(int i = 1; i < shardCount; i++)
+				{
+					this.tickPool.execute(this.shards[i]);
+				}
+				this.shards[0].process();
+				for(int i = 1; i < shardCount; i++)
+				{
+					this.shards[i].join();
+				}
+			}
+			finally
+			{
+				this.tileStore.setConcurrent(false);
+			}
+		}
+		else
+		{
+			for(int i = 0; i < shardCount; i++)
+			{
+				this.shards[i].process();
+			}
+		}
+		
+		for(int i = 0; i < shardCount; i++)
+		{
+			this.mergeShard(this.shards[i]);
+		}
+		this.tick++;
+	}
+
+	/**
+	 * Fold the results of a processed shard back into the game
+	 * @param shard	The shard to merge
+	 */
+	private void mergeShard(TickShard shard)
+	{
+		for(int r = 0; r < TileStore.RESOURCE_COUNT; r++)
 		{
-			boolean allKnownResourcesDepleted = true;
-			for(ResourceTile.Resource r:ResourceTile.Resource.values())
+			this.resourcesMined[r] += shard.mined[r];
+			this.resourcesRemaining[r] += shard.mined[r];
+		}
+		// a retired tile was mined up until now, but won't be in the active set for the journal to find
+		for(int i = 0; i < shard.retiredCount; i++)
+		{
+			this.activeTiles.remove(shard.retired[i]);
+			this.tileStore.stopMining(shard.retired[i]);
+			this.tilesRetired++;
+			this.tileStore.markDirty(shard.retired[i]);
+		}
+		for(int i = 0; i < shard.depletedCount; i++)
+		{
+			// two depleted tiles can share an unexplored neighbour, the first to be merged gets it, and once it's admitted it is no longer unexplored
+			for(ResourceTile t: this.grid.get(shard.depleted[i]).getUnexploredNeighbours())
 			{
-				if(this.isResourceDiscovered(r) && t.hasResource(r))
+				this.admitTile(t);
+			}
+		}
+	}
+
+	/**
+	 * Explore a newly discovered tile and start mining it
+	 * @param t	The tile
+	 */
+	private void admitTile(ResourceTile t)
+	{
+		t.explore();
+		this.activeTiles.add(t.getId());
+		this.tilesAdmitted++;
+		for(ResourceTile.Resource r:this.discoveredResources.keySet())
+		{
+			t.setResourceExtractionRate(r, BASIC_EXTRACTION_RATE);
+		}
+		this.tileStore.startMining(t.getId(), this.discoveredMask);
+	}
+
+	/**
+	 * Getter for the number of ticks that have passed since the game began
+	 * @return	The current tick
+	 */
+	public long getTick()
+	{
+		return this.tick;
+	}
+
+	/**
+	 * Advance the game by a number of ticks in one go, leaving it in exactly the same state as calling processTick that many times would.
+	 * Extraction is linear, each tick takes the smaller of what is left and the rate, so how much a tile gives up over any stretch of ticks, and the tick on which
+	 * it runs dry, can be worked out directly. Each active tile's depletion tick goes into a queue and the depletions are then played out in order: the tile is
+	 * brought up to its depletion tick, retired, and the tiles it opens up are explored and queued from that tick. Once there are no depletions left inside the
+	 * stretch, everything still active is brought up to the end of it. The cost is proportional to the tiles involved rather than the number of ticks, which is
+	 * what makes catching up on hours of offline progress cheap.
+	 * @param ticks	The number of ticks to advance by
+	 */
+	public void advance(long ticks)
+	{
+		if(ticks <= 0)
+		{
+			return;
+		}
+		if(ticks == 1)
+		{
+			// not worth setting up the queue for
+			this.processTick();
+			return;
+		}
+		if(this.depletionScheduler != null)
+		{
+			// the event scheduler's queue only looks ahead from tick to tick, so bring everything up to date, jump, and start it again from there
+			this.stopScheduling();
+			this.advance(ticks);
+			this.startScheduling();
+			return;
+		}
+		long end = this.tick + ticks;
+		// the tick each tile's state was last brought up to
+		long[] settledAt = new long[this.tileStore.getCapacity()];
+		DepletionQueue queue = new DepletionQueue(this.activeTiles.size());
+		for(int i = 0; i < this.activeTiles.size(); i++)
+		{
+			int id = this.activeTiles.get(i);
+			settledAt[id] = this.tick;
+			this.scheduleDepletion(queue, id, this.tick);
+		}
+
+		ArrayList<ResourceTile> opened = new ArrayList<ResourceTile>();
+		while(!queue.isEmpty() && queue.peekTick() <= end)
+		{
+			long depletedAt = queue.peekTick();
+			int id = queue.pop();
+			this.settleTile(id, depletedAt - settledAt[id]);
+			this.activeTiles.remove(id);
+			this.tileStore.stopMining(id);
+			this.tilesRetired++;
+			this.tileStore.markDirty(id);
+			ResourceTile t = this.grid.get(id);
+			if(!t.isDepleted())
+			{
+				t.markDepleted();
+				opened.clear();
+				// this tile's neighbours are explored at the end of the tick it ran dry on, and first mined on the one after
+				for(ResourceTile neighbour: t.getUnexploredNeighbours())
 				{
-					double amountProcessed = t.processResource(r);
-					this.resourcesMined.put(r, this.resourcesMined.get(r) + amountProcessed);
-					this.resourcesRemaining.put(r,  this.resourcesRemaining.get(r) + amountProcessed);
-					if(t.getAvailableResource(r) > 0.0)
+					this.admitTile(neighbour);
+					if(neighbour.getId() >= settledAt.length)
 					{
-						allKnownResourcesDepleted = false;
+						// on a lazy map the neighbour may only just have been created
+						settledAt = Arrays.copyOf(settledAt, Math.max(neighbour.getId() + 1, settledAt.length * 2));
 					}
+					settledAt[neighbour.getId()] = depletedAt;
+					opened.add(neighbour);
+				}
+				for(ResourceTile neighbour: opened)
+				{
+					this.scheduleDepletion(queue, neighbour.getId(), depletedAt);
 				}
 			}
-			if(allKnownResourcesDepleted && !t.isDepleted())
+		}
+
+		for(int i = 0; i < this.activeTiles.size(); i++)
+		{
+			int id = this.activeTiles.get(i);
+			this.settleTile(id, end - settledAt[id]);
+		}
+		this.tick = end;
+	}
+
+	/**
+	 * Queue a tile by the tick on which it will run out of everything known
+	 * @param queue		The queue to add it to
+	 * @param id		The id of the tile
+	 * @param from		The tick the tile's state is correct as of
+	 */
+	private void scheduleDepletion(DepletionQueue queue, int id, long from)
+	{
+		long ticks = this.tileStore.ticksToDeplete(id, this.discoveredMask);
+		if(ticks != Long.MAX_VALUE)
+		{
+			queue.push(from + ticks, id);
+		}
+	}
+
+	/**
+	 * Extract a number of ticks' worth of every known resource from a tile in one go, adding it to the ledger
+	 * @param id	The id of the tile
+	 * @param ticks	The number of ticks
+	 */
+	private void settleTile(int id, long ticks)
+	{
+		int mask = this.tileStore.getPresentMask(id) & this.discoveredMask;
+		while(mask != 0)
+		{
+			int r = Integer.numberOfTrailingZeros(mask);
+			mask &= mask - 1;
+			long taken = this.tileStore.extract(id, r, ticks);
+			this.resourcesMined[r] += taken;
+			this.resourcesRemaining[r] += taken;
+		}
+	}
+
+	/**
+	 * Set the rate at which a resource is extracted from a tile. This should be used over setting it on the tile directly while the game is running, since in event
+	 * mode the tile's events have to be rescheduled, which is done for that tile alone.
+	 * @param tile		The tile
+	 * @param resource	The resource
+	 * @param rate		The amount to extract per tick
+	 */
+	public void setExtractionRate(ResourceTile tile, ResourceTile.Resource resource, double rate)
+	{
+		int id = tile.getId();
+		if(this.depletionScheduler == null || !this.activeTiles.contains(id))
+		{
+			tile.setResourceExtractionRate(resource, rate);
+			return;
+		}
+		int mask = this.discoveredMask;
+		this.depletionScheduler.settle(id, this.tick, mask, this.ledgerCorrections);
+		this.applyLedgerCorrections();
+		int affected = this.tileStore.getPresentMask(id) & mask & (1 << resource.ordinal());
+		this.depletionScheduler.adjustAggregate(id, affected, -1);
+		tile.setResourceExtractionRate(resource, rate);
+		this.depletionScheduler.adjustAggregate(id, affected, 1);
+		this.depletionScheduler.schedule(id, this.tick, mask);
+	}
+
+	/**
+	 * Process a tick in event mode. The ledger is credited at the aggregate rate and only the tiles with an event due this tick are touched.
+	 * A tile with an event due is brought up to date. If it still has something known it is requeued, otherwise it is retired just as it would be in the other
+	 * modes and the tiles it opens up start being tracked from this tick.
+	 */
+	private void processEventTick()
+	{
+		DepletionScheduler scheduler = this.depletionScheduler;
+		int mask = this.discoveredMask;
+		long now = this.tick + 1;
+		int processed = 0;
+		scheduler.accrue(this.resourcesMined, this.resourcesRemaining);
+		for(int id = scheduler.nextDue(now); id >= 0; id = scheduler.nextDue(now))
+		{
+			processed++;
+			scheduler.settle(id, now, mask, this.ledgerCorrections);
+			if((this.tileStore.getPresentMask(id) & mask) != 0)
+			{
+				scheduler.schedule(id, now, mask);
+				continue;
+			}
+			scheduler.untrack(id, mask);
+			this.activeTiles.remove(id);
+			this.tileStore.stopMining(id);
+			this.tilesRetired++;
+			this.tileStore.markDirty(id);
+			ResourceTile t = this.grid.get(id);
+			if(!t.isDepleted())
 			{
 				t.markDepleted();
 				for(ResourceTile neighbour: t.getUnexploredNeighbours())
 				{
-					newlyDiscoveredNeighbouringTiles.add(neighbour);
+					this.admitTile(neighbour);
+					scheduler.track(neighbour.getId(), now, mask);
 				}
 			}
 		}
-		for(ResourceTile t: newlyDiscoveredNeighbouringTiles)
+		this.applyLedgerCorrections();
+		this.tilesProcessedLastTick = processed;
+		this.tick = now;
+	}
+
+	/**
+	 * Add the corrections accumulated while settling tiles to the ledger and clear them
+	 */
+	private void applyLedgerCorrections()
+	{
+		for(int r = 0; r < TileStore.RESOURCE_COUNT; r++)
 		{
-			t.explore();
-			this.discoveredTiles.add(t);
-			for(ResourceTile.Resource r:this.discoveredResources.keySet())
-			{
-				t.setResourceExtractionRate(r, BASIC_EXTRACTION_RATE);
-			}
+			this.resourcesMined[r] += this.ledgerCorrections[r];
+			this.resourcesRemaining[r] += this.ledgerCorrections[r];
+			this.ledgerCorrections[r] = 0;
+		}
+	}
+
+	/**
+	 * Start tracking every active tile in a new depletion scheduler, for switching into event mode
+	 */
+	private void startScheduling()
+	{
+		this.depletionScheduler = new DepletionScheduler(this.tileStore, this.tileStore.getCapacity());
+		for(int i = 0; i < this.activeTiles.size(); i++)
+		{
+			this.depletionScheduler.track(this.activeTiles.get(i), this.tick, this.discoveredMask);
+		}
+	}
+
+	/**
+	 * Bring every tile up to date and drop the depletion scheduler, for switching out of event mode
+	 */
+	private void stopScheduling()
+	{
+		this.synchronise();
+		this.depletionScheduler = null;
+	}
+
+	/**
+	 * In event mode tiles are left as they were when they were last settled, so bring every active tile up to the current tick. Nothing is rescheduled, since
+	 * bringing a tile up to date doesn't change when its next event is due. In the other modes the tiles are always up to date and this does nothing.
+	 */
+	public void synchronise()
+	{
+		if(this.depletionScheduler == null)
+		{
+			return;
+		}
+		for(int i = 0; i < this.activeTiles.size(); i++)
+		{
+			this.depletionScheduler.settle(this.activeTiles.get(i), this.tick, this.discoveredMask, this.ledgerCorrections);
 		}
+		this.applyLedgerCorrections();
 	}
 }
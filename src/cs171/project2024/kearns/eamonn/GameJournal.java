@@ -0,0 +1,409 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Autosaves a game by only writing down what has changed since the last autosave, so it can be done every few seconds however big the map is.
+ * A journal goes along with a snapshot. Each call to append adds an entry to the end of the journal holding the tiles that have changed since the one before,
+ * as the tile store tracks them, how much each ledger has moved by, the tiles being mined and the researches if one has been bought, so what an autosave costs
+ * is down to how much has happened rather than how big the map is. Once the journal gets as big as the snapshot it's compacted: a fresh snapshot is written and
+ * the journal starts again from it. In order the journal is:
+ *
+ * the header	MAGIC, VERSION and the checksum of the snapshot the journal carries on from, followed by a checksum of the header
+ * each entry	the number of bytes in the entry between this and its checksum, the tick, the discovered resources, the tick mode, the change in each of the
+ * 				ledgers, each changed tile's index followed by the tile as GameSnapshot.writeTile writes it, ending with -1, the tiles being mined as
+ * 				GameSnapshot.writeActiveTiles writes them, whether a research has been bought and if so the researches, then a CRC32C of the entry
+ *
+ * To recover, the snapshot is loaded and the entries played back over it in order. An entry is written before its length is filled in, so an entry cut short
+ * by a crash has a length of 0 or a checksum that doesn't match, and play back stops at the last whole entry. A journal whose header names a different snapshot
+ * is left over from before a compaction that crashed after the new snapshot was in place, and is ignored since the snapshot already has everything in it.
+ * @see GameSnapshot
+ */
+public class GameJournal implements Closeable
+{
+	/**
+	 * The first four bytes of every journal, "HEXJ"
+	 */
+	final static int MAGIC = 0x4A584548;
+	/**
+	 * The version of the format this writes
+	 */
+	final static int VERSION = 1;
+	/**
+	 * The number of bytes in the header, not counting its checksum
+	 */
+	private final static int HEADER_SIZE = 3 * Integer.BYTES;
+	/**
+	 * The number of bytes at the start of every entry before its tiles
+	 */
+	private final static int ENTRY_HEADER_SIZE = Long.BYTES + Integer.BYTES + 1 + 2 * TileStore.RESOURCE_COUNT * Long.BYTES;
+
+	/**
+	 * The game being journalled
+	 */
+	private final Game game;
+	/**
+	 * Where the snapshot is written
+	 */
+	private final Path snapshot;
+	/**
+	 * Where the journal is written
+	 */
+	private final Path journal;
+	/**
+	 * How big the journal can get, as a fraction of the size of the snapshot, before it's compacted
+	 */
+	private double compactionRatio = 1.0;
+	/**
+	 * The journal file, open at its end
+	 */
+	private FileChannel channel;
+	/**
+	 * Streams entries out to the journal
+	 */
+	private SnapshotWriter out;
+	/**
+	 * The size of the last snapshot in bytes
+	 */
+	private long snapshotSize;
+	/**
+	 * The amount of each resource that had been mined as of the last entry, to work out what's changed
+	 */
+	private final long[] mined = new long[TileStore.RESOURCE_COUNT];
+	/**
+	 * The amount of each resource that was available as of the last entry
+	 */
+	private final long[] remaining = new long[TileStore.RESOURCE_COUNT];
+	/**
+	 * Holds an entry's length while it's filled in
+	 */
+	private final ByteBuffer length = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+	/**
+	 * Constructor, starts off by writing a snapshot of the game and an empty journal to go with it
+	 * @param game		The game to journal
+	 * @param snapshot	Where to write snapshots
+	 * @param journal	Where to write the journal
+	 * @throws IOException
+	 */
+	public GameJournal(Game game, Path snapshot, Path journal) throws IOException
+	{
+		this.game = game;
+		this.snapshot = snapshot;
+		this.journal = journal;
+		this.checkpoint();
+	}
+
+	/**
+	 * Work out where the journal for a snapshot goes by default, which is alongside it
+	 * @param snapshot	The snapshot
+	 * @return			The snapshot's path with .journal on the end
+	 */
+	public static Path journalFor(Path snapshot)
+	{
+		return snapshot.resolveSibling(snapshot.getFileName() + ".journal");
+	}
+
+	/**
+	 * Set how big the journal can get before it's compacted into a new snapshot. Play back has to read all of it, so the bigger it gets the slower recovery is.
+	 * @param compactionRatio	The size as a fraction of the size of the snapshot, 1 by default
+	 */
+	public void setCompactionRatio(double compactionRatio)
+	{
+		this.compactionRatio = compactionRatio;
+	}
+
+	/**
+	 * Write everything that has changed since the last entry to the end of the journal, compacting it if it has grown too big. In event mode every tile being
+	 * mined is brought up to date first, so they all count as changed.
+	 * @throws IOException
+	 */
+	public void append() throws IOException
+	{
+		this.game.synchronise();
+		long start = this.channel.position();
+		this.channel.position(start + Integer.BYTES);
+
+		ByteBuffer buffer = this.out.reserve(ENTRY_HEADER_SIZE);
+		buffer.putLong(this.game.getTick());
+		buffer.putInt(this.game.getDiscoveredMask());
+		buffer.put((byte)this.game.getTickMode().ordinal());
+		long[] mined = this.game.getMinedUnits();
+		long[] remaining = this.game.getRemainingUnits();
+		for(int r = 0; r < TileStore.RESOURCE_COUNT; r++)
+		{
+			buffer.putLong(mined[r] - this.mined[r]);
+			buffer.putLong(remaining[r] - this.remaining[r]);
+		}
+		System.arraycopy(mined, 0, this.mined, 0, TileStore.RESOURCE_COUNT);
+		System.arraycopy(remaining, 0, this.remaining, 0, TileStore.RESOURCE_COUNT);
+
+		// mining doesn't mark tiles as it goes, but every tile that has been mined since the last entry is either still active or was marked when it depleted
+		TileStore store = this.game.getTileStore();
+		ActiveTileSet active = this.game.getActiveTiles();
+		for(int i = 0; i < active.size(); i++)
+		{
+			store.markDirty(active.get(i));
+		}
+		for(int i = store.pollDirty(TileStore.JOURNAL, 0); i >= 0; i = store.pollDirty(TileStore.JOURNAL, i + 1))
+		{
+			buffer = this.out.reserve(Integer.BYTES + GameSnapshot.MAXIMUM_TILE_SIZE);
+			buffer.putInt(i);
+			GameSnapshot.writeTile(buffer, this.game, i);
+		}
+		this.out.reserve(Integer.BYTES).putInt(-1);
+
+		GameSnapshot.writeActiveTiles(this.game, this.out);
+		boolean researchesChanged = this.game.takeResearchesChanged();
+		this.out.reserve(1).put((byte)(researchesChanged?1:0));
+		if(researchesChanged)
+		{
+			GameSnapshot.writeResearches(this.game, this.out);
+		}
+		this.out.finish();
+
+		// only now the entry is all there does it get a length, so one cut short reads as the end of the journal
+		long end = this.channel.position();
+		this.length.clear();
+		this.length.putInt((int)(end - start - 2 * Integer.BYTES)).flip();
+		while(this.length.hasRemaining())
+		{
+			this.channel.write(this.length, start + this.length.position());
+		}
+		this.channel.force(false);
+
+		if(end > this.snapshotSize * this.compactionRatio)
+		{
+			this.checkpoint();
+		}
+	}
+
+	/**
+	 * Write a full snapshot of the game and start the journal again from it. The new snapshot and journal are each written alongside the old ones and moved
+	 * over them, so a crash at any point leaves a snapshot and journal that recover to the game as it was at one autosave or another.
+	 * @throws IOException
+	 */
+	public void checkpoint() throws IOException
+	{
+		this.game.synchronise();
+		int checksum = GameSnapshot.write(this.game, this.snapshot);
+		this.snapshotSize = Files.size(this.snapshot);
+		this.game.getTileStore().clearDirty(TileStore.JOURNAL);
+		this.game.takeResearchesChanged();
+		System.arraycopy(this.game.getMinedUnits(), 0, this.mined, 0, TileStore.RESOURCE_COUNT);
+		System.arraycopy(this.game.getRemainingUnits(), 0, this.remaining, 0, TileStore.RESOURCE_COUNT);
+
+		if(this.channel != null)
+		{
+			this.channel.close();
+		}
+		Path temporary = this.journal.resolveSibling(this.journal.getFileName() + ".tmp");
+		try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			SnapshotWriter header = new SnapshotWriter(channel);
+			header.reserve(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).putInt(checksum);
+			header.finish();
+			channel.force(false);
+		}
+		Files.move(temporary, this.journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		this.channel = FileChannel.open(this.journal, StandardOpenOption.WRITE);
+		this.channel.position(this.channel.size());
+		this.out = new SnapshotWriter(this.channel);
+	}
+
+	/**
+	 * Closes the journal. Everything up to the last entry is already on disk, so nothing is lost that an append hadn't already been asked for.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		this.channel.close();
+	}
+
+	/**
+	 * Get a game back as it was at the last entry that made it into its journal
+	 * @param snapshot	The snapshot
+	 * @param journal	The journal, which needn't exist, in which case this is the same as loading the snapshot
+	 * @return			The game
+	 * @throws IOException	If the snapshot can't be loaded, or the journal isn't one or has been corrupted somewhere other than at its end
+	 */
+	public static Game recover(Path snapshot, Path journal) throws IOException
+	{
+		return recover(snapshot, journal, new HeapTileStore(64));
+	}
+
+	/**
+	 * Get a game back as it was at the last entry that made it into its journal, keeping its tiles' resource state in a store of the caller's choosing
+	 * @param snapshot	The snapshot
+	 * @param journal	The journal, which needn't exist
+	 * @param tileStore	The store
+	 * @return			The game
+	 * @throws IOException	If the snapshot can't be loaded, or the journal isn't one or has been corrupted somewhere other than at its end
+	 */
+	public static Game recover(Path snapshot, Path journal, TileStore tileStore) throws IOException
+	{
+		Game game = GameSnapshot.read(snapshot, tileStore);
+		if(!Files.exists(journal))
+		{
+			return game;
+		}
+		try(FileChannel channel = FileChannel.open(journal, StandardOpenOption.READ))
+		{
+			SnapshotReader in = new SnapshotReader(channel);
+			ByteBuffer buffer = in.require(HEADER_SIZE);
+			if(buffer.getInt() != MAGIC)
+			{
+				throw new IOException(journal + " isn't a journal");
+			}
+			int version = buffer.getInt();
+			if(version != VERSION)
+			{
+				throw new IOException("The journal was written in version " + version + " of the format, which this version of the game can't read");
+			}
+			int base = buffer.getInt();
+			if(!in.verify())
+			{
+				throw new IOException("The journal " + journal + " is corrupt");
+			}
+			if(base != GameSnapshot.checksum(snapshot))
+			{
+				return game;
+			}
+
+			// the whole of every entry is checked before any of them are played back, so a torn one is never half applied
+			int entries = countEntries(channel);
+			TickMode tickMode = game.getTickMode();
+			game.setTickMode(TickMode.SEQUENTIAL);
+			try
+			{
+				for(int i = 0; i < entries; i++)
+				{
+					in.require(Integer.BYTES).getInt();
+					tickMode = readEntry(in, game);
+					in.require(Integer.BYTES).getInt();
+				}
+			}
+			catch(RuntimeException e)
+			{
+				throw new IOException("The journal " + journal + " is corrupt", e);
+			}
+			game.setTickMode(tickMode);
+			return game;
+		}
+	}
+
+	/**
+	 * Play an entry back over a game
+	 * @param in	Where to read the entry from, just after its length
+	 * @param game	The game
+	 * @return		The tick mode the game was in when the entry was written
+	 * @throws IOException
+	 */
+	private static TickMode readEntry(SnapshotReader in, Game game) throws IOException
+	{
+		ByteBuffer buffer = in.require(ENTRY_HEADER_SIZE);
+		long tick = buffer.getLong();
+		int discoveredMask = buffer.getInt();
+		TickMode tickMode = TickMode.values()[buffer.get()];
+		long[] mined = game.getMinedUnits();
+		long[] remaining = game.getRemainingUnits();
+		for(int r = 0; r < TileStore.RESOURCE_COUNT; r++)
+		{
+			mined[r] += buffer.getLong();
+			remaining[r] += buffer.getLong();
+		}
+
+		// a lazy map's new tiles come in the order they were created, so each is the next to be created again
+		HexGrid<ResourceTile> grid = game.getGrid();
+		for(int i = in.require(Integer.BYTES).getInt(); i >= 0; i = in.require(Integer.BYTES).getInt())
+		{
+			if(i > grid.size() || (i == grid.size() && !game.isLazy()))
+			{
+				throw new IOException("A changed tile in the journal isn't on the map");
+			}
+			GameSnapshot.readTile(in, game, i);
+		}
+
+		GameSnapshot.readActiveTiles(in, game);
+		if(in.require(1).get() != 0)
+		{
+			GameSnapshot.readResearches(in, game);
+		}
+		game.restore(tick, discoveredMask);
+		return tickMode;
+	}
+
+	/**
+	 * Count the entries at the start of the journal that are all there and match their checksums, reading the file directly rather than through the reader
+	 * @param channel	The journal
+	 * @return			The number of entries
+	 * @throws IOException
+	 */
+	private static int countEntries(FileChannel channel) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocateDirect(SnapshotWriter.BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		CRC32C checksum = new CRC32C();
+		long size = channel.size();
+		long position = HEADER_SIZE + Integer.BYTES;
+		int entries = 0;
+		while(position + 2 * Integer.BYTES <= size)
+		{
+			int length = readInt(channel, buffer, position);
+			if(length <= 0 || position + 2 * Integer.BYTES + length > size)
+			{
+				break;
+			}
+			checksum.reset();
+			for(long at = position + Integer.BYTES, end = at + length; at < end;)
+			{
+				buffer.clear().limit((int)Math.min(buffer.capacity(), end - at));
+				int read = channel.read(buffer, at);
+				if(read < 0)
+				{
+					throw new EOFException("The journal ends part way through");
+				}
+				buffer.flip();
+				checksum.update(buffer);
+				at += read;
+			}
+			if(readInt(channel, buffer, position + Integer.BYTES + length) != (int)checksum.getValue())
+			{
+				break;
+			}
+			position += 2 * Integer.BYTES + length;
+			entries++;
+		}
+		return entries;
+	}
+
+	/**
+	 * Read a little endian int from a position in a file
+	 * @param channel	The file
+	 * @param buffer	Somewhere to read it into
+	 * @param position	The position of the int in the file
+	 * @return			The int
+	 * @throws IOException
+	 */
+	private static int readInt(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+	{
+		buffer.clear().limit(Integer.BYTES);
+		while(buffer.hasRemaining())
+		{
+			if(channel.read(buffer, position + buffer.position()) < 0)
+			{
+				throw new EOFException("The journal ends part way through");
+			}
+		}
+		return buffer.getInt(0);
+	}
+}
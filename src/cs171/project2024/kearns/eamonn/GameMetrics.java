@@ -0,0 +1,368 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Measurements of where the time goes: how long ticks, frames, drawing the map and generating it take, how many tiles each tick processes, how many are
+ * being mined and how much each tick allocates. There's one set of metrics for the whole process, registered with the platform MBean server under NAME so it
+ * can be watched over JMX, and the game and the UI record into it.
+ *
+ * Everything is off until it's enabled, with setEnabled, over JMX, or by starting the JVM with -Dcs171.metrics=true to measure the map being generated too.
+ * While it's off, timing something costs a read of the enabled flag and nothing else, no clock and no recording, so the calls can stay in the tick loop and
+ * the draw loop for good. The way to time something is to get a start from start, which is 0 while it's off, and hand it back to stop once it's done.
+ *
+ * Each phase is timed into its own LatencyHistogram, and each is only recorded into by the thread that runs that phase: ticks on the simulation thread and
+ * frames on the UI thread. Reading them from anywhere else, JMX included, may see them part way through a tick.
+ * @see LatencyHistogram
+ */
+public class GameMetrics implements GameMetricsMBean
+{
+	/**
+	 * The things that are timed
+	 */
+	public enum Phase
+	{
+		/**
+		 * A tick of the game
+		 */
+		TICK("Tick"),
+		/**
+		 * A frame being drawn
+		 */
+		FRAME("Frame"),
+		/**
+		 * The whole map being drawn from scratch after the camera has moved
+		 */
+		MAP_DRAW("Map draw"),
+		/**
+		 * The deposits being laid out over a new map
+		 */
+		DEPOSITS("Deposits"),
+		/**
+		 * A new map being carved into a maze
+		 */
+		MAZE("Maze");
+
+		/**
+		 * The name to show for the phase
+		 */
+		public final String label;
+
+		/**
+		 * Constructor
+		 * @param label	The name to show for the phase
+		 */
+		Phase(String label)
+		{
+			this.label = label;
+		}
+	}
+
+	/**
+	 * The name the metrics are registered with JMX under
+	 */
+	public final static String NAME = "cs171.project2024.kearns.eamonn:type=GameMetrics";
+	/**
+	 * The phases, cached because Phase.values() makes a new array every time it's called
+	 */
+	private final static Phase[] PHASES = Phase.values();
+	/**
+	 * The metrics for the process
+	 */
+	private final static GameMetrics METRICS = new GameMetrics();
+	static
+	{
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().registerMBean(METRICS, new ObjectName(NAME));
+		}
+		catch(JMException e)
+		{
+			System.err.println("The game's metrics couldn't be registered with JMX, they can still be seen in game");
+		}
+	}
+
+	/**
+	 * Whether or not anything is being measured
+	 */
+	private volatile boolean enabled = Boolean.getBoolean("cs171.metrics");
+	/**
+	 * How long each phase took, indexed by Phase.ordinal(), in nanoseconds
+	 */
+	private final LatencyHistogram[] times = new LatencyHistogram[PHASES.length];
+	/**
+	 * How much the thread running each tick allocated during it, in bytes
+	 */
+	private final LatencyHistogram tickAllocations = new LatencyHistogram();
+	/**
+	 * The number of tiles processed by the ticks measured
+	 */
+	private volatile long tilesProcessed;
+	/**
+	 * The number of tiles being mined after the last tick measured
+	 */
+	private volatile int frontierSize;
+	/**
+	 * For asking how much a thread has allocated, or null if the JVM can't say
+	 */
+	private final com.sun.management.ThreadMXBean threads;
+
+	/**
+	 * Constructor, private since there's only ever the one
+	 */
+	private GameMetrics()
+	{
+		for(int i = 0; i < this.times.length; i++)
+		{
+			this.times[i] = new LatencyHistogram();
+		}
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if(threads instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean)threads).isThreadAllocatedMemorySupported())
+		{
+			this.threads = (com.sun.management.ThreadMXBean)threads;
+		}
+		else
+		{
+			this.threads = null;
+		}
+	}
+
+	/**
+	 * Getter for the metrics
+	 * @return	The metrics for the process
+	 */
+	public static GameMetrics get()
+	{
+		return METRICS;
+	}
+
+	@Override
+	public boolean isEnabled()
+	{
+		return this.enabled;
+	}
+
+	@Override
+	public void setEnabled(boolean enabled)
+	{
+		if(enabled && this.threads != null)
+		{
+			this.threads.setThreadAllocatedMemoryEnabled(true);
+		}
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Start timing something
+	 * @return	The time it started, or 0 if nothing is being measured
+	 */
+	public long start()
+	{
+		return this.enabled?System.nanoTime():0;
+	}
+
+	/**
+	 * Stop timing something and record how long it took. If it was started while nothing was being measured, nothing is recorded.
+	 * @param phase	What was being timed
+	 * @param start	What start returned when it started
+	 */
+	public void stop(Phase phase, long start)
+	{
+		if(start != 0)
+		{
+			this.times[phase.ordinal()].record(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Find how much the current thread has allocated so far, for working out how much a tick allocates
+	 * @return	The number of bytes, or 0 if nothing is being measured or the JVM can't say
+	 */
+	long allocatedBytes()
+	{
+		return this.enabled && this.threads != null?this.threads.getCurrentThreadAllocatedBytes():0;
+	}
+
+	/**
+	 * Record a tick that has just finished
+	 * @param start		What start returned when it started
+	 * @param allocated	What allocatedBytes returned when it started
+	 * @param tiles		The number of tiles it processed
+	 * @param frontier	The number of tiles being mined after it
+	 */
+	void stopTick(long start, long allocated, int tiles, int frontier)
+	{
+		if(start == 0)
+		{
+			return;
+		}
+		this.times[Phase.TICK.ordinal()].record(System.nanoTime() - start);
+		if(this.threads != null && allocated != 0)
+		{
+			this.tickAllocations.record(this.threads.getCurrentThreadAllocatedBytes() - allocated);
+		}
+		this.tilesProcessed += tiles;
+		this.frontierSize = frontier;
+	}
+
+	/**
+	 * @param phase	A phase
+	 * @return		How long it has taken each time it has been measured, in nanoseconds
+	 */
+	public LatencyHistogram getTimes(Phase phase)
+	{
+		return this.times[phase.ordinal()];
+	}
+
+	/**
+	 * Getter for how much ticks allocate
+	 * @return	How much the thread running each tick allocated during it, in bytes
+	 */
+	public LatencyHistogram getTickAllocations()
+	{
+		return this.tickAllocations;
+	}
+
+	@Override
+	public void reset()
+	{
+		for(LatencyHistogram histogram: this.times)
+		{
+			histogram.reset();
+		}
+		this.tickAllocations.reset();
+		this.tilesProcessed = 0;
+	}
+
+	@Override
+	public long getTicks()
+	{
+		return this.getTimes(Phase.TICK).getCount();
+	}
+
+	@Override
+	public double getTickMeanNanos()
+	{
+		return this.getTimes(Phase.TICK).getMean();
+	}
+
+	@Override
+	public long getTickP99Nanos()
+	{
+		return this.getTimes(Phase.TICK).getValueAtPercentile(99);
+	}
+
+	@Override
+	public long getTickMaxNanos()
+	{
+		return this.getTimes(Phase.TICK).getMax();
+	}
+
+	@Override
+	public long getTilesProcessed()
+	{
+		return this.tilesProcessed;
+	}
+
+	@Override
+	public int getFrontierSize()
+	{
+		return this.frontierSize;
+	}
+
+	@Override
+	public double getTickMeanAllocatedBytes()
+	{
+		return this.threads == null?-1:this.tickAllocations.getMean();
+	}
+
+	@Override
+	public long getFrames()
+	{
+		return this.getTimes(Phase.FRAME).getCount();
+	}
+
+	@Override
+	public double getFrameMeanNanos()
+	{
+		return this.getTimes(Phase.FRAME).getMean();
+	}
+
+	@Override
+	public long getFrameP99Nanos()
+	{
+		return this.getTimes(Phase.FRAME).getValueAtPercentile(99);
+	}
+
+	@Override
+	public double getMapDrawMeanNanos()
+	{
+		return this.getTimes(Phase.MAP_DRAW).getMean();
+	}
+
+	@Override
+	public long getDepositGenerationNanos()
+	{
+		return this.getTimes(Phase.DEPOSITS).getTotal();
+	}
+
+	@Override
+	public long getMazeGenerationNanos()
+	{
+		return this.getTimes(Phase.MAZE).getTotal();
+	}
+
+	/**
+	 * Describe everything measured so far, a line per phase that has been measured, for the overlay and the headless runner
+	 * @return	The description
+	 */
+	public String describe()
+	{
+		StringBuilder description = new StringBuilder();
+		for(Phase phase: PHASES)
+		{
+			LatencyHistogram times = this.getTimes(phase);
+			if(times.getCount() == 0)
+			{
+				continue;
+			}
+			description.append(String.format("%-9s mean %9s  p50 %9s  p99 %9s  max %9s  (%d)%n", phase.label, formatNanos(times.getMean()),
+					formatNanos(times.getValueAtPercentile(50)), formatNanos(times.getValueAtPercentile(99)), formatNanos(times.getMax()), times.getCount()));
+		}
+		long ticks = this.getTicks();
+		if(ticks > 0)
+		{
+			description.append(String.format("Tiles     %.1f processed a tick, %d being mined%n", (double)this.tilesProcessed / ticks, this.frontierSize));
+			if(this.threads != null)
+			{
+				description.append(String.format("Allocated %.0f bytes a tick, at most %d%n", this.tickAllocations.getMean(), this.tickAllocations.getMax()));
+			}
+		}
+		return description.length() == 0?"Nothing measured yet\n":description.toString();
+	}
+
+	/**
+	 * @param nanos	A number of nanoseconds
+	 * @return		It in whichever unit reads best
+	 */
+	private static String formatNanos(double nanos)
+	{
+		if(nanos < 1e3)
+		{
+			return String.format("%.0fns", nanos);
+		}
+		if(nanos < 1e6)
+		{
+			return String.format("%.1fus", nanos / 1e3);
+		}
+		if(nanos < 1e9)
+		{
+			return String.format("%.1fms", nanos / 1e6);
+		}
+		return String.format("%.2fs", nanos / 1e9);
+	}
+}
@@ -0,0 +1,88 @@
+package cs171.project2024.kearns.eamonn;
+
+/**
+ * What GameMetrics shows over JMX, for watching a running game from JConsole or VisualVM. Times are in nanoseconds and amounts allocated are in bytes.
+ * @see GameMetrics
+ */
+public interface GameMetricsMBean
+{
+	/**
+	 * @return	Whether or not anything is being measured
+	 */
+	boolean isEnabled();
+
+	/**
+	 * @param enabled	Whether or not to measure anything
+	 */
+	void setEnabled(boolean enabled);
+
+	/**
+	 * Forget everything measured so far
+	 */
+	void reset();
+
+	/**
+	 * @return	The number of ticks measured
+	 */
+	long getTicks();
+
+	/**
+	 * @return	The mean time a tick took
+	 */
+	double getTickMeanNanos();
+
+	/**
+	 * @return	The time 99% of ticks took no longer than
+	 */
+	long getTickP99Nanos();
+
+	/**
+	 * @return	The longest a tick took
+	 */
+	long getTickMaxNanos();
+
+	/**
+	 * @return	The number of tiles processed by the ticks measured
+	 */
+	long getTilesProcessed();
+
+	/**
+	 * @return	The number of tiles being mined after the last tick measured
+	 */
+	int getFrontierSize();
+
+	/**
+	 * @return	The mean amount the thread running the ticks allocated during each, or -1 if the JVM can't say
+	 */
+	double getTickMeanAllocatedBytes();
+
+	/**
+	 * @return	The number of frames measured
+	 */
+	long getFrames();
+
+	/**
+	 * @return	The mean time a frame took to draw
+	 */
+	double getFrameMeanNanos();
+
+	/**
+	 * @return	The time 99% of frames took no longer than
+	 */
+	long getFrameP99Nanos();
+
+	/**
+	 * @return	The mean time it took to draw the whole map after the camera moved
+	 */
+	double getMapDrawMeanNanos();
+
+	/**
+	 * @return	The total time spent laying out deposits
+	 */
+	long getDepositGenerationNanos();
+
+	/**
+	 * @return	The total time spent carving mazes
+	 */
+	long getMazeGenerationNanos();
+}
@@ -0,0 +1,394 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.Map;
+
+import cs171.project2024.kearns.eamonn.ResourceTile.Resource;
+
+/**
+ * The binary format games are saved in.
+ * A snapshot holds everything needed to carry on exactly where the game left off, so a loaded game ticks on identically to the one that was saved. In order it
+ * is:
+ *
+ * the header		MAGIC, VERSION, the radius, the seed, the maze algorithm, whether the map is lazy, the tick mode, the tick, the discovered resources and the
+ * 					number of resources followed by the two ledgers, what's been mined and what's available, for each
+ * the tiles		the number of tiles, then for each in index order its coordinates if the map is lazy, a byte of flags, its connections and its resource state
+ * 					as written by TileStore.writeTile
+ * the active set	the number of tiles being mined, then their ids, in the set's own order
+ * the researches	the number of researches, then for each its name, level, whether it's complete and what it costs
+ * the checksum		a CRC32C of everything before it
+ *
+ * Everything is little endian and fixed point amounts are written as they're held, so nothing is lost in saving. Rather than reading the whole file in and then
+ * picking through it, the file is streamed through a direct buffer in both directions, which keeps saving and loading a big map down to about as long as the
+ * disk takes. A new snapshot is written alongside the old one and moved over it once it's complete, so a crash part way through a save never loses the last one.
+ * @see Game#save(Path)
+ * @see Game#load(Path)
+ */
+class GameSnapshot
+{
+	/**
+	 * The first four bytes of every snapshot, "HEXS"
+	 */
+	final static int MAGIC = 0x53584548;
+	/**
+	 * The version of the format this writes. Anything else is refused rather than misread.
+	 */
+	final static int VERSION = 1;
+	/**
+	 * The number of bytes in the header before the ledgers
+	 */
+	private final static int HEADER_SIZE = 5 * Integer.BYTES + 2 * Long.BYTES + 3;
+	/**
+	 * The most bytes writeTile can write for a single tile
+	 */
+	final static int MAXIMUM_TILE_SIZE = 2 * Integer.BYTES + 2 + TileStore.MAXIMUM_RECORD_SIZE;
+
+	/**
+	 * Write a game to a file
+	 * @param game	The game, which should be up to date
+	 * @param path	The file to write to, which is replaced if it's there
+	 * @return		The checksum the snapshot ends with, which a journal uses to tell which snapshot it carries on from
+	 * @throws IOException
+	 */
+	static int write(Game game, Path path) throws IOException
+	{
+		int checksum;
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+		try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			SnapshotWriter out = new SnapshotWriter(channel);
+			writeState(game, out);
+			checksum = out.finish();
+			channel.force(false);
+		}
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return checksum;
+	}
+
+	/**
+	 * Read the checksum a snapshot ends with, without reading the rest of it
+	 * @param path	The file
+	 * @return		The checksum
+	 * @throws IOException
+	 */
+	static int checksum(Path path) throws IOException
+	{
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			while(buffer.hasRemaining())
+			{
+				if(channel.read(buffer, channel.size() - buffer.remaining()) < 0)
+				{
+					throw new EOFException("The saved game " + path + " is too short to have a checksum");
+				}
+			}
+			return buffer.getInt(0);
+		}
+	}
+
+	/**
+	 * Write everything but the checksum
+	 * @param game	The game
+	 * @param out	Where to write it
+	 * @throws IOException
+	 */
+	static void writeState(Game game, SnapshotWriter out) throws IOException
+	{
+		HexGrid<ResourceTile> grid = game.getGrid();
+		boolean lazy = game.isLazy();
+
+		ByteBuffer buffer = out.reserve(HEADER_SIZE + 2 * TileStore.RESOURCE_COUNT * Long.BYTES);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(game.getRadius());
+		buffer.putLong(game.getSeed());
+		buffer.put((byte)game.getMazeAlgorithm().ordinal());
+		buffer.put((byte)(lazy?1:0));
+		buffer.put((byte)game.getTickMode().ordinal());
+		buffer.putLong(game.getTick());
+		buffer.putInt(game.getDiscoveredMask());
+		buffer.putInt(TileStore.RESOURCE_COUNT);
+		for(int r = 0; r < TileStore.RESOURCE_COUNT; r++)
+		{
+			buffer.putLong(game.getMinedUnits()[r]);
+			buffer.putLong(game.getRemainingUnits()[r]);
+		}
+
+		int size = grid.size();
+		out.reserve(Integer.BYTES).putInt(size);
+		for(int i = 0; i < size; i++)
+		{
+			writeTile(out.reserve(MAXIMUM_TILE_SIZE), game, i);
+		}
+
+		writeActiveTiles(game, out);
+		writeResearches(game, out);
+	}
+
+	/**
+	 * Write a tile: its coordinates if the map is lazy, its flags, its connections and its resource state
+	 * @param buffer	The buffer to write to, which needs MAXIMUM_TILE_SIZE bytes free
+	 * @param game		The game
+	 * @param i			The index of the tile
+	 */
+	static void writeTile(ByteBuffer buffer, Game game, int i)
+	{
+		HexGrid<ResourceTile> grid = game.getGrid();
+		ResourceTile t = grid.get(i);
+		if(game.isLazy())
+		{
+			buffer.putInt(grid.q(i));
+			buffer.putInt(grid.r(i));
+		}
+		buffer.put((byte)t.getFlags());
+		buffer.put((byte)grid.getConnections(i));
+		game.getTileStore().writeTile(buffer, i);
+	}
+
+	/**
+	 * Write the number of tiles being mined followed by their ids
+	 * @param game	The game
+	 * @param out	Where to write them
+	 * @throws IOException
+	 */
+	static void writeActiveTiles(Game game, SnapshotWriter out) throws IOException
+	{
+		ActiveTileSet active = game.getActiveTiles();
+		out.reserve(Integer.BYTES).putInt(active.size());
+		for(int i = 0; i < active.size(); i++)
+		{
+			out.reserve(Integer.BYTES).putInt(active.get(i));
+		}
+	}
+
+	/**
+	 * Write the number of researches followed by each one's name, level, whether it's complete and what it costs
+	 * @param game	The game
+	 * @param out	Where to write them
+	 * @throws IOException
+	 */
+	static void writeResearches(Game game, SnapshotWriter out) throws IOException
+	{
+		ByteBuffer buffer;
+		out.reserve(Integer.BYTES).putInt(game.getResearches().size());
+		for(Research research: game.getResearches())
+		{
+			out.putString(research.getBaseName());
+			EnumMap<Resource, Double> costs = research.getCosts();
+			buffer = out.reserve(Integer.BYTES + 2 + costs.size() * (1 + Double.BYTES));
+			buffer.putInt(research.getCurrentLevel());
+			buffer.put((byte)(research.isComplete()?1:0));
+			buffer.put((byte)costs.size());
+			for(Map.Entry<Resource, Double> cost: costs.entrySet())
+			{
+				buffer.put((byte)cost.getKey().ordinal());
+				buffer.putDouble(cost.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Read a game from a file
+	 * @param path		The file
+	 * @param tileStore	The store to read the tiles' resource state into
+	 * @return			The game
+	 * @throws IOException	If the file can't be read, isn't a snapshot this version can read, or is corrupt
+	 */
+	static Game read(Path path, TileStore tileStore) throws IOException
+	{
+		try(SnapshotReader in = new SnapshotReader(FileChannel.open(path, StandardOpenOption.READ)))
+		{
+			Game game;
+			try
+			{
+				game = readState(in, tileStore);
+			}
+			catch(RuntimeException e)
+			{
+				// anything that doesn't make sense is down to the file, which the checksum would have said if we'd got that far
+				throw new IOException("The saved game " + path + " is corrupt", e);
+			}
+			if(!in.verify() || !in.atEnd())
+			{
+				throw new IOException("The saved game " + path + " is corrupt");
+			}
+			return game;
+		}
+	}
+
+	/**
+	 * Read everything but the checksum into a new game
+	 * @param in		Where to read it from
+	 * @param tileStore	The store to read the tiles' resource state into
+	 * @return			The game
+	 * @throws IOException
+	 */
+	static Game readState(SnapshotReader in, TileStore tileStore) throws IOException
+	{
+		ByteBuffer buffer = in.require(HEADER_SIZE);
+		if(buffer.getInt() != MAGIC)
+		{
+			throw new IOException("This isn't a saved game");
+		}
+		int version = buffer.getInt();
+		if(version != VERSION)
+		{
+			throw new IOException("The game was saved in version " + version + " of the format, which this version of the game can't read");
+		}
+		int radius = buffer.getInt();
+		long seed = buffer.getLong();
+		MazeAlgorithm mazeAlgorithm = MazeAlgorithm.values()[buffer.get()];
+		boolean lazy = buffer.get() != 0;
+		TickMode tickMode = TickMode.values()[buffer.get()];
+		long tick = buffer.getLong();
+		int discoveredMask = buffer.getInt();
+		if(buffer.getInt() != TileStore.RESOURCE_COUNT)
+		{
+			throw new IOException("The game was saved with a different set of resources");
+		}
+		// the map is allocated from the radius before the checksum can say whether to trust it, so one that couldn't have been saved is taken as corruption
+		// rather than left to run the heap out. A dense map has to fit every tile's resources in an array, and has every tile in the file, each taking at
+		// least its flags, connections and record header, so the file has to be at least that long. A lazy map only allocates as its tiles are read.
+		long tiles = 3L * radius * (radius - 1) + 1;
+		if(radius < 1 || (lazy?radius > SparseHexGrid.MAXIMUM_RADIUS:tiles * TileStore.RESOURCE_COUNT > Integer.MAX_VALUE))
+		{
+			throw new IOException("The saved game is corrupt, no map can have a radius of " + radius);
+		}
+		if(!lazy && tiles * (2 + TileStore.RECORD_HEADER_SIZE) > in.remaining())
+		{
+			throw new IOException("The saved game is corrupt, it's too short for a map with a radius of " + radius);
+		}
+		Game game = Game.blank(radius, seed, mazeAlgorithm, lazy, tileStore);
+		buffer = in.require(2 * TileStore.RESOURCE_COUNT * Long.BYTES);
+		for(int r = 0; r < TileStore.RESOURCE_COUNT; r++)
+		{
+			game.getMinedUnits()[r] = buffer.getLong();
+			game.getRemainingUnits()[r] = buffer.getLong();
+		}
+
+		int size = in.require(Integer.BYTES).getInt();
+		if(!lazy && size != game.getGrid().size())
+		{
+			throw new IOException("The saved map is the wrong size for its radius");
+		}
+		for(int i = 0; i < size; i++)
+		{
+			readTile(in, game, i);
+		}
+
+		readActiveTiles(in, game);
+		readResearches(in, game);
+
+		game.restore(tick, discoveredMask);
+		game.setTickMode(tickMode);
+		return game;
+	}
+
+	/**
+	 * Read a tile written by writeTile. On a lazy map the tile is created if it hasn't been, which it must be next in line for if so.
+	 * Flags are only ever set, since nothing unexplores a tile.
+	 * @param in	Where to read it from
+	 * @param game	The game
+	 * @param i		The index of the tile
+	 * @throws IOException
+	 */
+	static void readTile(SnapshotReader in, Game game, int i) throws IOException
+	{
+		HexGrid<ResourceTile> grid = game.getGrid();
+		boolean lazy = game.isLazy();
+		int header = (lazy?2 * Integer.BYTES:0) + 2;
+		ByteBuffer buffer = in.require(header + TileStore.RECORD_HEADER_SIZE);
+		buffer = in.require(header + TileStore.recordSize(buffer, buffer.position() + header));
+		if(lazy && ((SparseHexGrid<ResourceTile>)grid).materialise(buffer.getInt(), buffer.getInt()) != i)
+		{
+			throw new IOException("The tiles of the saved map are out of order");
+		}
+		int flags = buffer.get();
+		grid.setConnections(i, buffer.get() & 0xFF);
+		game.getTileStore().putConnections(i, grid.getConnections(i));
+		ResourceTile t = grid.get(i);
+		if((flags & TileStore.OCCUPIED) != 0)
+		{
+			t.occupy();
+		}
+		if((flags & TileStore.VISITED) != 0)
+		{
+			t.visit();
+		}
+		if((flags & TileStore.EXPLORED) != 0)
+		{
+			t.explore();
+		}
+		game.getTileStore().readTile(buffer, i);
+	}
+
+	/**
+	 * Read the tiles being mined written by writeActiveTiles, replacing whatever the game had
+	 * @param in	Where to read them from
+	 * @param game	The game
+	 * @throws IOException
+	 */
+	static void readActiveTiles(SnapshotReader in, Game game) throws IOException
+	{
+		ActiveTileSet active = game.getActiveTiles();
+		int size = game.getGrid().size();
+		// the game starts mining the new set again once it knows what had been discovered
+		for(int i = 0; i < active.size(); i++)
+		{
+			game.getTileStore().stopMining(active.get(i));
+		}
+		active.clear();
+		int activeCount = in.require(Integer.BYTES).getInt();
+		for(int i = 0; i < activeCount; i++)
+		{
+			int tile = in.require(Integer.BYTES).getInt();
+			if(tile < 0 || tile >= size)
+			{
+				throw new IOException("A tile being mined isn't on the map");
+			}
+			active.add(tile);
+		}
+	}
+
+	/**
+	 * Read the researches written by writeResearches into the game's own
+	 * @param in	Where to read them from
+	 * @param game	The game
+	 * @throws IOException
+	 */
+	static void readResearches(SnapshotReader in, Game game) throws IOException
+	{
+		ByteBuffer buffer;
+		// researches are matched up by name, so any that have since been taken out of the data are skipped
+		int researchCount = in.require(Integer.BYTES).getInt();
+		for(int i = 0; i < researchCount; i++)
+		{
+			String name = in.getString();
+			buffer = in.require(Integer.BYTES + 2);
+			int level = buffer.getInt();
+			boolean complete = buffer.get() != 0;
+			int costCount = buffer.get();
+			EnumMap<Resource, Double> costs = new EnumMap<>(Resource.class);
+			buffer = in.require(costCount * (1 + Double.BYTES));
+			for(int c = 0; c < costCount; c++)
+			{
+				costs.put(Resource.values()[buffer.get()], buffer.getDouble());
+			}
+			Research research = game.getResearch(name);
+			if(research != null)
+			{
+				research.restore(level, complete, costs);
+			}
+		}
+	}
+}
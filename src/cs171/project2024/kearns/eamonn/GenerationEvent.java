@@ -0,0 +1,39 @@
+package cs171.project2024.kearns.eamonn;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event for each of the phases of building a new game: making the tiles, laying out the deposits, carving the maze and loading the research.
+ */
+@Name("cs171.project2024.kearns.eamonn.Generation")
+@Label("Map Generation")
+@Category({"CS171 Game", "Generation"})
+@Description("A phase of building a new game")
+@StackTrace(false)
+class GenerationEvent extends jdk.jfr.Event
+{
+	/**
+	 * Which phase it was
+	 */
+	@Label("Phase")
+	String phase;
+	/**
+	 * The radius of the map in tiles
+	 */
+	@Label("Radius")
+	int radius;
+	/**
+	 * The number of tiles the map has to start with, which for a lazy map is only the ones made so far
+	 */
+	@Label("Tiles")
+	int tiles;
+	/**
+	 * Whether or not the map is made as it's explored
+	 */
+	@Label("Lazy")
+	boolean lazy;
+}
@@ -0,0 +1,300 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import cs171.project2024.kearns.eamonn.ResourceTile.Resource;
+
+/**
+ * A class to run the simulation without any graphics at all, for balancing and regression runs on machines without a display.
+ * It builds a Game from a radius and a seed, ticks it as fast as it will go for a number of ticks (or until there is nothing left being mined), optionally
+ * buying researches along the way from a purchase plan, and reports how it went.
+ *
+ * The arguments are all of the form --name=value:
+ * --radius		The radius of the map in tiles, defaults to 12
+ * --seed		The seed to build the map from, defaults to a random one
+ * --ticks		The most ticks to run, 0 (the default) runs until every tile being mined has depleted
+ * --plan		A JSON file of purchases to make, as an array of objects of the form {"tick": 1000, "research": "Forestry"}. Each purchase is attempted from its tick
+ * 				onwards until it can be afforded, in the order given.
+ * --mode		sequential, parallel or event, the tick mode to run in
+ * --maze		backtracker, kruskal, wilson, parallel or radial, the algorithm to carve the map with, defaults to backtracker, or radial on a lazy map
+ * --lazy		true to only create tiles as they're reached, which lets the radius go far beyond what would fit in memory. Only works with the radial maze.
+ * --load		A saved game to carry on from instead of building a new map, in which case the radius, seed, maze and laziness come from the save. If there's a
+ * 				journal alongside it, it's played back over the save.
+ * --save		A file to save the game to once the run is over
+ * --autosave	A number of ticks between autosaves to a journal alongside the save, so a run that's killed part way through can be carried on from
+ * --tiles		A file to keep the tiles in, memory mapped rather than on the heap. If the last run to use it finished cleanly, the game in it is carried on from
+ * 				where that run left it, unless --load is given, in which case the saved game replaces it, as a new map does when it doesn't hold a game.
+ * --metrics	true to measure how long generating the map and each tick take, and how much each tick allocates, and report it at the end. The measurements can
+ * 				be watched over JMX while it runs as well.
+ */
+public class HeadlessRunner
+{
+	/**
+	 * A single purchase from the plan
+	 */
+	public static class PlannedPurchase
+	{
+		/**
+		 * The tick from which to start trying to buy the research
+		 */
+		final long tick;
+		/**
+		 * The name of the research to buy
+		 */
+		final String research;
+
+		/**
+		 * Constructor
+		 * @param tick		The tick from which to start trying to buy the research
+		 * @param research	The name of the research to buy
+		 */
+		public PlannedPurchase(long tick, String research)
+		{
+			this.tick = tick;
+			this.research = research;
+		}
+	}
+
+	/**
+	 * The game being run
+	 */
+	private final Game game;
+	/**
+	 * The purchases still to be made, in order
+	 */
+	private final ArrayList<PlannedPurchase> plan;
+	/**
+	 * The journal to autosave to, or null to not autosave
+	 */
+	private GameJournal journal;
+	/**
+	 * The number of ticks between autosaves
+	 */
+	private long autosaveTicks;
+
+	/**
+	 * Constructor
+	 * @param game	The game to run
+	 * @param plan	The purchases to make, in order
+	 */
+	public HeadlessRunner(Game game, ArrayList<PlannedPurchase> plan)
+	{
+		this.game = game;
+		this.plan = plan;
+	}
+
+	/**
+	 * Autosave the game to a journal as it runs
+	 * @param journal		The journal
+	 * @param autosaveTicks	The number of ticks between autosaves, which must be positive
+	 */
+	public void setAutosave(GameJournal journal, long autosaveTicks)
+	{
+		if(autosaveTicks <= 0)
+		{
+			throw new IllegalArgumentException("Autosaves need at least one tick between them");
+		}
+		this.journal = journal;
+		this.autosaveTicks = autosaveTicks;
+	}
+
+	/**
+	 * Run the game
+	 * @param maxTicks	The most ticks to run, or 0 to run until nothing is being mined
+	 * @return			The number of ticks that were run
+	 * @throws IOException	If an autosave fails
+	 */
+	public long run(long maxTicks) throws IOException
+	{
+		long tick = 0;
+		int nextPurchase = 0;
+		while((maxTicks <= 0 || tick < maxTicks) && this.game.getActiveTileCount() > 0)
+		{
+			// try the next purchases in the plan, stopping at the first we can't make yet
+			while(nextPurchase < this.plan.size() && this.plan.get(nextPurchase).tick <= tick)
+			{
+				PlannedPurchase purchase = this.plan.get(nextPurchase);
+				Research research = this.game.getResearch(purchase.research);
+				if(research == null)
+				{
+					System.err.printf("Unknown research in plan: %s%n", purchase.research);
+				}
+				else if(research.isComplete())
+				{
+					System.err.printf("%s is already complete, skipping%n", purchase.research);
+				}
+				else if(this.game.buyResearch(research))
+				{
+					System.out.printf("Tick %d: bought %s%n", tick, research.getName());
+				}
+				else
+				{
+					break;
+				}
+				nextPurchase++;
+			}
+			this.game.processTick();
+			tick++;
+			if(this.journal != null && tick % this.autosaveTicks == 0)
+			{
+				this.journal.append();
+			}
+		}
+		return tick;
+	}
+
+	/**
+	 * Read a purchase plan from a JSON file
+	 * @param path			The path to the file
+	 * @return				The purchases in the plan, in order
+	 * @throws IOException
+	 */
+	public static ArrayList<PlannedPurchase> loadPlan(String path) throws IOException
+	{
+		ArrayList<PlannedPurchase> plan = new ArrayList<>();
+		JsonNode node = new ObjectMapper().readTree(new File(path));
+		for(JsonNode purchaseNode: node)
+		{
+			plan.add(new PlannedPurchase(
+				purchaseNode.has("tick")?purchaseNode.get("tick").asLong():0,
+				purchaseNode.get("research").asText()
+			));
+		}
+		return plan;
+	}
+
+	/**
+	 * Count the tiles that have been explored, not counting the settlement
+	 * @param game	The game to count the tiles in
+	 * @return		The number of explored tiles
+	 */
+	private static int countExploredTiles(Game game)
+	{
+		int explored = 0;
+		for(ArrayList<ResourceTile> row: game.getTiles())
+		{
+			for(ResourceTile tile: row)
+			{
+				if(tile.isExplored() && !tile.isOccupied())
+				{
+					explored++;
+				}
+			}
+		}
+		return explored;
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		HashMap<String, String> options = new HashMap<>();
+		for(String arg: args)
+		{
+			if(!arg.startsWith("--") || !arg.contains("="))
+			{
+				System.err.printf("Ignoring argument %s, arguments are of the form --name=value%n", arg);
+				continue;
+			}
+			options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+		}
+
+		int radius = Integer.parseInt(options.getOrDefault("radius", "12"));
+		long seed = options.containsKey("seed")?Long.parseLong(options.get("seed")):System.nanoTime();
+		long maxTicks = Long.parseLong(options.getOrDefault("ticks", "0"));
+		ArrayList<PlannedPurchase> plan = options.containsKey("plan")?loadPlan(options.get("plan")):new ArrayList<>();
+		long autosave = Long.parseLong(options.getOrDefault("autosave", "0"));
+		if(options.containsKey("autosave") && autosave <= 0)
+		{
+			// checked before the map is built, which could take a while
+			System.err.println("--autosave has to be a positive number of ticks");
+			System.exit(1);
+		}
+
+		if(Boolean.parseBoolean(options.getOrDefault("metrics", "false")))
+		{
+			GameMetrics.get().setEnabled(true);
+		}
+		long start = System.nanoTime();
+		boolean lazy = Boolean.parseBoolean(options.getOrDefault("lazy", "false"));
+		MazeAlgorithm maze = MazeAlgorithm.valueOf(options.getOrDefault("maze", lazy?"radial":"backtracker").toUpperCase());
+		TileStore store = options.containsKey("tiles")?MappedTileStore.open(Paths.get(options.get("tiles")), 64):new HeapTileStore(64);
+		boolean attached = !options.containsKey("load") && store instanceof MappedTileStore && ((MappedTileStore)store).hasGame();
+		Game game;
+		if(attached)
+		{
+			game = Game.attach((MappedTileStore)store);
+			radius = game.getRadius();
+			seed = game.getSeed();
+			maze = game.getMazeAlgorithm();
+			lazy = game.isLazy();
+		}
+		else if(options.containsKey("load"))
+		{
+			Path load = Paths.get(options.get("load"));
+			game = GameJournal.recover(load, GameJournal.journalFor(load), store);
+			radius = game.getRadius();
+			seed = game.getSeed();
+			maze = game.getMazeAlgorithm();
+			lazy = game.isLazy();
+		}
+		else
+		{
+			game = new Game(radius, seed, maze, lazy, store);
+		}
+		if(options.containsKey("mode") || !(attached || options.containsKey("load")))
+		{
+			game.setTickMode(TickMode.valueOf(options.getOrDefault("mode", "sequential").toUpperCase()));
+		}
+		long built = System.nanoTime();
+
+		HeadlessRunner runner = new HeadlessRunner(game, plan);
+		GameJournal journal = null;
+		if(options.containsKey("autosave") && options.containsKey("save"))
+		{
+			Path save = Paths.get(options.get("save"));
+			journal = new GameJournal(game, save, GameJournal.journalFor(save));
+			runner.setAutosave(journal, autosave);
+		}
+		long ticks = runner.run(maxTicks);
+		long finished = System.nanoTime();
+
+		double seconds = (finished - built) / 1e9;
+		System.out.printf("Radius %d, seed %d, %s maze%s%n", radius, seed, maze.name().toLowerCase(), lazy?", lazy":"");
+		System.out.printf("Map %s in %.3f ms%n", attached?"carried on from " + options.get("tiles"):options.containsKey("load")?"loaded":"built", (built - start) / 1e6);
+		System.out.printf("%d ticks in %.3f s, %.1f ticks/sec%n", ticks, seconds, ticks / seconds);
+		System.out.printf("Tiles explored: %d of %d%s, %d still being mined%n", countExploredTiles(game), game.getTileCount() - 1, lazy?" created":"", game.getActiveTileCount());
+		for(Resource resource: Resource.values())
+		{
+			System.out.printf("%-18s mined %14.2f available %14.2f%n", resource.label, game.getResourceMined(resource), game.getResourceAvailable(resource));
+		}
+		if(GameMetrics.get().isEnabled())
+		{
+			System.out.print(GameMetrics.get().describe());
+		}
+		if(options.containsKey("save"))
+		{
+			long saving = System.nanoTime();
+			if(journal != null)
+			{
+				journal.checkpoint();
+				journal.close();
+			}
+			else
+			{
+				game.save(Paths.get(options.get("save")));
+			}
+			System.out.printf("Saved to %s in %.3f ms%n", options.get("save"), (System.nanoTime() - saving) / 1e6);
+		}
+		if(store instanceof MappedTileStore)
+		{
+			((MappedTileStore)store).close();
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.util.Arrays;
+
+/**
+ * A tile store that keeps everything in structure-of-arrays form on the heap, in flat primitive arrays indexed by id * RESOURCE_COUNT + Resource.ordinal().
+ * This is the store the game uses unless it's asked for another.
+ */
+public class HeapTileStore extends TileStore
+{
+	/**
+	 * The amount of each resource a tile started with
+	 */
+	private long[] deposits;
+	/**
+	 * The amount of each resource remaining in a tile
+	 */
+	private long[] remaining;
+	/**
+	 * The rate at which each resource is extracted from a tile per tick
+	 */
+	private long[] rates;
+	/**
+	 * A bitmask per tile, bit n set if the tile still has the resource with ordinal n
+	 */
+	private byte[] present;
+	/**
+	 * Whether or not each tile has been marked depleted
+	 */
+	private boolean[] depleted;
+
+	/**
+	 * Constructor, allocates room for the given number of tiles
+	 * @param capacity	The number of tiles to store
+	 */
+	public HeapTileStore(int capacity)
+	{
+		super(capacity);
+		this.deposits = new long[capacity * RESOURCE_COUNT];
+		this.remaining = new long[capacity * RESOURCE_COUNT];
+		this.rates = new long[capacity * RESOURCE_COUNT];
+		this.present = new byte[capacity];
+		this.depleted = new boolean[capacity];
+	}
+
+	@Override
+	protected void grow(int capacity)
+	{
+		this.deposits = Arrays.copyOf(this.deposits, capacity * RESOURCE_COUNT);
+		this.remaining = Arrays.copyOf(this.remaining, capacity * RESOURCE_COUNT);
+		this.rates = Arrays.copyOf(this.rates, capacity * RESOURCE_COUNT);
+		this.present = Arrays.copyOf(this.present, capacity);
+		this.depleted = Arrays.copyOf(this.depleted, capacity);
+	}
+
+	/**
+	 * The same as TileStore's, but straight onto the arrays, since this is what the tick loop spends its time in
+	 */
+	@Override
+	long mine(int tile, int resource)
+	{
+		if((this.present[tile] & (1 << resource)) == 0)
+		{
+			return 0;
+		}
+		int i = tile * RESOURCE_COUNT + resource;
+		long taken = Math.min(this.remaining[i], this.rates[i]);
+		long left = this.remaining[i] - taken;
+		if(left <= 0)
+		{
+			left = 0;
+			this.present[tile] &= (byte)~(1 << resource);
+		}
+		this.remaining[i] = left;
+		return taken;
+	}
+
+	@Override
+	public long getDeposit(int tile, int resource)
+	{
+		return this.deposits[tile * RESOURCE_COUNT + resource];
+	}
+
+	@Override
+	public long getRemaining(int tile, int resource)
+	{
+		return this.remaining[tile * RESOURCE_COUNT + resource];
+	}
+
+	@Override
+	public long getRate(int tile, int resource)
+	{
+		return this.rates[tile * RESOURCE_COUNT + resource];
+	}
+
+	@Override
+	public int getPresentMask(int tile)
+	{
+		return this.present[tile];
+	}
+
+	@Override
+	public boolean isDepleted(int tile)
+	{
+		return this.depleted[tile];
+	}
+
+	@Override
+	protected void putDeposit(int tile, int resource, long units)
+	{
+		this.deposits[tile * RESOURCE_COUNT + resource] = units;
+	}
+
+	@Override
+	protected void putRemaining(int tile, int resource, long units)
+	{
+		this.remaining[tile * RESOURCE_COUNT + resource] = units;
+	}
+
+	@Override
+	protected void putRate(int tile, int resource, long units)
+	{
+		this.rates[tile * RESOURCE_COUNT + resource] = units;
+	}
+
+	@Override
+	protected void putPresentMask(int tile, int mask)
+	{
+		this.present[tile] = (byte)mask;
+	}
+
+	@Override
+	protected void putDepleted(int tile, boolean depleted)
+	{
+		this.depleted[tile] = depleted;
+	}
+}
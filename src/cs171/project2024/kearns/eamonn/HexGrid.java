@@ -0,0 +1,451 @@
+package cs171.project2024.kearns.eamonn;
+
+import cs171.project2024.kearns.eamonn.HexTile.Direction;
+
+/**
+ * A hexagonal grid of tiles held in a single flat array, addressed by axial coordinates.
+ * In axial coordinates a tile is (q, r), where r is its row, counting from -(radius - 1) at the top to radius - 1 at the bottom, and q runs along the row, with
+ * the centre tile at (0, 0). Pointy topped hexes in these coordinates have their neighbours at fixed offsets, so neighbours, rings, ranges and distances are all
+ * simple arithmetic rather than something each tile has to remember.
+ * Tiles are stored row by row from the top, each row left to right, which is the same order Game has always built its rows in, so a tile's index in the grid
+ * is also its id in the tile store.
+ *
+ * the map
+ *   # # #
+ *  # # # #
+ * # # # # #
+ *  # # # #
+ *   # # #
+ * is a grid of radius 3, and the x and y the rest of the game uses are just the position in the row and the row
+ * @see https://www.redblobgames.com/grids/hexagons/
+ * @param <T> The type of tile held in the grid
+ */
+public class HexGrid<T extends HexTile>
+{
+	/**
+	 * The change in q of a step in each direction, indexed by Direction.ordinal()
+	 */
+	final static int[] DQ = {0, 1, 1, 0, -1, -1};
+	/**
+	 * The change in r of a step in each direction, indexed by Direction.ordinal()
+	 */
+	final static int[] DR = {-1, -1, 0, 1, 1, 0};
+	/**
+	 * The directions in the order a ring is walked around, starting from its south west corner
+	 */
+	private final static Direction[] RING_WALK = {Direction.EAST, Direction.NORTHEAST, Direction.NORTHWEST, Direction.WEST, Direction.SOUTHWEST, Direction.SOUTHEAST};
+
+	/**
+	 * The radius of the grid in tiles, counting the centre tile
+	 */
+	private final int radius;
+	/**
+	 * The largest distance from the centre of any tile in the grid, one less than the radius
+	 */
+	private final int extent;
+	/**
+	 * The number of tiles in the grid
+	 */
+	private final int size;
+	/**
+	 * The index of the first tile of each row, indexed by r + extent, with one extra entry holding the size
+	 */
+	private final int[] rowStart;
+	/**
+	 * The tiles
+	 */
+	private final Object[] tiles;
+	/**
+	 * The connections of each tile to its neighbours, one byte per tile with bit n set if the tile is connected to its neighbour in the direction with ordinal n.
+	 * Both sides of a connection are always set together.
+	 */
+	private final byte[] connections;
+
+	/**
+	 * Constructor
+	 * @param radius	The radius of the grid in tiles, counting the centre tile, so a radius of 1 is just the centre
+	 */
+	public HexGrid(int radius)
+	{
+		this(radius, true);
+	}
+
+	/**
+	 * Constructor for grids that keep their tiles some other way, which skips allocating the arrays for every tile
+	 * @param radius	The radius of the grid in tiles, counting the centre tile
+	 * @param dense		Whether to allocate room for every tile up front
+	 */
+	protected HexGrid(int radius, boolean dense)
+	{
+		if(radius < 1)
+		{
+			throw new IllegalArgumentException("A hex grid needs a radius of at least 1");
+		}
+		this.radius = radius;
+		this.extent = radius - 1;
+		if(!dense)
+		{
+			this.size = 0;
+			this.rowStart = null;
+			this.tiles = null;
+			this.connections = null;
+			return;
+		}
+		this.size = 3 * radius * (radius - 1) + 1;
+		this.rowStart = new int[2 * this.extent + 2];
+		for(int r = -this.extent; r <= this.extent; r++)
+		{
+			this.rowStart[r + this.extent + 1] = this.rowStart[r + this.extent] + this.rowLength(r);
+		}
+		this.tiles = new Object[this.size];
+		this.connections = new byte[this.size];
+	}
+
+	/**
+	 * @return	The radius of the grid in tiles
+	 */
+	public int getRadius()
+	{
+		return this.radius;
+	}
+
+	/**
+	 * @return	The number of tiles in the grid
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * @param r	The row
+	 * @return	The number of tiles in the row
+	 */
+	public int rowLength(int r)
+	{
+		return 2 * this.extent + 1 - Math.abs(r);
+	}
+
+	/**
+	 * @param r	The row
+	 * @return	The q coordinate of the first tile in the row
+	 */
+	public int rowMinQ(int r)
+	{
+		return Math.max(-this.extent, -this.extent - r);
+	}
+
+	/**
+	 * Check whether a coordinate is on the grid
+	 * @param q	The q coordinate
+	 * @param r	The r coordinate
+	 * @return	True if there is a tile at (q, r)
+	 */
+	public boolean contains(int q, int r)
+	{
+		return Math.abs(q) <= this.extent && Math.abs(r) <= this.extent && Math.abs(q + r) <= this.extent;
+	}
+
+	/**
+	 * Get the index of the tile at a coordinate
+	 * @param q	The q coordinate
+	 * @param r	The r coordinate
+	 * @return	The index of the tile, or -1 if the coordinate is off the grid
+	 */
+	public int index(int q, int r)
+	{
+		if(!this.contains(q, r))
+		{
+			return -1;
+		}
+		return this.rowStart[r + this.extent] + q - this.rowMinQ(r);
+	}
+
+	/**
+	 * Get the row of the tile at an index. The rows get one longer each step down to the centre and one shorter after it, so the row is the root of a quadratic,
+	 * nudged to correct for any rounding in the square root.
+	 * @param index	The index of the tile
+	 * @return		The r coordinate of the tile
+	 */
+	public int r(int index)
+	{
+		// the bottom half is the top half upside down, so count from whichever end is nearer
+		boolean fromBottom = index >= this.rowStart[this.extent + 1];
+		long i = fromBottom?this.size - 1 - index:index;
+		// the rows from the end have lengths extent + 1, extent + 2, ... so row k starts k(extent + 1) + k(k - 1)/2 tiles in
+		long b = 2L * this.extent + 1;
+		int k = (int)((Math.sqrt((double)(b * b + 8 * i)) - b) / 2);
+		while(k > 0 && startFromEnd(k) > i)
+		{
+			k--;
+		}
+		while(startFromEnd(k + 1) <= i)
+		{
+			k++;
+		}
+		return fromBottom?this.extent - k:k - this.extent;
+	}
+
+	/**
+	 * The number of tiles before the kth row counting from one end of the grid
+	 */
+	private long startFromEnd(long k)
+	{
+		return k * (this.extent + 1) + k * (k - 1) / 2;
+	}
+
+	/**
+	 * Get the q coordinate of the tile at an index
+	 * @param index	The index of the tile
+	 * @return		The q coordinate of the tile
+	 */
+	public int q(int index)
+	{
+		int r = this.r(index);
+		return index - this.rowStart[r + this.extent] + this.rowMinQ(r);
+	}
+
+	/**
+	 * Get the tile at an index
+	 * @param index	The index of the tile
+	 * @return		The tile, or null if there isn't one
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(int index)
+	{
+		return index < 0?null:(T)this.tiles[index];
+	}
+
+	/**
+	 * Get the tile at a coordinate
+	 * @param q	The q coordinate
+	 * @param r	The r coordinate
+	 * @return	The tile, or null if the coordinate is off the grid
+	 */
+	public T get(int q, int r)
+	{
+		return this.get(this.index(q, r));
+	}
+
+	/**
+	 * Put a tile into the grid
+	 * @param index	The index to put it at
+	 * @param tile	The tile
+	 */
+	public void set(int index, T tile)
+	{
+		this.tiles[index] = tile;
+	}
+
+	/**
+	 * Get the index of the neighbour of a tile in a given direction
+	 * @param index		The index of the tile
+	 * @param direction	The direction of the neighbour
+	 * @return			The index of the neighbour, or -1 if it would be off the grid
+	 */
+	public int neighbour(int index, Direction direction)
+	{
+		return this.neighbour(index, direction.ordinal());
+	}
+
+	/**
+	 * Get the index of the neighbour of a tile in a given direction
+	 * @param index		The index of the tile
+	 * @param direction	The ordinal of the direction of the neighbour
+	 * @return			The index of the neighbour, or -1 if it would be off the grid
+	 */
+	public int neighbour(int index, int direction)
+	{
+		int r = this.r(index);
+		int q = index - this.rowStart[r + this.extent] + this.rowMinQ(r);
+		return this.index(q + DQ[direction], r + DR[direction]);
+	}
+
+	/**
+	 * Get the indices of all of the neighbours of a tile at once, which only has to work out the tile's coordinates the once
+	 * @param index	The index of the tile
+	 * @param out	An array with room for 6 indices, which the neighbours are written into by direction ordinal, -1 where there is no neighbour
+	 */
+	public void neighbours(int index, int[] out)
+	{
+		int r = this.r(index);
+		int q = index - this.rowStart[r + this.extent] + this.rowMinQ(r);
+		for(int d = 0; d < DQ.length; d++)
+		{
+			out[d] = this.index(q + DQ[d], r + DR[d]);
+		}
+	}
+
+	/**
+	 * Work out which directions a tile has neighbours in. Only tiles on the edge of the grid are missing any, so this is worked out from the coordinates rather
+	 * than stored.
+	 * @param index	The index of the tile
+	 * @return		A bitmask with bit n set if the tile has a neighbour in the direction with ordinal n
+	 */
+	public int neighbourMask(int index)
+	{
+		int r = this.r(index);
+		int q = index - this.rowStart[r + this.extent] + this.rowMinQ(r);
+		int mask = 0;
+		for(int d = 0; d < DQ.length; d++)
+		{
+			if(this.contains(q + DQ[d], r + DR[d]))
+			{
+				mask |= 1 << d;
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * @param index	The index of the tile
+	 * @return		A bitmask with bit n set if the tile is connected to its neighbour in the direction with ordinal n
+	 */
+	public int getConnections(int index)
+	{
+		return this.connections[index];
+	}
+
+	/**
+	 * Set all of a tile's connections at once, without touching its neighbours, for putting back connections that were saved for every tile
+	 * @param index	The index of the tile
+	 * @param mask	A bitmask with bit n set if the tile is connected to its neighbour in the direction with ordinal n
+	 */
+	void setConnections(int index, int mask)
+	{
+		this.connections[index] = (byte)mask;
+	}
+
+	/**
+	 * Connect a tile to its neighbour in a given direction, and the neighbour back to it
+	 * @param index		The index of the tile
+	 * @param direction	The direction of the neighbour
+	 */
+	public void connect(int index, Direction direction)
+	{
+		this.connect(index, direction.ordinal());
+	}
+
+	/**
+	 * Connect a tile to its neighbour in a given direction, and the neighbour back to it
+	 * @param index		The index of the tile
+	 * @param direction	The ordinal of the direction of the neighbour
+	 */
+	public void connect(int index, int direction)
+	{
+		int neighbour = this.neighbour(index, direction);
+		if(neighbour < 0)
+		{
+			throw new IllegalArgumentException("There is no neighbour to connect to in that direction");
+		}
+		this.connections[index] |= (byte)(1 << direction);
+		this.connections[neighbour] |= (byte)(1 << HexTile.opposite(HexTile.DIRECTIONS[direction]).ordinal());
+	}
+
+	/**
+	 * Get the change in q of a step in a direction
+	 * @param direction	The direction
+	 * @return			The change in q
+	 */
+	public static int dq(Direction direction)
+	{
+		return DQ[direction.ordinal()];
+	}
+
+	/**
+	 * Get the change in r of a step in a direction
+	 * @param direction	The direction
+	 * @return			The change in r
+	 */
+	public static int dr(Direction direction)
+	{
+		return DR[direction.ordinal()];
+	}
+
+	/**
+	 * The number of steps between two coordinates
+	 * @param q1	The q coordinate of the first
+	 * @param r1	The r coordinate of the first
+	 * @param q2	The q coordinate of the second
+	 * @param r2	The r coordinate of the second
+	 * @return		The distance between them in tiles
+	 */
+	public static int distance(int q1, int r1, int q2, int r2)
+	{
+		int dq = q1 - q2;
+		int dr = r1 - r2;
+		return (Math.abs(dq) + Math.abs(dr) + Math.abs(dq + dr)) / 2;
+	}
+
+	/**
+	 * The number of steps between two tiles
+	 * @param a	The index of the first tile
+	 * @param b	The index of the second tile
+	 * @return	The distance between them in tiles
+	 */
+	public int distance(int a, int b)
+	{
+		return distance(this.q(a), this.r(a), this.q(b), this.r(b));
+	}
+
+	/**
+	 * Find the tiles that are exactly a given number of steps from a tile
+	 * @param index		The index of the tile at the centre of the ring
+	 * @param steps		The radius of the ring in steps
+	 * @param out		An array to write the indices of the tiles on the ring into, which needs room for 6 * steps of them, or 1 if steps is 0
+	 * @return			The number of tiles written, which is less than the full ring where it runs off the grid
+	 */
+	public int ring(int index, int steps, int[] out)
+	{
+		int q = this.q(index);
+		int r = this.r(index);
+		if(steps == 0)
+		{
+			out[0] = index;
+			return 1;
+		}
+		int count = 0;
+		q += DQ[Direction.SOUTHWEST.ordinal()] * steps;
+		r += DR[Direction.SOUTHWEST.ordinal()] * steps;
+		for(Direction direction: RING_WALK)
+		{
+			for(int i = 0; i < steps; i++)
+			{
+				int tile = this.index(q, r);
+				if(tile >= 0)
+				{
+					out[count++] = tile;
+				}
+				q += DQ[direction.ordinal()];
+				r += DR[direction.ordinal()];
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Find the tiles that are within a given number of steps of a tile
+	 * @param index	The index of the tile at the centre of the range
+	 * @param steps	The most steps away a tile can be
+	 * @param out	An array to write the indices of the tiles in range into, which needs room for 3 * steps * (steps + 1) + 1 of them
+	 * @return		The number of tiles written, which is less than the full range where it runs off the grid
+	 */
+	public int range(int index, int steps, int[] out)
+	{
+		int q = this.q(index);
+		int r = this.r(index);
+		int count = 0;
+		for(int dr = -steps; dr <= steps; dr++)
+		{
+			for(int dq = Math.max(-steps, -steps - dr); dq <= Math.min(steps, steps - dr); dq++)
+			{
+				int tile = this.index(q + dq, r + dr);
+				if(tile >= 0)
+				{
+					out[count++] = tile;
+				}
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,335 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.util.function.IntConsumer;
+
+import cs171.project2024.kearns.eamonn.HexTile.Direction;
+
+/**
+ * Where each tile of a grid goes when it's drawn, worked out ahead of time rather than every time a tile is drawn.
+ * The tiles are pointy topped, so a tile at (q, r) has its centre at origin + radius * (sqrt(3) * (q + r / 2), 1.5 * r), and every tile's corners, walls and
+ * resource indicators sit at the same offsets from its centre. So the centres of tiles of radius 1 are kept per tile, in flat arrays indexed by id, worked out
+ * once, and the offsets for the current position and size of the map, which is everything a frame needs to draw any tile with nothing but a multiply and an
+ * add: no trig and no allocation. Moving or zooming the map only changes the offsets, so it costs the same however big the map is.
+ * The corners are numbered the way the map has always drawn them, clockwise from the one at 30 degrees below the right hand side.
+ * @see HexGrid
+ */
+public class HexLayout
+{
+	/**
+	 * The x-coordinate of each corner of a hexagon of radius 1, worked out once
+	 */
+	private final static double[] UNIT_X = new double[6];
+	/**
+	 * The y-coordinate of each corner of a hexagon of radius 1
+	 */
+	private final static double[] UNIT_Y = new double[6];
+	static
+	{
+		for(int i = 0; i < 6; i++)
+		{
+			double theta = Math.PI / 6 + Math.PI / 3 * i;
+			UNIT_X[i] = Math.cos(theta);
+			UNIT_Y[i] = Math.sin(theta);
+		}
+	}
+	/**
+	 * The corner each direction's edge starts at, indexed by Direction.ordinal(). The edge ends at the next corner round.
+	 */
+	private final static int[] EDGES = {3, 4, 5, 0, 1, 2};
+
+	/**
+	 * The grid being laid out
+	 */
+	private final HexGrid<?> grid;
+	/**
+	 * The x-coordinate of the centre tile's centre
+	 */
+	private double originX;
+	/**
+	 * The y-coordinate of the centre tile's centre
+	 */
+	private double originY;
+	/**
+	 * The radius of each tile, from its centre to a corner
+	 */
+	private double radius;
+	/**
+	 * The width of each tile, from one flat side to the other
+	 */
+	private double width;
+	/**
+	 * The x-coordinate of each tile's centre, by id, relative to the centre tile's for tiles of radius 1
+	 */
+	private final double[] centreX;
+	/**
+	 * The y-coordinate of each tile's centre, by id, relative to the centre tile's for tiles of radius 1
+	 */
+	private final double[] centreY;
+	/**
+	 * The x offset of each corner from a tile's centre
+	 */
+	private final double[] cornerX = new double[6];
+	/**
+	 * The y offset of each corner from a tile's centre
+	 */
+	private final double[] cornerY = new double[6];
+	/**
+	 * The x offset of each resource's indicator from a tile's centre, by Resource.ordinal()
+	 */
+	private final double[] anchorX = new double[TileStore.RESOURCE_COUNT];
+	/**
+	 * The y offset of each resource's indicator from a tile's centre, by Resource.ordinal()
+	 */
+	private final double[] anchorY = new double[TileStore.RESOURCE_COUNT];
+
+	/**
+	 * Constructor. The layout has to be given a position and size with layout before it's any use.
+	 * @param grid	The grid to lay out, which has to hold every one of its tiles
+	 */
+	public HexLayout(HexGrid<?> grid)
+	{
+		this.grid = grid;
+		this.centreX = new double[grid.size()];
+		this.centreY = new double[grid.size()];
+		int extent = grid.getRadius() - 1;
+		int id = 0;
+		for(int r = -extent; r <= extent; r++)
+		{
+			int minQ = grid.rowMinQ(r);
+			for(int q = minQ; q < minQ + grid.rowLength(r); q++, id++)
+			{
+				this.centreX[id] = Math.sqrt(3) * (q + r / 2.0);
+				this.centreY[id] = 1.5 * r;
+			}
+		}
+	}
+
+	/**
+	 * Work out where everything goes for a new position or size of the map
+	 * @param originX	The x-coordinate of the centre tile's centre
+	 * @param originY	The y-coordinate of the centre tile's centre
+	 * @param radius	The radius of each tile, from its centre to a corner
+	 */
+	public void layout(double originX, double originY, double radius)
+	{
+		this.originX = originX;
+		this.originY = originY;
+		this.radius = radius;
+		this.width = Math.sqrt(3) * radius;
+		for(int i = 0; i < 6; i++)
+		{
+			this.cornerX[i] = UNIT_X[i] * radius;
+			this.cornerY[i] = UNIT_Y[i] * radius;
+		}
+		// each resource's indicator goes a little in from the middle of three corners, starting from the corner with the same number as the resource
+		for(int i = 0; i < TileStore.RESOURCE_COUNT; i++)
+		{
+			this.anchorX[i] = (this.cornerX[i % 6] + this.cornerX[(i + 1) % 6] + this.cornerX[(i + 2) % 6] - radius / 1.8) / 3;
+			this.anchorY[i] = (this.cornerY[i % 6] + this.cornerY[(i + 1) % 6] + this.cornerY[(i + 2) % 6] - radius / 1.8) / 3;
+		}
+	}
+
+	/**
+	 * Getter for the x-coordinate of the centre tile's centre
+	 * @return	The x-coordinate
+	 */
+	public double getOriginX()
+	{
+		return this.originX;
+	}
+
+	/**
+	 * Getter for the y-coordinate of the centre tile's centre
+	 * @return	The y-coordinate
+	 */
+	public double getOriginY()
+	{
+		return this.originY;
+	}
+
+	/**
+	 * Getter for the radius of each tile
+	 * @return	The distance from a tile's centre to its corners
+	 */
+	public double getRadius()
+	{
+		return this.radius;
+	}
+
+	/**
+	 * Getter for the width of each tile
+	 * @return	The distance between a tile's flat sides
+	 */
+	public double getWidth()
+	{
+		return this.width;
+	}
+
+	/**
+	 * @param tile	The id of a tile
+	 * @return		The x-coordinate of its centre
+	 */
+	public double getCentreX(int tile)
+	{
+		return this.originX + this.radius * this.centreX[tile];
+	}
+
+	/**
+	 * @param tile	The id of a tile
+	 * @return		The y-coordinate of its centre
+	 */
+	public double getCentreY(int tile)
+	{
+		return this.originY + this.radius * this.centreY[tile];
+	}
+
+	/**
+	 * @param tile		The id of a tile
+	 * @param corner	The number of the corner, 0 to 5
+	 * @return			The x-coordinate of the corner
+	 */
+	public double getCornerX(int tile, int corner)
+	{
+		return this.getCentreX(tile) + this.cornerX[corner];
+	}
+
+	/**
+	 * @param tile		The id of a tile
+	 * @param corner	The number of the corner, 0 to 5
+	 * @return			The y-coordinate of the corner
+	 */
+	public double getCornerY(int tile, int corner)
+	{
+		return this.getCentreY(tile) + this.cornerY[corner];
+	}
+
+	/**
+	 * Put the corners of a tile, or of a smaller hexagon in the middle of it, into arrays the caller keeps, for drawing it as a polygon
+	 * @param tile	The id of the tile
+	 * @param scale	The size of the hexagon relative to the tile, 1 for the tile itself
+	 * @param xs	Where to put the x-coordinates of the six corners
+	 * @param ys	Where to put the y-coordinates of the six corners
+	 */
+	public void getCorners(int tile, double scale, double[] xs, double[] ys)
+	{
+		double x = this.getCentreX(tile);
+		double y = this.getCentreY(tile);
+		for(int i = 0; i < 6; i++)
+		{
+			xs[i] = x + this.cornerX[i] * scale;
+			ys[i] = y + this.cornerY[i] * scale;
+		}
+	}
+
+	/**
+	 * Find the corner the edge of a tile facing a direction starts at, the wall between it and its neighbour that way running from there to the next corner
+	 * @param direction	The direction
+	 * @return			The number of the corner
+	 */
+	public static int edge(Direction direction)
+	{
+		return EDGES[direction.ordinal()];
+	}
+
+	/**
+	 * @param tile		The id of a tile
+	 * @param resource	The ordinal of a resource
+	 * @return			The x-coordinate of the top left of the resource's indicator on the tile
+	 */
+	public double getAnchorX(int tile, int resource)
+	{
+		return this.getCentreX(tile) + this.anchorX[resource];
+	}
+
+	/**
+	 * @param tile		The id of a tile
+	 * @param resource	The ordinal of a resource
+	 * @return			The y-coordinate of the top left of the resource's indicator on the tile
+	 */
+	public double getAnchorY(int tile, int resource)
+	{
+		return this.getCentreY(tile) + this.anchorY[resource];
+	}
+
+	/**
+	 * Find the tile under a point, for clicks and the mouse moving. The layout is undone to get the point's fractional axial coordinates, which are rounded
+	 * to the nearest hex in cube coordinates, where q + r + s = 0: each is rounded on its own, and the one that moved furthest is put back from the other two,
+	 * which always gives the hex the point is in. That's a handful of arithmetic however big the map is, rather than checking the point against tiles.
+	 * @param x	The x-coordinate of the point
+	 * @param y	The y-coordinate of the point
+	 * @return	The id of the tile, or -1 if the point isn't on the map
+	 * @see https://www.redblobgames.com/grids/hexagons/#pixel-to-hex
+	 */
+	public int tileAt(double x, double y)
+	{
+		double px = (x - this.originX) / this.radius;
+		double py = (y - this.originY) / this.radius;
+		double q = Math.sqrt(3) / 3 * px - py / 3;
+		double r = 2.0 / 3 * py;
+		double s = -q - r;
+		double roundQ = Math.rint(q);
+		double roundR = Math.rint(r);
+		double roundS = Math.rint(s);
+		double errorQ = Math.abs(roundQ - q);
+		double errorR = Math.abs(roundR - r);
+		double errorS = Math.abs(roundS - s);
+		if(errorQ > errorR && errorQ > errorS)
+		{
+			roundQ = -roundR - roundS;
+		}
+		else if(errorR > errorS)
+		{
+			roundR = -roundQ - roundS;
+		}
+		// anything too far out to be an int is certainly off the map
+		if(Math.abs(roundQ) > Integer.MAX_VALUE / 2 || Math.abs(roundR) > Integer.MAX_VALUE / 2)
+		{
+			return -1;
+		}
+		return this.grid.index((int)roundQ, (int)roundR);
+	}
+
+	/**
+	 * Go through every tile that overlaps a rectangle, such as the part of the map that's on screen. The rows the rectangle covers, and the run of each row
+	 * it covers, come straight from the layout, and the tiles of a run have consecutive ids, so the cost is the number of tiles in the rectangle, however big
+	 * the map is. A tile or two either side of the edges may be included.
+	 * @param left		The x-coordinate of the left of the rectangle
+	 * @param top		The y-coordinate of the top of the rectangle
+	 * @param right		The x-coordinate of the right of the rectangle
+	 * @param bottom	The y-coordinate of the bottom of the rectangle
+	 * @param action	What to do with the id of each tile
+	 */
+	public void forEachTileIn(double left, double top, double right, double bottom, IntConsumer action)
+	{
+		int extent = this.grid.getRadius() - 1;
+		// a row is covered if its tiles reach down past the top or up past the bottom, a tile reaching radius above and below its centre
+		int firstRow = (int)Math.max(-extent, Math.floor((top - this.originY - this.radius) / (1.5 * this.radius)));
+		int lastRow = (int)Math.min(extent, Math.ceil((bottom - this.originY + this.radius) / (1.5 * this.radius)));
+		for(int r = firstRow; r <= lastRow; r++)
+		{
+			// and likewise a tile in the row, reaching half a width either side of its centre
+			int minQ = this.grid.rowMinQ(r);
+			int maxQ = minQ + this.grid.rowLength(r) - 1;
+			int firstQ = (int)Math.max(minQ, Math.floor((left - this.originX) / this.width - r / 2.0 - 0.5));
+			int lastQ = (int)Math.min(maxQ, Math.ceil((right - this.originX) / this.width - r / 2.0 + 0.5));
+			if(firstQ > lastQ)
+			{
+				continue;
+			}
+			int first = this.grid.index(firstQ, r);
+			for(int id = first; id <= first + lastQ - firstQ; id++)
+			{
+				action.accept(id);
+			}
+		}
+	}
+
+	/**
+	 * Getter for the size of a resource indicator
+	 * @return	The width and height of the indicator
+	 */
+	public double getIndicatorSize()
+	{
+		return this.radius / 2.5;
+	}
+}
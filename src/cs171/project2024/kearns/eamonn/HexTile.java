@@ -1,7 +1,4 @@
 package cs171.project2024.kearns.eamonn;
-import java.util.EnumMap;
-import java.util.Random;
-import java.awt.Polygon;
 
 /**
  * A class to handle the relative positions of tiles to each other and allow tile walking for the creation of maze like structures.
@@ -15,18 +12,27 @@ public class HexTile
 	{
 		NORTHWEST, NORTHEAST, EAST, SOUTHEAST, SOUTHWEST, WEST;
 	};
-	
+
 	/**
-	 * Any tile that is within 1 tile of this tile in a given Direction is considered its neighbour. We'll store the Direction enum as the key and the 
+	 * The directions, cached because Direction.values() makes a new array every time it's called
 	 */
-	protected EnumMap<Direction, HexTile> neighbours;
-
+	protected final static Direction[] DIRECTIONS = Direction.values();
 	/**
-	 * In order to simulate geography, in a very very abstract sense, a tile is considered 
+	 * The opposite of each direction, indexed by Direction.ordinal(). The directions go round the hex in order, so the opposite is always three along.
 	 */
-	protected EnumMap<Direction, Boolean> connections;
+	private final static Direction[] OPPOSITES = {Direction.SOUTHEAST, Direction.SOUTHWEST, Direction.WEST, Direction.NORTHWEST, Direction.NORTHEAST, Direction.EAST};
 	
-	protected EnumMap<Direction, Direction> opposites;
+	/**
+	 * The grid the tile is part of. Any tile that is within 1 tile of this tile in a given Direction is considered its neighbour, and the grid works out which
+	 * tile that is from the tile's coordinates, so the tile doesn't have to keep a map of them. In order to simulate geography, in a very very abstract sense,
+	 * a tile is also connected to some of its neighbours and walled off from the rest, and the grid keeps those connections too, as a bitmask per tile.
+	 * Null for a tile that isn't part of a grid, which has no neighbours.
+	 */
+	protected final HexGrid<? extends HexTile> grid;
+	/**
+	 * The tile's index in its grid
+	 */
+	protected final int id;
 
 	
 	/**
@@ -54,45 +60,51 @@ public class HexTile
 	protected int y;
 
 	/**
-	 * This is the easiest way to check if a point is inside a hextile, figuring out the calculations myself is possible, but would be reinventing the wheel.
-	 */
-	Polygon polygon;
-	
-	/**
-	 * The topMostPoint lets you tell if a row could conceivably contain the hextile that contains a Hextile that has been clicked. When iterating through the rows of tiles, this allows us to check the top and bottom bounds of the row by checking
-	 * the y coordinate against said bounds.
+	 * Constructor for a tile that isn't part of a grid
+	 * @param x the x coordinate of the tile
+	 * @param y the y coordinate of the tile
 	 */
-	int[] topMostPoint = new int[2];
+	public HexTile(int x, int y)
+	{
+		this(null, 0, x, y);
+	}
+
 	/**
-	 * The topMostPoint lets you tell if a row could conceivably contain the hextile that contains a Hextile that has been clicked. When iterating through the rows of tiles, this allows us to check the top and bottom bounds of the row by checking
-	 * the y coordinate against said bounds.
+	 * Constructor for a tile in a grid. The x and y coordinates are the position in the row and the row, counting from the top left.
+	 * @param grid	The grid the tile is part of
+	 * @param id	The tile's index in the grid
 	 */
-	int[] bottomMostPoint = new int[2];
-	
-	
+	public HexTile(HexGrid<? extends HexTile> grid, int id)
+	{
+		this(grid, id, grid.q(id) - grid.rowMinQ(grid.r(id)), grid.r(id) + grid.getRadius() - 1);
+	}
 	
 	/**
 	 * Default constructor. Instantiates all needed values
-	 * @param x the x coordinate of the tile
-	 * @param y the y coordinate of the tile
+	 * @param grid	The grid the tile is part of, or null
+	 * @param id	The tile's index in the grid
+	 * @param x 	the x coordinate of the tile
+	 * @param y 	the y coordinate of the tile
 	 */
-	public HexTile(int x, int y)
+	private HexTile(HexGrid<? extends HexTile> grid, int id, int x, int y)
 	{
-		
+		this.grid = grid;
+		this.id = id;
 		this.x = x;
 		this.y = y;
 		this.occupied = false;
 		this.explored = false;
 		this.visited = false;
-		this.connections = new EnumMap<>(Direction.class);
-		this.neighbours = new EnumMap<>(Direction.class);
-		this.opposites = new EnumMap<>(Direction.class);
-		this.opposites.put(Direction.NORTHEAST, Direction.SOUTHWEST);
-		this.opposites.put(Direction.NORTHWEST, Direction.SOUTHEAST);
-		this.opposites.put(Direction.SOUTHEAST, Direction.NORTHWEST);
-		this.opposites.put(Direction.SOUTHWEST, Direction.NORTHEAST);
-		this.opposites.put(Direction.EAST, Direction.WEST);
-		this.opposites.put(Direction.WEST, Direction.EAST);
+	}
+
+	/**
+	 * Get the opposite of a direction
+	 * @param direction	The direction
+	 * @return			The direction pointing the other way
+	 */
+	public static Direction opposite(Direction direction)
+	{
+		return OPPOSITES[direction.ordinal()];
 	}
 	
 	/**
@@ -106,65 +118,34 @@ public class HexTile
 	}
 	
 	/**
-	 * Add a neighbour to a cell and store its direction relative to this tile. This is done for thee neighbouring cell in the opposite direction
-	 * @param neighbour	The neighbouring cell
-	 * @param direction	The direction of the relationship
+	 * Getter for the tile's index in its grid
+	 * @return	The tile's id
 	 */
-	public void addNeighbour(HexTile neighbour, Direction direction)
+	public int getId()
 	{
-		this.neighbours.put(direction, neighbour);
-		Direction d = this.opposites.get(direction);
-		neighbour.neighbours.put(d, this);
+		return this.id;
 	}
 
 	/**
-	 * Set the points the hextile is drawn to. The exact geometry used by any drawing library is irrelevant.
-	 * @param points	A two-d array of integers representing the points
+	 * Getter for the tile's axial q coordinate
+	 * @return	The q coordinate
+	 * @see HexGrid
 	 */
-	public void setPoints(int points[][])
+	public int getQ()
 	{
-		int smallest = Integer.MAX_VALUE;
-		int biggest = Integer.MIN_VALUE;
-		this.polygon = new Polygon();
-
-		for(int[] point: points)
-		{
-			this.polygon.addPoint(point[0], point[1]);
-			if(point[1] > biggest)
-			{
-				biggest = point[1];
-				this.bottomMostPoint = point;
-			}
-			if(point[1] < smallest)
-			{
-				smallest = point[1];
-				this.topMostPoint = point;
-			}
-		}
+		return this.grid == null?this.x:this.grid.q(this.id);
 	}
 
 	/**
-	 * A method to determine if a point (x, y) is within the hextile. Allows us to tell if a cell has been clicked
-	 * @param 	x	The x coord of the point
-	 * @param 	y	The y coord of the point
-	 * @return		True if the hextile contains the point, false otherwise.
+	 * Getter for the tile's axial r coordinate
+	 * @return	The r coordinate
+	 * @see HexGrid
 	 */
-	public boolean isPointInside(int x, int y)
+	public int getR()
 	{
-		return this.polygon.contains(x, y);
+		return this.grid == null?this.y:this.grid.r(this.id);
 	}
 
-	/**
-	 * Check if a point clicked is within the y bounds of the hex. In abstract terms, what this lets us do is check if a row could conceivably contain the point, to reduce the number of checks that are requried.
-	 * This is needed because a y point could be part of one of two rows if the point is in the ^v^v part of the hex intersections
-	 * @param 	y		The y coord of the point
-	 * @return			True if the point is within the vertical bounds
-	 */
-	public boolean isWithinVerticalBounds(int y)
-	{
-		return y < this.bottomMostPoint[1] && y > this.topMostPoint[1];
-	}
-	
 	/**
 	 * A method to check if a tile has a neighbour in a given direction
 	 * @param	direction	The direction to check
@@ -172,7 +153,16 @@ public class HexTile
 	 */
 	public boolean hasNeighbour(Direction direction)
 	{
-		return (this.neighbours.containsKey(direction));
+		return (this.getNeighbourMask() >> direction.ordinal() & 1) != 0;
+	}
+
+	/**
+	 * Get the directions the tile has neighbours in
+	 * @return	A bitmask with bit n set if there is a neighbour in the direction with ordinal n
+	 */
+	public int getNeighbourMask()
+	{
+		return this.grid == null?0:this.grid.neighbourMask(this.id);
 	}
 	
 	/**
@@ -221,49 +211,6 @@ public class HexTile
 		return this.y;
 	}
 	
-	/**
-	 * A method to determine whether or not there are any tiles adjacent to this taht have not been tileWalked
-	 * @return
-	 */
-	public Direction getRandomUnvisitedNeighbourDirection()
-	{
-		// initialise to null
-		Direction neighbourDirection = null;
-		// set an array
-		Direction[] neighbourDirections = new Direction[neighbours.size()];
-		
-		// shuffle the directions
-		int i = 0;
-		for(Direction d: neighbours.keySet())
-		{
-			neighbourDirections[i] = d;
-			i++;
-		}
-			
-		Random r = new Random();
-		// shuffle the array of neighbours using a random swap sort, fast but not cryptographically solid, but that's fine.
-		for(i = 0; i < neighbourDirections.length; i++)
-		{
-			int randomIndex = r.nextInt(neighbourDirections.length);
-			Direction d = neighbourDirections[randomIndex];
-			neighbourDirections[randomIndex] = neighbourDirections[i];
-			neighbourDirections[i] = d;
-		}
-		
-		i = 0;
-		// get a the first of the unvisited neighbouring cells (or null if none)
-		while(neighbourDirection == null && i < neighbourDirections.length)
-		{
-			HexTile t = this.neighbours.get(neighbourDirections[i]);
-			if(t.visited == false)
-			{
-				neighbourDirection = neighbourDirections[i];
-			}
-			i++;
-		}
-		return neighbourDirection;
-	}
-	
 	/**
 	 * Get a specific neighbour given the direction, or null if nonoe
 	 * @param 	direction	The direction to find the neighbour at, if such a neighbour exists
@@ -271,11 +218,11 @@ public class HexTile
 	 */
 	public HexTile getNeighbour(Direction direction)
 	{
-		if(this.neighbours.containsKey(direction))
+		if(this.grid == null)
 		{
-			return this.neighbours.get(direction);
+			return null;
 		}
-		return null;
+		return this.grid.get(this.grid.neighbour(this.id, direction));
 	}
 	
 	/**
@@ -286,11 +233,16 @@ public class HexTile
 	 */
 	public boolean isConnected(Direction direction)
 	{
-		if(this.connections.containsKey(direction))
-		{
-			return this.connections.get(direction);
-		}
-		return false;
+		return (this.getConnectionMask() >> direction.ordinal() & 1) != 0;
+	}
+
+	/**
+	 * Get the directions the tile is connected to its neighbours in
+	 * @return	A bitmask with bit n set if the tile is connected in the direction with ordinal n
+	 */
+	public int getConnectionMask()
+	{
+		return this.grid == null?0:this.grid.getConnections(this.id);
 	}
 	
 	/**
@@ -300,8 +252,7 @@ public class HexTile
 	 */
 	public void addConnection(Direction direction)
 	{
-		this.connections.put(direction, true);
-		this.neighbours.get(direction).connections.put(this.opposites.get(direction), true);
+		this.grid.connect(this.id, direction);
 	}
 	
 	/**
@@ -0,0 +1,146 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.util.Random;
+
+/**
+ * Randomised Kruskal's algorithm. Every wall between two tiles that are part of the maze is listed, the list is shuffled, and each wall in turn is knocked
+ * down unless the tiles either side of it are already joined up, which is checked with a union-find over the tile indices. The roots start off joined to each
+ * other, since they all meet at the settlement, so the result is a single tree through the settlement with no loops.
+ * @see https://weblog.jamisbuck.org/2011/1/3/maze-generation-kruskal-s-algorithm
+ */
+public class KruskalMazeGenerator implements MazeGenerator
+{
+	/**
+	 * The directions walls are listed in from each tile. Every wall is between a tile and its neighbour to the east, south east or south west of one of the two
+	 * tiles, so listing just these from every tile lists each wall exactly once.
+	 */
+	private final static int[] WALL_DIRECTIONS = {HexTile.Direction.EAST.ordinal(), HexTile.Direction.SOUTHEAST.ordinal(), HexTile.Direction.SOUTHWEST.ordinal()};
+
+	/**
+	 * The union-find forest, the parent of each tile or, for the tile at the top of a set, minus the size of the set
+	 */
+	private int[] parent = new int[0];
+	/**
+	 * Whether each tile is being left out of the maze
+	 */
+	private boolean[] excluded = new boolean[0];
+	/**
+	 * The walls, each encoded as tile index * 3 + the index of its direction in WALL_DIRECTIONS
+	 */
+	private int[] walls = new int[0];
+	/**
+	 * The indices of the neighbours of the tile being looked at, by direction ordinal
+	 */
+	private final int[] neighbours = new int[6];
+
+	@Override
+	public void generate(HexGrid<? extends HexTile> grid, int[] roots, Random rng)
+	{
+		int size = grid.size();
+		if(this.parent.length < size)
+		{
+			this.parent = new int[size];
+			this.excluded = new boolean[size];
+			this.walls = new int[size * WALL_DIRECTIONS.length];
+		}
+		for(int i = 0; i < size; i++)
+		{
+			this.parent[i] = -1;
+			this.excluded[i] = grid.get(i).isVisited();
+		}
+		for(int root: roots)
+		{
+			this.excluded[root] = false;
+			this.union(roots[0], root);
+		}
+
+		// list the walls between tiles that are part of the maze
+		int count = 0;
+		for(int i = 0; i < size; i++)
+		{
+			if(this.excluded[i])
+			{
+				continue;
+			}
+			grid.neighbours(i, this.neighbours);
+			for(int w = 0; w < WALL_DIRECTIONS.length; w++)
+			{
+				int neighbour = this.neighbours[WALL_DIRECTIONS[w]];
+				if(neighbour >= 0 && !this.excluded[neighbour])
+				{
+					this.walls[count++] = i * WALL_DIRECTIONS.length + w;
+				}
+			}
+		}
+		// Fisher-Yates
+		for(int i = count - 1; i > 0; i--)
+		{
+			int j = rng.nextInt(i + 1);
+			int wall = this.walls[i];
+			this.walls[i] = this.walls[j];
+			this.walls[j] = wall;
+		}
+
+		for(int i = 0; i < count; i++)
+		{
+			int tile = this.walls[i] / WALL_DIRECTIONS.length;
+			int direction = WALL_DIRECTIONS[this.walls[i] % WALL_DIRECTIONS.length];
+			if(this.union(tile, grid.neighbour(tile, direction)))
+			{
+				grid.connect(tile, direction);
+			}
+		}
+
+		for(int i = 0; i < size; i++)
+		{
+			if(!this.excluded[i])
+			{
+				grid.get(i).visit();
+			}
+		}
+	}
+
+	/**
+	 * Find the tile at the top of the set a tile is in, halving the path to it as we go
+	 * @param tile	The index of the tile
+	 * @return		The index of the top of its set
+	 */
+	private int find(int tile)
+	{
+		while(this.parent[tile] >= 0)
+		{
+			int next = this.parent[tile];
+			if(this.parent[next] >= 0)
+			{
+				this.parent[tile] = this.parent[next];
+			}
+			tile = next;
+		}
+		return tile;
+	}
+
+	/**
+	 * Join the sets two tiles are in, hanging the smaller set off the larger
+	 * @param a	The index of one tile
+	 * @param b	The index of the other
+	 * @return	True if they were in different sets, false if they were already joined
+	 */
+	private boolean union(int a, int b)
+	{
+		a = this.find(a);
+		b = this.find(b);
+		if(a == b)
+		{
+			return false;
+		}
+		if(this.parent[a] > this.parent[b])
+		{
+			int t = a;
+			a = b;
+			b = t;
+		}
+		this.parent[a] += this.parent[b];
+		this.parent[b] = a;
+		return true;
+	}
+}
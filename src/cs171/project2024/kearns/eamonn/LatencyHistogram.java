@@ -0,0 +1,175 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of long values, such as how many nanoseconds something took or how many bytes it allocated, laid out the way HdrHistogram lays its buckets
+ * out: values are bucketed by their highest set bit, and each of those is split into SUB_BUCKETS linear sub buckets, so every value is recorded to within
+ * 1 / SUB_BUCKETS of itself however big it is, in a fixed array of counts. Recording a value is a few shifts and an increment, with no allocation, so it can
+ * go in the tick loop.
+ * Only one thread should record into a histogram. Other threads can read it while it's being recorded into, but may see it part way through a value.
+ * @see https://github.com/HdrHistogram/HdrHistogram
+ */
+public class LatencyHistogram
+{
+	/**
+	 * The log base 2 of the number of sub buckets each power of two is split into
+	 */
+	private final static int SUB_BUCKET_BITS = 5;
+	/**
+	 * The number of sub buckets each power of two is split into, which is also the number of values small enough to have a bucket each
+	 */
+	private final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	/**
+	 * The number of buckets, enough for any non-negative long
+	 */
+	private final static int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	/**
+	 * The number of values recorded in each bucket
+	 */
+	private final long[] counts = new long[BUCKETS];
+	/**
+	 * The number of values recorded
+	 */
+	private long count;
+	/**
+	 * The sum of the values recorded
+	 */
+	private long total;
+	/**
+	 * The smallest value recorded
+	 */
+	private long min = Long.MAX_VALUE;
+	/**
+	 * The largest value recorded
+	 */
+	private long max;
+
+	/**
+	 * Record a value. Negative values, which a clock going backwards could give, are recorded as 0.
+	 * @param value	The value
+	 */
+	public void record(long value)
+	{
+		value = Math.max(value, 0);
+		this.counts[bucket(value)]++;
+		this.count++;
+		this.total += value;
+		this.min = Math.min(this.min, value);
+		this.max = Math.max(this.max, value);
+	}
+
+	/**
+	 * @param value	A non-negative value
+	 * @return		The bucket it goes in
+	 */
+	private static int bucket(long value)
+	{
+		if(value < SUB_BUCKETS)
+		{
+			return (int)value;
+		}
+		// the highest set bit picks the power of two, and the bits just below it pick the sub bucket
+		int shift = Long.SIZE - 1 - SUB_BUCKET_BITS - Long.numberOfLeadingZeros(value);
+		return (shift + 1) * SUB_BUCKETS + (int)(value >>> shift) - SUB_BUCKETS;
+	}
+
+	/**
+	 * @param bucket	A bucket
+	 * @return			The largest value that goes in it
+	 */
+	private static long highestIn(int bucket)
+	{
+		if(bucket < SUB_BUCKETS)
+		{
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long subBucket = bucket % SUB_BUCKETS + SUB_BUCKETS;
+		return ((subBucket + 1) << shift) - 1;
+	}
+
+	/**
+	 * Forget every value recorded
+	 */
+	public void reset()
+	{
+		Arrays.fill(this.counts, 0);
+		this.count = 0;
+		this.total = 0;
+		this.min = Long.MAX_VALUE;
+		this.max = 0;
+	}
+
+	/**
+	 * Getter for the number of values recorded
+	 * @return	The number of values
+	 */
+	public long getCount()
+	{
+		return this.count;
+	}
+
+	/**
+	 * Getter for the sum of the values recorded
+	 * @return	The sum
+	 */
+	public long getTotal()
+	{
+		return this.total;
+	}
+
+	/**
+	 * Getter for the smallest value recorded
+	 * @return	The smallest value, or 0 if none have been
+	 */
+	public long getMin()
+	{
+		return this.count == 0?0:this.min;
+	}
+
+	/**
+	 * Getter for the largest value recorded
+	 * @return	The largest value, or 0 if none have been
+	 */
+	public long getMax()
+	{
+		return this.max;
+	}
+
+	/**
+	 * Getter for the mean of the values recorded
+	 * @return	The mean, or 0 if none have been
+	 */
+	public double getMean()
+	{
+		return this.count == 0?0:(double)this.total / this.count;
+	}
+
+	/**
+	 * Find the value a given percentage of the values recorded are no bigger than, to within the precision of the buckets
+	 * @param percentile	The percentage, from 0 to 100
+	 * @return				The value, or 0 if none have been recorded
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		long count = this.count;
+		if(count == 0)
+		{
+			return 0;
+		}
+		long wanted = Math.max(1, (long)Math.ceil(Math.min(percentile, 100) / 100 * count));
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			seen += this.counts[i];
+			if(seen >= wanted)
+			{
+				// the bucket's top is as close as we can get, but no value in it was bigger than the largest recorded
+				return Math.min(highestIn(i), this.max);
+			}
+		}
+		return this.max;
+	}
+}
@@ -0,0 +1,268 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Running totals for the map a chunk at a time, so questions like how much ore is left on the map, or which parts of it are still producing, can be answered
+ * without going through every tile.
+ * A chunk is a run of SIZE consecutive tile ids. Ids go row by row on an eager map, so a chunk is a strip of a row or two, and in the order tiles were found on a
+ * lazy one, so a chunk is a patch of the map that was explored at about the same time. Either way finding a tile's chunk is a shift.
+ * Each chunk keeps the amount of each resource left in its tiles, the rate each is being mined at, and how many of its tiles are explored and depleted. They're
+ * kept up to date by the tile store and the game as the tiles change, each change costing one addition, and reading any of them costs one lookup.
+ *
+ * The tick loop mines tiles on several threads at once in parallel mode, and two tiles in the same chunk can be mined at the same time, so while the store is
+ * told that's happening the changes are made with atomic additions instead of plain ones. The rest of the time nothing else is changing the totals.
+ * @see TileStore#getChunks()
+ */
+public class MapChunks
+{
+	/**
+	 * The log base 2 of the number of tiles in each chunk
+	 */
+	public final static int SHIFT = 8;
+	/**
+	 * The number of tiles in each chunk
+	 */
+	public final static int SIZE = 1 << SHIFT;
+	/**
+	 * For adding to the long totals atomically
+	 */
+	private final static VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+	/**
+	 * For adding to the int counts atomically
+	 */
+	private final static VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+	/**
+	 * The amount of each resource left in each chunk, indexed by chunk * RESOURCE_COUNT + Resource.ordinal(), in fixed point units
+	 */
+	private long[] remaining;
+	/**
+	 * The amount of each resource being mined from each chunk per tick, indexed the same way, in fixed point units
+	 */
+	private long[] rates;
+	/**
+	 * The number of explored tiles in each chunk
+	 */
+	private int[] explored;
+	/**
+	 * The number of depleted tiles in each chunk
+	 */
+	private int[] depleted;
+
+	/**
+	 * Constructor
+	 * @param capacity	The number of tiles to make room for
+	 */
+	MapChunks(int capacity)
+	{
+		int chunks = chunks(capacity);
+		this.remaining = new long[chunks * TileStore.RESOURCE_COUNT];
+		this.rates = new long[chunks * TileStore.RESOURCE_COUNT];
+		this.explored = new int[chunks];
+		this.depleted = new int[chunks];
+	}
+
+	/**
+	 * @param tiles	A number of tiles
+	 * @return		The number of chunks needed to cover them
+	 */
+	private static int chunks(int tiles)
+	{
+		return (tiles + SIZE - 1) >>> SHIFT;
+	}
+
+	/**
+	 * Make room for more tiles, the new chunks starting out empty
+	 * @param capacity	The number of tiles
+	 */
+	void grow(int capacity)
+	{
+		int chunks = chunks(capacity);
+		this.remaining = Arrays.copyOf(this.remaining, chunks * TileStore.RESOURCE_COUNT);
+		this.rates = Arrays.copyOf(this.rates, chunks * TileStore.RESOURCE_COUNT);
+		this.explored = Arrays.copyOf(this.explored, chunks);
+		this.depleted = Arrays.copyOf(this.depleted, chunks);
+	}
+
+	/**
+	 * Add to a chunk's total of a resource left
+	 * @param tile			The id of the tile that changed
+	 * @param resource		The ordinal of the resource
+	 * @param units			The change, in fixed point units
+	 * @param concurrent	Whether other threads might be changing the same chunk
+	 */
+	void addRemaining(int tile, int resource, long units, boolean concurrent)
+	{
+		add(this.remaining, (tile >>> SHIFT) * TileStore.RESOURCE_COUNT + resource, units, concurrent);
+	}
+
+	/**
+	 * Add to a chunk's rate of mining a resource
+	 * @param tile			The id of the tile that changed
+	 * @param resource		The ordinal of the resource
+	 * @param units			The change, in fixed point units per tick
+	 * @param concurrent	Whether other threads might be changing the same chunk
+	 */
+	void addRate(int tile, int resource, long units, boolean concurrent)
+	{
+		add(this.rates, (tile >>> SHIFT) * TileStore.RESOURCE_COUNT + resource, units, concurrent);
+	}
+
+	/**
+	 * Count a tile as explored, which only happens on the game's own thread
+	 * @param tile	The id of the tile
+	 */
+	void addExplored(int tile)
+	{
+		this.explored[tile >>> SHIFT]++;
+	}
+
+	/**
+	 * Count a tile as depleted, or not any more
+	 * @param tile			The id of the tile
+	 * @param count			1 if it has been depleted, -1 if it no longer is
+	 * @param concurrent	Whether other threads might be changing the same chunk
+	 */
+	void addDepleted(int tile, int count, boolean concurrent)
+	{
+		if(concurrent)
+		{
+			INTS.getAndAdd(this.depleted, tile >>> SHIFT, count);
+		}
+		else
+		{
+			this.depleted[tile >>> SHIFT] += count;
+		}
+	}
+
+	/**
+	 * Add to one of the long totals
+	 */
+	private static void add(long[] totals, int i, long units, boolean concurrent)
+	{
+		if(concurrent)
+		{
+			LONGS.getAndAdd(totals, i, units);
+		}
+		else
+		{
+			totals[i] += units;
+		}
+	}
+
+	/**
+	 * Forget every total, for a new game starting on a store that has just been emptied
+	 */
+	void clear()
+	{
+		Arrays.fill(this.remaining, 0);
+		Arrays.fill(this.rates, 0);
+		Arrays.fill(this.explored, 0);
+		Arrays.fill(this.depleted, 0);
+	}
+
+	/**
+	 * Getter for the number of chunks
+	 * @return	The number of chunks the store's tiles are split into
+	 */
+	public int getChunkCount()
+	{
+		return this.explored.length;
+	}
+
+	/**
+	 * @param tile	The id of a tile
+	 * @return		The chunk the tile is in
+	 */
+	public static int chunkOf(int tile)
+	{
+		return tile >>> SHIFT;
+	}
+
+	/**
+	 * @param chunk		A chunk
+	 * @param resource	The ordinal of a resource
+	 * @return			The amount of the resource left in the chunk's tiles, in fixed point units
+	 */
+	public long getRemaining(int chunk, int resource)
+	{
+		return this.remaining[chunk * TileStore.RESOURCE_COUNT + resource];
+	}
+
+	/**
+	 * @param chunk		A chunk
+	 * @param resource	The ordinal of a resource
+	 * @return			The amount of the resource being mined from the chunk per tick, in fixed point units
+	 */
+	public long getRate(int chunk, int resource)
+	{
+		return this.rates[chunk * TileStore.RESOURCE_COUNT + resource];
+	}
+
+	/**
+	 * @param chunk	A chunk
+	 * @return		The number of the chunk's tiles that have been explored
+	 */
+	public int getExplored(int chunk)
+	{
+		return this.explored[chunk];
+	}
+
+	/**
+	 * @param chunk	A chunk
+	 * @return		The number of the chunk's tiles that have been mined out
+	 */
+	public int getDepleted(int chunk)
+	{
+		return this.depleted[chunk];
+	}
+
+	/**
+	 * @param chunk	A chunk
+	 * @return		Whether or not anything is being mined from the chunk
+	 */
+	public boolean isProducing(int chunk)
+	{
+		for(int r = 0; r < TileStore.RESOURCE_COUNT; r++)
+		{
+			if(this.rates[chunk * TileStore.RESOURCE_COUNT + r] != 0)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Add up a resource left across the whole map, a chunk at a time
+	 * @param resource	The ordinal of the resource
+	 * @return			The amount left, in fixed point units
+	 */
+	public long getTotalRemaining(int resource)
+	{
+		long total = 0;
+		for(int i = resource; i < this.remaining.length; i += TileStore.RESOURCE_COUNT)
+		{
+			total += this.remaining[i];
+		}
+		return total;
+	}
+
+	/**
+	 * Add up the rate a resource is being mined at across the whole map, a chunk at a time
+	 * @param resource	The ordinal of the resource
+	 * @return			The amount mined per tick, in fixed point units
+	 */
+	public long getTotalRate(int resource)
+	{
+		long total = 0;
+		for(int i = resource; i < this.rates.length; i += TileStore.RESOURCE_COUNT)
+		{
+			total += this.rates[i];
+		}
+		return total;
+	}
+}
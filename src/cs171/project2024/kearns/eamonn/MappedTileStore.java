@@ -0,0 +1,505 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A tile store that keeps the tiles in a memory mapped file instead of on the heap, which takes the biggest per tile arrays off the heap and out of the
+ * garbage collector's way, with the operating system paging them in and out as the tiles are used, and which a game can be carried on from after a restart by
+ * mapping the file again.
+ * Each tile's record holds everything about it that changes: its resources, and the flags and connections the game also keeps in its tiles and grid and tells
+ * the store about as they change. What isn't the tiles' is written to the header, and after the records, when the store is closed, and Game.attach puts the
+ * game back together from the records and that, without generating or resetting anything. Only the chunk totals have to be counted up again. The ResourceTile
+ * objects and the store's dirty and mining flags are still on the heap, so a map still has to fit in it, just with a good deal less of it each.
+ *
+ * The file doesn't replace saving. The records are changed in place as the game is played, so the file only holds a game that can be carried on from once the
+ * store has been closed, and the header says whether it was. One that wasn't, because the game crashed, is refused, and has to be recovered from a snapshot and
+ * its journal instead. Building a game on the store, or loading a saved one into it, empties out whatever it held first.
+ *
+ * The file is a header of HEADER_SIZE bytes followed by a fixed size record per tile. The header holds MAGIC, VERSION, the number of resources and the number of
+ * tiles there's room for, then the state of the file, EMPTY, OPEN or CLOSED, and the game's: the number of tiles it uses, its radius, the resources discovered,
+ * its seed, its tick, where what follows the records starts, its maze algorithm, whether it's lazy, its tick mode and then the two ledgers, what's been mined
+ * and what's available, for each resource. A record is a tile's deposits, remaining amounts and rates, RESOURCE_COUNT little endian longs each, then its present
+ * mask, its depleted flag, its flags and its connections, a byte each, and its coordinates, padded out to RECORD_SIZE. After the records come the tiles being
+ * mined and the researches, as GameSnapshot writes them, and a checksum of them.
+ *
+ * A single mapping can't be more than 2GB, so the records are mapped in chunks of 1 << CHUNK_SHIFT tiles. None straddles two chunks, so finding a tile's
+ * record is a shift and a mask. Reading and writing the records goes straight through the mappings with absolute gets and puts, which are as safe as arrays are
+ * for tiles being mined on different threads.
+ */
+public class MappedTileStore extends TileStore implements Closeable
+{
+	/**
+	 * The first four bytes of every tile file, "HEXT"
+	 */
+	final static int MAGIC = 0x54584548;
+	/**
+	 * The version of the layout this uses
+	 */
+	final static int VERSION = 2;
+	/**
+	 * The number of bytes before the first record
+	 */
+	private final static int HEADER_SIZE = 256;
+	/**
+	 * Where in the header the number of tiles there's room for is
+	 */
+	private final static int CAPACITY_AT = 3 * Integer.BYTES;
+	/**
+	 * Where in the header the state of the file is
+	 */
+	private final static int STATE_AT = 16;
+	/**
+	 * Where in the header the number of tiles the game uses is
+	 */
+	private final static int TILES_AT = 20;
+	/**
+	 * Where in the header the radius is
+	 */
+	private final static int RADIUS_AT = 24;
+	/**
+	 * Where in the header the discovered resources are
+	 */
+	private final static int DISCOVERED_AT = 28;
+	/**
+	 * Where in the header the seed is
+	 */
+	private final static int SEED_AT = 32;
+	/**
+	 * Where in the header the tick is
+	 */
+	private final static int TICK_AT = 40;
+	/**
+	 * Where in the header the offset of what follows the records is
+	 */
+	private final static int TRAILER_AT = 48;
+	/**
+	 * Where in the header the maze algorithm is
+	 */
+	private final static int MAZE_AT = 56;
+	/**
+	 * Where in the header whether the map is lazy is
+	 */
+	private final static int LAZY_AT = 57;
+	/**
+	 * Where in the header the tick mode is
+	 */
+	private final static int MODE_AT = 58;
+	/**
+	 * Where in the header the ledgers start, a long for what's been mined and one for what's available for each resource
+	 */
+	private final static int LEDGERS_AT = 64;
+	/**
+	 * The file has never had a game in it
+	 */
+	private final static int EMPTY = 0;
+	/**
+	 * A game is being played in the file, or was when it stopped, so its records may be ahead of its header
+	 */
+	private final static int OPEN = 1;
+	/**
+	 * The file holds a game that was closed cleanly and can be carried on from
+	 */
+	private final static int CLOSED = 2;
+	/**
+	 * Where in a record the remaining amounts start
+	 */
+	private final static int REMAINING = RESOURCE_COUNT * Long.BYTES;
+	/**
+	 * Where in a record the rates start
+	 */
+	private final static int RATES = 2 * RESOURCE_COUNT * Long.BYTES;
+	/**
+	 * Where in a record the present mask is
+	 */
+	private final static int PRESENT = 3 * RESOURCE_COUNT * Long.BYTES;
+	/**
+	 * Where in a record the depleted flag is
+	 */
+	private final static int DEPLETED = PRESENT + 1;
+	/**
+	 * Where in a record the flags are
+	 */
+	private final static int FLAGS = DEPLETED + 1;
+	/**
+	 * Where in a record the connections are
+	 */
+	private final static int CONNECTIONS = FLAGS + 1;
+	/**
+	 * Where in a record the q coordinate is, followed by the r coordinate, which are only kept for lazy maps
+	 */
+	private final static int COORDINATES = CONNECTIONS + 1;
+	/**
+	 * The size of a record, rounded up to a whole number of longs so every amount is aligned
+	 */
+	private final static int RECORD_SIZE = (COORDINATES + 2 * Integer.BYTES + Long.BYTES - 1) & -Long.BYTES;
+	/**
+	 * The log base 2 of the number of tiles in each mapped chunk, as many as will fit in a mapping
+	 */
+	private final static int CHUNK_SHIFT = 30 - (32 - Integer.numberOfLeadingZeros(RECORD_SIZE - 1));
+	/**
+	 * Masks a tile id down to its place in its chunk
+	 */
+	private final static int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+	/**
+	 * The file
+	 */
+	private final FileChannel channel;
+	/**
+	 * The mapping of the header
+	 */
+	private final MappedByteBuffer header;
+	/**
+	 * The mapping of each chunk of records. The last only covers as many tiles as the store has room for.
+	 */
+	private ByteBuffer[] chunks = new ByteBuffer[0];
+	/**
+	 * The game being played in the file, whose state is written to it when it's closed
+	 */
+	private Game game;
+
+	/**
+	 * Constructor
+	 * @param channel	The file, open for reading and writing
+	 * @param header	The mapping of its header, which has already been checked or filled in
+	 * @param capacity	The number of tiles to map
+	 * @throws IOException
+	 */
+	private MappedTileStore(FileChannel channel, MappedByteBuffer header, int capacity) throws IOException
+	{
+		super(capacity);
+		this.channel = channel;
+		this.header = header;
+		this.map(capacity);
+	}
+
+	/**
+	 * Open a tile file, creating it if it isn't there. If it is, the tiles in it are left as they are, for Game.attach to carry the game in it on from, until a
+	 * game is built or loaded into it instead, which empties it first.
+	 * @param path		The file
+	 * @param capacity	The number of tiles to make room for. A file that already has room for more keeps it.
+	 * @return			The store
+	 * @throws IOException	If the file can't be opened or mapped, or isn't a tile file for this version of the game
+	 */
+	public static MappedTileStore open(Path path, int capacity) throws IOException
+	{
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try
+		{
+			boolean existing = channel.size() > 0;
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			if(existing)
+			{
+				if(header.getInt(0) != MAGIC)
+				{
+					throw new IOException(path + " isn't a tile file");
+				}
+				if(header.getInt(Integer.BYTES) != VERSION || header.getInt(2 * Integer.BYTES) != RESOURCE_COUNT)
+				{
+					throw new IOException(path + " was written by a version of the game with different tiles");
+				}
+				capacity = Math.max(capacity, header.getInt(CAPACITY_AT));
+			}
+			else
+			{
+				header.putInt(0, MAGIC);
+				header.putInt(Integer.BYTES, VERSION);
+				header.putInt(2 * Integer.BYTES, RESOURCE_COUNT);
+				header.putInt(STATE_AT, EMPTY);
+			}
+			return new MappedTileStore(channel, header, capacity);
+		}
+		catch(IOException | RuntimeException e)
+		{
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Map enough chunks for a number of tiles, remapping the last one if it needs to cover more. The file grows to fit, and the new records read as zero, which
+	 * is an empty tile.
+	 * @param capacity	The number of tiles
+	 * @throws IOException
+	 */
+	private void map(int capacity) throws IOException
+	{
+		int count = (int)(((long)capacity + CHUNK_MASK) >>> CHUNK_SHIFT);
+		ByteBuffer[] chunks = Arrays.copyOf(this.chunks, count);
+		for(int c = Math.max(this.chunks.length - 1, 0); c < count; c++)
+		{
+			long first = (long)c << CHUNK_SHIFT;
+			long bytes = Math.min(capacity - first, 1L << CHUNK_SHIFT) * RECORD_SIZE;
+			if(chunks[c] == null || chunks[c].capacity() < bytes)
+			{
+				chunks[c] = this.channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + first * RECORD_SIZE, bytes).order(ByteOrder.LITTLE_ENDIAN);
+			}
+		}
+		this.chunks = chunks;
+		this.header.putInt(CAPACITY_AT, capacity);
+	}
+
+	@Override
+	protected void grow(int capacity)
+	{
+		try
+		{
+			this.map(capacity);
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException("The tile file couldn't be grown", e);
+		}
+	}
+
+	/**
+	 * @param tile	The id of a tile
+	 * @return		Where its record starts in its chunk
+	 */
+	private static int offset(int tile)
+	{
+		return (tile & CHUNK_MASK) * RECORD_SIZE;
+	}
+
+	@Override
+	public long getDeposit(int tile, int resource)
+	{
+		return this.chunks[tile >>> CHUNK_SHIFT].getLong(offset(tile) + resource * Long.BYTES);
+	}
+
+	@Override
+	public long getRemaining(int tile, int resource)
+	{
+		return this.chunks[tile >>> CHUNK_SHIFT].getLong(offset(tile) + REMAINING + resource * Long.BYTES);
+	}
+
+	@Override
+	public long getRate(int tile, int resource)
+	{
+		return this.chunks[tile >>> CHUNK_SHIFT].getLong(offset(tile) + RATES + resource * Long.BYTES);
+	}
+
+	@Override
+	public int getPresentMask(int tile)
+	{
+		return this.chunks[tile >>> CHUNK_SHIFT].get(offset(tile) + PRESENT);
+	}
+
+	@Override
+	public boolean isDepleted(int tile)
+	{
+		return this.chunks[tile >>> CHUNK_SHIFT].get(offset(tile) + DEPLETED) != 0;
+	}
+
+	@Override
+	protected void putDeposit(int tile, int resource, long units)
+	{
+		this.chunks[tile >>> CHUNK_SHIFT].putLong(offset(tile) + resource * Long.BYTES, units);
+	}
+
+	@Override
+	protected void putRemaining(int tile, int resource, long units)
+	{
+		this.chunks[tile >>> CHUNK_SHIFT].putLong(offset(tile) + REMAINING + resource * Long.BYTES, units);
+	}
+
+	@Override
+	protected void putRate(int tile, int resource, long units)
+	{
+		this.chunks[tile >>> CHUNK_SHIFT].putLong(offset(tile) + RATES + resource * Long.BYTES, units);
+	}
+
+	@Override
+	protected void putPresentMask(int tile, int mask)
+	{
+		this.chunks[tile >>> CHUNK_SHIFT].put(offset(tile) + PRESENT, (byte)mask);
+	}
+
+	@Override
+	protected void putDepleted(int tile, boolean depleted)
+	{
+		this.chunks[tile >>> CHUNK_SHIFT].put(offset(tile) + DEPLETED, (byte)(depleted?1:0));
+	}
+
+	@Override
+	protected void putFlags(int tile, int flags)
+	{
+		this.chunks[tile >>> CHUNK_SHIFT].put(offset(tile) + FLAGS, (byte)flags);
+	}
+
+	@Override
+	protected void putConnections(int tile, int connections)
+	{
+		this.chunks[tile >>> CHUNK_SHIFT].put(offset(tile) + CONNECTIONS, (byte)connections);
+	}
+
+	@Override
+	protected void putCoordinates(int tile, int q, int r)
+	{
+		ByteBuffer chunk = this.chunks[tile >>> CHUNK_SHIFT];
+		chunk.putInt(offset(tile) + COORDINATES, q);
+		chunk.putInt(offset(tile) + COORDINATES + Integer.BYTES, r);
+	}
+
+	/**
+	 * Write down what the game is that never changes, and that the file no longer holds a game that can be carried on from until the store is closed, since
+	 * the records will be changing under the header from now on
+	 */
+	@Override
+	void startGame(Game game)
+	{
+		this.game = game;
+		this.header.putInt(RADIUS_AT, game.getRadius());
+		this.header.putLong(SEED_AT, game.getSeed());
+		this.header.put(MAZE_AT, (byte)game.getMazeAlgorithm().ordinal());
+		this.header.put(LAZY_AT, (byte)(game.isLazy()?1:0));
+		this.header.putInt(STATE_AT, OPEN);
+		this.header.force();
+	}
+
+	/**
+	 * Check whether the file holds a game that can be carried on from with Game.attach, which it does if the last game played in it was closed cleanly
+	 * @return	True if it does
+	 */
+	public boolean hasGame()
+	{
+		return this.header.getInt(STATE_AT) == CLOSED;
+	}
+
+	/**
+	 * Put the game the file holds back together, for Game.attach. The tiles are left exactly as they are in the file, only having their flags and connections
+	 * put back into the game's own tiles and grid and being counted into the chunks, and the rest of the game is read from the header and what follows the
+	 * records.
+	 * @return	The game
+	 * @throws IOException	If the file doesn't hold a game that was closed cleanly, or is corrupt
+	 */
+	Game attach() throws IOException
+	{
+		if(!this.hasGame())
+		{
+			throw new IOException("The tile file doesn't hold a game that was closed cleanly, so it has to be loaded from a save instead");
+		}
+		if(this.game != null)
+		{
+			throw new IllegalStateException("A game is already being played in the tile file");
+		}
+		Game game;
+		try
+		{
+			int tiles = this.header.getInt(TILES_AT);
+			int radius = this.header.getInt(RADIUS_AT);
+			boolean lazy = this.header.get(LAZY_AT) != 0;
+			if(tiles < 0 || tiles > this.getCapacity() || radius < 1 || (!lazy && tiles != 3L * radius * (radius - 1) + 1))
+			{
+				throw new IOException("The tile file is corrupt, it can't have " + tiles + " tiles on a map with a radius of " + radius);
+			}
+			game = Game.attached(radius, this.header.getLong(SEED_AT), MazeAlgorithm.values()[this.header.get(MAZE_AT)], lazy, this);
+			for(int tile = 0; tile < tiles; tile++)
+			{
+				ByteBuffer chunk = this.chunks[tile >>> CHUNK_SHIFT];
+				int at = offset(tile);
+				game.attachTile(tile, chunk.getInt(at + COORDINATES), chunk.getInt(at + COORDINATES + Integer.BYTES), chunk.get(at + FLAGS),
+						chunk.get(at + CONNECTIONS) & 0xFF);
+			}
+			this.recountChunks(tiles);
+			for(int r = 0; r < RESOURCE_COUNT; r++)
+			{
+				game.getMinedUnits()[r] = this.header.getLong(LEDGERS_AT + 2 * r * Long.BYTES);
+				game.getRemainingUnits()[r] = this.header.getLong(LEDGERS_AT + (2 * r + 1) * Long.BYTES);
+			}
+
+			this.channel.position(this.header.getLong(TRAILER_AT));
+			SnapshotReader in = new SnapshotReader(this.channel);
+			GameSnapshot.readActiveTiles(in, game);
+			GameSnapshot.readResearches(in, game);
+			if(!in.verify())
+			{
+				throw new IOException("The tile file is corrupt, the tiles being mined and the researches don't match their checksum");
+			}
+			game.restore(this.header.getLong(TICK_AT), this.header.getInt(DISCOVERED_AT));
+			game.setTickMode(TickMode.values()[this.header.get(MODE_AT)]);
+		}
+		catch(RuntimeException e)
+		{
+			throw new IOException("The tile file is corrupt", e);
+		}
+		this.startGame(game);
+		return game;
+	}
+
+	/**
+	 * Write out what the game is that isn't in its tiles, after bringing them up to date: the tick and the ledgers to the header, and the tiles being mined and
+	 * the researches after the records, where the file has no tiles to grow into until it's opened again
+	 * @throws IOException
+	 */
+	private void writeGame() throws IOException
+	{
+		Game game = this.game;
+		game.synchronise();
+		this.header.putInt(TILES_AT, game.getGrid().size());
+		this.header.putInt(DISCOVERED_AT, game.getDiscoveredMask());
+		this.header.putLong(TICK_AT, game.getTick());
+		this.header.put(MODE_AT, (byte)game.getTickMode().ordinal());
+		for(int r = 0; r < RESOURCE_COUNT; r++)
+		{
+			this.header.putLong(LEDGERS_AT + 2 * r * Long.BYTES, game.getMinedUnits()[r]);
+			this.header.putLong(LEDGERS_AT + (2 * r + 1) * Long.BYTES, game.getRemainingUnits()[r]);
+		}
+
+		long trailer = HEADER_SIZE + (long)this.getCapacity() * RECORD_SIZE;
+		this.channel.position(trailer);
+		SnapshotWriter out = new SnapshotWriter(this.channel);
+		GameSnapshot.writeActiveTiles(game, out);
+		GameSnapshot.writeResearches(game, out);
+		out.finish();
+		this.header.putLong(TRAILER_AT, trailer);
+	}
+
+	/**
+	 * Write everything that has changed out to the file. The operating system does this in its own time anyway, so this is only needed to be sure it's there
+	 * before carrying on.
+	 */
+	public void force()
+	{
+		for(ByteBuffer chunk: this.chunks)
+		{
+			((MappedByteBuffer)chunk).force();
+		}
+		this.header.force();
+	}
+
+	/**
+	 * Write everything out and close the file, along with the rest of the game being played in it so it can be carried on from with Game.attach. The game
+	 * mustn't be ticking while this happens, and neither it nor the store can be used afterwards.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			if(this.game != null)
+			{
+				this.writeGame();
+				// the tiles have to be there before the header says they can be trusted
+				this.force();
+				this.channel.force(false);
+				this.header.putInt(STATE_AT, CLOSED);
+			}
+			this.force();
+		}
+		finally
+		{
+			this.channel.close();
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * An enum to select the algorithm Game carves the map into a maze with.
+ * @see MazeGenerator
+ */
+public enum MazeAlgorithm
+{
+	/**
+	 * The original depth-first walk, one stack per root taking turns, which makes long winding corridors
+	 * @see BacktrackerMazeGenerator
+	 */
+	BACKTRACKER,
+	/**
+	 * Randomised Kruskal's, joining walls in a random order unless it would make a loop, which makes lots of short dead ends
+	 * @see KruskalMazeGenerator
+	 */
+	KRUSKAL,
+	/**
+	 * Wilson's loop-erased random walks, which picks uniformly from every possible maze
+	 * @see WilsonMazeGenerator
+	 */
+	WILSON,
+	/**
+	 * The map cut into blocks around the settlement, each carved on its own thread and then stitched together without making any loops
+	 * @see ParallelMazeGenerator
+	 */
+	PARALLEL,
+	/**
+	 * Every tile hangs off a neighbour nearer the centre picked by hashing its coordinates, which makes branching corridors leading outwards. The only one that
+	 * can be worked out a tile at a time, so the only one a lazy map can use.
+	 * @see RadialMazeGenerator
+	 */
+	RADIAL;
+
+	/**
+	 * Make a new generator for the algorithm
+	 * @return	The generator
+	 */
+	public MazeGenerator newGenerator()
+	{
+		switch(this)
+		{
+			case KRUSKAL:
+				return new KruskalMazeGenerator();
+			case WILSON:
+				return new WilsonMazeGenerator();
+			case PARALLEL:
+				return new ParallelMazeGenerator(ForkJoinPool.commonPool());
+			case RADIAL:
+				return new RadialMazeGenerator();
+			default:
+				return new BacktrackerMazeGenerator();
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A block of one of the rhombi the parallel maze generator splits the map into, carved into a spanning tree of its own with a depth-first walk.
+ * A block only ever connects tiles that are both inside it, so blocks can be carved on any number of threads at once. The walls it shares with the blocks
+ * after it are collected for the generator to stitch the blocks together with afterwards.
+ * @see ParallelMazeGenerator
+ */
+class MazeBlock extends RecursiveAction
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The generator the block belongs to, which knows which block any tile is in
+	 */
+	private final ParallelMazeGenerator generator;
+	/**
+	 * The grid being carved
+	 */
+	private final HexGrid<? extends HexTile> grid;
+	/**
+	 * The rhombus the block is in
+	 */
+	private final int sector;
+	/**
+	 * The block's id
+	 */
+	private final int id;
+	/**
+	 * The first u coordinate in the block
+	 */
+	private final int u0;
+	/**
+	 * The last u coordinate in the block
+	 */
+	private final int u1;
+	/**
+	 * The first v coordinate in the block
+	 */
+	private final int v0;
+	/**
+	 * The last v coordinate in the block
+	 */
+	private final int v1;
+	/**
+	 * The seed to carve the block with
+	 */
+	private final long seed;
+
+	/**
+	 * The walls between this block and the blocks after it, each encoded as tile index * 6 + the ordinal of the direction of the wall
+	 */
+	long[] walls = new long[16];
+	/**
+	 * The number of entries in walls
+	 */
+	int wallCount;
+
+	/**
+	 * Constructor
+	 * @param generator	The generator the block belongs to
+	 * @param grid		The grid being carved
+	 * @param sector	The rhombus the block is in
+	 * @param id		The block's id
+	 * @param u0		The first u coordinate in the block
+	 * @param u1		The last u coordinate in the block
+	 * @param v0		The first v coordinate in the block
+	 * @param v1		The last v coordinate in the block
+	 * @param seed		The seed to carve the block with
+	 */
+	MazeBlock(ParallelMazeGenerator generator, HexGrid<? extends HexTile> grid, int sector, int id, int u0, int u1, int v0, int v1, long seed)
+	{
+		this.generator = generator;
+		this.grid = grid;
+		this.sector = sector;
+		this.id = id;
+		this.u0 = u0;
+		this.u1 = u1;
+		this.v0 = v0;
+		this.v1 = v1;
+		this.seed = seed;
+	}
+
+	@Override
+	protected void compute()
+	{
+		Random rng = new Random(this.seed);
+		int height = this.v1 - this.v0 + 1;
+		int size = (this.u1 - this.u0 + 1) * height;
+		boolean[] carved = new boolean[size];
+		int[] stack = new int[size];
+		int[] candidates = new int[ParallelMazeGenerator.DU.length];
+		int[] directions = ParallelMazeGenerator.DIRECTIONS[this.sector];
+
+		// a depth-first walk from the block's first tile, which for the first block of a rhombus is the tile the settlement is connected to
+		int stackSize = 0;
+		stack[stackSize++] = 0;
+		carved[0] = true;
+		this.grid.get(this.tile(this.u0, this.v0)).visit();
+		while(stackSize > 0)
+		{
+			int local = stack[stackSize - 1];
+			int u = this.u0 + local / height;
+			int v = this.v0 + local % height;
+			int count = 0;
+			for(int step = 0; step < candidates.length; step++)
+			{
+				int nu = u + ParallelMazeGenerator.DU[step];
+				int nv = v + ParallelMazeGenerator.DV[step];
+				if(nu >= this.u0 && nu <= this.u1 && nv >= this.v0 && nv <= this.v1 && !carved[(nu - this.u0) * height + nv - this.v0])
+				{
+					candidates[count++] = step;
+				}
+			}
+			if(count == 0)
+			{
+				stackSize--;
+				continue;
+			}
+			int step = candidates[rng.nextInt(count)];
+			int next = (u + ParallelMazeGenerator.DU[step] - this.u0) * height + v + ParallelMazeGenerator.DV[step] - this.v0;
+			int tile = this.tile(u, v);
+			this.grid.connect(tile, directions[step]);
+			this.grid.get(this.grid.neighbour(tile, directions[step])).visit();
+			carved[next] = true;
+			stack[stackSize++] = next;
+		}
+
+		// collect the walls along the edges of the block that lead into later blocks
+		for(int u = this.u0; u <= this.u1; u++)
+		{
+			for(int v = this.v0; v <= this.v1; v++)
+			{
+				if(u != this.u0 && u != this.u1 && v != this.v0 && v != this.v1)
+				{
+					continue;
+				}
+				int q = ParallelMazeGenerator.toQ(this.sector, u, v);
+				int r = ParallelMazeGenerator.toR(this.sector, u, v);
+				for(HexTile.Direction direction: HexTile.DIRECTIONS)
+				{
+					int nq = q + HexGrid.dq(direction);
+					int nr = r + HexGrid.dr(direction);
+					if(this.grid.contains(nq, nr) && this.generator.blockOf(nq, nr) > this.id)
+					{
+						if(this.wallCount == this.walls.length)
+						{
+							this.walls = Arrays.copyOf(this.walls, this.wallCount * 2);
+						}
+						this.walls[this.wallCount++] = (long)this.grid.index(q, r) * ParallelMazeGenerator.DU.length + direction.ordinal();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * The index in the grid of a tile in the block
+	 * @param u	The u coordinate of the tile
+	 * @param v	The v coordinate of the tile
+	 * @return	The index of the tile
+	 */
+	private int tile(int u, int v)
+	{
+		return this.grid.index(ParallelMazeGenerator.toQ(this.sector, u, v), ParallelMazeGenerator.toR(this.sector, u, v));
+	}
+}
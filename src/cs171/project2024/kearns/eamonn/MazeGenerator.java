@@ -0,0 +1,24 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.util.Random;
+
+/**
+ * An interface for the algorithms that carve the map into a maze, which is what decides the order tiles are explored in.
+ * A generator is handed a grid whose tiles are all unconnected, apart from whatever has already been set up around the settlement, and a set of root tiles to
+ * grow the maze from. It connects every tile that hasn't been visited yet to exactly one of the roots by exactly one path, so the maze has no loops, and leaves
+ * every other visited tile, such as the settlement, alone. Every tile it carves to is marked visited.
+ *
+ * Generators keep their working space between runs rather than allocating it per step, so a generator shouldn't be shared between threads, and all of the
+ * randomness comes from the generator they are given, so the same seed always gives the same maze.
+ * @see MazeAlgorithm
+ */
+public interface MazeGenerator
+{
+	/**
+	 * Carve the maze
+	 * @param grid	The grid to connect the tiles of
+	 * @param roots	The indices of the tiles to grow the maze from, which are taken to be connected to each other already
+	 * @param rng	The random number generator to draw from
+	 */
+	void generate(HexGrid<? extends HexTile> grid, int[] roots, Random rng);
+}
@@ -0,0 +1,279 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * A maze generator that carves the map on as many threads as there are to spare.
+ * Taking s = -q - r, the map around the settlement splits into three rhombi, {q > 0, r <= 0}, {r > 0, s <= 0} and {s > 0, q <= 0}, each a 120 degree turn of
+ * the last and each holding one of the tiles the settlement starts off connected to: the east, south west and north west ones. Each rhombus is given local
+ * coordinates (u, v), u running from 1 to the map's extent and v from 0 to the extent, with the seed tile at (1, 0), and cut into blocks of BLOCK_SIZE by
+ * BLOCK_SIZE. Every block is a connected patch of tiles, so each is carved into a spanning tree of its own with a depth-first walk, all at once on a
+ * ForkJoinPool.
+ *
+ * The blocks are then stitched together with Kruskal's algorithm over the blocks rather than the tiles: the walls between neighbouring blocks are shuffled,
+ * and each is knocked down only if its blocks aren't already joined, so no loops are made. The three seed blocks start off joined, through the settlement,
+ * so the end result is a single spanning tree through the settlement.
+ *
+ * The blocks are a fixed size and each is seeded from the generator handed in, in block order, before any work is handed out, and the walls between them are
+ * gathered in block order, so the maze depends only on the seed and never on how many threads carved it.
+ */
+public class ParallelMazeGenerator implements MazeGenerator
+{
+	/**
+	 * The width and height of a block in tiles
+	 */
+	final static int BLOCK_SIZE = 64;
+	/**
+	 * The change in u of a step in each of the directions a block is walked in
+	 */
+	final static int[] DU = {0, 1, 1, 0, -1, -1};
+	/**
+	 * The change in v of a step in each of the directions a block is walked in
+	 */
+	final static int[] DV = {1, 1, 0, -1, -1, 0};
+	/**
+	 * The ordinal of the Direction each step in DU and DV is in, for each of the three rhombi, since the same step in (u, v) points a different way on the map
+	 * in each
+	 */
+	final static int[][] DIRECTIONS = new int[3][DU.length];
+
+	static
+	{
+		for(int sector = 0; sector < 3; sector++)
+		{
+			for(int step = 0; step < DU.length; step++)
+			{
+				int dq = toQ(sector, DU[step], DV[step]) - toQ(sector, 0, 0);
+				int dr = toR(sector, DU[step], DV[step]) - toR(sector, 0, 0);
+				for(HexTile.Direction direction: HexTile.DIRECTIONS)
+				{
+					if(HexGrid.dq(direction) == dq && HexGrid.dr(direction) == dr)
+					{
+						DIRECTIONS[sector][step] = direction.ordinal();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * The pool the blocks are carved on
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * The largest distance from the centre of any tile on the map being carved
+	 */
+	private int extent;
+	/**
+	 * The number of blocks across the u of each rhombus
+	 */
+	private int blocksU;
+	/**
+	 * The number of blocks across the v of each rhombus
+	 */
+	private int blocksV;
+
+	/**
+	 * Constructor
+	 * @param pool	The pool to carve the blocks on
+	 */
+	public ParallelMazeGenerator(ForkJoinPool pool)
+	{
+		this.pool = pool;
+	}
+
+	/**
+	 * Carve the maze. The roots must be the east, south west and north west neighbours of the centre of the grid, in any order, since the rhombi are laid out
+	 * around them, and every tile but the centre is carved.
+	 */
+	@Override
+	public void generate(HexGrid<? extends HexTile> grid, int[] roots, Random rng)
+	{
+		this.extent = grid.getRadius() - 1;
+		if(this.extent < 1)
+		{
+			return;
+		}
+		int[] seedTiles = new int[3];
+		for(int sector = 0; sector < 3; sector++)
+		{
+			seedTiles[sector] = grid.index(toQ(sector, 1, 0), toR(sector, 1, 0));
+		}
+		int[] sortedRoots = roots.clone();
+		int[] sortedSeeds = seedTiles.clone();
+		Arrays.sort(sortedRoots);
+		Arrays.sort(sortedSeeds);
+		if(!Arrays.equals(sortedRoots, sortedSeeds))
+		{
+			throw new IllegalArgumentException("The parallel maze has to be grown from the east, south west and north west neighbours of the centre");
+		}
+
+		this.blocksU = (this.extent + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		this.blocksV = (this.extent + 1 + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		int blockCount = 3 * this.blocksU * this.blocksV;
+
+		// seed every block up front, in order, so it doesn't matter which thread gets to which block first
+		MazeBlock[] blocks = new MazeBlock[blockCount];
+		for(int sector = 0; sector < 3; sector++)
+		{
+			for(int bu = 0; bu < this.blocksU; bu++)
+			{
+				for(int bv = 0; bv < this.blocksV; bv++)
+				{
+					int u0 = 1 + bu * BLOCK_SIZE;
+					int v0 = bv * BLOCK_SIZE;
+					blocks[this.block(sector, bu, bv)] = new MazeBlock(
+						this, grid, sector, this.block(sector, bu, bv), u0, Math.min(u0 + BLOCK_SIZE - 1, this.extent), v0, Math.min(v0 + BLOCK_SIZE - 1, this.extent), rng.nextLong()
+					);
+				}
+			}
+		}
+		this.pool.invoke(ForkJoinTask.adapt(()->ForkJoinTask.invokeAll(blocks)));
+
+		// gather the walls between blocks in block order, and shuffle them
+		int wallCount = 0;
+		for(MazeBlock block: blocks)
+		{
+			wallCount += block.wallCount;
+		}
+		long[] walls = new long[wallCount];
+		wallCount = 0;
+		for(MazeBlock block: blocks)
+		{
+			System.arraycopy(block.walls, 0, walls, wallCount, block.wallCount);
+			wallCount += block.wallCount;
+		}
+		for(int i = wallCount - 1; i > 0; i--)
+		{
+			int j = rng.nextInt(i + 1);
+			long wall = walls[i];
+			walls[i] = walls[j];
+			walls[j] = wall;
+		}
+
+		// and stitch the blocks together, with the seed blocks already joined through the settlement
+		int[] parent = new int[blockCount];
+		Arrays.fill(parent, -1);
+		union(parent, this.block(0, 0, 0), this.block(1, 0, 0));
+		union(parent, this.block(0, 0, 0), this.block(2, 0, 0));
+		for(long wall: walls)
+		{
+			int tile = (int)(wall / DU.length);
+			int direction = (int)(wall % DU.length);
+			int neighbour = grid.neighbour(tile, direction);
+			if(union(parent, this.blockOf(grid.q(tile), grid.r(tile)), this.blockOf(grid.q(neighbour), grid.r(neighbour))))
+			{
+				grid.connect(tile, direction);
+			}
+		}
+	}
+
+	/**
+	 * The id of a block
+	 * @param sector	The rhombus the block is in
+	 * @param bu		The block's position across the u of the rhombus
+	 * @param bv		The block's position across the v of the rhombus
+	 * @return			The block's id
+	 */
+	private int block(int sector, int bu, int bv)
+	{
+		return (sector * this.blocksU + bu) * this.blocksV + bv;
+	}
+
+	/**
+	 * Find the block a tile is in
+	 * @param q	The q coordinate of the tile
+	 * @param r	The r coordinate of the tile
+	 * @return	The id of the block, or -1 for the centre, which isn't in one
+	 */
+	int blockOf(int q, int r)
+	{
+		int s = -q - r;
+		if(q > 0 && r <= 0)
+		{
+			return this.block(0, (q - 1) / BLOCK_SIZE, -r / BLOCK_SIZE);
+		}
+		if(r > 0 && s <= 0)
+		{
+			return this.block(1, (r - 1) / BLOCK_SIZE, -s / BLOCK_SIZE);
+		}
+		if(s > 0 && q <= 0)
+		{
+			return this.block(2, (s - 1) / BLOCK_SIZE, -q / BLOCK_SIZE);
+		}
+		return -1;
+	}
+
+	/**
+	 * The q coordinate of a point in a rhombus
+	 * @param sector	The rhombus
+	 * @param u			The u coordinate in the rhombus
+	 * @param v			The v coordinate in the rhombus
+	 * @return			The q coordinate on the map
+	 */
+	static int toQ(int sector, int u, int v)
+	{
+		return sector == 0?u:sector == 1?v - u:-v;
+	}
+
+	/**
+	 * The r coordinate of a point in a rhombus
+	 * @param sector	The rhombus
+	 * @param u			The u coordinate in the rhombus
+	 * @param v			The v coordinate in the rhombus
+	 * @return			The r coordinate on the map
+	 */
+	static int toR(int sector, int u, int v)
+	{
+		return sector == 0?-v:sector == 1?u:v - u;
+	}
+
+	/**
+	 * Join the sets two blocks are in, hanging the smaller set off the larger
+	 * @param parent	The union-find forest, the parent of each block or minus the size of the set for the block at the top of one
+	 * @param a			One block
+	 * @param b			The other
+	 * @return			True if they were in different sets, false if they were already joined
+	 */
+	private static boolean union(int[] parent, int a, int b)
+	{
+		a = find(parent, a);
+		b = find(parent, b);
+		if(a == b)
+		{
+			return false;
+		}
+		if(parent[a] > parent[b])
+		{
+			int t = a;
+			a = b;
+			b = t;
+		}
+		parent[a] += parent[b];
+		parent[b] = a;
+		return true;
+	}
+
+	/**
+	 * Find the block at the top of the set a block is in
+	 * @param parent	The union-find forest
+	 * @param block		The block
+	 * @return			The block at the top of its set
+	 */
+	private static int find(int[] parent, int block)
+	{
+		while(parent[block] >= 0)
+		{
+			if(parent[parent[block]] >= 0)
+			{
+				parent[block] = parent[parent[block]];
+			}
+			block = parent[block];
+		}
+		return block;
+	}
+}
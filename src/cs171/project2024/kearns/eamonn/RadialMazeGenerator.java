@@ -0,0 +1,162 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A maze where every tile's connections can be worked out from its own coordinates and a seed, without looking at the rest of the map.
+ * Each tile but the settlement has a parent one step closer to the centre, picked by hashing the seed with the tile's coordinates from the one or two
+ * neighbours that are. The east, south west and north west neighbours of the centre have the settlement itself as their parent, and the other three tiles
+ * next to the settlement pick between the two of those they touch, so the settlement only ever connects to the three tiles it always has. A tile is connected
+ * to its parent and to every neighbour that picked it as theirs. Every parent is closer to the centre than its child, so there can't be any loops, and every
+ * tile leads back to the settlement, so this is a spanning tree like the other algorithms make. The corridors only ever lead outwards, so it makes a branching,
+ * coral-like maze rather than a winding one.
+ *
+ * This is what makes a lazy map possible, since a tile's connections can be found the first time it's looked at. Carving a whole grid with it gives exactly the
+ * same maze as a lazy map with the same seed.
+ * @see SparseHexGrid
+ */
+public class RadialMazeGenerator implements MazeGenerator
+{
+	/**
+	 * The bits of the directions of the three tiles the settlement starts off connected to
+	 */
+	final static int SEED_MASK = (1 << HexTile.Direction.NORTHWEST.ordinal()) | (1 << HexTile.Direction.SOUTHWEST.ordinal()) | (1 << HexTile.Direction.EAST.ordinal());
+
+	/**
+	 * Carve the maze. The roots must be the east, south west and north west neighbours of the centre of the grid, in any order, since those are the only tiles
+	 * the rule lets connect to the settlement, and every tile but the centre is carved.
+	 */
+	@Override
+	public void generate(HexGrid<? extends HexTile> grid, int[] roots, Random rng)
+	{
+		int extent = grid.getRadius() - 1;
+		if(extent < 1)
+		{
+			return;
+		}
+		int[] seedTiles = new int[3];
+		int count = 0;
+		for(int d = 0; d < HexGrid.DQ.length; d++)
+		{
+			if((SEED_MASK & (1 << d)) != 0)
+			{
+				seedTiles[count++] = grid.index(HexGrid.DQ[d], HexGrid.DR[d]);
+			}
+		}
+		int[] sortedRoots = roots.clone();
+		Arrays.sort(sortedRoots);
+		Arrays.sort(seedTiles);
+		if(!Arrays.equals(sortedRoots, seedTiles))
+		{
+			throw new IllegalArgumentException("The radial maze has to be grown from the east, south west and north west neighbours of the centre");
+		}
+
+		long seed = rng.nextLong();
+		for(int r = -extent; r <= extent; r++)
+		{
+			int minQ = grid.rowMinQ(r);
+			for(int q = minQ; q < minQ + grid.rowLength(r); q++)
+			{
+				int parent = parent(seed, q, r);
+				if(parent >= 0)
+				{
+					int tile = grid.index(q, r);
+					grid.connect(tile, parent);
+					grid.get(tile).visit();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Pick the neighbour a tile hangs off in the maze
+	 * @param seed	The seed of the maze
+	 * @param q		The q coordinate of the tile
+	 * @param r		The r coordinate of the tile
+	 * @return		The ordinal of the direction of the tile's parent, or -1 for the centre, which doesn't have one
+	 */
+	static int parent(long seed, int q, int r)
+	{
+		int distance = HexGrid.distance(q, r, 0, 0);
+		if(distance == 0)
+		{
+			return -1;
+		}
+		int first = -1;
+		int second = -1;
+		for(int d = 0; d < HexGrid.DQ.length; d++)
+		{
+			int nq = q + HexGrid.DQ[d];
+			int nr = r + HexGrid.DR[d];
+			boolean candidate;
+			if(distance == 1)
+			{
+				// the seeds hang off the settlement, and the rest of the first ring off whichever seeds they touch
+				candidate = isSeed(q, r)?nq == 0 && nr == 0:isSeed(nq, nr);
+			}
+			else
+			{
+				candidate = HexGrid.distance(nq, nr, 0, 0) == distance - 1;
+			}
+			if(candidate)
+			{
+				if(first < 0)
+				{
+					first = d;
+				}
+				else
+				{
+					second = d;
+				}
+			}
+		}
+		if(second < 0)
+		{
+			return first;
+		}
+		return DepositGenerator.mix(DepositGenerator.mix(seed + q * DepositGenerator.GAMMA) + r * DepositGenerator.GAMMA) < 0?first:second;
+	}
+
+	/**
+	 * Work out all of a tile's connections in the maze, which are its parent and any neighbours that picked it as theirs
+	 * @param seed		The seed of the maze
+	 * @param q			The q coordinate of the tile
+	 * @param r			The r coordinate of the tile
+	 * @param extent	The largest distance from the centre of any tile on the map
+	 * @return			A bitmask with bit n set if the tile is connected to its neighbour in the direction with ordinal n
+	 */
+	static int connections(long seed, int q, int r, int extent)
+	{
+		int parent = parent(seed, q, r);
+		int mask = parent < 0?0:1 << parent;
+		for(int d = 0; d < HexGrid.DQ.length; d++)
+		{
+			int nq = q + HexGrid.DQ[d];
+			int nr = r + HexGrid.DR[d];
+			if(d != parent && HexGrid.distance(nq, nr, 0, 0) <= extent && parent(seed, nq, nr) == (d + 3) % HexGrid.DQ.length)
+			{
+				mask |= 1 << d;
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * Check whether a tile is one of the three the settlement starts off connected to
+	 * @param q	The q coordinate of the tile
+	 * @param r	The r coordinate of the tile
+	 * @return	True if the tile is the east, south west or north west neighbour of the centre
+	 */
+	private static boolean isSeed(int q, int r)
+	{
+		for(int d = 0; d < HexGrid.DQ.length; d++)
+		{
+			if((SEED_MASK & (1 << d)) != 0 && HexGrid.DQ[d] == q && HexGrid.DR[d] == r)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+}
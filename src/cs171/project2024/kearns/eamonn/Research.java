@@ -79,6 +79,15 @@ public class Research
         return this.name+(repeatable?String.format(" (%d/%d)", this.currentLevel,this.maxLevel):"");
     }
 
+    /**
+     * Getter for the research name without the level decoration getName adds to repeatable researches
+     * @return  The name of the research as it appears in the research data
+     */
+    public String getBaseName()
+    {
+        return this.name;
+    }
+
     /**
      * A method to determine, given the amount of each resource available, whether this research can be afforded
      * @param availableResources    AN enum of the resources required.
@@ -152,6 +161,46 @@ public class Research
         return this.repeatable;
     }
 
+    /**
+     * Getter for how many times the research has been done
+     * @return  The current level of the research
+     */
+    public int getCurrentLevel()
+    {
+        return this.currentLevel;
+    }
+
+    /**
+     * Put back the progress of a research from a saved game. Repeatable researches get more expensive as they're levelled up, so the costs are saved too.
+     * @param currentLevel  How many times the research had been done
+     * @param complete      Whether it had been completed
+     * @param costs         What it cost at the time
+     */
+    void restore(int currentLevel, boolean complete, EnumMap<Resource, Double> costs)
+    {
+        this.currentLevel = currentLevel;
+        this.complete = complete;
+        this.costs.clear();
+        this.costs.putAll(costs);
+    }
+
+    /**
+     * Make a copy of the research with costs and boosts of its own, so that buying the copy leaves this one as it was
+     * @return  The copy
+     * @see ResearchCatalog#newResearches()
+     */
+    Research copy()
+    {
+        Research copy = new Research(this.name, new EnumMap<>(this.costs), this.repeatable, this.complete);
+        if(this.boosts != null)
+        {
+            copy.boosts = new EnumMap<>(this.boosts);
+        }
+        copy.maxLevel = this.maxLevel;
+        copy.currentLevel = this.currentLevel;
+        return copy;
+    }
+
     /**
      * Convert a Jackson JsonNode to a Research Object
      * @param json  The Jackson JsonNode object representing a Research.
@@ -181,7 +230,7 @@ public class Research
             boostsItr.forEachRemaining(e->{
                 boosts.put(
                     Resource.byLabel(e),
-                    costsNode.get(e).asDouble()
+                    boostsNode.get(e).asDouble()
                 );
             });
             r.boosts = boosts;
@@ -0,0 +1,669 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.zip.CRC32C;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import cs171.project2024.kearns.eamonn.ResourceTile.Resource;
+
+/**
+ * Every research there is, as read from the research data, checked over once when it's read and indexed by name and by the resources each costs and boosts.
+ * A catalog never changes once it's read. The researches in it are only the definitions, and each game gets copies of its own from newResearches to buy, in
+ * the same order, so the positions the indexes give are positions in the game's list too.
+ *
+ * The research data can be JSON, which is read with Jackson's streaming parser rather than built into a tree first, or the older CSV, with a header row of
+ * resource labels and a row per research of its name and what it costs in each, which can't describe repeatable researches. Either way, load keeps a compiled
+ * copy next to the data in a compact binary form and reads that instead the next time, for as long as the data it was compiled from hasn't changed.
+ * The compiled form is, in order
+ * 	MAGIC			to tell it's a compiled catalog
+ * 	VERSION			the version of the format
+ * 	the checksum	a CRC32C of the data it was compiled from
+ * 	the count		the number of researches
+ * and then for each research its name, a byte of flags (1 if it's repeatable, 2 if it's complete), its maximum and current levels, a byte with bit n set if
+ * it costs the resource with ordinal n followed by those costs in ordinal order, and the same again for its boosts.
+ * @see Research
+ */
+public class ResearchCatalog
+{
+	/**
+	 * The first four bytes of a compiled catalog, "RSCH"
+	 */
+	private final static int MAGIC = 0x52534348;
+	/**
+	 * The version of the compiled format. Any change to the layout needs a new version, and a compiled catalog of another version is compiled again.
+	 */
+	private final static int VERSION = 1;
+	/**
+	 * What's added to the name of the research data for the name of its compiled copy
+	 */
+	public final static String COMPILED_SUFFIX = ".bin";
+	/**
+	 * A catalog with no researches in it, for a game whose research data couldn't be read
+	 */
+	public final static ResearchCatalog EMPTY = new ResearchCatalog(new ArrayList<Research>(), 0);
+	/**
+	 * The factory for the streaming parsers, which is thread safe and costly enough to make that there's only the one
+	 */
+	private final static JsonFactory JSON = new JsonFactory();
+
+	/**
+	 * The researches, as read, which are never handed out since buying a research changes it
+	 */
+	private final Research[] researches;
+	/**
+	 * The position of each research by its name
+	 */
+	private final HashMap<String, Integer> positions;
+	/**
+	 * The positions of the researches that cost each resource, indexed by Resource.ordinal(), in order
+	 */
+	private final int[][] costing = new int[TileStore.RESOURCE_COUNT][];
+	/**
+	 * The positions of the researches that boost each resource, indexed by Resource.ordinal(), in order
+	 */
+	private final int[][] boosting = new int[TileStore.RESOURCE_COUNT][];
+	/**
+	 * The checksum of the research data the catalog was read from, or 0 if it's not known
+	 */
+	private final int sourceChecksum;
+
+	/**
+	 * Constructor, indexes the researches, which must already have been validated
+	 * @param researches		The researches
+	 * @param sourceChecksum	The checksum of the research data they were read from, or 0 if it's not known
+	 */
+	private ResearchCatalog(ArrayList<Research> researches, int sourceChecksum)
+	{
+		this.researches = researches.toArray(new Research[researches.size()]);
+		this.sourceChecksum = sourceChecksum;
+		this.positions = new HashMap<>(this.researches.length * 2);
+		for(int i = 0; i < this.researches.length; i++)
+		{
+			this.positions.put(this.researches[i].getBaseName(), i);
+		}
+		for(Resource resource: Resource.values())
+		{
+			this.costing[resource.ordinal()] = this.positionsOf(resource, false);
+			this.boosting[resource.ordinal()] = this.positionsOf(resource, true);
+		}
+	}
+
+	/**
+	 * Find the researches that cost or boost a resource
+	 * @param resource	The resource
+	 * @param boosts	Whether to look at what the researches boost rather than what they cost
+	 * @return			Their positions, in order
+	 */
+	private int[] positionsOf(Resource resource, boolean boosts)
+	{
+		int count = 0;
+		int[] found = new int[this.researches.length];
+		for(int i = 0; i < this.researches.length; i++)
+		{
+			EnumMap<Resource, Double> amounts = boosts?this.researches[i].getBoosts():this.researches[i].getCosts();
+			if(amounts != null && amounts.containsKey(resource))
+			{
+				found[count++] = i;
+			}
+		}
+		return Arrays.copyOf(found, count);
+	}
+
+	/**
+	 * Read the research data from a file, JSON or CSV depending on its extension, or from its compiled copy if that's up to date. If the compiled copy isn't
+	 * there or is out of date, the data is read and checked and then compiled again, unless the compiled copy can't be written, which doesn't matter.
+	 * @param source	The research data
+	 * @return			The catalog
+	 * @throws IOException	If the data can't be read or isn't valid
+	 */
+	public static ResearchCatalog load(Path source) throws IOException
+	{
+		byte[] data = Files.readAllBytes(source);
+		CRC32C crc = new CRC32C();
+		crc.update(data);
+		int checksum = (int)crc.getValue();
+
+		Path compiled = source.resolveSibling(source.getFileName() + COMPILED_SUFFIX);
+		if(Files.isReadable(compiled))
+		{
+			try(InputStream in = Files.newInputStream(compiled))
+			{
+				ResearchCatalog catalog = readBinary(in, checksum);
+				if(catalog != null)
+				{
+					return catalog;
+				}
+			}
+			catch(IOException e)
+			{
+				// a broken compiled copy is no worse than a missing one, it just gets compiled again
+			}
+		}
+
+		ResearchCatalog catalog;
+		if(source.getFileName().toString().toLowerCase().endsWith(".csv"))
+		{
+			catalog = readCsv(new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8), checksum);
+		}
+		else
+		{
+			catalog = readJson(new ByteArrayInputStream(data), checksum);
+		}
+		try
+		{
+			// written alongside and moved into place, so a game starting at the same time never sees half of it
+			Path temporary = Files.createTempFile(compiled.toAbsolutePath().getParent(), source.getFileName().toString(), COMPILED_SUFFIX);
+			try(OutputStream out = Files.newOutputStream(temporary))
+			{
+				catalog.writeBinary(out);
+			}
+			Files.move(temporary, compiled, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch(IOException e)
+		{
+			System.err.println("The research data couldn't be compiled to " + compiled + ", it will be read from " + source + " again next time");
+		}
+		return catalog;
+	}
+
+	/**
+	 * Read research data in JSON: an array of objects, each with a name, whether it's repeatable and complete, its costs and boosts as objects of resource
+	 * labels to amounts, and its maximum and current levels. Anything else in them is ignored.
+	 * @param in	Where to read it from
+	 * @return		The catalog
+	 * @throws IOException	If it can't be read or isn't valid
+	 */
+	public static ResearchCatalog readJson(InputStream in) throws IOException
+	{
+		return readJson(in, 0);
+	}
+
+	/**
+	 * Read research data in JSON
+	 * @param in				Where to read it from
+	 * @param sourceChecksum	The checksum of the data, for the compiled copy
+	 * @return					The catalog
+	 * @throws IOException		If it can't be read or isn't valid
+	 */
+	private static ResearchCatalog readJson(InputStream in, int sourceChecksum) throws IOException
+	{
+		ArrayList<Research> researches = new ArrayList<>();
+		try(JsonParser parser = JSON.createParser(in))
+		{
+			if(parser.nextToken() != JsonToken.START_ARRAY)
+			{
+				throw new JsonParseException(parser, "The research data should be an array of researches");
+			}
+			while(parser.nextToken() == JsonToken.START_OBJECT)
+			{
+				researches.add(readJsonResearch(parser));
+			}
+			if(parser.currentToken() != JsonToken.END_ARRAY)
+			{
+				throw new JsonParseException(parser, "Each research should be an object");
+			}
+		}
+		validate(researches);
+		return new ResearchCatalog(researches, sourceChecksum);
+	}
+
+	/**
+	 * Read a research from JSON
+	 * @param parser	The parser, on the start of the research's object
+	 * @return			The research
+	 * @throws IOException
+	 */
+	private static Research readJsonResearch(JsonParser parser) throws IOException
+	{
+		String name = null;
+		boolean repeatable = false;
+		boolean complete = false;
+		int maxLevel = 0;
+		int currentLevel = 0;
+		EnumMap<Resource, Double> costs = new EnumMap<>(Resource.class);
+		EnumMap<Resource, Double> boosts = new EnumMap<>(Resource.class);
+		while(parser.nextToken() == JsonToken.FIELD_NAME)
+		{
+			String field = parser.currentName();
+			parser.nextToken();
+			switch(field)
+			{
+				case "name":
+					name = parser.getValueAsString();
+					break;
+				case "repeatable":
+					repeatable = parser.getValueAsBoolean();
+					break;
+				case "complete":
+					complete = parser.getValueAsBoolean();
+					break;
+				case "maxLevel":
+					maxLevel = parser.getValueAsInt();
+					break;
+				case "currentLevel":
+					currentLevel = parser.getValueAsInt();
+					break;
+				case "costs":
+					readJsonAmounts(parser, costs);
+					break;
+				case "boosts":
+					readJsonAmounts(parser, boosts);
+					break;
+				default:
+					parser.skipChildren();
+			}
+		}
+		if(name == null)
+		{
+			throw new JsonParseException(parser, "A research has no name");
+		}
+		return create(name, costs, boosts, repeatable, complete, maxLevel, currentLevel);
+	}
+
+	/**
+	 * Read an object of resource labels to amounts
+	 * @param parser	The parser, on the start of the object
+	 * @param amounts	Where to put the amounts
+	 * @throws IOException
+	 */
+	private static void readJsonAmounts(JsonParser parser, EnumMap<Resource, Double> amounts) throws IOException
+	{
+		if(parser.currentToken() != JsonToken.START_OBJECT)
+		{
+			throw new JsonParseException(parser, "Costs and boosts should be objects of resources to amounts");
+		}
+		while(parser.nextToken() == JsonToken.FIELD_NAME)
+		{
+			String label = parser.currentName();
+			Resource resource = resourceCalled(label);
+			if(resource == null)
+			{
+				throw new JsonParseException(parser, label + " isn't a resource");
+			}
+			if(!parser.nextToken().isNumeric())
+			{
+				throw new JsonParseException(parser, "The amount of " + label + " should be a number");
+			}
+			amounts.put(resource, parser.getDoubleValue());
+		}
+	}
+
+	/**
+	 * Find a resource by what the research data calls it, which is its label, or its name for the ones like "Fissile" whose labels are too long for a header
+	 * @param name	What the data calls it
+	 * @return		The resource, or null if there isn't one called that
+	 */
+	private static Resource resourceCalled(String name)
+	{
+		Resource resource = Resource.byLabel(name);
+		if(resource != null)
+		{
+			return resource;
+		}
+		for(Resource r: Resource.values())
+		{
+			if(r.name().equalsIgnoreCase(name))
+			{
+				return r;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Read research data in CSV: a header row of "Research name" followed by resource labels, then a row per research of its name followed by what it costs
+	 * in each of those resources, left empty for the ones it doesn't cost. Every research read this way isn't repeatable and isn't complete.
+	 * Names can't have commas in them, since there's no quoting.
+	 * @param in	Where to read it from
+	 * @return		The catalog
+	 * @throws IOException	If it can't be read or isn't valid
+	 */
+	public static ResearchCatalog readCsv(Reader in) throws IOException
+	{
+		return readCsv(in, 0);
+	}
+
+	/**
+	 * Read research data in CSV
+	 * @param in				Where to read it from
+	 * @param sourceChecksum	The checksum of the data, for the compiled copy
+	 * @return					The catalog
+	 * @throws IOException		If it can't be read or isn't valid
+	 */
+	private static ResearchCatalog readCsv(Reader in, int sourceChecksum) throws IOException
+	{
+		ArrayList<Research> researches = new ArrayList<>();
+		BufferedReader reader = new BufferedReader(in);
+		String line = reader.readLine();
+		if(line == null)
+		{
+			throw new IOException("The research data is empty");
+		}
+		String[] header = line.split(",", -1);
+		Resource[] columns = new Resource[header.length];
+		for(int c = 1; c < header.length; c++)
+		{
+			columns[c] = resourceCalled(header[c].trim());
+			if(columns[c] == null)
+			{
+				throw new IOException("Column " + (c + 1) + " of the research data, " + header[c] + ", isn't a resource");
+			}
+		}
+		for(int row = 2; (line = reader.readLine()) != null; row++)
+		{
+			if(line.isBlank())
+			{
+				continue;
+			}
+			String[] cells = line.split(",", -1);
+			if(cells.length > header.length)
+			{
+				throw new IOException("Row " + row + " of the research data has more columns than the header");
+			}
+			EnumMap<Resource, Double> costs = new EnumMap<>(Resource.class);
+			for(int c = 1; c < cells.length; c++)
+			{
+				String cell = cells[c].trim();
+				if(cell.isEmpty())
+				{
+					continue;
+				}
+				try
+				{
+					costs.put(columns[c], Double.parseDouble(cell));
+				}
+				catch(NumberFormatException e)
+				{
+					throw new IOException("Row " + row + " of the research data has " + cell + " for a cost", e);
+				}
+			}
+			researches.add(create(cells[0].trim(), costs, new EnumMap<>(Resource.class), false, false, 0, 0));
+		}
+		validate(researches);
+		return new ResearchCatalog(researches, sourceChecksum);
+	}
+
+	/**
+	 * Read a compiled catalog written by writeBinary, whatever it was compiled from
+	 * @param in	Where to read it from
+	 * @return		The catalog
+	 * @throws IOException	If it can't be read or isn't a compiled catalog this version of the game can read
+	 */
+	public static ResearchCatalog readBinary(InputStream in) throws IOException
+	{
+		ResearchCatalog catalog = readBinary(in, 0);
+		if(catalog == null)
+		{
+			throw new IOException("This isn't a compiled research catalog that this version of the game can read");
+		}
+		return catalog;
+	}
+
+	/**
+	 * Read a compiled catalog, as long as it was compiled from the right data
+	 * @param in				Where to read it from
+	 * @param sourceChecksum	The checksum of the data it should have been compiled from, or 0 to take it whatever it was compiled from
+	 * @return					The catalog, or null if it isn't a compiled catalog of this version or was compiled from other data
+	 * @throws IOException
+	 */
+	private static ResearchCatalog readBinary(InputStream in, int sourceChecksum) throws IOException
+	{
+		DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+		if(data.readInt() != MAGIC || data.readInt() != VERSION)
+		{
+			return null;
+		}
+		int checksum = data.readInt();
+		if(sourceChecksum != 0 && checksum != sourceChecksum)
+		{
+			return null;
+		}
+		int count = data.readInt();
+		if(count < 0)
+		{
+			throw new IOException("The compiled research catalog is corrupt");
+		}
+		ArrayList<Research> researches = new ArrayList<>(count);
+		for(int i = 0; i < count; i++)
+		{
+			String name = data.readUTF();
+			int flags = data.readByte();
+			int maxLevel = data.readInt();
+			int currentLevel = data.readInt();
+			EnumMap<Resource, Double> costs = readBinaryAmounts(data);
+			EnumMap<Resource, Double> boosts = readBinaryAmounts(data);
+			researches.add(create(name, costs, boosts, (flags & 1) != 0, (flags & 2) != 0, maxLevel, currentLevel));
+		}
+		// it was checked when it was compiled, but a compiled catalog could still have been tampered with
+		validate(researches);
+		return new ResearchCatalog(researches, checksum);
+	}
+
+	/**
+	 * Read a mask of resources and their amounts
+	 * @param data	Where to read them from
+	 * @return		The amounts
+	 * @throws IOException
+	 */
+	private static EnumMap<Resource, Double> readBinaryAmounts(DataInputStream data) throws IOException
+	{
+		EnumMap<Resource, Double> amounts = new EnumMap<>(Resource.class);
+		int mask = data.readByte() & 0xff;
+		if(mask >>> TileStore.RESOURCE_COUNT != 0)
+		{
+			throw new IOException("The compiled research catalog has resources this version of the game doesn't");
+		}
+		for(Resource resource: Resource.values())
+		{
+			if((mask & (1 << resource.ordinal())) != 0)
+			{
+				amounts.put(resource, data.readDouble());
+			}
+		}
+		return amounts;
+	}
+
+	/**
+	 * Write the catalog out in the compiled form, for readBinary or load to read back
+	 * @param out	Where to write it, which is left open
+	 * @throws IOException
+	 */
+	public void writeBinary(OutputStream out) throws IOException
+	{
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		data.writeInt(this.sourceChecksum);
+		data.writeInt(this.researches.length);
+		for(Research research: this.researches)
+		{
+			data.writeUTF(research.getBaseName());
+			data.writeByte((research.isRepeatable()?1:0) | (research.isComplete()?2:0));
+			data.writeInt(research.maxLevel);
+			data.writeInt(research.getCurrentLevel());
+			writeBinaryAmounts(data, research.getCosts());
+			writeBinaryAmounts(data, research.getBoosts());
+		}
+		data.flush();
+	}
+
+	/**
+	 * Write a mask of resources and their amounts
+	 * @param data		Where to write them
+	 * @param amounts	The amounts, or null for none
+	 * @throws IOException
+	 */
+	private static void writeBinaryAmounts(DataOutputStream data, EnumMap<Resource, Double> amounts) throws IOException
+	{
+		int mask = 0;
+		if(amounts != null)
+		{
+			for(Resource resource: amounts.keySet())
+			{
+				mask |= 1 << resource.ordinal();
+			}
+		}
+		data.writeByte(mask);
+		if(amounts != null)
+		{
+			// an EnumMap goes through its keys in ordinal order, which is the order they're read back in
+			for(double amount: amounts.values())
+			{
+				data.writeDouble(amount);
+			}
+		}
+	}
+
+	/**
+	 * Make a research from what was read about it
+	 * @param name			Its name
+	 * @param costs			What it costs
+	 * @param boosts		What it boosts, which is only kept if it's repeatable, but is still checked if it isn't
+	 * @param repeatable	Whether it's repeatable
+	 * @param complete		Whether it's complete
+	 * @param maxLevel		How many times it can be done
+	 * @param currentLevel	How many times it has been done
+	 * @return				The research
+	 * @throws IOException	If it boosts something without being repeatable
+	 */
+	private static Research create(String name, EnumMap<Resource, Double> costs, EnumMap<Resource, Double> boosts, boolean repeatable, boolean complete,
+			int maxLevel, int currentLevel) throws IOException
+	{
+		if(!repeatable && !boosts.isEmpty())
+		{
+			throw new IOException("The research " + name + " boosts resources, which only repeatable researches can");
+		}
+		Research research = new Research(name, costs, repeatable, complete);
+		if(repeatable)
+		{
+			research.boosts = boosts;
+			research.maxLevel = maxLevel;
+			research.currentLevel = currentLevel;
+		}
+		return research;
+	}
+
+	/**
+	 * Check the researches over, so that nothing that reads the catalog has to
+	 * @param researches	The researches
+	 * @throws IOException	Describing the first problem found
+	 */
+	private static void validate(ArrayList<Research> researches) throws IOException
+	{
+		HashMap<String, Research> names = new HashMap<>(researches.size() * 2);
+		for(Research research: researches)
+		{
+			String name = research.getBaseName();
+			if(name.isBlank())
+			{
+				throw new IOException("A research has no name");
+			}
+			if(names.put(name, research) != null)
+			{
+				throw new IOException("There are two researches called " + name);
+			}
+			for(double cost: research.getCosts().values())
+			{
+				if(!(cost >= 0) || Double.isInfinite(cost))
+				{
+					throw new IOException("The research " + name + " has a cost of " + cost);
+				}
+			}
+			if(!research.isRepeatable())
+			{
+				continue;
+			}
+			if(research.maxLevel < 1 || research.getCurrentLevel() < 0 || research.getCurrentLevel() > research.maxLevel)
+			{
+				throw new IOException("The research " + name + " is at level " + research.getCurrentLevel() + " of " + research.maxLevel);
+			}
+			if(research.getBoosts().isEmpty())
+			{
+				throw new IOException("The research " + name + " is repeatable but doesn't boost anything");
+			}
+			for(double boost: research.getBoosts().values())
+			{
+				if(!(boost > 0) || Double.isInfinite(boost))
+				{
+					throw new IOException("The research " + name + " has a boost of " + boost);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Make a copy of every research in the catalog for a game to buy
+	 * @return	The copies, in the catalog's order
+	 */
+	public ArrayList<Research> newResearches()
+	{
+		ArrayList<Research> copies = new ArrayList<>(this.researches.length);
+		for(Research research: this.researches)
+		{
+			copies.add(research.copy());
+		}
+		return copies;
+	}
+
+	/**
+	 * Getter for the number of researches
+	 * @return	The number of researches in the catalog
+	 */
+	public int size()
+	{
+		return this.researches.length;
+	}
+
+	/**
+	 * Find a research by name
+	 * @param name	The name of the research as it appears in the research data
+	 * @return		Its position in the catalog, or -1 if there's no research called that
+	 */
+	public int indexOf(String name)
+	{
+		Integer position = this.positions.get(name);
+		return position == null?-1:position;
+	}
+
+	/**
+	 * Find the researches that cost a resource
+	 * @param resource	The resource
+	 * @return			Their positions in the catalog, in order
+	 */
+	public int[] getCosting(Resource resource)
+	{
+		return this.costing[resource.ordinal()].clone();
+	}
+
+	/**
+	 * Find the researches that boost a resource
+	 * @param resource	The resource
+	 * @return			Their positions in the catalog, in order
+	 */
+	public int[] getBoosting(Resource resource)
+	{
+		return this.boosting[resource.ordinal()].clone();
+	}
+}
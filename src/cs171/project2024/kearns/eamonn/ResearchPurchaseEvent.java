@@ -0,0 +1,38 @@
+package cs171.project2024.kearns.eamonn;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for each attempt to buy research, whether or not it could be afforded. These are rare enough that they keep their stack trace, which
+ * says whether it was the UI or something else buying it.
+ */
+@Name("cs171.project2024.kearns.eamonn.ResearchPurchase")
+@Label("Research Purchase")
+@Category({"CS171 Game", "Research"})
+@Description("An attempt to buy research")
+class ResearchPurchaseEvent extends jdk.jfr.Event
+{
+	/**
+	 * The name of the research, with its level if it's repeatable
+	 */
+	@Label("Research")
+	String research;
+	/**
+	 * Whether or not it was bought
+	 */
+	@Label("Success")
+	boolean success;
+	/**
+	 * What it cost, or would have, as a list of resources and amounts
+	 */
+	@Label("Cost")
+	String cost;
+	/**
+	 * The total amount of every resource it cost, or would have
+	 */
+	@Label("Total Cost")
+	double totalCost;
+}
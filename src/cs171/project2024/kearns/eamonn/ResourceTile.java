@@ -45,94 +45,74 @@ public class ResourceTile extends HexTile
 		}
 	};
 	/**
-	 * The array to contain the mount of each resource available to a tile
+	 * The research modifier to extraction rates.
 	 */
-	private EnumMap<Resource, Double> resources;
-	/**
-	 * The array to represent the rate at which each resource is being extracted
-	 */
-	public EnumMap<Resource, Double> extractionRates;
 	public static EnumMap<Resource, Double> extractionResearchModifier;
+
 	/**
-	 * The remaining resource of each type in the tile
-	 */
-	private EnumMap<Resource, Double> remainingResources;
-	/**
-	 * Whether or not this tile has a given resource.
-	 */
-	private EnumMap<Resource, Boolean> hasResource;
-	
-	/**
-	 * A double to hold the minimum resource value, used in the constructor to create the RNG bounds
-	 */
-	private final static double MINIMUM_RESOURCE = 500.0;
-	/**
-	 * A double to hold the maximum resource value, used in the constructor to create the RNG bounds 
+	 * The store that actually holds this tile's resource state. The tile itself is just a view onto it.
+	 * @see TileStore
 	 */
-	private final static double MAXIMUM_RESOURCE = 1000.0;
-
-	private boolean depleted = false;
+	private final TileStore store;
 	
 	
 	/**
-	 * Constructor, instantiates the variables
+	 * Constructor for a tile that is not part of a map. It gets a store of its own and a random selection of resources.
 	 * @param x The x coordinate of the tile
 	 * @param y The y coordinate of the tile
 	 */
 	public ResourceTile(int x, int y)
 	{
 		super(x, y);
-		
-		this.resources = new EnumMap<>(Resource.class);
-		this.remainingResources = new EnumMap<>(Resource.class);
-		extractionRates = new EnumMap<>(Resource.class);
-		this.hasResource = new EnumMap<>(Resource.class);
-		Random rng = new Random();
-		for(Resource r:Resource.values())
-		{
-			Boolean h = rng.nextBoolean();
-			this.hasResource.put(r, h);
-			if(h)
-			{
-				Double amount = MINIMUM_RESOURCE + (MAXIMUM_RESOURCE - MINIMUM_RESOURCE) * rng.nextDouble();
-				this.remainingResources.put(r, amount);
-				this.resources.put(r, amount);
-				extractionRates.put(r, 0.0);
-			}
-			
-		}
+		this.store = new HeapTileStore(1);
+		this.store.randomise(0, new Random());
+	}
+
+	/**
+	 * Constructor, binds the tile to its place in a grid and its slot in a store, which share the same id
+	 * @param grid	The grid the tile is part of
+	 * @param store	The store holding the tile's resource state
+	 * @param id	The tile's index in the grid and the id of its slot in the store
+	 */
+	public ResourceTile(HexGrid<ResourceTile> grid, TileStore store, int id)
+	{
+		super(grid, id);
+		this.store = store;
 	}
 
 	public void blankTile()
 	{
-		for(Resource r:Resource.values())
-		{
-			this.remainingResources.put(r, 0.0);
-			this.resources.put(r, 0.0);
-			this.hasResource.put(r, false);
-		}
+		this.store.blank(this.id);
 	}
 
 	public void setAvailableResource(Resource resource, double amount)
 	{
-		this.remainingResources.put(resource, amount);
-		this.resources.put(resource, amount);
-		this.hasResource.put(resource, true);
+		this.store.setDeposit(this.id, resource.ordinal(), TileStore.toUnits(amount));
 	}
 	
 	/**
 	 * Getter for a given resource
 	 * @param resourceIndex This value should be one of the indices for the specific resource 
-	 * @return The amount remaining of a given resource
+	 * @return The amount of a given resource the tile started with
 	 */
 	public double getResource(Resource r)
 	{
-		return this.resources.get(r);
+		return TileStore.toAmount(this.store.getDeposit(this.id, r.ordinal()));
 	}
 
 	public void setResourceExtractionRate(Resource r, double rate)
 	{
-		this.extractionRates.put(r, rate);
+		this.store.setRate(this.id, r.ordinal(), TileStore.toUnits(rate));
+	}
+
+	/**
+	 * Getter for the rate at which a resource is extracted from this tile
+	 * @param r	The resource
+	 * @return	The amount extracted per tick
+	 */
+	public double getResourceExtractionRate(Resource r)
+	{
+		return TileStore.toAmount(this.store.getRate(this.id, r.ordinal()));
 	}
 	
 	/**
@@ -142,7 +122,7 @@ public class ResourceTile extends HexTile
 	 */
 	public boolean hasResource(Resource r)
 	{
-		return this.hasResource.get(r);
+		return this.store.hasResource(this.id, r.ordinal());
 	}
 	
 	/**
@@ -152,7 +132,7 @@ public class ResourceTile extends HexTile
 	 */
 	public double getAvailableResource(Resource r)
 	{
-		return this.remainingResources.get(r) / this.resources.get(r);
+		return (double)this.store.getRemaining(this.id, r.ordinal()) / this.store.getDeposit(this.id, r.ordinal());
 	}
 	
 	/**
@@ -161,11 +141,62 @@ public class ResourceTile extends HexTile
 	 */
 	public ResourceTile occupy()
 	{
+		if(!this.explored)
+		{
+			this.store.markExplored(this.id);
+		}
 		this.occupied = true;
 		this.explored = true;
 		this.visited = true;
+		this.store.putFlags(this.id, this.getFlags());
+		this.store.markDirty(this.id);
 		return this;
 	}
+
+	/**
+	 * Mark the cell as explored, counting it in its chunk the first time, and as changed so the journal picks it up
+	 */
+	@Override
+	public void explore()
+	{
+		if(!this.explored)
+		{
+			this.store.markExplored(this.id);
+		}
+		super.explore();
+		this.store.putFlags(this.id, this.getFlags());
+		this.store.markDirty(this.id);
+	}
+
+	/**
+	 * Mark the cell as visited by the maze, and as changed so the journal picks it up
+	 */
+	@Override
+	public void visit()
+	{
+		super.visit();
+		this.store.putFlags(this.id, this.getFlags());
+		this.store.markDirty(this.id);
+	}
+
+	/**
+	 * Get the tile's flags as the store keeps them
+	 * @return	TileStore.EXPLORED, VISITED and OCCUPIED, as they apply
+	 */
+	int getFlags()
+	{
+		return (this.explored?TileStore.EXPLORED:0) | (this.visited?TileStore.VISITED:0) | (this.occupied?TileStore.OCCUPIED:0);
+	}
+
+	/**
+	 * Check whether the tile has changed since the journal last wrote it
+	 * @return	True if it has
+	 * @see GameJournal
+	 */
+	public boolean isDirty()
+	{
+		return this.store.isDirty(this.id);
+	}
 	
 	/**
 	 * A method to return the neighbours of this tile
@@ -174,9 +205,13 @@ public class ResourceTile extends HexTile
 	public ArrayList<ResourceTile> getNeighbours()
 	{
 		ArrayList<ResourceTile> list = new ArrayList<ResourceTile>();
-		for(HexTile t:this.neighbours.values())
+		for(HexTile.Direction d: DIRECTIONS)
 		{
-			list.add((ResourceTile)t);
+			HexTile t = this.getNeighbour(d);
+			if(t != null)
+			{
+				list.add((ResourceTile)t);
+			}
 		}
 		return list;
 	}
@@ -187,19 +222,9 @@ public class ResourceTile extends HexTile
 	 */
 	public double processResource(Resource r)
 	{
-		if(!this.hasResource(r))
-		{
-			return 0.0;
-		}
-		double amountTaken = Math.min(this.remainingResources.get(r), extractionRates.get(r));
-		double amountLeft = this.remainingResources.get(r) - amountTaken;
-		if(amountLeft <= 0.0)
-		{
-			amountLeft = 0.0;
-			this.hasResource.put(r, false);
-		}
-		this.remainingResources.put(r, amountLeft);
-		return amountTaken;
+		double extracted = TileStore.toAmount(this.store.extract(this.id, r.ordinal()));
+		this.store.markDirty(this.id);
+		return extracted;
 	}
 
 	/**
@@ -209,14 +234,14 @@ public class ResourceTile extends HexTile
 	public ArrayList<ResourceTile> getUnexploredNeighbours()
 	{
 		ArrayList<ResourceTile> neighbours = new ArrayList<ResourceTile>();
-		for(HexTile.Direction d: this.connections.keySet())
+		int connections = this.getConnectionMask();
+		while(connections != 0)
 		{
-			if(this.connections.get(d))
+			ResourceTile neighbour = (ResourceTile)this.grid.get(this.grid.neighbour(this.id, Integer.numberOfTrailingZeros(connections)));
+			connections &= connections - 1;
+			if(!neighbour.explored)
 			{
-				if(!this.neighbours.get(d).explored)
-				{
-					neighbours.add((ResourceTile)this.neighbours.get(d));
-				}
+				neighbours.add(neighbour);
 			}
 		}
 		return neighbours;
@@ -227,7 +252,7 @@ public class ResourceTile extends HexTile
 	 */
 	public void markDepleted()
 	{
-		this.depleted = true;
+		this.store.markDepleted(this.id);
 	}
 
 	/**
@@ -236,6 +261,6 @@ public class ResourceTile extends HexTile
 	 */
 	public boolean isDepleted()
 	{
-		return this.depleted;
+		return this.store.isDepleted(this.id);
 	}
 }
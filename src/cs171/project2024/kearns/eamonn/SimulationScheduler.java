@@ -0,0 +1,217 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A class to advance a Game at a fixed number of ticks per second on a thread of its own, so the speed of the simulation doesn't depend on how fast anything
+ * is being drawn.
+ * The scheduler keeps a clock of when the next tick is due. Each time round its loop it runs every tick that has come due, so a slow tick is caught up on
+ * rather than lost, but never more than maxStepsPerFrame of them in one go. If it falls further behind than that the backlog is dropped, since trying to catch
+ * up on it would only make the next frame later again.
+ * Each tick is run while holding the game's monitor, so anything else reading or changing the game should synchronize on it too. The monitor is taken a tick
+ * at a time rather than for the whole catch up, so something waiting on it, such as a frame being drawn, waits for one tick at most however far behind the
+ * simulation is.
+ */
+public class SimulationScheduler implements Runnable
+{
+	/**
+	 * The game being advanced
+	 */
+	private final Game game;
+	/**
+	 * The number of ticks to run per second. Infinity runs the simulation as fast as it will go.
+	 */
+	private volatile double ticksPerSecond;
+	/**
+	 * The most ticks to run in one go when catching up
+	 */
+	private volatile int maxStepsPerFrame;
+	/**
+	 * The thread the simulation runs on, or null if it isn't running
+	 */
+	private Thread thread;
+	/**
+	 * Whether or not the simulation should keep running
+	 */
+	private volatile boolean running;
+	/**
+	 * The number of ticks that have been run
+	 */
+	private volatile long ticksRun;
+	/**
+	 * The number of ticks that were due but dropped because the simulation fell too far behind
+	 */
+	private volatile long ticksDropped;
+
+	/**
+	 * Constructor
+	 * @param game				The game to advance
+	 * @param ticksPerSecond	The number of ticks to run per second
+	 * @param maxStepsPerFrame	The most ticks to run in one go when catching up
+	 */
+	public SimulationScheduler(Game game, double ticksPerSecond, int maxStepsPerFrame)
+	{
+		this.game = game;
+		this.setTicksPerSecond(ticksPerSecond);
+		this.setMaxStepsPerFrame(maxStepsPerFrame);
+	}
+
+	/**
+	 * Start the simulation thread. Does nothing if it is already running.
+	 */
+	public synchronized void start()
+	{
+		if(this.thread != null)
+		{
+			return;
+		}
+		this.running = true;
+		this.thread = new Thread(this, "simulation");
+		// the simulation shouldn't keep the application alive once the window is closed
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Stop the simulation thread and wait for it to finish the ticks it is running
+	 */
+	public synchronized void stop()
+	{
+		if(this.thread == null)
+		{
+			return;
+		}
+		this.running = false;
+		LockSupport.unpark(this.thread);
+		try
+		{
+			this.thread.join();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		this.thread = null;
+	}
+
+	/**
+	 * The simulation loop
+	 */
+	@Override
+	public void run()
+	{
+		long nextTick = System.nanoTime();
+		while(this.running)
+		{
+			double ticksPerSecond = this.ticksPerSecond;
+			int maxSteps = this.maxStepsPerFrame;
+			long period = Double.isInfinite(ticksPerSecond)?0:(long)(1000000000.0 / ticksPerSecond);
+			long now = System.nanoTime();
+
+			int steps = 0;
+			while(steps < maxSteps && now - nextTick >= 0)
+			{
+				synchronized(this.game)
+				{
+					this.game.processTick();
+				}
+				nextTick += period;
+				steps++;
+			}
+			this.ticksRun += steps;
+
+			if(period == 0)
+			{
+				// there is no clock to keep to, so just give anyone waiting on the game a look in
+				nextTick = System.nanoTime();
+				Thread.yield();
+				continue;
+			}
+
+			now = System.nanoTime();
+			if(now - nextTick >= period * maxSteps)
+			{
+				// we're so far behind that catching up would take more than a frame's worth of ticks, so let the backlog go
+				long behind = (now - nextTick) / period;
+				this.ticksDropped += behind;
+				nextTick += behind * period;
+			}
+			long wait = nextTick - now;
+			if(wait > 0)
+			{
+				LockSupport.parkNanos(this, wait);
+			}
+		}
+	}
+
+	/**
+	 * Set the number of ticks to run per second. Takes effect from the next tick.
+	 * @param ticksPerSecond	The number of ticks per second, or Double.POSITIVE_INFINITY to run as fast as possible
+	 */
+	public void setTicksPerSecond(double ticksPerSecond)
+	{
+		if(!(ticksPerSecond > 0))
+		{
+			throw new IllegalArgumentException("Ticks per second must be positive");
+		}
+		this.ticksPerSecond = ticksPerSecond;
+	}
+
+	/**
+	 * Getter for the number of ticks run per second
+	 * @return	The number of ticks per second
+	 */
+	public double getTicksPerSecond()
+	{
+		return this.ticksPerSecond;
+	}
+
+	/**
+	 * Set the most ticks to run in one go when catching up
+	 * @param maxStepsPerFrame	The maximum number of ticks
+	 */
+	public void setMaxStepsPerFrame(int maxStepsPerFrame)
+	{
+		if(maxStepsPerFrame < 1)
+		{
+			throw new IllegalArgumentException("At least one step per frame is needed");
+		}
+		this.maxStepsPerFrame = maxStepsPerFrame;
+	}
+
+	/**
+	 * Getter for the most ticks run in one go when catching up
+	 * @return	The maximum number of ticks
+	 */
+	public int getMaxStepsPerFrame()
+	{
+		return this.maxStepsPerFrame;
+	}
+
+	/**
+	 * Getter for the number of ticks that have been run
+	 * @return	The number of ticks run
+	 */
+	public long getTicksRun()
+	{
+		return this.ticksRun;
+	}
+
+	/**
+	 * Getter for the number of ticks dropped because the simulation fell too far behind
+	 * @return	The number of ticks dropped
+	 */
+	public long getTicksDropped()
+	{
+		return this.ticksDropped;
+	}
+
+	/**
+	 * Check whether the simulation thread is running
+	 * @return	True if the simulation is running
+	 */
+	public synchronized boolean isRunning()
+	{
+		return this.thread != null;
+	}
+}
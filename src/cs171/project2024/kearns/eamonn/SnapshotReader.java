@@ -0,0 +1,142 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+/**
+ * Streams binary data in from a channel through a single direct buffer, keeping a running checksum of everything read so it can be checked against the one
+ * SnapshotWriter wrote after it.
+ * @see SnapshotWriter
+ */
+class SnapshotReader implements Closeable
+{
+	/**
+	 * The channel being read from
+	 */
+	private final FileChannel channel;
+	/**
+	 * The buffer reads are gathered in, which starts off empty
+	 */
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(SnapshotWriter.BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN).limit(0);
+	/**
+	 * The checksum of everything read so far
+	 */
+	private final CRC32C checksum = new CRC32C();
+	/**
+	 * The position in the buffer up to which its contents have been added to the checksum
+	 */
+	private int checked;
+
+	/**
+	 * Constructor
+	 * @param channel	The channel to read from, from its current position
+	 */
+	SnapshotReader(FileChannel channel)
+	{
+		this.channel = channel;
+	}
+
+	/**
+	 * Make sure a number of bytes are ready in the buffer, reading more in from the channel if they aren't
+	 * @param bytes	The number of bytes about to be read
+	 * @return		The buffer to read them from
+	 * @throws IOException
+	 * @throws EOFException	If the channel runs out first
+	 */
+	ByteBuffer require(int bytes) throws IOException
+	{
+		if(this.buffer.remaining() >= bytes)
+		{
+			return this.buffer;
+		}
+		this.updateChecksum();
+		this.buffer.compact();
+		this.checked = 0;
+		while(this.buffer.position() < bytes)
+		{
+			if(this.channel.read(this.buffer) < 0)
+			{
+				this.buffer.flip();
+				throw new EOFException("The file ends part way through");
+			}
+		}
+		this.buffer.flip();
+		return this.buffer;
+	}
+
+	/**
+	 * Read a string written by SnapshotWriter.putString
+	 * @return	The string
+	 * @throws IOException
+	 */
+	String getString() throws IOException
+	{
+		int length = this.require(Integer.BYTES).getInt();
+		if(length < 0 || length > SnapshotWriter.BUFFER_SIZE - Integer.BYTES)
+		{
+			throw new IOException("A string in the file has an impossible length");
+		}
+		byte[] bytes = new byte[length];
+		this.require(length).get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Check the checksum that follows what has been read against the checksum of what has been read
+	 * @return	True if they match
+	 * @throws IOException
+	 */
+	boolean verify() throws IOException
+	{
+		ByteBuffer buffer = this.require(Integer.BYTES);
+		this.updateChecksum();
+		boolean matches = buffer.getInt() == (int)this.checksum.getValue();
+		this.checked = buffer.position();
+		this.checksum.reset();
+		return matches;
+	}
+
+	/**
+	 * @return	The number of bytes left to read, whether they're in the buffer yet or not
+	 * @throws IOException
+	 */
+	long remaining() throws IOException
+	{
+		return this.buffer.remaining() + this.channel.size() - this.channel.position();
+	}
+
+	/**
+	 * @return	True if everything in the channel has been read
+	 * @throws IOException
+	 */
+	boolean atEnd() throws IOException
+	{
+		return !this.buffer.hasRemaining() && this.channel.position() >= this.channel.size();
+	}
+
+	/**
+	 * Add whatever has been read from the buffer since it was last checked to the checksum
+	 */
+	private void updateChecksum()
+	{
+		ByteBuffer read = this.buffer.duplicate();
+		read.position(this.checked).limit(this.buffer.position());
+		this.checksum.update(read);
+		this.checked = this.buffer.position();
+	}
+
+	/**
+	 * Closes the channel
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		this.channel.close();
+	}
+}
@@ -0,0 +1,117 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+/**
+ * Streams binary data out to a channel through a single direct buffer, keeping a running checksum of everything written.
+ * Callers reserve room for what they're about to write and put it straight into the buffer, which is only handed to the channel when it fills up, so writing
+ * a large map is a handful of big writes rather than one per value. Everything is little endian, whatever machine it's written on.
+ * @see SnapshotReader
+ */
+class SnapshotWriter implements Closeable
+{
+	/**
+	 * The size of the buffer, which is also the most that can be reserved at once
+	 */
+	final static int BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * The channel being written to
+	 */
+	private final FileChannel channel;
+	/**
+	 * The buffer writes are gathered in
+	 */
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	/**
+	 * The checksum of everything handed to the channel so far
+	 */
+	private final CRC32C checksum = new CRC32C();
+
+	/**
+	 * Constructor
+	 * @param channel	The channel to write to, from its current position
+	 */
+	SnapshotWriter(FileChannel channel)
+	{
+		this.channel = channel;
+	}
+
+	/**
+	 * Make sure there's room in the buffer for a number of bytes, writing out what's already there if there isn't
+	 * @param bytes	The number of bytes about to be written
+	 * @return		The buffer to write them into
+	 * @throws IOException
+	 */
+	ByteBuffer reserve(int bytes) throws IOException
+	{
+		if(this.buffer.remaining() < bytes)
+		{
+			this.flush();
+		}
+		return this.buffer;
+	}
+
+	/**
+	 * Write a string as its length in UTF-8 bytes followed by the bytes
+	 * @param string	The string
+	 * @throws IOException
+	 */
+	void putString(String string) throws IOException
+	{
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		this.reserve(Integer.BYTES + bytes.length).putInt(bytes.length).put(bytes);
+	}
+
+	/**
+	 * Hand everything in the buffer to the channel, adding it to the checksum on the way
+	 * @throws IOException
+	 */
+	void flush() throws IOException
+	{
+		this.buffer.flip();
+		this.checksum.update(this.buffer);
+		this.buffer.rewind();
+		while(this.buffer.hasRemaining())
+		{
+			this.channel.write(this.buffer);
+		}
+		this.buffer.clear();
+	}
+
+	/**
+	 * Write out everything still in the buffer followed by the checksum of all of it, which isn't itself part of the checksum. The checksum then starts again,
+	 * so anything written after it is checked on its own.
+	 * @return	The checksum
+	 * @throws IOException
+	 */
+	int finish() throws IOException
+	{
+		this.flush();
+		int checksum = (int)this.checksum.getValue();
+		this.buffer.putInt(checksum);
+		this.buffer.flip();
+		while(this.buffer.hasRemaining())
+		{
+			this.channel.write(this.buffer);
+		}
+		this.buffer.clear();
+		this.checksum.reset();
+		return checksum;
+	}
+
+	/**
+	 * Closes the channel. Anything not finished is lost.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		this.channel.close();
+	}
+}
@@ -0,0 +1,314 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * A hex grid that only holds the tiles that have actually been looked at, so the map can be far bigger than would ever fit in memory.
+ * Until a tile is needed it is just a coordinate. The first time something steps onto it, by asking for a neighbour, it is created: given the next index,
+ * its connections worked out from the seed with the radial maze rule, and handed to a factory to build the tile itself, which is where its deposits come from.
+ * Since everything about a tile comes from the seed and its coordinates, the map is the same whatever order its tiles are found in, and memory only grows with
+ * the part of the map that has been explored.
+ *
+ * Indices are handed out in the order tiles are created rather than row by row, and a hash index maps coordinates back to them. Looking a coordinate up with
+ * index or get doesn't create anything, only neighbour, neighbours and materialise do. None of it is thread safe, so tiles must only ever be created from one
+ * thread, although tiles that already exist can be read from as many as like while nothing is being created.
+ * @see RadialMazeGenerator
+ * @param <T> The type of tile held in the grid
+ */
+public class SparseHexGrid<T extends HexTile> extends HexGrid<T>
+{
+	/**
+	 * The largest radius a sparse grid can have, which keeps every coordinate, and every distance between them, well inside an int
+	 */
+	public final static int MAXIMUM_RADIUS = 1 << 29;
+	/**
+	 * The key marking an empty slot in the hash index, which no coordinate on the grid can produce
+	 */
+	private final static long EMPTY = Long.MIN_VALUE;
+
+	/**
+	 * The seed the maze is derived from
+	 */
+	private final long seed;
+	/**
+	 * Builds the tile for a newly created index, once its coordinates and connections are in place
+	 */
+	private final IntFunction<T> factory;
+	/**
+	 * The number of tiles created so far
+	 */
+	private int size;
+	/**
+	 * The q coordinate of each tile, by index
+	 */
+	private int[] qs = new int[64];
+	/**
+	 * The r coordinate of each tile, by index
+	 */
+	private int[] rs = new int[64];
+	/**
+	 * The tiles, by index
+	 */
+	private Object[] tiles = new Object[64];
+	/**
+	 * The connections of each tile, by index, worked out when the tile is created
+	 */
+	private byte[] connections = new byte[64];
+	/**
+	 * The coordinates of each slot of the hash index, packed into a long, or EMPTY. Always a power of two long and never more than half full.
+	 */
+	private long[] keys = new long[128];
+	/**
+	 * The index of the tile in each slot of the hash index
+	 */
+	private int[] slots = new int[128];
+
+	/**
+	 * Constructor
+	 * @param radius	The radius of the grid in tiles, counting the centre tile, which can be up to MAXIMUM_RADIUS
+	 * @param seed		The seed to derive the maze from
+	 * @param factory	Builds the tile for a newly created index. It can ask the grid for the index's coordinates, but mustn't create any other tiles.
+	 */
+	public SparseHexGrid(int radius, long seed, IntFunction<T> factory)
+	{
+		super(radius, false);
+		if(radius > MAXIMUM_RADIUS)
+		{
+			throw new IllegalArgumentException("A sparse hex grid can't have a radius of more than " + MAXIMUM_RADIUS);
+		}
+		this.seed = seed;
+		this.factory = factory;
+		Arrays.fill(this.keys, EMPTY);
+	}
+
+	/**
+	 * Getter for the seed the maze is derived from
+	 * @return	The seed
+	 */
+	public long getSeed()
+	{
+		return this.seed;
+	}
+
+	/**
+	 * @return	The number of tiles created so far, rather than the number the grid could hold
+	 */
+	@Override
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Get the index of the tile at a coordinate, without creating it
+	 * @param q	The q coordinate
+	 * @param r	The r coordinate
+	 * @return	The index of the tile, or -1 if the coordinate is off the grid or its tile hasn't been created yet
+	 */
+	@Override
+	public int index(int q, int r)
+	{
+		if(!this.contains(q, r))
+		{
+			return -1;
+		}
+		long key = key(q, r);
+		int mask = this.keys.length - 1;
+		for(int slot = hash(key) & mask; this.keys[slot] != EMPTY; slot = (slot + 1) & mask)
+		{
+			if(this.keys[slot] == key)
+			{
+				return this.slots[slot];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Get the index of the tile at a coordinate, creating the tile if it hasn't been yet
+	 * @param q	The q coordinate
+	 * @param r	The r coordinate
+	 * @return	The index of the tile, or -1 if the coordinate is off the grid
+	 */
+	public int materialise(int q, int r)
+	{
+		int index = this.index(q, r);
+		if(index >= 0 || !this.contains(q, r))
+		{
+			return index;
+		}
+		index = this.size;
+		if(index == this.qs.length)
+		{
+			int capacity = index * 2;
+			this.qs = Arrays.copyOf(this.qs, capacity);
+			this.rs = Arrays.copyOf(this.rs, capacity);
+			this.tiles = Arrays.copyOf(this.tiles, capacity);
+			this.connections = Arrays.copyOf(this.connections, capacity);
+		}
+		this.qs[index] = q;
+		this.rs[index] = r;
+		this.connections[index] = (byte)RadialMazeGenerator.connections(this.seed, q, r, this.getRadius() - 1);
+		this.size++;
+		this.insert(key(q, r), index);
+		this.tiles[index] = this.factory.apply(index);
+		return index;
+	}
+
+	/**
+	 * Add a coordinate to the hash index, growing it first if it would be more than half full
+	 * @param key	The packed coordinate
+	 * @param index	The index of its tile
+	 */
+	private void insert(long key, int index)
+	{
+		if(this.size * 2 > this.keys.length)
+		{
+			long[] keys = this.keys;
+			int[] slots = this.slots;
+			this.keys = new long[keys.length * 2];
+			this.slots = new int[keys.length * 2];
+			Arrays.fill(this.keys, EMPTY);
+			for(int i = 0; i < keys.length; i++)
+			{
+				if(keys[i] != EMPTY)
+				{
+					this.place(keys[i], slots[i]);
+				}
+			}
+		}
+		this.place(key, index);
+	}
+
+	/**
+	 * Put a coordinate into the first free slot of the hash index from where it hashes to
+	 * @param key	The packed coordinate
+	 * @param index	The index of its tile
+	 */
+	private void place(long key, int index)
+	{
+		int mask = this.keys.length - 1;
+		int slot = hash(key) & mask;
+		while(this.keys[slot] != EMPTY)
+		{
+			slot = (slot + 1) & mask;
+		}
+		this.keys[slot] = key;
+		this.slots[slot] = index;
+	}
+
+	@Override
+	public int r(int index)
+	{
+		return this.rs[index];
+	}
+
+	@Override
+	public int q(int index)
+	{
+		return this.qs[index];
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T get(int index)
+	{
+		return index < 0?null:(T)this.tiles[index];
+	}
+
+	@Override
+	public void set(int index, T tile)
+	{
+		this.tiles[index] = tile;
+	}
+
+	/**
+	 * Get the index of the neighbour of a tile in a given direction, creating the neighbour if it hasn't been yet
+	 */
+	@Override
+	public int neighbour(int index, int direction)
+	{
+		return this.materialise(this.qs[index] + DQ[direction], this.rs[index] + DR[direction]);
+	}
+
+	/**
+	 * Get the indices of all of the neighbours of a tile at once, creating any that haven't been yet
+	 */
+	@Override
+	public void neighbours(int index, int[] out)
+	{
+		for(int d = 0; d < DQ.length; d++)
+		{
+			out[d] = this.neighbour(index, d);
+		}
+	}
+
+	@Override
+	public int neighbourMask(int index)
+	{
+		int mask = 0;
+		for(int d = 0; d < DQ.length; d++)
+		{
+			if(this.contains(this.qs[index] + DQ[d], this.rs[index] + DR[d]))
+			{
+				mask |= 1 << d;
+			}
+		}
+		return mask;
+	}
+
+	@Override
+	public int getConnections(int index)
+	{
+		return this.connections[index];
+	}
+
+	/**
+	 * The connections of a sparse grid's tiles come from its seed, so there's nothing to put back, but they had better be what was saved
+	 * @throws IllegalStateException	If they aren't
+	 */
+	@Override
+	void setConnections(int index, int mask)
+	{
+		if(this.connections[index] != (byte)mask)
+		{
+			throw new IllegalStateException("The connections of a sparse grid come from its seed and can't be changed");
+		}
+	}
+
+	/**
+	 * The maze of a sparse grid is fixed by its seed, so connections can't be added. Asking for one the maze already has does nothing, which is what lets the
+	 * settlement make its usual three connections.
+	 * @throws IllegalStateException	If the tiles aren't already connected
+	 */
+	@Override
+	public void connect(int index, int direction)
+	{
+		if((this.connections[index] & (1 << direction)) == 0)
+		{
+			throw new IllegalStateException("The connections of a sparse grid come from its seed and can't be changed");
+		}
+	}
+
+	/**
+	 * Pack a coordinate into a long for the hash index
+	 * @param q	The q coordinate
+	 * @param r	The r coordinate
+	 * @return	The packed coordinate
+	 */
+	private static long key(int q, int r)
+	{
+		return ((long)q << 32) | (r & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Scramble a packed coordinate for the hash index, since neighbouring coordinates would otherwise crowd into neighbouring slots
+	 * @param key	The packed coordinate
+	 * @return		The hash
+	 */
+	private static int hash(long key)
+	{
+		return (int)DepositGenerator.mix(key);
+	}
+}
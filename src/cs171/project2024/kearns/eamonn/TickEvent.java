@@ -0,0 +1,62 @@
+package cs171.project2024.kearns.eamonn;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A Flight Recorder event for a tick of the game, so what the game was doing shows up next to the GC pauses in a recording.
+ * A tick usually takes well under a microsecond and there can be millions of them, and even the two timestamps an event takes cost as much as a small tick,
+ * so it's off unless a recording turns it on, and processTick doesn't touch it at all while it's off. Once it's on, only ticks taking at least THRESHOLD are
+ * recorded, which are the ones worth lining up with a pause, unless the recording sets the threshold lower. The event is only filled in once shouldCommit says
+ * it's wanted, and no stack trace is taken, since it would always be the same one.
+ */
+@Name("cs171.project2024.kearns.eamonn.Tick")
+@Label("Tick")
+@Category({"CS171 Game", "Simulation"})
+@Description("A tick of the game")
+@StackTrace(false)
+@Enabled(false)
+@Threshold(TickEvent.THRESHOLD)
+class TickEvent extends jdk.jfr.Event
+{
+	/**
+	 * How long a tick has to take to be recorded, unless the recording says otherwise
+	 */
+	final static String THRESHOLD = "1 ms";
+
+	/**
+	 * The tick this was, counting from 1
+	 */
+	@Label("Tick")
+	long tick;
+	/**
+	 * The tick mode it was processed in
+	 */
+	@Label("Mode")
+	String mode;
+	/**
+	 * The number of tiles it processed
+	 */
+	@Label("Tiles Processed")
+	int tilesProcessed;
+	/**
+	 * The number of tiles that it explored, which are the tiles opened up by the tiles that ran dry
+	 */
+	@Label("Tiles Discovered")
+	int discoveries;
+	/**
+	 * The number of tiles that ran dry of everything being mined during it
+	 */
+	@Label("Tiles Depleted")
+	int depletions;
+	/**
+	 * The number of tiles being mined after it
+	 */
+	@Label("Active Tiles")
+	int activeTiles;
+}
@@ -0,0 +1,22 @@
+package cs171.project2024.kearns.eamonn;
+
+/**
+ * An enum to select how Game processes a tick.
+ * @see Game#setTickMode(TickMode)
+ */
+public enum TickMode
+{
+	/**
+	 * Every shard of the active tiles is processed, in order, on the calling thread
+	 */
+	SEQUENTIAL,
+	/**
+	 * The shards of the active tiles are processed on a ForkJoinPool and merged in shard order afterwards
+	 */
+	PARALLEL,
+	/**
+	 * Extraction is credited at the aggregate rate of everything being mined and tiles are only touched when one of their resources runs out
+	 * @see DepletionScheduler
+	 */
+	EVENT;
+}
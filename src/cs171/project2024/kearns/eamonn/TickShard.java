@@ -0,0 +1,191 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A contiguous run of the active tile set, processed as a unit during a tick.
+ * A shard only ever writes to the tiles in its own run and to its own accumulators, so shards can be run on any number of threads. Everything that touches
+ * shared state (the ledger, the active set and the exploration of new tiles) is left for Game to merge afterwards, one shard at a time in a fixed order, which
+ * is what keeps the outcome of a tick the same no matter how many cores ran it. The one exception is the store's chunk totals, since neighbouring runs can have
+ * tiles in the same chunk, but those are only ever added to, and the store adds to them atomically while the shards are running in parallel. A shard adds up
+ * what it mines from a chunk while it goes through tiles in the same one, which active tiles next to each other in the set often are, and takes it off the
+ * chunk's total in one go when it moves on to another.
+ * Shards are kept and reused from tick to tick so a tick doesn't allocate tasks.
+ */
+class TickShard extends RecursiveAction
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The store holding the tiles' resource state
+	 */
+	private final TileStore store;
+	/**
+	 * The grid of tiles, used to find the neighbours of tiles that deplete
+	 */
+	private final HexGrid<ResourceTile> grid;
+	/**
+	 * The active tile set this shard is a run of
+	 */
+	private ActiveTileSet active;
+	/**
+	 * The first position in the active set belonging to this shard
+	 */
+	private int start;
+	/**
+	 * One past the last position in the active set belonging to this shard
+	 */
+	private int end;
+	/**
+	 * The resources that have been discovered, as a bitmask of ordinals
+	 */
+	private int discoveredMask;
+
+	/**
+	 * The amount of each resource this shard mined, in fixed point units
+	 */
+	final long[] mined = new long[TileStore.RESOURCE_COUNT];
+	/**
+	 * The amount of each resource this shard had mined when it last took what it mined off a chunk's total, so the rest is still owed to the chunk it's in
+	 */
+	private final long[] counted = new long[TileStore.RESOURCE_COUNT];
+	/**
+	 * The ids of the tiles in this shard that ran out of everything minable this tick, in the order they were processed
+	 */
+	int[] retired = new int[16];
+	/**
+	 * The number of entries in retired
+	 */
+	int retiredCount;
+	/**
+	 * The ids of the tiles in this shard that depleted for the first time this tick, in the order they were processed. Their unexplored neighbours are left
+	 * for Game to find when it merges, since on a lazy map finding a neighbour can mean creating it, which mustn't happen on more than one thread at once.
+	 */
+	int[] depleted = new int[16];
+	/**
+	 * The number of entries in depleted
+	 */
+	int depletedCount;
+
+	/**
+	 * Constructor
+	 * @param store		The store holding the tiles' resource state
+	 * @param grid		The grid of tiles
+	 */
+	TickShard(TileStore store, HexGrid<ResourceTile> grid)
+	{
+		this.store = store;
+		this.grid = grid;
+	}
+
+	/**
+	 * Point the shard at its run of the active set for the coming tick and clear out what it collected last time
+	 * @param active			The active tile set
+	 * @param start				The first position in the run
+	 * @param end				One past the last position in the run
+	 * @param discoveredMask	The resources that have been discovered
+	 */
+	void prepare(ActiveTileSet active, int start, int end, int discoveredMask)
+	{
+		this.reinitialize();
+		this.active = active;
+		this.start = start;
+		this.end = end;
+		this.discoveredMask = discoveredMask;
+		Arrays.fill(this.mined, 0);
+		Arrays.fill(this.counted, 0);
+		this.retiredCount = 0;
+		this.depletedCount = 0;
+	}
+
+	@Override
+	protected void compute()
+	{
+		this.process();
+	}
+
+	/**
+	 * Mine a tick's worth of everything known from every tile in the run, noting the tiles that run dry.
+	 * Tiles that deplete for the first time are marked depleted here and noted, so Game can explore their neighbours.
+	 */
+	void process()
+	{
+		TileStore store = this.store;
+		ActiveTileSet active = this.active;
+		int discoveredMask = this.discoveredMask;
+		long[] mined = this.mined;
+		int i = this.start;
+		while(i < this.end)
+		{
+			// find the run of tiles in the same chunk first, so the loop mining them doesn't have to keep checking
+			int chunk = MapChunks.chunkOf(active.get(i));
+			int runEnd = i + 1;
+			while(runEnd < this.end && MapChunks.chunkOf(active.get(runEnd)) == chunk)
+			{
+				runEnd++;
+			}
+			for(; i < runEnd; i++)
+			{
+				int id = active.get(i);
+				// only look at the resources we know about that the tile still has
+				int before = store.getPresentMask(id) & discoveredMask;
+				for(int mask = before; mask != 0; mask &= mask - 1)
+				{
+					int r = Integer.numberOfTrailingZeros(mask);
+					mined[r] += store.mine(id, r);
+				}
+				int after = store.getPresentMask(id) & discoveredMask;
+				if(after != before)
+				{
+					store.ranOut(id, before & ~after);
+				}
+				// anything the tile still has after extraction is, by definition, not depleted
+				if(after == 0)
+				{
+					this.retire(id);
+				}
+			}
+			this.settleChunk(chunk);
+		}
+	}
+
+	/**
+	 * Take everything mined since this was last called off the total of the chunk it was all mined from
+	 * @param chunk	The chunk
+	 */
+	private void settleChunk(int chunk)
+	{
+		for(int r = 0; r < TileStore.RESOURCE_COUNT; r++)
+		{
+			if(this.mined[r] != this.counted[r])
+			{
+				this.store.mined(chunk << MapChunks.SHIFT, r, this.mined[r] - this.counted[r]);
+				this.counted[r] = this.mined[r];
+			}
+		}
+	}
+
+	/**
+	 * Note a tile as retired and, if it is depleting for the first time, mark it and note it as depleted
+	 * @param id	The id of the tile
+	 */
+	private void retire(int id)
+	{
+		if(this.retiredCount == this.retired.length)
+		{
+			this.retired = Arrays.copyOf(this.retired, this.retiredCount * 2);
+		}
+		this.retired[this.retiredCount++] = id;
+		ResourceTile t = this.grid.get(id);
+		if(!t.isDepleted())
+		{
+			t.markDepleted();
+			if(this.depletedCount == this.depleted.length)
+			{
+				this.depleted = Arrays.copyOf(this.depleted, this.depletedCount * 2);
+			}
+			this.depleted[this.depletedCount++] = id;
+		}
+	}
+}
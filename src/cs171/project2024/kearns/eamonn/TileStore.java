@@ -0,0 +1,841 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import cs171.project2024.kearns.eamonn.ResourceTile.Resource;
+
+/**
+ * A store for the resource state of every tile on the map.
+ * Rather than each ResourceTile carrying its own EnumMaps of boxed Doubles, every tile is given an id and its state lives in flat primitive storage, indexed by
+ * id and Resource.ordinal(). ResourceTile is then just a lightweight view onto a slot in this store.
+ *
+ * Where the state actually lives is up to the subclass, which only has to provide the raw getters and setters and a way of growing, and everything built on
+ * them, extraction included, is shared. HeapTileStore keeps it in arrays on the heap, and MappedTileStore keeps it in a memory mapped file, along with the
+ * tiles' flags and connections and what the game needs to carry on from the file once it's reopened. The game itself doesn't know which it's running on,
+ * beyond telling the store when it starts on it and keeping it told of the flags and connections, which only a store that outlives the game holds on to.
+ *
+ * Amounts are held as fixed point longs, in units of 1/QUANTUM of a resource. This keeps the tick loop free of boxing and means totals are exact integer sums,
+ * so the order in which tiles are processed can never change the result.
+ *
+ * The store also keeps track of which tiles have changed since it was last asked, so the journal only has to write those. A flag is set per tile, and another per
+ * block of tiles so that finding the changed ones skips over the untouched parts of the map a block at a time. Extracting doesn't set the flag, to keep it out of
+ * the tick loop. The only tiles the game mines are the ones in its active set, which the journal marks itself before it looks, so anything else that extracts
+ * from a tile needs to mark it.
+ *
+ * It also keeps running totals a chunk of tiles at a time, for questions about the whole map. Everything that changes how much a tile has left goes through
+ * here and adds the difference to its chunk's total. Which resources of a tile count towards its chunk's rate of mining is up to the game, which tells the store
+ * when it starts and stops mining a tile, and the store takes a resource back out of the rate when it runs out.
+ * @see GameJournal
+ * @see MapChunks
+ */
+public abstract class TileStore
+{
+	/**
+	 * The number of resources each tile has a slot for
+	 */
+	public final static int RESOURCE_COUNT = Resource.values().length;
+	/**
+	 * The number of fixed point units in one whole unit of a resource
+	 */
+	public final static double QUANTUM = 1000000.0;
+	/**
+	 * A double to hold the minimum resource value, used to create the RNG bounds
+	 */
+	final static double MINIMUM_RESOURCE = 500.0;
+	/**
+	 * A double to hold the maximum resource value, used to create the RNG bounds
+	 */
+	final static double MAXIMUM_RESOURCE = 1000.0;
+
+	/**
+	 * The number of bytes of masks and flags at the start of every record writeTile writes
+	 */
+	final static int RECORD_HEADER_SIZE = 5;
+	/**
+	 * The most bytes writeTile can write for a single tile, the header followed by a deposit, a remaining amount and a rate for every resource
+	 */
+	final static int MAXIMUM_RECORD_SIZE = RECORD_HEADER_SIZE + 3 * RESOURCE_COUNT * Long.BYTES;
+	/**
+	 * The tile has been explored, in a tile's flags
+	 */
+	final static int EXPLORED = 1;
+	/**
+	 * The tile was walked by the maze generator
+	 */
+	final static int VISITED = 2;
+	/**
+	 * The tile is the settlement
+	 */
+	final static int OCCUPIED = 4;
+	/**
+	 * The log base 2 of the number of tiles covered by each block flag
+	 */
+	private final static int DIRTY_BLOCK_SHIFT = 6;
+	/**
+	 * The change flag the journal polls, for the tiles it has yet to write
+	 */
+	final static int JOURNAL = 1;
+	/**
+	 * The change flag a view of the map polls, for the tiles it has yet to draw
+	 */
+	final static int VIEW = 2;
+	/**
+	 * Every change flag, which is what a change sets
+	 */
+	private final static byte ALL_CHANGES = JOURNAL | VIEW;
+
+	/**
+	 * The number of tiles the store has room for
+	 */
+	private int capacity;
+	/**
+	 * The change flags of each tile, a bit for each of the things polling for changes that hasn't seen the tile's latest yet
+	 */
+	private byte[] dirty;
+	/**
+	 * The change flags of each block of 1 << DIRTY_BLOCK_SHIFT tiles, a bit set if the block might have a tile with that bit set in it
+	 */
+	private byte[] dirtyBlocks;
+	/**
+	 * The running totals of each chunk of tiles
+	 */
+	private final MapChunks chunks;
+	/**
+	 * A bitmask per tile of the resources whose rates are counted in its chunk's rate of mining
+	 */
+	private byte[] mining;
+	/**
+	 * Whether or not tiles are being mined on more than one thread at once, so the chunk totals have to be added to atomically
+	 */
+	private boolean concurrent;
+
+	/**
+	 * Constructor. The subclass has to have room for the given number of tiles. The store can be grown later, for maps whose tiles are only created as they're
+	 * found.
+	 * @param capacity	The number of tiles to store
+	 */
+	protected TileStore(int capacity)
+	{
+		this.capacity = capacity;
+		this.dirty = new byte[capacity];
+		this.dirtyBlocks = new byte[blocks(capacity)];
+		this.chunks = new MapChunks(capacity);
+		this.mining = new byte[capacity];
+	}
+
+	/**
+	 * Convert an amount of resource to fixed point units
+	 * @param amount	The amount as a double
+	 * @return			The amount in units of 1/QUANTUM
+	 */
+	public static long toUnits(double amount)
+	{
+		return Math.round(amount * QUANTUM);
+	}
+
+	/**
+	 * Convert fixed point units back to an amount of resource
+	 * @param units	The amount in units of 1/QUANTUM
+	 * @return		The amount as a double
+	 */
+	public static double toAmount(long units)
+	{
+		return units / QUANTUM;
+	}
+
+	/**
+	 * Getter for the number of tiles this store has room for
+	 * @return	The capacity of the store in tiles
+	 */
+	public int getCapacity()
+	{
+		return this.capacity;
+	}
+
+	/**
+	 * Make sure the store has room for at least a given number of tiles, at least doubling it if it has to grow so that creating tiles one at a time stays
+	 * cheap. The new tiles are empty. Anything holding on to the store keeps working, since the storage is only ever reached through it.
+	 * @param tiles	The number of tiles to make room for
+	 */
+	public void ensureCapacity(int tiles)
+	{
+		if(tiles <= this.capacity)
+		{
+			return;
+		}
+		int capacity = Math.max(tiles, this.capacity * 2);
+		this.grow(capacity);
+		this.dirty = Arrays.copyOf(this.dirty, capacity);
+		this.dirtyBlocks = Arrays.copyOf(this.dirtyBlocks, blocks(capacity));
+		this.chunks.grow(capacity);
+		this.mining = Arrays.copyOf(this.mining, capacity);
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Make room for more tiles, keeping the ones already there. The new tiles must be empty.
+	 * @param capacity	The number of tiles to make room for, which is more than there is now
+	 */
+	protected abstract void grow(int capacity);
+
+	/**
+	 * @param tile		The id of the tile
+	 * @param resource	The ordinal of the resource
+	 * @return			The amount of the resource the tile started with, in fixed point units
+	 */
+	public abstract long getDeposit(int tile, int resource);
+
+	/**
+	 * @param tile		The id of the tile
+	 * @param resource	The ordinal of the resource
+	 * @return			The amount of the resource the tile has left, in fixed point units
+	 */
+	public abstract long getRemaining(int tile, int resource);
+
+	/**
+	 * @param tile		The id of the tile
+	 * @param resource	The ordinal of the resource
+	 * @return			The amount of the resource extracted per tick, in fixed point units
+	 */
+	public abstract long getRate(int tile, int resource);
+
+	/**
+	 * @param tile	The id of the tile
+	 * @return		The bitmask of resources the tile still has
+	 */
+	public abstract int getPresentMask(int tile);
+
+	/**
+	 * @param tile	The id of the tile
+	 * @return		Whether or not the tile has been marked depleted
+	 */
+	public abstract boolean isDepleted(int tile);
+
+	/**
+	 * Set the amount of a resource a tile started with, and nothing else
+	 * @param tile		The id of the tile
+	 * @param resource	The ordinal of the resource
+	 * @param units		The amount in fixed point units
+	 */
+	protected abstract void putDeposit(int tile, int resource, long units);
+
+	/**
+	 * Set the amount of a resource a tile has left, and nothing else
+	 * @param tile		The id of the tile
+	 * @param resource	The ordinal of the resource
+	 * @param units		The amount in fixed point units
+	 */
+	protected abstract void putRemaining(int tile, int resource, long units);
+
+	/**
+	 * Set the rate a resource is extracted from a tile at, and nothing else
+	 * @param tile		The id of the tile
+	 * @param resource	The ordinal of the resource
+	 * @param units		The amount per tick in fixed point units
+	 */
+	protected abstract void putRate(int tile, int resource, long units);
+
+	/**
+	 * Set the resources a tile still has, and nothing else
+	 * @param tile	The id of the tile
+	 * @param mask	The bitmask of resources
+	 */
+	protected abstract void putPresentMask(int tile, int mask);
+
+	/**
+	 * Set whether a tile has been marked depleted, and nothing else
+	 * @param tile		The id of the tile
+	 * @param depleted	Whether it has
+	 */
+	protected abstract void putDepleted(int tile, boolean depleted);
+
+	/**
+	 * Keep a tile's flags alongside its resources. The game's own copy is in the tile, so only a store that a game can be carried on from needs to, and this
+	 * does nothing unless the subclass does.
+	 * @param tile	The id of the tile
+	 * @param flags	EXPLORED, VISITED and OCCUPIED, as they apply
+	 */
+	protected void putFlags(int tile, int flags)
+	{
+	}
+
+	/**
+	 * Keep a tile's connections alongside its resources. The game's own copy is in the grid, so this does nothing unless the subclass needs it.
+	 * @param tile			The id of the tile
+	 * @param connections	The connections, as a bitmask of direction ordinals
+	 */
+	protected void putConnections(int tile, int connections)
+	{
+	}
+
+	/**
+	 * Keep the coordinates of a tile on a lazy map, whose tiles are numbered in the order they're found, alongside its resources. This does nothing unless the
+	 * subclass needs it.
+	 * @param tile	The id of the tile
+	 * @param q		Its q coordinate
+	 * @param r		Its r coordinate
+	 */
+	protected void putCoordinates(int tile, int q, int r)
+	{
+	}
+
+	/**
+	 * Note that a game has been built on the store, or loaded or carried on in it, and will be keeping it up to date from now on. This does nothing unless the
+	 * subclass needs to know which game it holds.
+	 * @param game	The game
+	 */
+	void startGame(Game game)
+	{
+	}
+
+	/**
+	 * Give a tile a random selection of resources, each present with a probability of one half and with an amount between the minimum and maximum.
+	 * This was previously done in the ResourceTile constructor.
+	 * @param tile	The id of the tile
+	 * @param rng	The random number generator to draw from
+	 */
+	public void randomise(int tile, Random rng)
+	{
+		this.stopMining(tile);
+		int mask = 0;
+		for(int r = 0; r < RESOURCE_COUNT; r++)
+		{
+			if(rng.nextBoolean())
+			{
+				long amount = toUnits(MINIMUM_RESOURCE + (MAXIMUM_RESOURCE - MINIMUM_RESOURCE) * rng.nextDouble());
+				this.putDeposit(tile, r, amount);
+				this.changeRemaining(tile, r, amount);
+				mask |= 1 << r;
+			}
+			else
+			{
+				this.putDeposit(tile, r, 0);
+				this.changeRemaining(tile, r, 0);
+			}
+			this.putRate(tile, r, 0);
+		}
+		this.putPresentMask(tile, mask);
+		this.markDirty(tile);
+	}
+
+	/**
+	 * Remove all resources from a tile
+	 * @param tile	The id of the tile
+	 */
+	public void blank(int tile)
+	{
+		this.stopMining(tile);
+		for(int r = 0; r < RESOURCE_COUNT; r++)
+		{
+			this.putDeposit(tile, r, 0);
+			this.changeRemaining(tile, r, 0);
+		}
+		this.putPresentMask(tile, 0);
+		this.markDirty(tile);
+	}
+
+	/**
+	 * Set the amount of a resource a tile has, both initially and remaining, and mark it as present
+	 * @param tile		The id of the tile
+	 * @param resource	The ordinal of the resource
+	 * @param units		The amount in fixed point units
+	 */
+	public void setDeposit(int tile, int resource, long units)
+	{
+		this.putDeposit(tile, resource, units);
+		this.changeRemaining(tile, resource, units);
+		this.putPresentMask(tile, this.getPresentMask(tile) | (1 << resource));
+		this.markDirty(tile);
+	}
+
+	/**
+	 * @param tile		The id of the tile
+	 * @param resource	The ordinal of the resource
+	 * @param units		The amount of the resource to extract per tick, in fixed point units
+	 */
+	public void setRate(int tile, int resource, long units)
+	{
+		if((this.mining[tile] & (1 << resource)) != 0)
+		{
+			this.chunks.addRate(tile, resource, units - this.getRate(tile, resource), this.concurrent);
+		}
+		this.putRate(tile, resource, units);
+		this.markDirty(tile);
+	}
+
+	/**
+	 * @param tile		The id of the tile
+	 * @param resource	The ordinal of the resource
+	 * @return			Whether or not the tile still has the resource
+	 */
+	public boolean hasResource(int tile, int resource)
+	{
+		return (this.getPresentMask(tile) & (1 << resource)) != 0;
+	}
+
+	/**
+	 * Extract a single tick's worth of a resource from a tile. If this takes the last of it the resource is no longer present.
+	 * @param tile		The id of the tile
+	 * @param resource	The ordinal of the resource
+	 * @return			The amount taken, in fixed point units
+	 */
+	public long extract(int tile, int resource)
+	{
+		int present = this.getPresentMask(tile);
+		long taken = this.mine(tile, resource);
+		this.chunks.addRemaining(tile, resource, -taken, this.concurrent);
+		this.ranOut(tile, present & ~this.getPresentMask(tile));
+		return taken;
+	}
+
+	/**
+	 * The same as extract, except that the tile's chunk's totals are left alone. They're left to the caller, so that something mining a lot of tiles a tick can
+	 * add up what it takes from a chunk and take it off in one go with mined, and only has to call ranOut in the rare case that a tile has run out of something,
+	 * keeping the loop that mines each resource of each tile as tight as it was.
+	 * @param tile		The id of the tile
+	 * @param resource	The ordinal of the resource
+	 * @return			The amount taken, in fixed point units
+	 */
+	long mine(int tile, int resource)
+	{
+		int present = this.getPresentMask(tile);
+		if((present & (1 << resource)) == 0)
+		{
+			return 0;
+		}
+		long remaining = this.getRemaining(tile, resource);
+		long taken = Math.min(remaining, this.getRate(tile, resource));
+		long left = remaining - taken;
+		if(left <= 0)
+		{
+			left = 0;
+			this.putPresentMask(tile, present & ~(1 << resource));
+		}
+		this.putRemaining(tile, resource, left);
+		return taken;
+	}
+
+	/**
+	 * Take what has been mined from a chunk's tiles with mine off the chunk's total
+	 * @param tile		The id of any tile in the chunk
+	 * @param resource	The ordinal of the resource
+	 * @param units		The amount mined, in fixed point units
+	 */
+	void mined(int tile, int resource, long units)
+	{
+		this.chunks.addRemaining(tile, resource, -units, this.concurrent);
+	}
+
+	/**
+	 * Extract a number of ticks' worth of a resource from a tile in one go. Since each tick takes the smaller of what is left and the rate, this leaves the tile
+	 * exactly as that many calls to extract(tile, resource) would.
+	 * @param tile		The id of the tile
+	 * @param resource	The ordinal of the resource
+	 * @param ticks		The number of ticks to extract for
+	 * @return			The amount taken, in fixed point units
+	 */
+	public long extract(int tile, int resource, long ticks)
+	{
+		int present = this.getPresentMask(tile);
+		if((present & (1 << resource)) == 0 || ticks <= 0)
+		{
+			return 0;
+		}
+		long remaining = this.getRemaining(tile, resource);
+		long rate = this.getRate(tile, resource);
+		// check against the ticks it would take to run out before multiplying, so a long stretch of time can't overflow
+		long taken = rate > 0 && ticks >= ticksToExhaust(remaining, rate)?remaining:rate * ticks;
+		long left = remaining - taken;
+		if(left <= 0)
+		{
+			left = 0;
+			this.putPresentMask(tile, present & ~(1 << resource));
+		}
+		this.putRemaining(tile, resource, left);
+		this.chunks.addRemaining(tile, resource, -taken, this.concurrent);
+		if(left == 0)
+		{
+			this.ranOut(tile, 1 << resource);
+		}
+		return taken;
+	}
+
+	/**
+	 * Take resources a tile has just run out of off its chunk's rate of mining, for the ones that were counted
+	 * @param tile	The id of the tile
+	 * @param mask	The resources it has run out of, as a bitmask of ordinals
+	 */
+	void ranOut(int tile, int mask)
+	{
+		// only the thread mining the tile ever touches its mask
+		int stop = mask & this.mining[tile];
+		for(int r = 0; r < RESOURCE_COUNT; r++)
+		{
+			if((stop & (1 << r)) != 0)
+			{
+				this.chunks.addRate(tile, r, -this.getRate(tile, r), this.concurrent);
+			}
+		}
+		this.mining[tile] &= (byte)~stop;
+	}
+
+	/**
+	 * Set the amount of a resource a tile has left, adding the difference to its chunk's total
+	 * @param tile		The id of the tile
+	 * @param resource	The ordinal of the resource
+	 * @param units		The amount in fixed point units
+	 */
+	private void changeRemaining(int tile, int resource, long units)
+	{
+		this.chunks.addRemaining(tile, resource, units - this.getRemaining(tile, resource), this.concurrent);
+		this.putRemaining(tile, resource, units);
+	}
+
+	/**
+	 * Start counting some of a tile's resources towards its chunk's rate of mining, for when the game starts mining them. Resources the tile has run out of, or
+	 * that are already counted, are left alone.
+	 * @param tile	The id of the tile
+	 * @param mask	The resources being mined, as a bitmask of ordinals
+	 */
+	void startMining(int tile, int mask)
+	{
+		int start = mask & this.getPresentMask(tile) & ~this.mining[tile];
+		for(int r = 0; r < RESOURCE_COUNT; r++)
+		{
+			if((start & (1 << r)) != 0)
+			{
+				this.chunks.addRate(tile, r, this.getRate(tile, r), this.concurrent);
+			}
+		}
+		this.mining[tile] |= (byte)start;
+	}
+
+	/**
+	 * Stop counting any of a tile's resources towards its chunk's rate of mining, for when the game stops mining it
+	 * @param tile	The id of the tile
+	 */
+	void stopMining(int tile)
+	{
+		int stop = this.mining[tile];
+		for(int r = 0; r < RESOURCE_COUNT; r++)
+		{
+			if((stop & (1 << r)) != 0)
+			{
+				this.chunks.addRate(tile, r, -this.getRate(tile, r), this.concurrent);
+			}
+		}
+		this.mining[tile] = 0;
+	}
+
+	/**
+	 * Note that a tile has just been explored, for its chunk's count. Whether a tile is explored belongs to the tile, so this is up to the tile to call once.
+	 * @param tile	The id of the tile
+	 */
+	void markExplored(int tile)
+	{
+		this.chunks.addExplored(tile);
+	}
+
+	/**
+	 * Get the store ready for a new game by emptying every tile, whatever the store was used for before, and forgetting every total. The tiles aren't marked as
+	 * changed, since the game is about to fill in the ones it uses.
+	 */
+	void reset()
+	{
+		Arrays.fill(this.mining, (byte)0);
+		this.chunks.clear();
+		for(int tile = 0; tile < this.capacity; tile++)
+		{
+			for(int r = 0; r < RESOURCE_COUNT; r++)
+			{
+				this.putDeposit(tile, r, 0);
+				this.putRemaining(tile, r, 0);
+				this.putRate(tile, r, 0);
+			}
+			this.putPresentMask(tile, 0);
+			this.putDepleted(tile, false);
+			this.putFlags(tile, 0);
+			this.putConnections(tile, 0);
+			this.putCoordinates(tile, 0, 0);
+		}
+	}
+
+	/**
+	 * Work out the chunks' totals of what's left and what's depleted from scratch, for a game carried on from tiles the store was left holding. How much is
+	 * being mined and what's explored are counted as the game puts its tiles back.
+	 * @param tiles	The number of tiles the game uses
+	 */
+	void recountChunks(int tiles)
+	{
+		for(int tile = 0; tile < tiles; tile++)
+		{
+			for(int r = 0; r < RESOURCE_COUNT; r++)
+			{
+				this.chunks.addRemaining(tile, r, this.getRemaining(tile, r), false);
+			}
+			if(this.isDepleted(tile))
+			{
+				this.chunks.addDepleted(tile, 1, false);
+			}
+		}
+	}
+
+	/**
+	 * Say whether tiles are about to be mined on more than one thread at once, or have stopped being
+	 * @param concurrent	Whether they are
+	 */
+	void setConcurrent(boolean concurrent)
+	{
+		this.concurrent = concurrent;
+	}
+
+	/**
+	 * Getter for the running totals of each chunk of tiles. In event mode the game has to be synchronised first for the amounts left to be up to date.
+	 * @return	The chunks
+	 */
+	public MapChunks getChunks()
+	{
+		return this.chunks;
+	}
+
+	/**
+	 * Work out how many ticks of extraction it will take until a tile has none of the given resources left
+	 * @param tile	The id of the tile
+	 * @param mask	The resources to consider, as a bitmask of ordinals
+	 * @return		The number of ticks, at least one since even a tile with nothing is only found to be empty when it is next processed, or Long.MAX_VALUE if
+	 * 				one of the resources isn't being extracted at all
+	 */
+	public long ticksToDeplete(int tile, int mask)
+	{
+		long ticks = 1;
+		mask &= this.getPresentMask(tile);
+		while(mask != 0)
+		{
+			int r = Integer.numberOfTrailingZeros(mask);
+			mask &= mask - 1;
+			long rate = this.getRate(tile, r);
+			if(rate <= 0)
+			{
+				return Long.MAX_VALUE;
+			}
+			ticks = Math.max(ticks, ticksToExhaust(this.getRemaining(tile, r), rate));
+		}
+		return ticks;
+	}
+
+	/**
+	 * Work out how many ticks of extraction it will take until the tile runs out of the first of the given resources to go
+	 * @param tile	The id of the tile
+	 * @param mask	The resources to consider, as a bitmask of ordinals
+	 * @return		The number of ticks, one if the tile has none of the resources, or Long.MAX_VALUE if none of them are being extracted
+	 */
+	public long ticksToNextExhaustion(int tile, int mask)
+	{
+		mask &= this.getPresentMask(tile);
+		if(mask == 0)
+		{
+			return 1;
+		}
+		long ticks = Long.MAX_VALUE;
+		while(mask != 0)
+		{
+			int r = Integer.numberOfTrailingZeros(mask);
+			mask &= mask - 1;
+			long rate = this.getRate(tile, r);
+			if(rate > 0)
+			{
+				ticks = Math.min(ticks, ticksToExhaust(this.getRemaining(tile, r), rate));
+			}
+		}
+		return ticks;
+	}
+
+	/**
+	 * The number of ticks it takes to take all of an amount at a given rate
+	 * @param remaining	The amount left
+	 * @param rate		The amount taken per tick, which must be positive
+	 * @return			The number of ticks
+	 */
+	private static long ticksToExhaust(long remaining, long rate)
+	{
+		return remaining / rate + (remaining % rate == 0?0:1);
+	}
+
+	/**
+	 * Write a tile's state to a buffer as a compact record. Most of a map is untouched, so rather than every slot the record is a mask of the resources the tile
+	 * has a deposit of, its present mask, its depleted flag, a mask of the resources with a rate and a mask of the resources that have been drawn down, followed
+	 * by the deposits, the remaining amounts that differ from their deposits and the rates, each in ordinal order.
+	 * @param buffer	The buffer to write to, which needs MAXIMUM_RECORD_SIZE bytes free
+	 * @param tile		The id of the tile
+	 */
+	void writeTile(ByteBuffer buffer, int tile)
+	{
+		int depositMask = 0;
+		int rateMask = 0;
+		int drawnMask = 0;
+		for(int r = 0; r < RESOURCE_COUNT; r++)
+		{
+			long deposit = this.getDeposit(tile, r);
+			depositMask |= deposit != 0?1 << r:0;
+			rateMask |= this.getRate(tile, r) != 0?1 << r:0;
+			drawnMask |= this.getRemaining(tile, r) != deposit?1 << r:0;
+		}
+		buffer.put((byte)depositMask);
+		buffer.put((byte)this.getPresentMask(tile));
+		buffer.put((byte)(this.isDepleted(tile)?1:0));
+		buffer.put((byte)rateMask);
+		buffer.put((byte)drawnMask);
+		for(int mask = depositMask; mask != 0; mask &= mask - 1)
+		{
+			buffer.putLong(this.getDeposit(tile, Integer.numberOfTrailingZeros(mask)));
+		}
+		for(int mask = drawnMask; mask != 0; mask &= mask - 1)
+		{
+			buffer.putLong(this.getRemaining(tile, Integer.numberOfTrailingZeros(mask)));
+		}
+		for(int mask = rateMask; mask != 0; mask &= mask - 1)
+		{
+			buffer.putLong(this.getRate(tile, Integer.numberOfTrailingZeros(mask)));
+		}
+	}
+
+	/**
+	 * Work out the size of a record from its header, without moving the buffer's position
+	 * @param buffer	The buffer, which must hold at least the record's header
+	 * @param at		The index of the start of the record in the buffer
+	 * @return			The number of bytes in the whole record
+	 */
+	static int recordSize(ByteBuffer buffer, int at)
+	{
+		int amounts = Integer.bitCount(buffer.get(at) & 0xFF) + Integer.bitCount(buffer.get(at + 3) & 0xFF) + Integer.bitCount(buffer.get(at + 4) & 0xFF);
+		return RECORD_HEADER_SIZE + amounts * Long.BYTES;
+	}
+
+	/**
+	 * Read a tile's state back from a record written by writeTile, replacing whatever the tile had
+	 * @param buffer	The buffer to read from
+	 * @param tile		The id of the tile
+	 */
+	void readTile(ByteBuffer buffer, int tile)
+	{
+		// the game decides what's being mined once it has read everything
+		this.stopMining(tile);
+		int depositMask = buffer.get() & 0xFF;
+		this.putPresentMask(tile, buffer.get() & 0xFF);
+		boolean depleted = buffer.get() != 0;
+		if(depleted != this.isDepleted(tile))
+		{
+			this.chunks.addDepleted(tile, depleted?1:-1, false);
+		}
+		this.putDepleted(tile, depleted);
+		int rateMask = buffer.get() & 0xFF;
+		int drawnMask = buffer.get() & 0xFF;
+		for(int r = 0; r < RESOURCE_COUNT; r++)
+		{
+			long deposit = (depositMask & (1 << r)) != 0?buffer.getLong():0;
+			this.putDeposit(tile, r, deposit);
+			this.changeRemaining(tile, r, deposit);
+		}
+		for(int mask = drawnMask; mask != 0; mask &= mask - 1)
+		{
+			this.changeRemaining(tile, Integer.numberOfTrailingZeros(mask), buffer.getLong());
+		}
+		for(int r = 0; r < RESOURCE_COUNT; r++)
+		{
+			this.putRate(tile, r, (rateMask & (1 << r)) != 0?buffer.getLong():0);
+		}
+	}
+
+	/**
+	 * Mark a tile as depleted
+	 * @param tile	The id of the tile
+	 */
+	public void markDepleted(int tile)
+	{
+		if(!this.isDepleted(tile))
+		{
+			this.chunks.addDepleted(tile, 1, this.concurrent);
+		}
+		this.putDepleted(tile, true);
+		this.markDirty(tile);
+	}
+
+	/**
+	 * Note that a tile has changed, so the journal and any view of the map pick it up next time. The setters all do this themselves, so it's only needed for
+	 * changes to a tile made outside the store.
+	 * @param tile	The id of the tile
+	 */
+	void markDirty(int tile)
+	{
+		this.dirty[tile] = ALL_CHANGES;
+		this.dirtyBlocks[tile >>> DIRTY_BLOCK_SHIFT] = ALL_CHANGES;
+	}
+
+	/**
+	 * @param tile	The id of the tile
+	 * @return		Whether or not the tile has changed since the journal last polled it
+	 */
+	boolean isDirty(int tile)
+	{
+		return (this.dirty[tile] & JOURNAL) != 0;
+	}
+
+	/**
+	 * Find the next changed tile and clear its flag. Blocks with nothing changed in them are skipped whole, so going through every changed tile costs about as
+	 * much as there are changed tiles, plus a flag per block. Each flag is polled separately, so the journal and a view can each see every change without
+	 * getting in the other's way. This mustn't be called while tiles are being mined.
+	 * @param flag	The change flag to poll, JOURNAL or VIEW
+	 * @param from	The id to start looking from
+	 * @return		The id of the first tile at or after from with the flag set, or -1 if there aren't any
+	 */
+	int pollDirty(int flag, int from)
+	{
+		byte clear = (byte)~flag;
+		for(int block = from >>> DIRTY_BLOCK_SHIFT; block < this.dirtyBlocks.length; block++, from = block << DIRTY_BLOCK_SHIFT)
+		{
+			if((this.dirtyBlocks[block] & flag) == 0)
+			{
+				continue;
+			}
+			int end = Math.min((block + 1) << DIRTY_BLOCK_SHIFT, this.capacity);
+			for(int tile = from; tile < end; tile++)
+			{
+				if((this.dirty[tile] & flag) != 0)
+				{
+					this.dirty[tile] &= clear;
+					return tile;
+				}
+			}
+			this.dirtyBlocks[block] &= clear;
+		}
+		return -1;
+	}
+
+	/**
+	 * Forget about every change so far, for when everything has just been written out or drawn in full
+	 * @param flag	The change flag to clear, JOURNAL or VIEW
+	 */
+	void clearDirty(int flag)
+	{
+		byte clear = (byte)~flag;
+		for(int tile = 0; tile < this.dirty.length; tile++)
+		{
+			this.dirty[tile] &= clear;
+		}
+		for(int block = 0; block < this.dirtyBlocks.length; block++)
+		{
+			this.dirtyBlocks[block] &= clear;
+		}
+	}
+
+	/**
+	 * @param tiles	A number of tiles
+	 * @return		The number of block flags needed to cover them
+	 */
+	private static int blocks(int tiles)
+	{
+		return (tiles + (1 << DIRTY_BLOCK_SHIFT) - 1) >>> DIRTY_BLOCK_SHIFT;
+	}
+}
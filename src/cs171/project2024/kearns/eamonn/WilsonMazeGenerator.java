@@ -0,0 +1,95 @@
+package cs171.project2024.kearns.eamonn;
+
+import java.util.Random;
+
+/**
+ * Wilson's algorithm. The maze starts off as just the roots. From each tile not yet in it, in index order, a random walk is taken until it hits the maze,
+ * remembering only the last direction it left each tile by, which erases any loops the walk made. The walk is then retraced from its start along those
+ * directions and carved into the maze. Unlike the other algorithms this picks uniformly from every possible maze, at the cost of a lot of wandering early on.
+ * @see https://weblog.jamisbuck.org/2011/1/20/maze-generation-wilson-s-algorithm
+ */
+public class WilsonMazeGenerator implements MazeGenerator
+{
+	/**
+	 * A tile that isn't part of the maze yet
+	 */
+	private final static byte OUTSIDE = 0;
+	/**
+	 * A tile that is part of the maze
+	 */
+	private final static byte INSIDE = 1;
+	/**
+	 * A tile that is being left out of the maze, which walks can't go through
+	 */
+	private final static byte EXCLUDED = 2;
+
+	/**
+	 * Where each tile stands with the maze
+	 */
+	private byte[] state = new byte[0];
+	/**
+	 * The ordinal of the direction the current walk last left each tile by
+	 */
+	private byte[] exits = new byte[0];
+	/**
+	 * The indices of the neighbours of the tile being looked at, by direction ordinal
+	 */
+	private final int[] neighbours = new int[6];
+	/**
+	 * The directions that can be walked in from the tile being looked at
+	 */
+	private final int[] candidates = new int[6];
+
+	@Override
+	public void generate(HexGrid<? extends HexTile> grid, int[] roots, Random rng)
+	{
+		int size = grid.size();
+		if(this.state.length < size)
+		{
+			this.state = new byte[size];
+			this.exits = new byte[size];
+		}
+		for(int i = 0; i < size; i++)
+		{
+			this.state[i] = grid.get(i).isVisited()?EXCLUDED:OUTSIDE;
+		}
+		for(int root: roots)
+		{
+			this.state[root] = INSIDE;
+		}
+
+		for(int start = 0; start < size; start++)
+		{
+			if(this.state[start] != OUTSIDE)
+			{
+				continue;
+			}
+			// walk until we hit the maze
+			int tile = start;
+			while(this.state[tile] != INSIDE)
+			{
+				grid.neighbours(tile, this.neighbours);
+				int count = 0;
+				for(int d = 0; d < this.neighbours.length; d++)
+				{
+					if(this.neighbours[d] >= 0 && this.state[this.neighbours[d]] != EXCLUDED)
+					{
+						this.candidates[count++] = d;
+					}
+				}
+				int d = this.candidates[rng.nextInt(count)];
+				this.exits[tile] = (byte)d;
+				tile = this.neighbours[d];
+			}
+			// and carve the loop-erased walk into it
+			tile = start;
+			while(this.state[tile] != INSIDE)
+			{
+				this.state[tile] = INSIDE;
+				grid.connect(tile, this.exits[tile]);
+				grid.get(tile).visit();
+				tile = grid.neighbour(tile, this.exits[tile]);
+			}
+		}
+	}
+}